@@ -26,6 +26,8 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.async.FutureUtil;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
+import com.google.idea.blaze.base.filecache.ArtifactStore;
+import com.google.idea.blaze.base.filecache.ProjectArtifactStore;
 import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.logging.EventLoggingService;
 import com.google.idea.blaze.base.prefetch.FetchExecutor;
@@ -43,9 +45,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -212,7 +212,7 @@ public class LocalArtifactCache implements ArtifactCache {
 
       // Copy files to disk and notify
       List<ListenableFuture<String>> copyFutures =
-          copyLocally(updatedKeyToArtifact, updatedKeyToCacheEntry);
+          copyLocally(getStore(), updatedKeyToArtifact, updatedKeyToCacheEntry);
       List<String> copiedKeys = Futures.allAsList(copyFutures).get();
       copiedKeys.stream()
           .filter(k -> !k.isEmpty())
@@ -225,7 +225,7 @@ public class LocalArtifactCache implements ArtifactCache {
 
       // Delete files from disk and notify
       // removedKeys will be empty if removeMissingArtifacts is false
-      List<ListenableFuture<String>> removeFutures = deleteCachedFiles(removedKeys);
+      List<ListenableFuture<String>> removeFutures = deleteCachedFiles(getStore(), removedKeys);
       List<String> deletedKeys = Futures.allAsList(removeFutures).get();
       deletedKeys.forEach(cacheState::remove);
 
@@ -246,6 +246,7 @@ public class LocalArtifactCache implements ArtifactCache {
     } finally {
       // Write the cache state upon completion
       writeCacheData();
+      ProjectArtifactStore.getInstance(project).commit(context);
     }
   }
 
@@ -317,11 +318,17 @@ public class LocalArtifactCache implements ArtifactCache {
     removeUntrackedFiles(cachedFiles);
   }
 
+  /** The shared store backing the files in {@link #cacheDir}. */
+  private ArtifactStore getStore() {
+    return ProjectArtifactStore.getInstance(project).getStore();
+  }
+
   /**
    * Returns a list of futures copying the given {@link OutputArtifact}s to disk. The returned
    * futures return the cache key on successful copy, or an empty string on copy failure.
    */
   private ImmutableList<ListenableFuture<String>> copyLocally(
+      ArtifactStore store,
       Map<String, OutputArtifact> updatedKeyToArtifact,
       Map<String, CacheEntry> updatedKeyToCacheEntry) {
     return updatedKeyToArtifact.entrySet().stream()
@@ -331,6 +338,7 @@ public class LocalArtifactCache implements ArtifactCache {
                     () -> {
                       try {
                         copyLocally(
+                            store,
                             kv.getValue(),
                             getPathToCachedFile(
                                 updatedKeyToCacheEntry.get(kv.getKey()).getFileName()));
@@ -348,11 +356,16 @@ public class LocalArtifactCache implements ArtifactCache {
         .collect(ImmutableList.toImmutableList());
   }
 
-  private static void copyLocally(OutputArtifact blazeArtifact, Path destinationPath)
-      throws IOException {
-    try (InputStream stream = blazeArtifact.getInputStream()) {
-      Files.copy(stream, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+  private static void copyLocally(
+      ArtifactStore store, OutputArtifact blazeArtifact, Path destinationPath) throws IOException {
+    String digest = ArtifactStore.digest(blazeArtifact);
+    if (digest == null) {
+      // fall back to the path and modification time (or remote id) the cache key is based on
+      ArtifactMetadata metadata = ArtifactMetadata.forArtifact(blazeArtifact);
+      digest =
+          ArtifactStore.digestForKey(metadata.getRelativePath() + ":" + metadata.getIdentifier());
     }
+    store.publish(digest, blazeArtifact, destinationPath);
   }
 
   /**
@@ -360,7 +373,7 @@ public class LocalArtifactCache implements ArtifactCache {
    * futures return the cache key on successful deletion, or an empty string on failure.
    */
   private ImmutableList<ListenableFuture<String>> deleteCachedFiles(
-      ImmutableList<String> removedKeys) {
+      ArtifactStore store, ImmutableList<String> removedKeys) {
     return removedKeys.stream()
         // Create a (key, file) pair. This is created so the futures do not hold a reference to the
         // current object
@@ -370,7 +383,7 @@ public class LocalArtifactCache implements ArtifactCache {
                 FetchExecutor.EXECUTOR.submit(
                     () -> {
                       try {
-                        Files.deleteIfExists(pair.second);
+                        store.removeView(pair.second);
                         // return cache key of the deleted file
                         return pair.first;
                       } catch (IOException e) {
@@ -433,13 +446,14 @@ public class LocalArtifactCache implements ArtifactCache {
   }
 
   private ImmutableList<ListenableFuture<?>> deleteFiles(Collection<File> removed) {
+    ArtifactStore store = getStore();
     return removed.stream()
         .map(
             f ->
                 FetchExecutor.EXECUTOR.submit(
                     () -> {
                       try {
-                        Files.deleteIfExists(f.toPath());
+                        store.removeView(f.toPath());
                       } catch (IOException e) {
                         logger.warn(e);
                       }
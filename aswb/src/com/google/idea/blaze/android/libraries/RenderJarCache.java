@@ -45,6 +45,7 @@ import java.io.File;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.Nullable;
 
@@ -76,6 +77,10 @@ public class RenderJarCache {
   private final File cacheDir;
 
   private final ArtifactCache artifactCache;
+  private final RenderJarClassIndex classIndex = new RenderJarClassIndex();
+
+  /** Incremented whenever the cached render jars may have changed. */
+  private final AtomicLong modificationCount = new AtomicLong();
 
   public RenderJarCache(Project project) {
     this(
@@ -115,6 +120,7 @@ public class RenderJarCache {
     boolean fullRefresh = syncMode == SyncMode.FULL;
     if (fullRefresh) {
       artifactCache.clearCache();
+      onCacheModified();
     }
 
     if (!RenderResolveOutputGroupProvider.buildOnSync.getValue()) {
@@ -128,6 +134,7 @@ public class RenderJarCache {
         getArtifactsToCache(projectViewSet, projectData);
 
     artifactCache.putAll(artifactsToCache, context, removeMissingFiles);
+    onCacheModified();
   }
 
   /**
@@ -150,6 +157,25 @@ public class RenderJarCache {
     }
 
     artifactCache.putAll(renderJars, context, false);
+    onCacheModified();
+  }
+
+  private void onCacheModified() {
+    classIndex.clear();
+    modificationCount.incrementAndGet();
+  }
+
+  /** Returns the index of the classes in each cached render jar. */
+  public RenderJarClassIndex getClassIndex() {
+    return classIndex;
+  }
+
+  /**
+   * Returns a count which changes whenever the cached render jars may have changed, so results
+   * derived from them can be cached.
+   */
+  public long getModificationCount() {
+    return modificationCount.get();
   }
 
   private ImmutableList<OutputArtifact> getArtifactsToCache(
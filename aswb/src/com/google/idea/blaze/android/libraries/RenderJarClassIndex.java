@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.android.libraries;
+
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
+import com.google.common.collect.ImmutableSet;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The class files contained in each cached render jar, read from the jar's central directory.
+ *
+ * <p>Lets class lookups skip render jars which don't contain a class, without going through the
+ * VFS jar file system. Cleared whenever the contents of the {@link RenderJarCache} change.
+ */
+public final class RenderJarClassIndex {
+  private static final Logger logger = Logger.getInstance(RenderJarClassIndex.class);
+
+  private final Map<File, Optional<ImmutableSet<String>>> classEntries = new ConcurrentHashMap<>();
+
+  /** The result of looking up a class in a render jar's index. */
+  public enum Lookup {
+    /** The jar contains the class. */
+    FOUND,
+    /** The jar doesn't contain the class. */
+    MISSING,
+    /** The jar couldn't be indexed, so callers should fall back to looking in the jar directly. */
+    UNINDEXED,
+  }
+
+  /** Returns the path of the class file entry for the given binary class name. */
+  public static String classEntryName(String fqcn) {
+    return fqcn.replace('.', '/') + ".class";
+  }
+
+  /** Looks up the given binary class name in the index of the given jar, reading it if needed. */
+  public Lookup lookup(File jar, String fqcn) {
+    ImmutableSet<String> entries =
+        classEntries.computeIfAbsent(jar, RenderJarClassIndex::readClassEntries).orElse(null);
+    if (entries == null) {
+      return Lookup.UNINDEXED;
+    }
+    return entries.contains(classEntryName(fqcn)) ? Lookup.FOUND : Lookup.MISSING;
+  }
+
+  void clear() {
+    classEntries.clear();
+  }
+
+  private static Optional<ImmutableSet<String>> readClassEntries(File jar) {
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      return Optional.of(
+          zipFile.stream()
+              .map(ZipEntry::getName)
+              .filter(name -> name.endsWith(".class"))
+              .collect(toImmutableSet()));
+    } catch (IOException e) {
+      logger.warn("Couldn't index render jar " + jar + ": " + e.getMessage());
+      return Optional.empty();
+    }
+  }
+}
@@ -26,6 +26,7 @@ import com.google.idea.blaze.base.async.FutureUtil;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact.LocalFileArtifact;
 import com.google.idea.blaze.base.command.buildresult.RemoteOutputArtifact;
+import com.google.idea.blaze.base.filecache.ArtifactStore;
 import com.google.idea.blaze.base.filecache.FileCache;
 import com.google.idea.blaze.base.filecache.FileCacheDiffer;
 import com.google.idea.blaze.base.model.BlazeLibrary;
@@ -118,13 +119,10 @@ public class UnpackedAars {
       BlazeProjectData projectData,
       @Nullable BlazeProjectData oldProjectData,
       SyncMode syncMode) {
-    boolean fullRefresh = syncMode == SyncMode.FULL;
-    if (fullRefresh) {
-      aarCache.clearCache();
-    }
-
+    // Unpacked AARs are stamped with their content digest, so a full sync doesn't need to start
+    // from an empty cache. Unchanged AARs are reused, and the remainder are unpacked again.
     // TODO(brendandouglas): add a mechanism for removing missing files for partial syncs
-    boolean removeMissingFiles = syncMode == SyncMode.INCREMENTAL;
+    boolean removeMissingFiles = syncMode == SyncMode.INCREMENTAL || syncMode == SyncMode.FULL;
     refresh(
         context,
         projectViewSet,
@@ -154,11 +152,29 @@ public class UnpackedAars {
             .collect(toImmutableMap(Map.Entry::getKey, e -> e.getValue().aar()));
     try {
 
-      Set<String> updatedKeys =
+      Set<String> changedKeys =
           FileCacheDiffer.findUpdatedOutputs(aarOutputs, cacheFiles, previousOutputs).keySet();
+      Map<String, String> updatedDigests = new HashMap<>();
+      for (String key : changedKeys) {
+        String digest = getDigest(projectState.get(key));
+        if (digest == null || !digest.equals(aarCache.readDigest(key))) {
+          updatedDigests.put(key, digest);
+        } else {
+          // restamp the unchanged AAR, so it isn't digested again on every sync
+          BlazeArtifact aar = projectState.get(key).aar();
+          try {
+            aarCache.createTimeStampFile(
+                key,
+                (aar instanceof LocalFileArtifact) ? ((LocalFileArtifact) aar).getFile() : null,
+                digest);
+          } catch (IOException e) {
+            logger.warn("Failed to update AAR cache timestamp for " + aar, e);
+          }
+        }
+      }
       Set<BlazeArtifact> artifactsToDownload = new HashSet<>();
 
-      for (String key : updatedKeys) {
+      for (String key : updatedDigests.keySet()) {
         artifactsToDownload.add(projectState.get(key).aar());
         BlazeArtifact jar = projectState.get(key).jar();
         // jar file is introduced as a separate artifact (not jar in aar) which asks to download
@@ -192,10 +208,10 @@ public class UnpackedAars {
       }
 
       // update cache files
-      Unpacker.unpack(projectState, updatedKeys, aarCache);
+      Unpacker.unpack(projectState, updatedDigests, aarCache);
 
-      if (!updatedKeys.isEmpty()) {
-        context.output(PrintOutput.log(String.format("Copied %d AARs", updatedKeys.size())));
+      if (!updatedDigests.isEmpty()) {
+        context.output(PrintOutput.log(String.format("Copied %d AARs", updatedDigests.size())));
       }
 
     } catch (InterruptedException e) {
@@ -209,6 +225,23 @@ public class UnpackedAars {
     }
   }
 
+  /**
+   * Returns a digest identifying the contents of the given AAR and its merged jar, or null if it
+   * can't be determined.
+   */
+  @Nullable
+  private static String getDigest(AarLibraryContents contents) {
+    String aarDigest = ArtifactStore.digest(contents.aar());
+    if (aarDigest == null) {
+      return null;
+    }
+    if (contents.jar() == null) {
+      return aarDigest;
+    }
+    String jarDigest = ArtifactStore.digest(contents.jar());
+    return jarDigest != null ? aarDigest + ":" + jarDigest : null;
+  }
+
   /** Returns the merged jar derived from an AAR, in the unpacked AAR directory. */
   @Nullable
   public File getClassJar(ArtifactLocationDecoder decoder, AarLibrary library) {
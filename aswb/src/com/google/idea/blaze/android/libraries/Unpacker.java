@@ -16,18 +16,24 @@
 
 package com.google.idea.blaze.android.libraries;
 
+import static com.android.SdkConstants.FN_ANDROID_MANIFEST_XML;
 import static com.android.SdkConstants.FN_LINT_JAR;
+import static com.android.SdkConstants.FN_PUBLIC_TXT;
+import static com.android.SdkConstants.FN_RESOURCE_TEXT;
 
+import com.android.SdkConstants;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact.LocalFileArtifact;
 import com.google.idea.blaze.base.io.FileOperationProvider;
-import com.google.idea.blaze.base.prefetch.FetchExecutor;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
-import com.intellij.util.io.ZipUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -37,8 +43,11 @@ import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import javax.annotation.Nullable;
 
 /**
  * Unzip prefetched aars to local cache directories. AARs are directories with many files. {@see
@@ -58,59 +67,69 @@ import java.util.concurrent.ExecutionException;
  *       org.jetbrains.android.uipreview.ModuleClassLoader}, for that possible assumption.
  *   <li>The IDE may want the AndroidManifest.xml as well.
  * </ul>
+ *
+ * <p>Only those entries are extracted, streaming directly from the artifact's input stream.
  */
 public final class Unpacker {
   private static final Logger logger = Logger.getInstance(Unpacker.class);
 
-  /** Updated prefetched aars to aar directory. */
+  /** Unpacking is disk bound, so there's little benefit to using many threads. */
+  private static final int MAX_THREADS = 8;
+
+  private static final ListeningExecutorService EXECUTOR =
+      MoreExecutors.listeningDecorator(
+          AppExecutorUtil.createBoundedApplicationPoolExecutor("AarUnpacker", MAX_THREADS));
+
+  /** Top-level files, other than those under res/, which are extracted from each AAR. */
+  private static final ImmutableSet<String> EXTRACTED_FILES =
+      ImmutableSet.of(FN_ANDROID_MANIFEST_XML, FN_RESOURCE_TEXT, FN_PUBLIC_TXT, FN_LINT_JAR);
+
+  private static final String RES_PREFIX = SdkConstants.FD_RES + "/";
+
+  /**
+   * Updated prefetched aars to aar directory.
+   *
+   * @param digests the content digest of each updated AAR, recorded in its stamp file so that
+   *     unchanged AARs can be skipped next time.
+   */
   public static void unpack(
-      ImmutableMap<String, AarLibraryContents> toCache, Set<String> updatedKeys, AarCache aarCache)
+      ImmutableMap<String, AarLibraryContents> toCache,
+      Map<String, String> digests,
+      AarCache aarCache)
       throws ExecutionException, InterruptedException {
-    unpackAarsToDir(toCache, updatedKeys, aarCache);
+    unpackAarsToDir(toCache, digests, aarCache);
   }
 
   private static void unpackAarsToDir(
-      ImmutableMap<String, AarLibraryContents> toCache, Set<String> updatedKeys, AarCache aarCache)
+      ImmutableMap<String, AarLibraryContents> toCache,
+      Map<String, String> digests,
+      AarCache aarCache)
       throws ExecutionException, InterruptedException {
     FileOperationProvider ops = FileOperationProvider.getInstance();
     List<ListenableFuture<?>> futures = new ArrayList<>();
-    updatedKeys.forEach(
-        key ->
+    digests.forEach(
+        (key, digest) ->
             futures.add(
-                FetchExecutor.EXECUTOR.submit(
-                    () -> unpackAarToDir(ops, toCache.get(key), aarCache))));
+                EXECUTOR.submit(() -> unpackAarToDir(ops, toCache.get(key), digest, aarCache))));
     Futures.allAsList(futures).get();
   }
 
   /**
    * Each .aar file will be unpacked as <key_from_artifact_location>.aar directories in cache
-   * directory. A timestamp file will be created to decide if updated is needed when a new .aar file
-   * with same name is found next time.
+   * directory. A stamp file recording the content digest will be created once unpacking is
+   * complete, to decide if an update is needed when a .aar file with same name is found next
+   * time.
    */
   private static void unpackAarToDir(
-      FileOperationProvider ops, AarLibraryContents aarAndJar, AarCache aarCache) {
+      FileOperationProvider ops,
+      AarLibraryContents aarAndJar,
+      @Nullable String digest,
+      AarCache aarCache) {
     String cacheKey = UnpackedAarUtils.getAarDirName(aarAndJar.aar());
     try {
       File aarDir = aarCache.recreateAarDir(ops, cacheKey);
-      // TODO(brendandouglas): decompress via ZipInputStream so we don't require a local file
-      File toCopy = getOrCreateLocalFile(aarAndJar.aar());
-      ZipUtil.extract(
-          toCopy,
-          aarDir,
-          // Skip jars except lint.jar. We will copy jar in AarLibraryContents instead.
-          // That could give us freedom in the future to use an ijar or header jar instead,
-          // which is more lightweight. But it's not applied to lint.jar
-          (dir, name) -> name.equals(FN_LINT_JAR) || !name.endsWith(".jar"));
-
       BlazeArtifact aar = aarAndJar.aar();
-
-      try {
-        aarCache.createTimeStampFile(
-            cacheKey,
-            (aar instanceof LocalFileArtifact) ? ((LocalFileArtifact) aar).getFile() : null);
-      } catch (IOException e) {
-        logger.warn("Failed to set AAR cache timestamp for " + aar, e);
-      }
+      extract(ops, aar, aarDir);
 
       // copy merged jar
       if (aarAndJar.jar() != null) {
@@ -121,6 +140,16 @@ public final class Unpacker {
         }
       }
 
+      // only stamp the directory once it's complete, so partial extractions are redone
+      try {
+        aarCache.createTimeStampFile(
+            cacheKey,
+            (aar instanceof LocalFileArtifact) ? ((LocalFileArtifact) aar).getFile() : null,
+            digest);
+      } catch (IOException e) {
+        logger.warn("Failed to set AAR cache timestamp for " + aar, e);
+      }
+
     } catch (IOException e) {
       logger.warn(
           String.format(
@@ -129,21 +158,36 @@ public final class Unpacker {
     }
   }
 
-  /** Returns a locally-accessible file mirroring the contents of this {@link BlazeArtifact}. */
-  private static File getOrCreateLocalFile(BlazeArtifact artifact) throws IOException {
-    if (artifact instanceof LocalFileArtifact) {
-      return ((LocalFileArtifact) artifact).getFile();
-    }
-    File tmpFile =
-        FileUtil.createTempFile(
-            "local-aar-file",
-            Integer.toHexString(UnpackedAarUtils.getArtifactKey(artifact).hashCode()),
-            /* deleteOnExit= */ true);
-    try (InputStream stream = artifact.getInputStream()) {
-      Files.copy(stream, Paths.get(tmpFile.getPath()), StandardCopyOption.REPLACE_EXISTING);
-      return tmpFile;
+  /**
+   * Extracts the entries needed by the IDE from the given AAR, reading it as a stream so remote
+   * AARs needn't first be copied to a local file.
+   */
+  private static void extract(FileOperationProvider ops, BlazeArtifact aar, File aarDir)
+      throws IOException {
+    try (ZipInputStream zip = new ZipInputStream(aar.getInputStream())) {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        String name = entry.getName();
+        if (entry.isDirectory() || !shouldExtract(name)) {
+          continue;
+        }
+        File destination = new File(aarDir, name);
+        if (!FileUtil.isAncestor(aarDir, destination, /* strict= */ true)) {
+          throw new IOException("Invalid AAR entry: " + name);
+        }
+        ops.mkdirs(destination.getParentFile());
+        Files.copy(zip, destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
     }
   }
 
+  /**
+   * Skips jars except lint.jar: we copy the jar in AarLibraryContents instead. Other AAR contents
+   * (assets, native libraries, proguard specs, etc.) aren't used by the IDE.
+   */
+  private static boolean shouldExtract(String entryName) {
+    return EXTRACTED_FILES.contains(entryName) || entryName.startsWith(RES_PREFIX);
+  }
+
   private Unpacker() {}
 }
@@ -16,35 +16,44 @@
 package com.google.idea.blaze.android.manifest;
 
 import static com.android.SdkConstants.ANDROID_URI;
+import static com.android.SdkConstants.ATTR_ENABLED;
+import static com.android.SdkConstants.ATTR_EXPORTED;
 import static com.android.SdkConstants.ATTR_NAME;
+import static com.android.SdkConstants.PREFIX_RESOURCE_REF;
 import static com.android.xml.AndroidManifest.ATTRIBUTE_PACKAGE;
+import static com.android.xml.AndroidManifest.NODE_ACTION;
 import static com.android.xml.AndroidManifest.NODE_ACTIVITY;
 import static com.android.xml.AndroidManifest.NODE_ACTIVITY_ALIAS;
 import static com.android.xml.AndroidManifest.NODE_APPLICATION;
+import static com.android.xml.AndroidManifest.NODE_CATEGORY;
 import static com.android.xml.AndroidManifest.NODE_INSTRUMENTATION;
+import static com.android.xml.AndroidManifest.NODE_INTENT;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.android.run.DefaultActivityLocatorCompat;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.Nullable;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /** Parses manifests from input streams. */
 public class ManifestParser {
   private static final Logger log = Logger.getInstance(ManifestParser.class);
 
+  /** {@link XMLInputFactory} isn't guaranteed to be thread-safe, so use one per thread. */
+  private static final ThreadLocal<XMLInputFactory> xmlInputFactory =
+      ThreadLocal.withInitial(ManifestParser::createXmlInputFactory);
+
   public static ManifestParser getInstance(Project project) {
     return ServiceManager.getService(project, ManifestParser.class);
   }
@@ -89,81 +98,227 @@ public class ManifestParser {
    */
   public static ParsedManifest parseManifestFromInputStream(InputStream inputStream)
       throws IOException {
-    Element manifestRootElement = getManifestRootElementFromInputStream(inputStream);
-    if (manifestRootElement == null) {
+    XMLStreamReader reader = null;
+    try {
+      reader = xmlInputFactory.get().createXMLStreamReader(inputStream);
+      return parseManifest(reader);
+    } catch (XMLStreamException e) {
+      if (e.getNestedException() instanceof IOException) {
+        throw (IOException) e.getNestedException();
+      }
+      log.warn("Could not parse manifest XML: " + e.getMessage());
       return null;
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          // ignore, the underlying stream is closed by the caller
+        }
+      }
     }
-    return parseManifestElement(manifestRootElement);
   }
 
-  @Nullable
-  private static Element getManifestRootElementFromInputStream(InputStream input)
-      throws IOException {
-    try {
-      DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-      dbf.setNamespaceAware(true);
-      DocumentBuilder db = dbf.newDocumentBuilder();
-      Document doc = db.parse(input);
-      return doc.getDocumentElement();
-    } catch (ParserConfigurationException e) {
-      log.warn("Error in manifest parser: " + e.getMessage());
-    } catch (SAXException e) {
-      log.warn("Could not parse manifest XML: " + e.getMessage());
-    }
-    return null;
+  private static XMLInputFactory createXmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
   }
 
+  /**
+   * Streams through the manifest, only looking at the root element's attributes, its
+   * {@code <instrumentation>} children and the activities declared in {@code <application>}. All
+   * other elements are skipped without being materialized.
+   */
   @Nullable
-  private static ParsedManifest parseManifestElement(Element manifestRootElement) {
-    String packageName =
-        Strings.emptyToNull(manifestRootElement.getAttributeNS(null, ATTRIBUTE_PACKAGE));
+  private static ParsedManifest parseManifest(XMLStreamReader reader) throws XMLStreamException {
+    if (reader.nextTag() != XMLStreamConstants.START_ELEMENT) {
+      return null;
+    }
+    String rawPackageName = getAttribute(reader, null, ATTRIBUTE_PACKAGE);
 
     ImmutableList.Builder<String> instrumentationClassNames = ImmutableList.builder();
-    ImmutableList.Builder<Element> activities = new ImmutableList.Builder<>();
-    ImmutableList.Builder<Element> activityAliases = new ImmutableList.Builder<>();
-    try {
-      Node node = manifestRootElement.getFirstChild();
-      while (node != null) {
-        if (node.getNodeType() == Node.ELEMENT_NODE) {
-          String nodeName = node.getNodeName();
-
-          if (NODE_APPLICATION.equals(nodeName)) {
-            // Extract <activity> and <activity-alias> elements from <application>
-            Node child = node.getFirstChild();
-            while (child != null) {
-              if (child.getNodeType() == Node.ELEMENT_NODE) {
-                String childNodeName = child.getNodeName();
-
-                if (NODE_ACTIVITY.equals(childNodeName)) {
-                  activities.add((Element) child);
-                } else if (NODE_ACTIVITY_ALIAS.equals(childNodeName)) {
-                  activityAliases.add((Element) child);
-                }
-              }
-              child = child.getNextSibling();
-            }
-          } else if (NODE_INSTRUMENTATION.equals(nodeName)) {
-            // Extract instrumentation class names from <instrumentation>
-            String name = ((Element) node).getAttributeNS(ANDROID_URI, ATTR_NAME);
-            if (name != null) {
-              instrumentationClassNames.add(name);
-            }
+    List<ParsedActivity> activities = new ArrayList<>();
+    List<ParsedActivity> activityAliases = new ArrayList<>();
+    while (nextChildElement(reader)) {
+      String nodeName = reader.getLocalName();
+      if (NODE_APPLICATION.equals(nodeName)) {
+        // Extract <activity> and <activity-alias> elements from <application>
+        while (nextChildElement(reader)) {
+          String childNodeName = reader.getLocalName();
+          if (NODE_ACTIVITY.equals(childNodeName)) {
+            activities.add(parseActivity(reader, rawPackageName));
+          } else if (NODE_ACTIVITY_ALIAS.equals(childNodeName)) {
+            activityAliases.add(parseActivity(reader, rawPackageName));
+          } else {
+            skipElement(reader);
           }
         }
-
-        node = node.getNextSibling();
+      } else if (NODE_INSTRUMENTATION.equals(nodeName)) {
+        // Extract instrumentation class names from <instrumentation>
+        String name = getAttribute(reader, ANDROID_URI, ATTR_NAME);
+        instrumentationClassNames.add(Strings.nullToEmpty(name));
+        skipElement(reader);
+      } else {
+        skipElement(reader);
       }
-    } catch (DOMException e) {
-      log.warn("Could not parse manifest XML: " + e.getMessage());
-      return null;
     }
 
+    List<DefaultActivityLocatorCompat.ActivityWrapper> allActivities =
+        new ArrayList<>(activities.size() + activityAliases.size());
+    allActivities.addAll(activities);
+    allActivities.addAll(activityAliases);
     String defaultActivityClassName =
-        DefaultActivityLocatorCompat.computeDefaultActivity(
-            DefaultActivityLocatorCompat.ActivityWrapper.get(
-                activities.build(), activityAliases.build()));
+        DefaultActivityLocatorCompat.computeDefaultActivity(allActivities);
 
     return new ParsedManifest(
-        packageName, instrumentationClassNames.build(), defaultActivityClassName);
+        Strings.emptyToNull(rawPackageName),
+        instrumentationClassNames.build(),
+        defaultActivityClassName);
+  }
+
+  /** Parses an {@code <activity>} or {@code <activity-alias>} element, and its intent filters. */
+  private static ParsedActivity parseActivity(XMLStreamReader reader, @Nullable String packageName)
+      throws XMLStreamException {
+    String name = getAttribute(reader, ANDROID_URI, ATTR_NAME);
+    String enabled = getAttribute(reader, ANDROID_URI, ATTR_ENABLED);
+    String exported = getAttribute(reader, ANDROID_URI, ATTR_EXPORTED);
+    ImmutableSet.Builder<String> actions = ImmutableSet.builder();
+    ImmutableSet.Builder<String> categories = ImmutableSet.builder();
+    while (nextChildElement(reader)) {
+      if (!NODE_INTENT.equals(reader.getLocalName())) {
+        skipElement(reader);
+        continue;
+      }
+      while (nextChildElement(reader)) {
+        String nodeName = reader.getLocalName();
+        String value = getAttribute(reader, ANDROID_URI, ATTR_NAME);
+        if (value != null && NODE_ACTION.equals(nodeName)) {
+          actions.add(value);
+        } else if (value != null && NODE_CATEGORY.equals(nodeName)) {
+          categories.add(value);
+        }
+        skipElement(reader);
+      }
+    }
+    return new ParsedActivity(
+        qualifiedName(name, packageName), enabled, exported, actions.build(), categories.build());
+  }
+
+  /**
+   * Advances to the next child element of the current element, returning false once the end of the
+   * current element is reached.
+   */
+  private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        return true;
+      }
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /** Skips to the end of the current element, ignoring its contents. */
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * Returns the value of the given attribute of the current element, or null if it isn't present.
+   * A null namespace matches only attributes without a namespace.
+   */
+  @Nullable
+  private static String getAttribute(
+      XMLStreamReader reader, @Nullable String namespace, String localName) {
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      if (localName.equals(reader.getAttributeLocalName(i))
+          && Strings.nullToEmpty(namespace)
+              .equals(Strings.nullToEmpty(reader.getAttributeNamespace(i)))) {
+        return reader.getAttributeValue(i);
+      }
+    }
+    return null;
+  }
+
+  /** Mirrors {@link DefaultActivityLocatorCompat#getQualifiedName(org.w3c.dom.Element)}. */
+  @Nullable
+  private static String qualifiedName(@Nullable String name, @Nullable String packageName) {
+    if (name == null) {
+      return null;
+    }
+    int dotIndex = name.indexOf('.');
+    if (dotIndex > 0) { // fully qualified
+      return name;
+    }
+    if (packageName != null) {
+      // if we have a package name, prepend that to the activity name
+      return packageName + (dotIndex == -1 ? "." : "") + name;
+    }
+    return name;
+  }
+
+  /** The parts of an activity or activity alias needed to find the default activity. */
+  private static class ParsedActivity extends DefaultActivityLocatorCompat.ActivityWrapper {
+    @Nullable private final String qualifiedName;
+    @Nullable private final String enabled;
+    @Nullable private final String exported;
+    private final ImmutableSet<String> actions;
+    private final ImmutableSet<String> categories;
+
+    private ParsedActivity(
+        @Nullable String qualifiedName,
+        @Nullable String enabled,
+        @Nullable String exported,
+        ImmutableSet<String> actions,
+        ImmutableSet<String> categories) {
+      this.qualifiedName = qualifiedName;
+      this.enabled = enabled;
+      this.exported = exported;
+      this.actions = actions;
+      this.categories = categories;
+    }
+
+    @Override
+    public boolean hasCategory(String name) {
+      return categories.contains(name);
+    }
+
+    @Override
+    public boolean hasAction(String name) {
+      return actions.contains(name);
+    }
+
+    @Override
+    public boolean isEnabled() {
+      return Strings.isNullOrEmpty(enabled) // true if not specified
+          || Boolean.parseBoolean(enabled)
+          || enabled.startsWith(PREFIX_RESOURCE_REF);
+    }
+
+    @Nullable
+    @Override
+    public Boolean getExported() {
+      return Strings.isNullOrEmpty(exported) ? null : Boolean.parseBoolean(exported);
+    }
+
+    @Nullable
+    @Override
+    public String getQualifiedName() {
+      return qualifiedName;
+    }
   }
 }
@@ -17,15 +17,7 @@ package com.google.idea.blaze.android.manifest;
 
 import static com.google.idea.blaze.android.manifest.ManifestParser.parseManifestFromInputStream;
 
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Maps;
-import com.google.idea.blaze.base.model.BlazeProjectData;
-import com.google.idea.blaze.base.projectview.ProjectViewSet;
-import com.google.idea.blaze.base.scope.BlazeContext;
-import com.google.idea.blaze.base.settings.BlazeImportSettings;
-import com.google.idea.blaze.base.sync.SyncListener;
-import com.google.idea.blaze.base.sync.SyncMode;
-import com.google.idea.blaze.base.sync.SyncResult;
+import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.project.Project;
 import java.io.File;
@@ -33,12 +25,18 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 
-/** Obtains and caches {@link ManifestParser.ParsedManifest}. */
+/**
+ * Obtains and caches {@link ManifestParser.ParsedManifest}.
+ *
+ * <p>Parsed manifests are keyed by the file's modification time and size, so they remain valid
+ * across syncs. Sync parses the manifests of all resource modules in parallel, so they're usually
+ * already cached by the time a run configuration needs them.
+ */
 public class ParsedManifestService {
-  private final Map<File, ManifestParser.ParsedManifest> manifestFileToParsedManifests =
-      Maps.newHashMap();
+  private final Map<File, CachedManifest> manifestFileToParsedManifests = new ConcurrentHashMap<>();
 
   public static ParsedManifestService getInstance(Project project) {
     return ServiceManager.getService(project, ParsedManifestService.class);
@@ -55,35 +53,38 @@ public class ParsedManifestService {
    */
   @Nullable
   public ManifestParser.ParsedManifest getParsedManifest(File file) throws IOException {
-    if (!manifestFileToParsedManifests.containsKey(file)) {
-      try (InputStream inputStream = new FileInputStream(file)) {
-        ManifestParser.ParsedManifest parsedManifest = parseManifestFromInputStream(inputStream);
-        if (parsedManifest == null) {
-          return null;
-        }
-        manifestFileToParsedManifests.put(file, parsedManifest);
+    FileOperationProvider fileOperations = FileOperationProvider.getInstance();
+    long modifiedTime = fileOperations.getFileModifiedTime(file);
+    long size = fileOperations.getFileSize(file);
+    CachedManifest cached = manifestFileToParsedManifests.get(file);
+    if (cached != null && cached.modifiedTime == modifiedTime && cached.size == size) {
+      return cached.parsedManifest;
+    }
+    try (InputStream inputStream = new FileInputStream(file)) {
+      ManifestParser.ParsedManifest parsedManifest = parseManifestFromInputStream(inputStream);
+      if (parsedManifest == null) {
+        return null;
       }
+      manifestFileToParsedManifests.put(
+          file, new CachedManifest(modifiedTime, size, parsedManifest));
+      return parsedManifest;
     }
-
-    return manifestFileToParsedManifests.get(file);
   }
 
   public void invalidateCachedManifest(File manifestFile) {
-    manifestFileToParsedManifests.keySet().remove(manifestFile);
+    manifestFileToParsedManifests.remove(manifestFile);
   }
 
-  static class ClearManifestParser implements SyncListener {
-    @Override
-    public void onSyncComplete(
-        Project project,
-        BlazeContext context,
-        BlazeImportSettings importSettings,
-        ProjectViewSet projectViewSet,
-        ImmutableSet<Integer> buildIds,
-        BlazeProjectData blazeProjectData,
-        SyncMode syncMode,
-        SyncResult syncResult) {
-      getInstance(project).manifestFileToParsedManifests.clear();
+  private static class CachedManifest {
+    private final long modifiedTime;
+    private final long size;
+    private final ManifestParser.ParsedManifest parsedManifest;
+
+    private CachedManifest(
+        long modifiedTime, long size, ManifestParser.ParsedManifest parsedManifest) {
+      this.modifiedTime = modifiedTime;
+      this.size = size;
+      this.parsedManifest = parsedManifest;
     }
   }
 
@@ -21,8 +21,10 @@ import com.android.tools.idea.projectsystem.ClassFileFinder;
 import com.android.tools.idea.projectsystem.ClassFileFinderUtil;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.android.libraries.RenderJarCache;
+import com.google.idea.blaze.android.libraries.RenderJarClassIndex;
 import com.google.idea.blaze.android.sync.model.AndroidResourceModule;
 import com.google.idea.blaze.android.sync.model.AndroidResourceModuleRegistry;
 import com.google.idea.blaze.android.targetmaps.TargetToBinaryMap;
@@ -42,6 +44,8 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.JarFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import org.jetbrains.annotations.Nullable;
 
@@ -85,14 +89,12 @@ public class RenderJarClassFileFinder implements ClassFileFinder {
   private final Module module;
   private final Project project;
 
-  // tracks the binary targets that depend resource targets
-  // will be recalculated after every sync
-  private ImmutableSet<TargetKey> binaryTargets = ImmutableSet.of();
+  // the binary targets that depend on resource targets, recalculated after every sync
+  private volatile BinaryTargets binaryTargets = new BinaryTargets(-1, ImmutableSet.of());
 
-  // tracks the value of {@link BlazeSyncModificationTracker} when binaryTargets is calculated
-  // binaryTargets is calculated when the value of {@link BlazeSyncModificationTracker} does not
-  // equal lastSyncCount
-  long lastSyncCount = -1;
+  // the cached render JARs of the binary targets, recalculated after every sync or render JAR
+  // cache update
+  private volatile RenderJars renderJars = new RenderJars(-1, -1, ImmutableList.of());
 
   // true if the current module is the .workspace Module
   private final boolean isWorkspaceModule;
@@ -143,8 +145,8 @@ public class RenderJarClassFileFinder implements ClassFileFinder {
       return null;
     }
 
-    ImmutableSet<TargetKey> binaryTargets = getBinaryTargets();
-    if (binaryTargets.isEmpty()) {
+    BinaryTargets binaryTargets = getBinaryTargets();
+    if (binaryTargets.targets.isEmpty()) {
       log.warn(
           String.format(
               "No binaries for module %s. Adding a binary target to the projectview and resyncing"
@@ -159,13 +161,28 @@ public class RenderJarClassFileFinder implements ClassFileFinder {
     // Look through render resolve JARs of the binaries that depend on the given
     // androidResourceModule. One androidResourceModule can comprise of multiple resource targets.
     // The binaries can depend on any subset of these resource targets. Generally, we only
-    // expect one, or a small number of binaries here.
-    for (TargetKey binaryTarget : binaryTargets) {
-      VirtualFile classFile = getClassFromRenderResolveJar(projectData, fqcn, binaryTarget);
+    // expect one, or a small number of binaries here. JARs which don't contain the class according
+    // to the class index are skipped without being opened.
+    RenderJars jars = getRenderJars(projectData, binaryTargets);
+    if (jars.missingClasses.contains(fqcn)) {
+      return null;
+    }
+    RenderJarClassIndex classIndex = RenderJarCache.getInstance(project).getClassIndex();
+    boolean indexedAsMissing = true;
+    for (File renderJar : jars.jars) {
+      if (classIndex.lookup(renderJar, fqcn) == RenderJarClassIndex.Lookup.MISSING) {
+        continue;
+      }
+      indexedAsMissing = false;
+      VirtualFile classFile = getClassFromRenderResolveJar(renderJar, fqcn);
       if (classFile != null) {
         return classFile;
       }
     }
+    if (indexedAsMissing) {
+      // layoutlib repeatedly asks for the same missing classes, so skip them until the jars change
+      jars.missingClasses.add(fqcn);
+    }
 
     log.warn(String.format("Could not find class `%1$s` (module: `%2$s`)", fqcn, module.getName()));
     return null;
@@ -177,61 +194,108 @@ public class RenderJarClassFileFinder implements ClassFileFinder {
   }
 
   /**
-   * Returns the cached list of binary targets that depend on resource targets. The cache is
-   * recalculated if the project has been synced since last calculation
+   * Returns the cached binary targets that depend on resource targets, along with the value of
+   * {@link BlazeSyncModificationTracker} they were calculated for. The cache is recalculated if the
+   * project has been synced since last calculation.
    */
-  private ImmutableSet<TargetKey> getBinaryTargets() {
+  private BinaryTargets getBinaryTargets() {
     long currentSyncCount =
         BlazeSyncModificationTracker.getInstance(project).getModificationCount();
-    if (currentSyncCount == lastSyncCount) {
+    BinaryTargets cached = binaryTargets;
+    if (currentSyncCount == cached.syncCount) {
       // Return the cached set if there hasn't been a sync since last calculation
-      return binaryTargets;
+      return cached;
     }
-    lastSyncCount = currentSyncCount;
 
+    ImmutableSet<TargetKey> targets;
     AndroidResourceModule androidResourceModule =
         AndroidResourceModuleRegistry.getInstance(project).get(module);
     if (androidResourceModule != null) {
-      binaryTargets =
+      targets =
           TargetToBinaryMap.getInstance(project)
               .getBinariesDependingOn(androidResourceModule.sourceTargetKeys);
     } else if (isWorkspaceModule) {
-      binaryTargets = TargetToBinaryMap.getInstance(project).getSourceBinaryTargets();
+      targets = TargetToBinaryMap.getInstance(project).getSourceBinaryTargets();
     } else {
-      binaryTargets = ImmutableSet.of();
+      targets = ImmutableSet.of();
       log.warn("Could not find AndroidResourceModule for " + module.getName());
     }
     log.info(
         String.format(
             "Binary targets for module `%1$s`: %2$s",
             module.getName(),
-            binaryTargets.stream()
-                .limit(5)
-                .map(t -> t.getLabel().toString())
-                .collect(joining(", "))));
-    return binaryTargets;
+            targets.stream().limit(5).map(t -> t.getLabel().toString()).collect(joining(", "))));
+    BinaryTargets computed = new BinaryTargets(currentSyncCount, targets);
+    binaryTargets = computed;
+    return computed;
   }
 
   /**
-   * Returns class file for fqcn if found in the render JAR corresponding to {@code binaryTarget}.
-   * Returns null if something goes wrong or if render JAR does not contain fqcn
+   * Returns the cached render JARs of the given binary targets. The list is recalculated if the
+   * project has been synced, or the render JAR cache updated, since last calculation.
    */
-  @Nullable
-  private VirtualFile getClassFromRenderResolveJar(
-      BlazeProjectData projectData, String fqcn, TargetKey binaryTarget) {
-    TargetIdeInfo ideInfo = projectData.getTargetMap().get(binaryTarget);
-    if (ideInfo == null) {
-      return null;
+  private RenderJars getRenderJars(
+      BlazeProjectData projectData, BinaryTargets binaryTargets) {
+    RenderJarCache renderJarCache = RenderJarCache.getInstance(project);
+    long currentCacheCount = renderJarCache.getModificationCount();
+    RenderJars cached = renderJars;
+    if (cached.syncCount == binaryTargets.syncCount && cached.cacheCount == currentCacheCount) {
+      return cached;
     }
 
-    File renderResolveJarFile =
-        RenderJarCache.getInstance(project)
-            .getCachedJarForBinaryTarget(projectData.getArtifactLocationDecoder(), ideInfo);
+    ImmutableList.Builder<File> jars = ImmutableList.builder();
+    for (TargetKey binaryTarget : binaryTargets.targets) {
+      TargetIdeInfo ideInfo = projectData.getTargetMap().get(binaryTarget);
+      File renderJar =
+          ideInfo != null
+              ? renderJarCache.getCachedJarForBinaryTarget(
+                  projectData.getArtifactLocationDecoder(), ideInfo)
+              : null;
+      if (renderJar != null) {
+        jars.add(renderJar);
+      }
+    }
+    // Publish the counts read before the calculation, so a concurrent update made while it ran
+    // invalidates the result on the next call.
+    RenderJars computed = new RenderJars(binaryTargets.syncCount, currentCacheCount, jars.build());
+    renderJars = computed;
+    return computed;
+  }
 
-    if (renderResolveJarFile == null) {
-      return null;
+  /** The binary targets of the module, and the sync count they were calculated for. */
+  private static final class BinaryTargets {
+    final long syncCount;
+    final ImmutableSet<TargetKey> targets;
+
+    BinaryTargets(long syncCount, ImmutableSet<TargetKey> targets) {
+      this.syncCount = syncCount;
+      this.targets = targets;
     }
+  }
+
+  /**
+   * The render JARs of the binary targets, and the counts they were calculated for, along with the
+   * classes none of them contain according to the class index.
+   */
+  private static final class RenderJars {
+    final long syncCount;
+    final long cacheCount;
+    final ImmutableList<File> jars;
+    final Set<String> missingClasses = ConcurrentHashMap.newKeySet();
+
+    RenderJars(long syncCount, long cacheCount, ImmutableList<File> jars) {
+      this.syncCount = syncCount;
+      this.cacheCount = cacheCount;
+      this.jars = jars;
+    }
+  }
 
+  /**
+   * Returns class file for fqcn if found in the given render JAR. Returns null if something goes
+   * wrong or if render JAR does not contain fqcn
+   */
+  @Nullable
+  private static VirtualFile getClassFromRenderResolveJar(File renderResolveJarFile, String fqcn) {
     VirtualFile renderResolveJarVF =
         VirtualFileSystemProvider.getInstance().getSystem().findFileByIoFile(renderResolveJarFile);
     if (renderResolveJarVF == null) {
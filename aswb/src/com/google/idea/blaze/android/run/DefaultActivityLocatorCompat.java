@@ -15,23 +15,12 @@
  */
 package com.google.idea.blaze.android.run;
 
-import static com.android.SdkConstants.ANDROID_URI;
-import static com.android.SdkConstants.ATTR_NAME;
-import static com.android.SdkConstants.ATTR_PACKAGE;
-import static com.android.SdkConstants.PREFIX_RESOURCE_REF;
-import static com.android.xml.AndroidManifest.NODE_ACTION;
-import static com.android.xml.AndroidManifest.NODE_CATEGORY;
-import static com.android.xml.AndroidManifest.NODE_INTENT;
-
-import com.android.SdkConstants;
 import com.android.tools.idea.apk.ApkFacet;
 import com.android.tools.idea.run.activity.ActivityLocatorUtils;
 import com.android.tools.idea.run.activity.DefaultActivityLocator;
-import com.google.common.collect.Lists;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
-import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiClass;
 import com.intellij.util.xml.DomElement;
 import java.util.List;
@@ -44,9 +33,6 @@ import org.jetbrains.android.dom.manifest.Manifest;
 import org.jetbrains.android.util.AndroidUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 
 /** Compatibility class for {@link DefaultActivityLocator} and {@link ActivityLocatorUtils}. */
 public class DefaultActivityLocatorCompat {
@@ -131,109 +117,6 @@ public class DefaultActivityLocatorCompat {
 
     @Nullable
     public abstract String getQualifiedName();
-
-    public static List<ActivityWrapper> get(
-        @NotNull List<Element> activities, @NotNull List<Element> aliases) {
-      List<ActivityWrapper> list =
-          Lists.newArrayListWithCapacity(activities.size() + aliases.size());
-      for (Element element : activities) {
-        list.add(new ElementActivityWrapper(element));
-      }
-      for (Element element : aliases) {
-        list.add(new ElementActivityWrapper(element));
-      }
-      return list;
-    }
-  }
-
-  private static class ElementActivityWrapper extends ActivityWrapper {
-
-    private final Element myActivity;
-
-    public ElementActivityWrapper(Element activity) {
-      myActivity = activity;
-    }
-
-    @Override
-    public boolean hasCategory(@NotNull String name) {
-      Node node = myActivity.getFirstChild();
-      while (node != null) {
-        if (node.getNodeType() == Node.ELEMENT_NODE && NODE_INTENT.equals(node.getNodeName())) {
-          Element filter = (Element) node;
-          if (containsCategory(filter, name)) {
-            return true;
-          }
-        }
-        node = node.getNextSibling();
-      }
-
-      return false;
-    }
-
-    @Override
-    public boolean hasAction(@NotNull String name) {
-      Node node = myActivity.getFirstChild();
-      while (node != null) {
-        if (node.getNodeType() == Node.ELEMENT_NODE && NODE_INTENT.equals(node.getNodeName())) {
-          Element filter = (Element) node;
-          if (containsAction(filter, name)) {
-            return true;
-          }
-        }
-        node = node.getNextSibling();
-      }
-
-      return false;
-    }
-
-    @Override
-    public boolean isEnabled() {
-      String enabledAttr =
-          myActivity.getAttributeNS(SdkConstants.ANDROID_URI, SdkConstants.ATTR_ENABLED);
-      return StringUtil.isEmpty(enabledAttr) // true if not specified
-          || Boolean.parseBoolean(enabledAttr)
-          || enabledAttr.startsWith(PREFIX_RESOURCE_REF);
-    }
-
-    @Nullable
-    @Override
-    public Boolean getExported() {
-      String exportedAttr =
-          myActivity.getAttributeNS(SdkConstants.ANDROID_URI, SdkConstants.ATTR_EXPORTED);
-      return StringUtil.isEmpty(exportedAttr) ? null : Boolean.parseBoolean(exportedAttr);
-    }
-
-    @Nullable
-    @Override
-    public String getQualifiedName() {
-      return DefaultActivityLocatorCompat.getQualifiedName(myActivity);
-    }
-  }
-
-  public static boolean containsAction(@NotNull Element filter, @NotNull String name) {
-    Node action = filter.getFirstChild();
-    while (action != null) {
-      if (action.getNodeType() == Node.ELEMENT_NODE && NODE_ACTION.equals(action.getNodeName())) {
-        if (name.equals(((Element) action).getAttributeNS(ANDROID_URI, ATTR_NAME))) {
-          return true;
-        }
-      }
-      action = action.getNextSibling();
-    }
-    return false;
-  }
-
-  public static boolean containsCategory(@NotNull Element filter, @NotNull String name) {
-    Node action = filter.getFirstChild();
-    while (action != null) {
-      if (action.getNodeType() == Node.ELEMENT_NODE && NODE_CATEGORY.equals(action.getNodeName())) {
-        if (name.equals(((Element) action).getAttributeNS(ANDROID_URI, ATTR_NAME))) {
-          return true;
-        }
-      }
-      action = action.getNextSibling();
-    }
-    return false;
   }
 
   public static boolean containsLauncherIntent(
@@ -243,31 +126,6 @@ public class DefaultActivityLocatorCompat {
             || activity.hasCategory(AndroidUtils.LEANBACK_LAUNCH_CATEGORY_NAME));
   }
 
-  @Nullable
-  public static String getQualifiedName(@NotNull Element component) {
-    Attr nameNode = component.getAttributeNodeNS(ANDROID_URI, ATTR_NAME);
-    if (nameNode == null) {
-      return null;
-    }
-    String name = nameNode.getValue();
-
-    int dotIndex = name.indexOf('.');
-    if (dotIndex > 0) { // fully qualified
-      return name;
-    }
-
-    // attempt to retrieve the package name from the manifest in which this alias was defined
-    Element root = component.getOwnerDocument().getDocumentElement();
-    Attr pkgNode = root.getAttributeNode(ATTR_PACKAGE);
-    if (pkgNode != null) {
-      // if we have a package name, prepend that to the activity alias
-      String pkg = pkgNode.getValue();
-      return pkg + (dotIndex == -1 ? "." : "") + name;
-    }
-
-    return name;
-  }
-
   @Nullable
   public static String getQualifiedName(@NotNull ActivityAlias alias) {
     ApplicationManager.getApplication().assertReadAccessAllowed();
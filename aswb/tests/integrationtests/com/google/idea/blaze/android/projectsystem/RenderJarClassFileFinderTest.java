@@ -40,9 +40,12 @@ import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
 import com.google.idea.blaze.base.model.MockBlazeProjectDataManager;
 import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.projectview.ProjectViewManager;
+import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.settings.BlazeImportSettings;
 import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
 import com.google.idea.blaze.base.sync.BlazeSyncPlugin.ModuleEditor;
+import com.google.idea.blaze.base.sync.SyncMode;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.blaze.base.sync.projectstructure.ModuleEditorProvider;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
@@ -73,6 +76,7 @@ public class RenderJarClassFileFinderTest extends BlazeAndroidIntegrationTestCas
 
   private ArtifactLocationDecoder artifactLocationDecoder;
   private MockArtifactCache artifactCache;
+  private MockExperimentService experimentService;
 
   @Before
   public void initTest() throws ArtifactNotFoundException {
@@ -112,7 +116,7 @@ public class RenderJarClassFileFinderTest extends BlazeAndroidIntegrationTestCas
         "  //com/google/example/simple/bin_b:bin_b",
         "  //com/google/example/simple/bin_c:bin_c");
 
-    MockExperimentService experimentService = new MockExperimentService();
+    experimentService = new MockExperimentService();
     registerApplicationComponent(ExperimentService.class, experimentService);
     experimentService.setExperiment(RenderResolveOutputGroupProvider.buildOnSync, true);
     // Disable resource resolution from Render Jars
@@ -212,6 +216,50 @@ public class RenderJarClassFileFinderTest extends BlazeAndroidIntegrationTestCas
                 binCJar + "!/com/google/example/simple/trans_dep_c/TransDepC$Inner.class"));
   }
 
+  /**
+   * Tests that render JARs looked up before the render JAR cache is updated are not reused after
+   * the update.
+   */
+  @Test
+  public void workspaceModule_picksUpRenderJarCacheUpdates() throws ArtifactNotFoundException {
+    Module workspaceModule =
+        ModuleManager.getInstance(getProject()).findModuleByName(WORKSPACE_MODULE_NAME);
+    assertThat(workspaceModule).isNotNull();
+
+    RenderJarClassFileFinder classFileFinder = new RenderJarClassFileFinder(workspaceModule);
+    assertThat(classFileFinder.findClassFile("com.google.example.simple.src_a.SrcA")).isNotNull();
+
+    // A full sync clears the render JAR cache without rebuilding render JARs, after which the
+    // updated bin_a render JAR is added to it
+    experimentService.setExperiment(RenderResolveOutputGroupProvider.buildOnSync, false);
+    new RenderJarCache.FileCacheAdapter()
+        .onSync(
+            getProject(),
+            BlazeContext.create(),
+            ProjectViewManager.getInstance(getProject()).getProjectViewSet(),
+            BlazeProjectDataManager.getInstance(getProject()).getBlazeProjectData(),
+            null,
+            SyncMode.FULL);
+
+    String updatedJar =
+        RenderJarCache.getInstance(getProject()).getCacheDir().getPath() + "/updated_bin_a.jar";
+    fileSystem.createFile(updatedJar);
+    fileSystem.createFile(updatedJar + "!/com/google/example/simple/src_a/SrcA.class");
+    fileSystem.createFile(updatedJar + "!/com/google/example/simple/src_a/NewClass.class");
+    artifactCache.addTrackedFile(
+        (OutputArtifact)
+            artifactLocationDecoder.resolveOutput(
+                getArtifactLocation("com/google/example/simple/bin_a.jar")),
+        updatedJar);
+
+    assertThat(classFileFinder.findClassFile("com.google.example.simple.src_a.SrcA"))
+        .isEqualTo(
+            fileSystem.findFile(updatedJar + "!/com/google/example/simple/src_a/SrcA.class"));
+    assertThat(classFileFinder.findClassFile("com.google.example.simple.src_a.NewClass"))
+        .isEqualTo(
+            fileSystem.findFile(updatedJar + "!/com/google/example/simple/src_a/NewClass.class"));
+  }
+
   /**
    * Tests that resource modules can correctly find classes corresponding to sources of the targets
    * that comprise the resource module.
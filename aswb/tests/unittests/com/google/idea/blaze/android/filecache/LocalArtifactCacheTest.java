@@ -19,8 +19,12 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.idea.blaze.android.filecache.LocalArtifactCache.CACHE_DATA_FILENAME;
 
 import com.google.common.collect.ImmutableList;
+import com.google.errorprone.annotations.MustBeClosed;
 import com.google.idea.blaze.base.command.buildresult.LocalFileOutputArtifact;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
+import com.google.idea.blaze.base.filecache.ArtifactState;
+import com.google.idea.blaze.base.filecache.ArtifactStore;
+import com.google.idea.blaze.base.filecache.ProjectArtifactStore;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
@@ -33,13 +37,16 @@ import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.google.idea.blaze.base.sync.workspace.MockArtifactLocationDecoder;
 import com.google.idea.testing.IntellijRule;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.Objects;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -54,6 +61,7 @@ public class LocalArtifactCacheTest {
 
   @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
   @Rule public TemporaryFolder cacheDirectory = new TemporaryFolder();
+  @Rule public TemporaryFolder artifactStoreDirectory = new TemporaryFolder();
 
   private WorkspaceRoot workspaceRoot;
   private BlazeContext blazeContext;
@@ -83,6 +91,10 @@ public class LocalArtifactCacheTest {
                 .setArtifactLocationDecoder(artifactLocationDecoder)
                 .build()));
 
+    intellijRule.registerProjectService(
+        ProjectArtifactStore.class,
+        new ProjectArtifactStore(artifactStoreDirectory.getRoot().toPath()));
+
     blazeContext = BlazeContext.create();
 
     artifactCache =
@@ -186,4 +198,60 @@ public class LocalArtifactCacheTest {
     assertThat(Collections.singleton(returnedPath)).doesNotContain(null);
     assertThat(returnedPath.toFile()).isEqualTo(expectedFile);
   }
+
+  @Test
+  public void put_artifactWithoutDigest_isStoredByPathAndTimestamp() throws IOException {
+    LocalFileOutputArtifact localArtifact =
+        newLocalOutputArtifact("relative/path_1/artifact_1.jar");
+    File file = localArtifact.getFile();
+    assertThat(file.getParentFile().mkdirs()).isTrue();
+    Files.write(file.toPath(), new byte[] {1, 2, 3});
+    // not a LocalFileArtifact, so the store can't read its file identity
+    OutputArtifact artifact = new DelegatingOutputArtifact(localArtifact);
+
+    artifactCache.initialize();
+    artifactCache.putAll(ImmutableList.of(artifact), blazeContext, false);
+
+    Path cachedPath = artifactCache.get(artifact);
+    assertThat(cachedPath).isNotNull();
+    assertThat(Files.readAllBytes(cachedPath)).isEqualTo(new byte[] {1, 2, 3});
+    ArtifactStore store = ProjectArtifactStore.getInstance(intellijRule.getProject()).getStore();
+    assertThat(store.getDigest(cachedPath)).isNotNull();
+  }
+
+  /** An {@link OutputArtifact} which hides the type of the artifact it delegates to. */
+  private static class DelegatingOutputArtifact implements OutputArtifact {
+    private final OutputArtifact delegate;
+
+    DelegatingOutputArtifact(OutputArtifact delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public String getConfigurationMnemonic() {
+      return delegate.getConfigurationMnemonic();
+    }
+
+    @Override
+    public String getRelativePath() {
+      return delegate.getRelativePath();
+    }
+
+    @Nullable
+    @Override
+    public ArtifactState toArtifactState() {
+      return delegate.toArtifactState();
+    }
+
+    @Override
+    public long getLength() {
+      return delegate.getLength();
+    }
+
+    @Override
+    @MustBeClosed
+    public BufferedInputStream getInputStream() throws IOException {
+      return delegate.getInputStream();
+    }
+  }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.android.libraries;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.idea.blaze.android.libraries.RenderJarClassIndex.Lookup;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RenderJarClassIndex}, using real jars on disk. */
+@RunWith(JUnit4.class)
+public class RenderJarClassIndexTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final RenderJarClassIndex classIndex = new RenderJarClassIndex();
+
+  @Test
+  public void lookup_jarIsIndexed() throws IOException {
+    File jar = createJar("render.jar", "com/foo/Bar.class", "com/foo/Bar$Inner.class");
+
+    assertThat(classIndex.lookup(jar, "com.foo.Bar")).isEqualTo(Lookup.FOUND);
+    assertThat(classIndex.lookup(jar, "com.foo.Bar$Inner")).isEqualTo(Lookup.FOUND);
+    assertThat(classIndex.lookup(jar, "com.foo.Missing")).isEqualTo(Lookup.MISSING);
+  }
+
+  @Test
+  public void lookup_jarIsOnlyReadOnce() throws IOException {
+    File jar = createJar("render.jar", "com/foo/Bar.class");
+    assertThat(classIndex.lookup(jar, "com.foo.Bar")).isEqualTo(Lookup.FOUND);
+
+    // replacing the jar has no effect until the index is cleared
+    Files.delete(jar.toPath());
+    createJar("render.jar", "com/foo/Baz.class");
+    assertThat(classIndex.lookup(jar, "com.foo.Bar")).isEqualTo(Lookup.FOUND);
+    assertThat(classIndex.lookup(jar, "com.foo.Baz")).isEqualTo(Lookup.MISSING);
+
+    classIndex.clear();
+    assertThat(classIndex.lookup(jar, "com.foo.Bar")).isEqualTo(Lookup.MISSING);
+    assertThat(classIndex.lookup(jar, "com.foo.Baz")).isEqualTo(Lookup.FOUND);
+  }
+
+  @Test
+  public void lookup_unreadableJarIsUnindexed() throws IOException {
+    File notAJar = temporaryFolder.newFile("render.jar");
+    Files.write(notAJar.toPath(), new byte[] {1, 2, 3});
+
+    assertThat(classIndex.lookup(notAJar, "com.foo.Bar")).isEqualTo(Lookup.UNINDEXED);
+  }
+
+  private File createJar(String name, String... entries) throws IOException {
+    File jar = new File(temporaryFolder.getRoot(), name);
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      for (String entry : entries) {
+        out.putNextEntry(new ZipEntry(entry));
+        out.write(new byte[] {(byte) 0xCA, (byte) 0xFE});
+        out.closeEntry();
+      }
+    }
+    return jar;
+  }
+}
@@ -609,6 +609,105 @@ public class UnpackedAarsTest extends BlazeTestCase {
     assertThat(actualLintRuleJar).isNull();
   }
 
+  @Test
+  public void refresh_onlyExtractsEntriesUsedByIde() {
+    UnpackedAars unpackedAars = UnpackedAars.getInstance(project);
+    String aar = "library.aar";
+    AarLibraryFileBuilder.aar(workspaceRoot, aar)
+        .src("res/values/strings.xml", ImmutableList.of(STRINGS_XML_CONTENT))
+        .src("AndroidManifest.xml", ImmutableList.of("<manifest package=\"com.foo\"/>"))
+        .src("R.txt", ImmutableList.of("int string appString 0x7f010001"))
+        .src("classes.jar", new byte[] {1, 2, 3})
+        .src("assets/data.txt", ImmutableList.of("unused"))
+        .build();
+    AarLibrary aarLibrary = new AarLibrary(generateArtifactLocation(aar), null);
+
+    syncAarLibraries(localArtifactLocationDecoder, aarLibrary, SyncMode.INCREMENTAL);
+
+    File aarDir = unpackedAars.getAarDir(localArtifactLocationDecoder, aarLibrary);
+    assertThat(aarDir.list())
+        .asList()
+        .containsExactly("aar.timestamp", "res", "AndroidManifest.xml", "R.txt");
+  }
+
+  @Test
+  public void refresh_unchangedAar_notUnpackedAgainOnFullSync() {
+    String aar = "library.aar";
+    AarLibraryFileBuilder.aar(workspaceRoot, aar)
+        .src("res/values/strings.xml", ImmutableList.of(STRINGS_XML_CONTENT))
+        .build();
+    AarLibrary aarLibrary = new AarLibrary(generateArtifactLocation(aar), null);
+
+    syncAarLibraries(localArtifactLocationDecoder, aarLibrary, SyncMode.FULL);
+    assertThat(writingOutputSink.getMessages()).contains("Copied 1 AARs");
+
+    writingOutputSink = new WritingOutputSink();
+    context = BlazeContext.create();
+    context.addOutputSink(PrintOutput.class, writingOutputSink);
+    syncAarLibraries(localArtifactLocationDecoder, aarLibrary, SyncMode.FULL);
+
+    assertThat(writingOutputSink.getMessages()).doesNotContain("Copied");
+    File aarDir =
+        UnpackedAars.getInstance(project).getAarDir(localArtifactLocationDecoder, aarLibrary);
+    assertThat(new File(aarDir, "res/values/strings.xml").exists()).isTrue();
+  }
+
+  @Test
+  public void refresh_unchangedAarWithStaleStamp_isRestamped() {
+    String aar = "library.aar";
+    AarLibraryFileBuilder.aar(workspaceRoot, aar)
+        .src("res/values/strings.xml", ImmutableList.of(STRINGS_XML_CONTENT))
+        .build();
+    AarLibrary aarLibrary = new AarLibrary(generateArtifactLocation(aar), null);
+
+    syncAarLibraries(localArtifactLocationDecoder, aarLibrary, SyncMode.FULL);
+    File aarFile = workspaceRoot.fileForPath(new WorkspacePath(aar));
+    File stampFile =
+        new File(
+            UnpackedAars.getInstance(project).getAarDir(localArtifactLocationDecoder, aarLibrary),
+            "aar.timestamp");
+    assertThat(stampFile.setLastModified(aarFile.lastModified() - 60_000)).isTrue();
+
+    writingOutputSink = new WritingOutputSink();
+    context = BlazeContext.create();
+    context.addOutputSink(PrintOutput.class, writingOutputSink);
+    syncAarLibraries(localArtifactLocationDecoder, aarLibrary, SyncMode.INCREMENTAL);
+
+    assertThat(writingOutputSink.getMessages()).doesNotContain("Copied");
+    assertThat(stampFile.lastModified()).isEqualTo(aarFile.lastModified());
+  }
+
+  private void syncAarLibraries(
+      ArtifactLocationDecoder decoder, AarLibrary aarLibrary, SyncMode syncMode) {
+    BlazeAndroidImportResult importResult =
+        new BlazeAndroidImportResult(
+            ImmutableList.of(),
+            ImmutableMap.of(
+                LibraryKey.libraryNameFromArtifactLocation(aarLibrary.aarArtifact), aarLibrary),
+            ImmutableList.of(),
+            ImmutableList.of());
+    BlazeAndroidSyncData syncData =
+        new BlazeAndroidSyncData(importResult, new AndroidSdkPlatform("stable", 15));
+    BlazeProjectData blazeProjectData =
+        MockBlazeProjectDataBuilder.builder(workspaceRoot)
+            .setWorkspaceLanguageSettings(
+                new WorkspaceLanguageSettings(WorkspaceType.ANDROID, ImmutableSet.of()))
+            .setSyncState(new SyncState.Builder().put(syncData).build())
+            .setArtifactLocationDecoder(decoder)
+            .build();
+    FileCache.EP_NAME
+        .extensions()
+        .forEach(
+            ep ->
+                ep.onSync(
+                    getProject(),
+                    context,
+                    ProjectViewSet.builder().add(ProjectView.builder().build()).build(),
+                    blazeProjectData,
+                    null,
+                    syncMode));
+  }
+
   private static class WritingOutputSink implements OutputSink<PrintOutput> {
 
     private final Writer writer = new StringWriter();
@@ -291,6 +291,30 @@ public class ManifestParserTest {
     assertThat(parsedManifest.instrumentationClassNames).isEmpty();
   }
 
+  @Test
+  public void extractRelativeActivityName_qualifiedWithPackageName() throws Exception {
+    String manifest =
+        "<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+            + "    package=\"com.example\">\n"
+            + "  <application>\n"
+            + "    <activity android:name=\".OtherActivity\"/>\n"
+            + "    <activity-alias android:name=\".LauncherAlias\">\n"
+            + "      <intent-filter>\n"
+            + "        <action android:name=\"android.intent.action.MAIN\"/>\n"
+            + "        <category android:name=\"android.intent.category.LAUNCHER\"/>\n"
+            + "      </intent-filter>\n"
+            + "    </activity-alias>\n"
+            + "  </application>\n"
+            + "</manifest>";
+    InputStream manifestInputStream = new ByteArrayInputStream(manifest.getBytes(UTF_8));
+
+    ManifestParser.ParsedManifest parsedManifest =
+        ManifestParser.parseManifestFromInputStream(manifestInputStream);
+    assertThat(parsedManifest).isNotNull();
+    assertThat(parsedManifest.packageName).isEqualTo("com.example");
+    assertThat(parsedManifest.defaultActivityClassName).isEqualTo("com.example.LauncherAlias");
+  }
+
   @Test
   public void extractFromInvalidManifestShouldYieldNull() throws Exception {
     InputStream manifestInputStream = new ByteArrayInputStream("hello world".getBytes(UTF_8));
@@ -31,8 +31,10 @@ class BlazeCompileFileAction extends BlazeProjectAction {
 
   @Override
   protected void updateForBlazeProject(Project project, AnActionEvent e) {
+    // don't build the source to target map on the EDT; if it isn't ready, leave the action enabled
+    boolean noTargets = SourceToTargetMap.getInstance(project).isReady() && getTargets(e).isEmpty();
     ActionPresentationHelper.of(e)
-        .disableIf(getTargets(e).isEmpty())
+        .disableIf(noTargets)
         .setTextWithSubject("Compile File", "Compile %s", e.getData(CommonDataKeys.VIRTUAL_FILE))
         .disableWithoutSubject()
         .commit();
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.async.process;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.Parser;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * An output stream which decodes length-delimited protocol messages as they're written, passing
+ * each one to a consumer as soon as it's complete.
+ *
+ * <p>Decoding errors aren't thrown to the writer, so that process output continues to be drained.
+ * Callers should check {@link #getError} once the stream has been closed.
+ */
+public final class DelimitedProtoOutputStream<T extends MessageLite> extends OutputStream {
+
+  private static final int INITIAL_BUFFER_SIZE = 8192;
+
+  private final Parser<T> parser;
+  private final Consumer<T> consumer;
+
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  /** The offset of the first byte not yet decoded. */
+  private int start;
+  /** The offset after the last byte written. */
+  private int end;
+
+  @Nullable private volatile IOException error;
+  private volatile boolean closed;
+
+  private DelimitedProtoOutputStream(Parser<T> parser, Consumer<T> consumer) {
+    this.parser = parser;
+    this.consumer = consumer;
+  }
+
+  public static <T extends MessageLite> DelimitedProtoOutputStream<T> of(
+      Parser<T> parser, Consumer<T> consumer) {
+    return new DelimitedProtoOutputStream<>(parser, consumer);
+  }
+
+  /** Returns the first decoding error, or null if all output was successfully decoded. */
+  @Nullable
+  public IOException getError() {
+    return error;
+  }
+
+  @Override
+  public synchronized void write(byte[] b, int off, int len) {
+    if (closed || error != null) {
+      return;
+    }
+    ensureCapacity(len);
+    System.arraycopy(b, off, buffer, end, len);
+    end += len;
+    try {
+      decodeMessages();
+    } catch (IOException e) {
+      error = e;
+    }
+  }
+
+  @Override
+  public void write(int b) {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed && error == null && start != end) {
+      error = new InvalidProtocolBufferException("Output ended part way through a message");
+    }
+    closed = true;
+    super.close();
+  }
+
+  /** Makes room for the given number of bytes after {@link #end}, discarding decoded bytes. */
+  private void ensureCapacity(int len) {
+    if (end + len <= buffer.length) {
+      return;
+    }
+    int pending = end - start;
+    byte[] target =
+        pending + len <= buffer.length
+            ? buffer
+            : new byte[Math.max(buffer.length * 2, pending + len)];
+    System.arraycopy(buffer, start, target, 0, pending);
+    buffer = target;
+    start = 0;
+    end = pending;
+  }
+
+  /** Decodes and consumes each complete message in the buffer. */
+  private void decodeMessages() throws IOException {
+    while (start < end) {
+      int pos = start;
+      int size = 0;
+      int shift = 0;
+      while (true) {
+        if (pos == end) {
+          // the length prefix hasn't been fully written yet
+          return;
+        }
+        byte b = buffer[pos++];
+        size |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          break;
+        }
+        shift += 7;
+        if (shift > 28) {
+          throw new InvalidProtocolBufferException("Malformed message length");
+        }
+      }
+      if (size < 0) {
+        throw new InvalidProtocolBufferException("Negative message length: " + size);
+      }
+      if (end - pos < size) {
+        return;
+      }
+      T message = parser.parseFrom(buffer, pos, size);
+      start = pos + size;
+      consumer.accept(message);
+    }
+    start = 0;
+    end = 0;
+  }
+}
@@ -34,7 +34,9 @@ public final class LineProcessingOutputStream extends OutputStream {
     boolean processLine(String line);
   }
 
-  private final StringBuffer stringBuffer = new StringBuffer();
+  private final StringBuilder stringBuffer = new StringBuilder();
+  /** Buffered output before this index is known not to contain a line break. */
+  private int searchStart;
   private volatile boolean closed;
   private final ImmutableList<LineProcessor> lineProcessors;
 
@@ -56,30 +58,19 @@ public final class LineProcessingOutputStream extends OutputStream {
       String text = new String(b, off, len, UTF_8);
       stringBuffer.append(text);
 
-      while (true) {
-        int lineBreakIndex = -1;
-        int lineBreakLength = 0;
-        for (int i = 0; i < stringBuffer.length(); ++i) {
-          char c = stringBuffer.charAt(i);
-          if (c == '\r' || c == '\n') {
-            lineBreakIndex = i;
-            lineBreakLength = 1;
-            if (c == '\r'
-                && (i + 1) < stringBuffer.length()
-                && stringBuffer.charAt(i + 1) == '\n') {
-              ++lineBreakLength;
-            }
-            break;
-          }
+      // scan the new output once, then drop all processed lines from the buffer together
+      int lineStart = 0;
+      int length = stringBuffer.length();
+      for (int i = searchStart; i < length; ++i) {
+        char c = stringBuffer.charAt(i);
+        if (c != '\r' && c != '\n') {
+          continue;
         }
-
-        if (lineBreakIndex == -1) {
-          return;
+        String line = stringBuffer.substring(lineStart, i);
+        if (c == '\r' && (i + 1) < length && stringBuffer.charAt(i + 1) == '\n') {
+          ++i;
         }
-
-        String line = stringBuffer.substring(0, lineBreakIndex);
-
-        stringBuffer.delete(0, lineBreakIndex + lineBreakLength);
+        lineStart = i + 1;
 
         for (LineProcessor lineProcessor : lineProcessors) {
           if (!lineProcessor.processLine(line)) {
@@ -87,6 +78,8 @@ public final class LineProcessingOutputStream extends OutputStream {
           }
         }
       }
+      stringBuffer.delete(0, lineStart);
+      searchStart = stringBuffer.length();
     }
   }
 
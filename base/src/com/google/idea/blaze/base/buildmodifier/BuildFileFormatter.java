@@ -15,26 +15,20 @@
  */
 package com.google.idea.blaze.base.buildmodifier;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 
 import com.google.common.base.Strings;
-import com.google.common.io.CharStreams;
+import com.google.common.collect.ImmutableList;
 import com.google.idea.blaze.base.formatter.FormatUtils.FileContentsProvider;
 import com.google.idea.blaze.base.formatter.FormatUtils.Replacements;
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile.BlazeFileType;
-import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.TextRange;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.Collection;
 import javax.annotation.Nullable;
 
 /** Formats BUILD files using 'buildifier' */
 public class BuildFileFormatter {
 
-  private static final Logger logger = Logger.getInstance(BuildFileFormatter.class);
-
   @Nullable
   private static String getBuildifierBinaryPath() {
     for (BuildifierBinaryProvider provider : BuildifierBinaryProvider.EP_NAME.getExtensions()) {
@@ -48,7 +42,7 @@ public class BuildFileFormatter {
 
   /**
    * Calls buildifier for a given text and list of line ranges, and returns the formatted text, or
-   * null if the formatting failed.
+   * null if the formatting failed. All ranges are formatted by a single buildifier invocation.
    */
   @Nullable
   static Replacements getReplacements(
@@ -61,48 +55,19 @@ public class BuildFileFormatter {
     if (text == null) {
       return null;
     }
-    Replacements output = new Replacements();
-    try {
-      for (TextRange range : ranges) {
-        String input = range.substring(text);
-        String result = formatText(buildifierBinaryPath, fileType, input);
-        if (result == null) {
-          return null;
-        }
-        output.addReplacement(range, input, result);
-      }
-      return output;
-
-    } catch (IOException e) {
-      logger.warn(e);
+    ImmutableList<String> inputs =
+        ranges.stream().map(range -> range.substring(text)).collect(toImmutableList());
+    ImmutableList<String> results =
+        BuildifierService.getInstance().format(buildifierBinaryPath, fileType, inputs);
+    if (results == null) {
+      return null;
     }
-    return null;
-  }
-
-  /**
-   * Passes the input text to buildifier, returning the formatted output text, or null if formatting
-   * failed.
-   */
-  @Nullable
-  private static String formatText(
-      String buildifierBinaryPath, BlazeFileType fileType, String inputText) throws IOException {
-    Process process = new ProcessBuilder(buildifierBinaryPath, fileTypeArg(fileType)).start();
-    process.getOutputStream().write(inputText.getBytes(UTF_8));
-    process.getOutputStream().close();
-
-    BufferedReader reader =
-        new BufferedReader(new InputStreamReader(process.getInputStream(), UTF_8));
-    String formattedText = CharStreams.toString(reader);
-    try {
-      process.waitFor();
-    } catch (InterruptedException e) {
-      process.destroy();
-      Thread.currentThread().interrupt();
+    Replacements output = new Replacements();
+    int i = 0;
+    for (TextRange range : ranges) {
+      output.addReplacement(range, inputs.get(i), results.get(i));
+      i++;
     }
-    return process.exitValue() != 0 ? null : formattedText;
-  }
-
-  private static String fileTypeArg(BlazeFileType fileType) {
-    return fileType == BlazeFileType.SkylarkExtension ? "--type=bzl" : "--type=build";
+    return output;
   }
 }
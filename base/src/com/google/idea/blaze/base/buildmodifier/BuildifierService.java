@@ -0,0 +1,237 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.buildmodifier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile.BlazeFileType;
+import com.google.idea.common.experiments.IntExperiment;
+import com.google.idea.common.util.ConcurrencyUtil;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.io.FileUtil;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+
+/**
+ * Runs buildifier over all the text of a formatting request in a single process, caching the
+ * formatted output by content hash so unchanged text isn't sent to buildifier again.
+ */
+public final class BuildifierService implements Disposable {
+
+  private static final Logger logger = Logger.getInstance(BuildifierService.class);
+
+  private static final IntExperiment timeoutSeconds =
+      new IntExperiment("buildifier.timeout.seconds", 30);
+
+  private static final int MAX_PENDING_REQUESTS = 16;
+  private static final int MAX_CACHED_RESULTS = 1000;
+  private static final long CANCELLATION_CHECK_INTERVAL_MILLIS = 100;
+
+  private final ListeningExecutorService executor =
+      MoreExecutors.listeningDecorator(
+          new ThreadPoolExecutor(
+              1,
+              1,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(MAX_PENDING_REQUESTS),
+              ConcurrencyUtil.namedDaemonThreadPoolFactory(BuildifierService.class)));
+
+  /** Maps file type and content hash of buildifier's input to its formatted output. */
+  private final Cache<String, String> formattedText =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_RESULTS).build();
+
+  static BuildifierService getInstance() {
+    return ServiceManager.getService(BuildifierService.class);
+  }
+
+  /**
+   * Formats each of the given texts, returning the formatted texts in the same order, or null if
+   * formatting failed or timed out.
+   *
+   * @throws ProcessCanceledException if the current progress indicator is cancelled while waiting
+   *     for buildifier
+   */
+  @Nullable
+  ImmutableList<String> format(
+      String buildifierBinaryPath, BlazeFileType fileType, List<String> inputs) {
+    List<String> keys = new ArrayList<>(inputs.size());
+    Map<String, String> results = new HashMap<>();
+    Map<String, String> uncached = new LinkedHashMap<>();
+    for (String input : inputs) {
+      String key = cacheKey(fileType, input);
+      keys.add(key);
+      String cached = formattedText.getIfPresent(key);
+      if (cached != null) {
+        results.put(key, cached);
+      } else {
+        uncached.put(key, input);
+      }
+    }
+    if (!uncached.isEmpty()) {
+      Map<String, String> formatted = formatUncached(buildifierBinaryPath, fileType, uncached);
+      if (formatted == null) {
+        return null;
+      }
+      results.putAll(formatted);
+    }
+    ImmutableList.Builder<String> output = ImmutableList.builder();
+    for (String key : keys) {
+      String result = results.get(key);
+      if (result == null) {
+        return null;
+      }
+      output.add(result);
+    }
+    return output.build();
+  }
+
+  @Nullable
+  private Map<String, String> formatUncached(
+      String buildifierBinaryPath, BlazeFileType fileType, Map<String, String> inputs) {
+    ListenableFuture<ImmutableMap<String, String>> future;
+    try {
+      future = executor.submit(() -> runBuildifier(buildifierBinaryPath, fileType, inputs));
+    } catch (RejectedExecutionException e) {
+      logger.warn("Too many pending buildifier requests, skipping formatting");
+      return null;
+    }
+    long deadline =
+        System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSeconds.getValue());
+    try {
+      while (true) {
+        ProgressManager.checkCanceled();
+        try {
+          ImmutableMap<String, String> formatted =
+              future.get(CANCELLATION_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+          if (formatted == null) {
+            return null;
+          }
+          formatted.forEach(
+              (key, output) -> {
+                formattedText.put(key, output);
+                // formatted output is a fixed point of buildifier
+                formattedText.put(cacheKey(fileType, output), output);
+              });
+          return formatted;
+        } catch (TimeoutException e) {
+          if (System.currentTimeMillis() > deadline) {
+            logger.warn("buildifier timed out after " + timeoutSeconds.getValue() + " seconds");
+            future.cancel(true);
+            return null;
+          }
+        }
+      }
+    } catch (ProcessCanceledException e) {
+      future.cancel(true);
+      throw e;
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      logger.warn(e);
+      return null;
+    }
+  }
+
+  /**
+   * Passes all the input texts to a single buildifier invocation, returning the formatted output
+   * texts, or null if formatting failed.
+   */
+  @Nullable
+  private static ImmutableMap<String, String> runBuildifier(
+      String buildifierBinaryPath, BlazeFileType fileType, Map<String, String> inputs)
+      throws IOException {
+    Path tempDir = Files.createTempDirectory("buildifier");
+    try {
+      List<String> command = new ArrayList<>();
+      command.add(buildifierBinaryPath);
+      command.add(fileTypeArg(fileType));
+      command.add("--mode=fix");
+      Map<String, Path> files = new LinkedHashMap<>();
+      for (Map.Entry<String, String> input : inputs.entrySet()) {
+        Path file = tempDir.resolve("input" + files.size());
+        Files.write(file, input.getValue().getBytes(UTF_8));
+        files.put(input.getKey(), file);
+        command.add(file.toString());
+      }
+      Process process =
+          new ProcessBuilder(command)
+              .redirectErrorStream(true)
+              .redirectOutput(tempDir.resolve("output.log").toFile())
+              .start();
+      try {
+        if (!process.waitFor(timeoutSeconds.getValue(), TimeUnit.SECONDS)) {
+          process.destroyForcibly();
+          return null;
+        }
+      } catch (InterruptedException e) {
+        process.destroyForcibly();
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      if (process.exitValue() != 0) {
+        return null;
+      }
+      ImmutableMap.Builder<String, String> output = ImmutableMap.builder();
+      for (Map.Entry<String, Path> file : files.entrySet()) {
+        output.put(file.getKey(), new String(Files.readAllBytes(file.getValue()), UTF_8));
+      }
+      return output.build();
+    } finally {
+      FileUtil.delete(tempDir.toFile());
+    }
+  }
+
+  private static String cacheKey(BlazeFileType fileType, String text) {
+    return fileTypeArg(fileType) + ":" + Hashing.sha256().hashString(text, UTF_8);
+  }
+
+  private static String fileTypeArg(BlazeFileType fileType) {
+    return fileType == BlazeFileType.SkylarkExtension ? "--type=bzl" : "--type=build";
+  }
+
+  @Override
+  public void dispose() {
+    executor.shutdownNow();
+  }
+}
@@ -17,8 +17,10 @@ package com.google.idea.blaze.base.command.buildresult;
 
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
 import com.google.idea.blaze.base.model.primitives.Kind;
 import com.google.idea.blaze.base.model.primitives.Label;
@@ -32,8 +34,10 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import javax.annotation.Nullable;
 
@@ -48,11 +52,25 @@ public final class BuildEventProtocolOutputReader {
    * @throws IOException if the BEP {@link InputStream} is incorrectly formatted
    */
   public static BlazeTestResults parseTestResults(InputStream inputStream) throws IOException {
+    return parseTestResults(inputStream, targetResults -> {});
+  }
+
+  /**
+   * Returns all test results from a BEP-formatted {@link InputStream}. Each target's results are
+   * also passed to the given consumer as soon as the target's test summary is read, so they can be
+   * processed while the stream is still being written.
+   *
+   * @throws IOException if the BEP {@link InputStream} is incorrectly formatted
+   */
+  public static BlazeTestResults parseTestResults(
+      InputStream inputStream, Consumer<BlazeTestResults> targetResultsConsumer)
+      throws IOException {
     Map<String, String> configIdToMnemonic = new HashMap<>();
     Map<String, Kind> labelToKind = new HashMap<>();
     Map<String, String> labelToMnemonic = new HashMap<>();
     long startTimeMillis = 0L;
     ImmutableList.Builder<BlazeTestResult> results = ImmutableList.builder();
+    ListMultimap<String, BlazeTestResult> unsummarizedResults = ArrayListMultimap.create();
     BuildEventStreamProtos.BuildEvent event;
     while ((event = BuildEventStreamProtos.BuildEvent.parseDelimitedFrom(inputStream)) != null) {
       switch (event.getId().getIdCase()) {
@@ -83,13 +101,23 @@ public final class BuildEventProtocolOutputReader {
           continue;
         case TEST_RESULT:
           label = event.getId().getTestResult().getLabel();
-          results.add(
+          BlazeTestResult result =
               parseTestResult(
                   label,
                   labelToKind.get(label),
                   labelToMnemonic.get(label),
                   event.getTestResult(),
-                  startTimeMillis));
+                  startTimeMillis);
+          results.add(result);
+          unsummarizedResults.put(label, result);
+          continue;
+        case TEST_SUMMARY:
+          // all runs, shards and attempts of this target are complete
+          List<BlazeTestResult> targetResults =
+              unsummarizedResults.removeAll(event.getId().getTestSummary().getLabel());
+          if (!targetResults.isEmpty()) {
+            targetResultsConsumer.accept(BlazeTestResults.fromFlatList(targetResults));
+          }
           continue;
         default: // continue
       }
@@ -33,9 +33,7 @@ import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.query.BlazeQueryLabelKindParser;
 import com.google.idea.blaze.base.query.BlazeQueryOutputBaseProvider;
 import com.google.idea.blaze.base.scope.BlazeContext;
-import com.google.idea.blaze.base.scope.Scope;
 import com.google.idea.blaze.base.scope.output.PrintOutput;
-import com.google.idea.blaze.base.scope.scopes.IdeaLogScope;
 import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.sync.workspace.WorkspaceHelper;
 import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolver;
@@ -44,17 +42,19 @@ import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.project.Project;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.OutputStream;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.Future;
+import java.util.function.Function;
 import javax.annotation.Nullable;
-import org.jetbrains.ide.PooledThreadExecutor;
 
 /**
  * Given a source file, runs a blaze query invocation to find the direct rdeps of that file.
  *
- * <p>This is expected to be slow, so should be asynchronous and/or cancellable.
+ * <p>This is expected to be slow, so should be asynchronous and/or cancellable. Background
+ * requests are batched and cached by {@link SourceToTargetQueryBroker}.
  */
 public class BlazeQuerySourceToTargetProvider implements SourceToTargetProvider {
 
@@ -75,14 +75,7 @@ public class BlazeQuerySourceToTargetProvider implements SourceToTargetProvider
     if (label == null) {
       return Futures.immediateFuture(null);
     }
-    return PooledThreadExecutor.INSTANCE.submit(
-        () ->
-            Scope.root(
-                context -> {
-                  context.push(new IdeaLogScope());
-                  return runDirectRdepsQuery(
-                      project, ImmutableList.of(label), context, ContextType.Other);
-                }));
+    return SourceToTargetQueryBroker.getInstance(project).getTargetsBuildingSource(label);
   }
 
   /** Synchronously runs a blaze query to find the direct rdeps of the given source files. */
@@ -103,10 +96,41 @@ public class BlazeQuerySourceToTargetProvider implements SourceToTargetProvider
     if (sources.isEmpty()) {
       return ImmutableList.of();
     }
+    BlazeQueryLabelKindParser outputProcessor = new BlazeQueryLabelKindParser(t -> true);
+    Integer retVal =
+        runQuery(
+            project,
+            directRdepsQuery(sources),
+            "label_kind",
+            LineProcessingOutputStream.of(outputProcessor),
+            context,
+            type);
+    return retVal != null ? outputProcessor.getTargets() : null;
+  }
+
+  /** A same_pkg_direct_rdeps query expression for the given source files. */
+  static String directRdepsQuery(Collection<Label> sources) {
     // quote labels to handle punctuation in file names
     String expr = "\"" + Joiner.on("\"+\"").join(sources) + "\"";
-    String query = String.format("same_pkg_direct_rdeps(%s)", expr);
+    return String.format("same_pkg_direct_rdeps(%s)", expr);
+  }
 
+  /**
+   * Runs a 'blaze query --keep_going' invocation, writing its output in the given format to
+   * stdout.
+   *
+   * <p>Returns the exit code, which is 3 if some packages failed to load, or null if the query
+   * failed. Failures are printed to the context, or only logged for {@link ContextType#Other}
+   * background queries.
+   */
+  @Nullable
+  static Integer runQuery(
+      Project project,
+      String query,
+      String outputFormat,
+      OutputStream stdout,
+      BlazeContext context,
+      ContextType type) {
     // never use a custom output base for queries during sync
     String outputBaseFlag =
         type == ContextType.Sync
@@ -115,36 +139,35 @@ public class BlazeQuerySourceToTargetProvider implements SourceToTargetProvider
 
     BlazeCommand command =
         BlazeCommand.builder(getBinaryPath(project), BlazeCommandName.QUERY)
-            .addBlazeFlags("--output=label_kind")
+            .addBlazeFlags("--output=" + outputFormat)
             .addBlazeFlags("--keep_going")
             .addBlazeFlags(query)
             .addBlazeStartupFlags(
                 outputBaseFlag == null ? ImmutableList.of() : ImmutableList.of(outputBaseFlag))
             .build();
 
-    BlazeQueryLabelKindParser outputProcessor = new BlazeQueryLabelKindParser(t -> true);
     ByteArrayOutputStream stderr = new ByteArrayOutputStream();
     int retVal =
         ExternalTask.builder(WorkspaceRoot.fromProject(project))
             .addBlazeCommand(command)
             .context(context)
-            .stdout(LineProcessingOutputStream.of(outputProcessor))
+            .stdout(stdout)
             .stderr(stderr)
             .build()
             .run();
     // exit code of 3 represents a potentially expected, non-fatal error
     // only display error output for non-3 exit code, when there's an unexpected error
     if (retVal != 0 && retVal != 3) {
+      Function<String, PrintOutput> print =
+          type == ContextType.Other ? PrintOutput::log : PrintOutput::output;
       // the command would have been logged previously, but that would be truncated
       // logging it again for easier repro from logs without blowing up the log size
-      context.output(PrintOutput.output("Failed to execute: " + command));
-      context.output(PrintOutput.output("Query command returned: " + retVal));
-      Splitter.on('\n')
-          .split(stderr.toString())
-          .forEach(line -> context.output(PrintOutput.output(line)));
+      context.output(print.apply("Failed to execute: " + command));
+      context.output(print.apply("Query command returned: " + retVal));
+      Splitter.on('\n').split(stderr.toString()).forEach(line -> context.output(print.apply(line)));
       return null;
     }
-    return outputProcessor.getTargets();
+    return retVal;
   }
 
   /**
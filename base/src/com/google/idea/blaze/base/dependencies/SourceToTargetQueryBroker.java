@@ -0,0 +1,338 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.dependencies;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build.QueryResult;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build.Rule;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build.Target;
+import com.google.idea.blaze.base.bazel.BuildSystemProvider;
+import com.google.idea.blaze.base.command.BlazeInvocationContext.ContextType;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.blaze.base.io.VirtualFileSystemProvider;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.TargetName;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.scope.Scope;
+import com.google.idea.blaze.base.scope.scopes.IdeaLogScope;
+import com.google.idea.blaze.base.settings.Blaze;
+import com.google.idea.blaze.base.sync.workspace.WorkspaceHelper;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+/**
+ * Schedules the background 'blaze query' invocations used to find the targets building a source
+ * file.
+ *
+ * <p>Rather than running one query per source file, requests arriving within a short window are
+ * coalesced into a single same_pkg_direct_rdeps query over all the requested sources. Requests for
+ * a source which is already queued or being queried share that query. Results are cached per
+ * source until its package's BUILD file changes, and a query is cancelled once all its callers
+ * have gone.
+ */
+final class SourceToTargetQueryBroker {
+
+  private static final Logger logger = Logger.getInstance(SourceToTargetQueryBroker.class);
+
+  /** How long to wait for more requests before running a query. */
+  private static final long BATCH_WINDOW_MILLIS = 200;
+
+  /** The maximum number of source files whose results are cached. */
+  private static final int MAX_CACHED_SOURCES = 2000;
+
+  /** The stamp of a package whose directory couldn't be resolved. Results aren't cached. */
+  private static final long UNKNOWN_STAMP = Long.MIN_VALUE;
+
+  /** The stamp of a package directory without a BUILD file. */
+  private static final long NO_BUILD_FILE_STAMP = -1;
+
+  static SourceToTargetQueryBroker getInstance(Project project) {
+    return ServiceManager.getService(project, SourceToTargetQueryBroker.class);
+  }
+
+  private final Project project;
+
+  /** Completed query results, keyed by source label. */
+  private final Cache<Label, SourceTargets> cache =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_SOURCES).build();
+
+  /** Batches which are queued or running, keyed by source label. Guarded by 'this'. */
+  private final Map<Label, Batch> inFlight = new HashMap<>();
+
+  /** The batch collecting new requests, if any. Guarded by 'this'. */
+  @Nullable private Batch pending;
+
+  SourceToTargetQueryBroker(Project project) {
+    this.project = project;
+  }
+
+  /** Returns a future for the rules directly building the given source file. */
+  ListenableFuture<List<TargetInfo>> getTargetsBuildingSource(Label source) {
+    SourceTargets cached = cache.getIfPresent(source);
+    if (cached != null && cached.buildFileStamp == getBuildFileStamp(source)) {
+      return Futures.immediateFuture(cached.targets);
+    }
+    Batch batch = joinBatch(source);
+    ListenableFuture<List<TargetInfo>> result =
+        Futures.transform(
+            Futures.nonCancellationPropagating(batch.result),
+            results -> {
+              SourceTargets targets = results.get(source);
+              return targets != null ? targets.targets : null;
+            },
+            MoreExecutors.directExecutor());
+    result.addListener(
+        () -> {
+          if (result.isCancelled()) {
+            leaveBatch(batch);
+          }
+        },
+        MoreExecutors.directExecutor());
+    return result;
+  }
+
+  private synchronized Batch joinBatch(Label source) {
+    Batch batch = inFlight.get(source);
+    if (batch == null) {
+      if (pending == null) {
+        pending = new Batch();
+        AppExecutorUtil.getAppScheduledExecutorService()
+            .schedule(this::flush, BATCH_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+      }
+      batch = pending;
+      batch.sources.put(source, UNKNOWN_STAMP);
+      inFlight.put(source, batch);
+    }
+    batch.liveCallers++;
+    return batch;
+  }
+
+  private synchronized void leaveBatch(Batch batch) {
+    batch.liveCallers--;
+    if (batch.liveCallers > 0 || batch == pending) {
+      // a pending batch without callers is dropped when flushed
+      return;
+    }
+    removeInFlight(batch);
+    if (batch.running != null) {
+      batch.running.cancel(/* mayInterruptIfRunning= */ true);
+    }
+    batch.result.cancel(/* mayInterruptIfRunning= */ false);
+  }
+
+  private synchronized void flush() {
+    Batch batch = pending;
+    pending = null;
+    if (batch == null) {
+      return;
+    }
+    if (batch.liveCallers == 0) {
+      removeInFlight(batch);
+      batch.result.cancel(/* mayInterruptIfRunning= */ false);
+      return;
+    }
+    batch.running =
+        PooledThreadExecutor.INSTANCE.submit(
+            () ->
+                Scope.root(
+                    context -> {
+                      context.push(new IdeaLogScope());
+                      run(batch, context);
+                    }));
+  }
+
+  private void run(Batch batch, BlazeContext context) {
+    try {
+      // read the BUILD file stamps first, so changes made during the query invalidate the results
+      Map<Label, Long> packageStamps = new HashMap<>();
+      batch.sources.replaceAll(
+          (source, stamp) ->
+              packageStamps.computeIfAbsent(packageLabel(source), this::getBuildFileStamp));
+      ImmutableMap<Label, SourceTargets> results = runQuery(batch.sources, context);
+      if (results != null) {
+        results.forEach(
+            (source, targets) -> {
+              if (targets.buildFileStamp != UNKNOWN_STAMP) {
+                cache.put(source, targets);
+              }
+            });
+      }
+      batch.result.set(results != null ? results : ImmutableMap.of());
+    } catch (RuntimeException e) {
+      batch.result.setException(e);
+    } finally {
+      synchronized (this) {
+        removeInFlight(batch);
+      }
+    }
+  }
+
+  private void removeInFlight(Batch batch) {
+    batch.sources.keySet().forEach(source -> inFlight.remove(source, batch));
+  }
+
+  /**
+   * Runs a single same_pkg_direct_rdeps query for all the given sources, returning null if the
+   * query failed.
+   *
+   * <p>The query only returns the rules directly building one of the sources; their rule inputs are
+   * used to attribute them to individual sources. Results are only returned for sources which were
+   * successfully queried.
+   */
+  @Nullable
+  private ImmutableMap<Label, SourceTargets> runQuery(
+      Map<Label, Long> sources, BlazeContext context) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(/* size= */ 4096);
+    Integer retVal =
+        BlazeQuerySourceToTargetProvider.runQuery(
+            project,
+            BlazeQuerySourceToTargetProvider.directRdepsQuery(sources.keySet()),
+            "proto",
+            out,
+            context,
+            ContextType.Other);
+    if (retVal == null) {
+      return null;
+    }
+    // with --keep_going, a source without results may be in a package which failed to load
+    boolean complete = retVal == 0;
+    QueryResult result;
+    try {
+      result = QueryResult.parseFrom(new ByteArrayInputStream(out.toByteArray()));
+    } catch (IOException e) {
+      logger.warn("Couldn't parse blaze query proto output", e);
+      return null;
+    }
+    ImmutableList<RuleInputs> rules =
+        result.getTargetList().stream()
+            .filter(Target::hasRule)
+            .map(target -> RuleInputs.fromProto(target.getRule()))
+            .filter(Objects::nonNull)
+            .collect(toImmutableList());
+    ImmutableMap.Builder<Label, SourceTargets> output = ImmutableMap.builder();
+    sources.forEach(
+        (source, stamp) -> {
+          String sourceString = source.toString();
+          ImmutableList<TargetInfo> targets =
+              rules.stream()
+                  .filter(rule -> rule.inputs.contains(sourceString))
+                  .map(rule -> rule.target)
+                  .collect(toImmutableList());
+          if (!targets.isEmpty() || complete) {
+            output.put(source, new SourceTargets(stamp, targets));
+          }
+        });
+    return output.build();
+  }
+
+  /** A label identifying the package containing the given label. */
+  private static Label packageLabel(Label label) {
+    return Label.create(
+        label.externalWorkspaceName(), label.blazePackage(), TargetName.create("all"));
+  }
+
+  /**
+   * Returns the VFS modification stamp of the BUILD file of the package containing the given label.
+   * If the BUILD file isn't in the VFS, falls back to its modification time on disk.
+   */
+  private long getBuildFileStamp(Label label) {
+    File dir = WorkspaceHelper.resolveBlazePackage(project, label);
+    if (dir == null) {
+      return UNKNOWN_STAMP;
+    }
+    BuildSystemProvider buildSystemProvider = Blaze.getBuildSystemProvider(project);
+    VirtualFile vf = VirtualFileSystemProvider.getInstance().getSystem().findFileByIoFile(dir);
+    VirtualFile buildFile = vf != null ? buildSystemProvider.findBuildFileInDirectory(vf) : null;
+    if (buildFile != null) {
+      return buildFile.getModificationStamp();
+    }
+    File ioBuildFile = buildSystemProvider.findBuildFileInDirectory(dir);
+    return ioBuildFile != null
+        ? FileOperationProvider.getInstance().getFileModifiedTime(ioBuildFile)
+        : NO_BUILD_FILE_STAMP;
+  }
+
+  /** A set of sources queried together. */
+  private static class Batch {
+    /** The sources in this batch, and the BUILD file stamps they're queried at. */
+    final Map<Label, Long> sources = new ConcurrentHashMap<>();
+
+    final SettableFuture<ImmutableMap<Label, SourceTargets>> result = SettableFuture.create();
+
+    // guarded by the broker
+    int liveCallers;
+    @Nullable Future<?> running;
+  }
+
+  /** The rules directly building a source, as of a given BUILD file stamp. */
+  private static class SourceTargets {
+    final long buildFileStamp;
+    final ImmutableList<TargetInfo> targets;
+
+    SourceTargets(long buildFileStamp, ImmutableList<TargetInfo> targets) {
+      this.buildFileStamp = buildFileStamp;
+      this.targets = targets;
+    }
+  }
+
+  /** A rule and its direct inputs. */
+  private static class RuleInputs {
+    final TargetInfo target;
+    final ImmutableSet<String> inputs;
+
+    RuleInputs(TargetInfo target, ImmutableSet<String> inputs) {
+      this.target = target;
+      this.inputs = inputs;
+    }
+
+    @Nullable
+    static RuleInputs fromProto(Rule rule) {
+      Label label = Label.createIfValid(rule.getName());
+      if (label == null) {
+        return null;
+      }
+      return new RuleInputs(
+          TargetInfo.builder(label, rule.getRuleClass()).build(),
+          ImmutableSet.copyOf(rule.getRuleInputList()));
+    }
+  }
+}
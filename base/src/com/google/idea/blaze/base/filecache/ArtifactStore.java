@@ -0,0 +1,425 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.filecache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
+import com.google.idea.blaze.base.command.buildresult.BlazeArtifact.LocalFileArtifact;
+import com.google.idea.blaze.base.command.buildresult.RemoteOutputArtifact;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+
+/**
+ * A content-addressed store of artifact copies, shared between the views which expose them under
+ * cache-specific names.
+ *
+ * <p>Each distinct artifact is stored once as a blob, named by its digest. Views are hardlinks to
+ * the blob (falling back to a copy if the file system doesn't support hardlinks). Blobs are always
+ * copies of the artifact, never links to local blaze outputs, which blaze may overwrite in place.
+ *
+ * <p>Blobs no longer referenced by any view are kept, so they can be reused if the artifact
+ * reappears, and evicted in least-recently-used order once their total size exceeds a limit.
+ *
+ * <p>The store state is persisted to {@link #STORE_DATA_FILENAME} in the store directory, and is
+ * expected to be re-initialized from disk via a call to {@link #initialize}.
+ */
+public final class ArtifactStore {
+  private static final Logger logger = Logger.getInstance(ArtifactStore.class);
+
+  /** Name of file that contains the store state. */
+  @VisibleForTesting static final String STORE_DATA_FILENAME = "store_data.json";
+
+  private static final String BLOBS_DIRECTORY = "blobs";
+
+  private final Path storeDir;
+  private final Path blobsDir;
+
+  /** Maps digest to blob metadata. */
+  private final Map<String, BlobEntry> blobs = new ConcurrentHashMap<>();
+
+  /** Maps the absolute path of each view to the digest of the blob it links to. */
+  private final Map<String, String> views = new ConcurrentHashMap<>();
+
+  /**
+   * The number of publishes in progress for each digest. Pinned blobs aren't evicted, so a blob
+   * can't be deleted between being created and linked to its view. Guarded by {@code this}.
+   */
+  private final Map<String, Integer> pinned = new HashMap<>();
+
+  public ArtifactStore(Path storeDir) {
+    this.storeDir = storeDir;
+    this.blobsDir = storeDir.resolve(BLOBS_DIRECTORY);
+  }
+
+  /**
+   * Reads the store state from disk, dropping references to missing blobs or views, and deleting
+   * untracked blobs.
+   */
+  public synchronized void initialize() {
+    try {
+      Files.createDirectories(blobsDir);
+    } catch (IOException e) {
+      logger.warn("Could not create artifact store directory " + blobsDir, e);
+      return;
+    }
+    StoreData data = readStoreData(storeDir.resolve(STORE_DATA_FILENAME));
+    blobs.clear();
+    views.clear();
+    for (BlobEntry blob : data.blobs) {
+      if (Files.exists(blobPath(blob.digest))) {
+        blobs.put(blob.digest, blob);
+      }
+    }
+    data.views.forEach(
+        (view, digest) -> {
+          if (blobs.containsKey(digest) && Files.exists(Paths.get(view))) {
+            views.put(view, digest);
+          }
+        });
+    deleteUntrackedBlobs();
+  }
+
+  /**
+   * Returns a digest identifying the contents of the given artifact, or null if it can't be
+   * determined.
+   *
+   * <p>Remote artifacts use the content hash provided by blaze. For local files a cheap hash of
+   * the file identity, size and modification time is used rather than reading the file contents.
+   */
+  @Nullable
+  public static String digest(BlazeArtifact artifact) {
+    if (artifact instanceof RemoteOutputArtifact) {
+      return hash("remote:" + ((RemoteOutputArtifact) artifact).getHashId());
+    }
+    if (artifact instanceof LocalFileArtifact) {
+      Path path = ((LocalFileArtifact) artifact).getFile().toPath();
+      try {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Object fileKey = attributes.fileKey() != null ? attributes.fileKey() : path;
+        return hash(
+            String.format(
+                "local:%s:%d:%d",
+                fileKey, attributes.size(), attributes.lastModifiedTime().toMillis()));
+      } catch (IOException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns a digest for an artifact identified by the given key, for artifacts whose {@link
+   * #digest} can't be determined. The key should change whenever the artifact does, for example
+   * by including its path and modification time.
+   */
+  public static String digestForKey(String key) {
+    return hash("key:" + key);
+  }
+
+  private static String hash(String key) {
+    return Hashing.sha256().hashString(key, UTF_8).toString();
+  }
+
+  /** Returns true if a blob with the given digest is present in the store. */
+  public boolean contains(@Nullable String digest) {
+    return digest != null && blobs.containsKey(digest);
+  }
+
+  /**
+   * Makes the given artifact available at {@code view}, reusing the existing blob if one with the
+   * same digest is already stored. Any existing file at {@code view} is atomically replaced.
+   *
+   * <p>If the digest is null the artifact can't be identified, so it's copied to the view without
+   * being stored.
+   */
+  public void publish(@Nullable String digest, BlazeArtifact artifact, Path view)
+      throws IOException {
+    if (digest == null) {
+      copyAtomically(artifact, view);
+      synchronized (this) {
+        String previous = views.remove(view.toAbsolutePath().toString());
+        if (previous != null) {
+          markUsed(previous);
+        }
+      }
+      return;
+    }
+    // the blob is only pinned for bookkeeping; copying it happens outside the lock, so other
+    // artifacts can be published concurrently
+    pin(digest);
+    try {
+      Path blob = blobPath(digest);
+      if (!blobs.containsKey(digest) || !Files.exists(blob)) {
+        createBlob(artifact, blob);
+      }
+      long size = Files.size(blob);
+      Path temp = tempPath(view);
+      try {
+        linkOrCopy(blob, temp);
+        moveAtomically(temp, view);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+      synchronized (this) {
+        blobs.put(digest, new BlobEntry(digest, size, System.currentTimeMillis()));
+        String previous = views.put(view.toAbsolutePath().toString(), digest);
+        if (previous != null && !previous.equals(digest)) {
+          markUsed(previous);
+        }
+      }
+    } finally {
+      unpin(digest);
+    }
+  }
+
+  private synchronized void pin(String digest) {
+    pinned.merge(digest, 1, Integer::sum);
+  }
+
+  private synchronized void unpin(String digest) {
+    pinned.computeIfPresent(digest, (d, count) -> count > 1 ? count - 1 : null);
+  }
+
+  /** Deletes the given view. The blob it referenced is retained until evicted. */
+  public void removeView(Path view) throws IOException {
+    Files.deleteIfExists(view);
+    synchronized (this) {
+      String digest = views.remove(view.toAbsolutePath().toString());
+      if (digest != null) {
+        markUsed(digest);
+      }
+    }
+  }
+
+  /** Returns the digest of the blob the given view links to, or null if it's not a known view. */
+  @Nullable
+  public String getDigest(Path view) {
+    return views.get(view.toAbsolutePath().toString());
+  }
+
+  private void markUsed(String digest) {
+    blobs.computeIfPresent(
+        digest, (d, blob) -> new BlobEntry(d, blob.size, System.currentTimeMillis()));
+  }
+
+  /**
+   * Deletes blobs not referenced by any view, least recently used first, until their total size is
+   * at most {@code maxUnreferencedBytes}. Blobs which are being published are never deleted.
+   * Returns the number of blobs deleted.
+   */
+  public synchronized int evict(long maxUnreferencedBytes) {
+    Set<String> referenced = new HashSet<>(views.values());
+    referenced.addAll(pinned.keySet());
+    List<BlobEntry> unreferenced = new ArrayList<>();
+    long unreferencedBytes = 0;
+    for (BlobEntry blob : blobs.values()) {
+      if (!referenced.contains(blob.digest)) {
+        unreferenced.add(blob);
+        unreferencedBytes += blob.size;
+      }
+    }
+    unreferenced.sort(Comparator.comparingLong(blob -> blob.lastUsedMillis));
+    int evicted = 0;
+    for (BlobEntry blob : unreferenced) {
+      if (unreferencedBytes <= maxUnreferencedBytes) {
+        break;
+      }
+      try {
+        Files.deleteIfExists(blobPath(blob.digest));
+        blobs.remove(blob.digest);
+        unreferencedBytes -= blob.size;
+        evicted++;
+      } catch (IOException e) {
+        logger.warn("Could not evict artifact " + blob.digest, e);
+      }
+    }
+    return evicted;
+  }
+
+  /** Returns the total size of all stored blobs. */
+  public long getTotalSize() {
+    return blobs.values().stream().mapToLong(blob -> blob.size).sum();
+  }
+
+  /** Serializes the store state to disk. */
+  public synchronized void writeState() {
+    Path dataFile = storeDir.resolve(STORE_DATA_FILENAME);
+    Path temp = tempPath(dataFile);
+    try {
+      Files.createDirectories(storeDir);
+      try (OutputStream stream = Files.newOutputStream(temp)) {
+        new StoreData(ImmutableList.copyOf(blobs.values()), new HashMap<>(views))
+            .writeJson(stream);
+      }
+      moveAtomically(temp, dataFile);
+    } catch (IOException e) {
+      logger.warn("Failed to write artifact store state " + dataFile, e);
+    } finally {
+      try {
+        Files.deleteIfExists(temp);
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  private void createBlob(BlazeArtifact artifact, Path blob) throws IOException {
+    Files.createDirectories(blobsDir);
+    // local outputs are copied rather than linked: a link would share the output's inode, so the
+    // blob would change whenever blaze rewrites the output in place
+    copyAtomically(artifact, blob);
+  }
+
+  private static void copyAtomically(BlazeArtifact artifact, Path target) throws IOException {
+    Path temp = tempPath(target);
+    try {
+      if (artifact instanceof LocalFileArtifact) {
+        Files.copy(
+            ((LocalFileArtifact) artifact).getFile().toPath(),
+            temp,
+            StandardCopyOption.COPY_ATTRIBUTES);
+      } else {
+        try (InputStream stream = artifact.getInputStream()) {
+          Files.copy(stream, temp);
+        }
+      }
+      moveAtomically(temp, target);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static void linkOrCopy(Path existing, Path link) throws IOException {
+    try {
+      Files.createLink(link, existing);
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.copy(existing, link, StandardCopyOption.COPY_ATTRIBUTES);
+    }
+  }
+
+  private static void moveAtomically(Path source, Path target) throws IOException {
+    try {
+      Files.move(
+          source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static Path tempPath(Path target) {
+    return target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+  }
+
+  private Path blobPath(String digest) {
+    return blobsDir.resolve(digest);
+  }
+
+  private void deleteUntrackedBlobs() {
+    ImmutableSet<Path> tracked =
+        blobs.keySet().stream().map(this::blobPath).collect(ImmutableSet.toImmutableSet());
+    try (Stream<Path> files = Files.list(blobsDir)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        if (!tracked.contains(file)) {
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Could not remove untracked artifacts from " + blobsDir, e);
+    }
+  }
+
+  private static StoreData readStoreData(Path dataFile) {
+    if (!Files.exists(dataFile)) {
+      return new StoreData(ImmutableList.of(), new HashMap<>());
+    }
+    try (InputStream stream = Files.newInputStream(dataFile)) {
+      StoreData data = StoreData.readJson(stream);
+      if (data != null && data.blobs != null && data.views != null) {
+        return data;
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Could not read " + dataFile, e);
+    }
+    return new StoreData(ImmutableList.of(), new HashMap<>());
+  }
+
+  /** Metadata about a single stored blob. */
+  private static final class BlobEntry {
+    private final String digest;
+    private final long size;
+    private final long lastUsedMillis;
+
+    BlobEntry(String digest, long size, long lastUsedMillis) {
+      this.digest = digest;
+      this.size = size;
+      this.lastUsedMillis = lastUsedMillis;
+    }
+  }
+
+  /** Data class for (de)serializing the store state. */
+  private static final class StoreData {
+    private final List<BlobEntry> blobs;
+    private final Map<String, String> views;
+
+    StoreData(List<BlobEntry> blobs, Map<String, String> views) {
+      this.blobs = blobs;
+      this.views = views;
+    }
+
+    void writeJson(OutputStream outputStream) throws IOException {
+      Gson gson = new Gson();
+      try (JsonWriter jsonWriter = new JsonWriter(new OutputStreamWriter(outputStream, UTF_8))) {
+        gson.toJson(this, StoreData.class, jsonWriter);
+      }
+    }
+
+    static StoreData readJson(InputStream inputStream) throws IOException {
+      Gson gson = new Gson();
+      try (JsonReader jsonReader = new JsonReader(new InputStreamReader(inputStream, UTF_8))) {
+        return gson.fromJson(jsonReader, StoreData.class);
+      }
+    }
+  }
+}
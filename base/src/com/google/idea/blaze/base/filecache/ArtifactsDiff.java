@@ -22,15 +22,23 @@ import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.idea.blaze.base.command.buildresult.BlazeArtifact.LocalFileArtifact;
+import com.google.idea.blaze.base.command.buildresult.LocalFileOutputArtifact;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
+import com.google.idea.blaze.base.filecache.ArtifactState.LocalFileState;
 import com.google.idea.blaze.base.io.FileAttributeScanner;
+import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.prefetch.FetchExecutor;
+import java.io.File;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /**
@@ -88,10 +96,21 @@ public abstract class ArtifactsDiff {
       return artifacts.stream()
           .collect(toImmutableMap(OutputArtifact::getKey, OutputArtifact::toArtifactState));
     }
-    // for local files, diffing requires checking the timestamps, which we multi-thread
-    return FileAttributeScanner.readAttributes(artifacts, TO_ARTIFACT_STATE, FetchExecutor.EXECUTOR)
-        .entrySet().stream()
-        .collect(toImmutableMap(e -> e.getKey().getKey(), Map.Entry::getValue));
+    // for local files, diffing requires checking the timestamps, which we read a directory at a
+    // time, multi-threaded
+    Map<Boolean, List<OutputArtifact>> partitioned =
+        artifacts.stream()
+            .collect(Collectors.partitioningBy(a -> a instanceof LocalFileOutputArtifact));
+    Map<String, ArtifactState> state = new HashMap<>();
+    FileAttributeScanner.readAttributesByDirectory(
+            partitioned.get(true), TO_LOCAL_ARTIFACT_STATE, FetchExecutor.EXECUTOR)
+        .forEach((artifact, artifactState) -> state.put(artifact.getKey(), artifactState));
+    if (!partitioned.get(false).isEmpty()) {
+      FileAttributeScanner.readAttributes(
+              partitioned.get(false), TO_ARTIFACT_STATE, FetchExecutor.EXECUTOR)
+          .forEach((artifact, artifactState) -> state.put(artifact.getKey(), artifactState));
+    }
+    return ImmutableMap.copyOf(state);
   }
 
   private static FileAttributeScanner.AttributeReader<OutputArtifact, ArtifactState>
@@ -103,6 +122,36 @@ public abstract class ArtifactsDiff {
               return file.toArtifactState();
             }
 
+            @Override
+            public boolean isValid(ArtifactState attribute) {
+              return true;
+            }
+          };
+
+  private static FileAttributeScanner.DirectoryAttributeReader<OutputArtifact, ArtifactState>
+      TO_LOCAL_ARTIFACT_STATE =
+          new FileAttributeScanner.DirectoryAttributeReader<OutputArtifact, ArtifactState>() {
+            @Override
+            public File getFile(OutputArtifact artifact) {
+              return ((LocalFileOutputArtifact) artifact).getFile();
+            }
+
+            @Override
+            public Map<OutputArtifact, ArtifactState> getAttributes(
+                File directory, List<OutputArtifact> artifacts) {
+              Map<File, Long> times =
+                  FileOperationProvider.getInstance()
+                      .getFileModifiedTimes(directory, Lists.transform(artifacts, this::getFile));
+              Map<OutputArtifact, ArtifactState> states = new HashMap<>();
+              for (OutputArtifact artifact : artifacts) {
+                Long time = times.get(getFile(artifact));
+                if (time != null && time != 0) {
+                  states.put(artifact, new LocalFileState(artifact.getKey(), time));
+                }
+              }
+              return states;
+            }
+
             @Override
             public boolean isValid(ArtifactState attribute) {
               return true;
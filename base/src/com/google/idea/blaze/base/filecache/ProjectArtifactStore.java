@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.filecache;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.scope.output.PrintOutput;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
+import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
+import com.google.idea.common.experiments.IntExperiment;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import java.io.File;
+import java.nio.file.Path;
+import javax.annotation.Nullable;
+
+/**
+ * The project-wide {@link ArtifactStore}, shared by all local caches of blaze artifacts (for
+ * example the jar cache, remote outputs cache and render jar cache).
+ *
+ * <p>An artifact needed by several caches is stored and fetched once; each cache exposes it under
+ * its own name as a view of the shared blob. Unreferenced blobs are evicted by a single policy,
+ * applied whenever a cache commits its changes.
+ */
+public class ProjectArtifactStore {
+
+  /** The maximum total size of stored artifacts no longer referenced by any cache. */
+  private static final IntExperiment maxUnreferencedSizeMb =
+      new IntExperiment("blaze.artifact.store.max.unreferenced.size.mb", 2048);
+
+  private static final String STORE_DIRECTORY = "artifact_store";
+
+  public static ProjectArtifactStore getInstance(Project project) {
+    return ServiceManager.getService(project, ProjectArtifactStore.class);
+  }
+
+  private static Path getStoreDirForProject(Project project) {
+    BlazeImportSettings importSettings =
+        BlazeImportSettingsManager.getInstance(project).getImportSettings();
+
+    if (importSettings == null) {
+      throw new IllegalArgumentException(
+          String.format("Could not get directory for project '%s'", project.getName()));
+    }
+
+    return new File(BlazeDataStorage.getProjectDataDir(importSettings), STORE_DIRECTORY).toPath();
+  }
+
+  private final Path storeDir;
+  @Nullable private volatile ArtifactStore store;
+
+  public ProjectArtifactStore(Project project) {
+    this(getStoreDirForProject(project));
+  }
+
+  @VisibleForTesting
+  public ProjectArtifactStore(Path storeDir) {
+    this.storeDir = storeDir;
+  }
+
+  /**
+   * Returns the shared store, initializing it from disk on first use. Does blocking disk I/O, so
+   * shouldn't be called on the EDT.
+   */
+  public ArtifactStore getStore() {
+    ArtifactStore store = this.store;
+    if (store != null) {
+      return store;
+    }
+    synchronized (this) {
+      if (this.store == null) {
+        ArtifactStore newStore = new ArtifactStore(storeDir);
+        newStore.initialize();
+        this.store = newStore;
+      }
+      return this.store;
+    }
+  }
+
+  /**
+   * Evicts unreferenced artifacts according to the shared eviction policy, and persists the store
+   * state. Should be called by each cache after publishing or removing views.
+   */
+  public void commit(BlazeContext context) {
+    ArtifactStore store = getStore();
+    int evicted = store.evict(maxUnreferencedSizeMb.getValue() * 1024L * 1024L);
+    if (evicted > 0) {
+      context.output(
+          PrintOutput.log(String.format("Evicted %d unused artifacts from the store", evicted)));
+    }
+    store.writeState();
+  }
+}
@@ -27,7 +27,6 @@ import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.idea.blaze.base.async.FutureUtil;
-import com.google.idea.blaze.base.command.buildresult.BlazeArtifact;
 import com.google.idea.blaze.base.command.buildresult.RemoteOutputArtifact;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
@@ -49,15 +48,10 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.PathUtil;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -153,6 +147,8 @@ public final class RemoteOutputsCache {
             .collect(toImmutableMap(RemoteOutputsCache::getCacheKey, Functions.identity()));
 
     Map<String, File> cachedFiles = readCachedFiles();
+    ProjectArtifactStore projectStore = ProjectArtifactStore.getInstance(project);
+    ArtifactStore store = projectStore.getStore();
     try {
       Map<String, RemoteOutputArtifact> updatedOutputs =
           FileCacheDiffer.findUpdatedOutputs(newState, cachedFiles, previousOutputs);
@@ -171,18 +167,21 @@ public final class RemoteOutputsCache {
           return;
         }
       }
+      // artifacts already in the shared store don't need to be fetched again
       ListenableFuture<?> downloadArtifactsFuture =
           RemoteArtifactPrefetcher.getInstance()
               .downloadArtifacts(
                   /* projectName= */ project.getName(),
-                  /* outputArtifacts= */ BlazeArtifact.getRemoteArtifacts(updatedOutputs.values()));
+                  /* outputArtifacts= */ updatedOutputs.values().stream()
+                      .filter(a -> !store.contains(ArtifactStore.digest(a)))
+                      .collect(toImmutableList()));
       FutureUtil.waitForFuture(context, downloadArtifactsFuture)
           .timed("PrefetchRemoteOutput", EventType.Prefetching)
           .withProgressMessage("Prefetching output artifacts...")
           .run();
 
-      List<ListenableFuture<?>> futures = new ArrayList<>(copyLocally(updatedOutputs));
-      futures.addAll(deleteCacheFiles(removed));
+      List<ListenableFuture<?>> futures = new ArrayList<>(copyLocally(store, updatedOutputs));
+      futures.addAll(deleteCacheFiles(store, removed));
 
       Futures.allAsList(futures).get();
 
@@ -197,6 +196,8 @@ public final class RemoteOutputsCache {
     } catch (ExecutionException e) {
       IssueOutput.warn("Remote outputs synchronization didn't complete: " + e.getMessage())
           .submit(context);
+    } finally {
+      projectStore.commit(context);
     }
   }
 
@@ -234,7 +235,8 @@ public final class RemoteOutputsCache {
     return new File(BlazeDataStorage.getProjectDataDir(importSettings), "remoteOutputCache");
   }
 
-  private Collection<ListenableFuture<?>> copyLocally(Map<String, RemoteOutputArtifact> updated) {
+  private Collection<ListenableFuture<?>> copyLocally(
+      ArtifactStore store, Map<String, RemoteOutputArtifact> updated) {
     List<ListenableFuture<?>> futures = new ArrayList<>();
     updated.forEach(
         (key, artifact) ->
@@ -242,8 +244,8 @@ public final class RemoteOutputsCache {
                 FetchExecutor.EXECUTOR.submit(
                     () -> {
                       Path destination = new File(cacheDir, key).toPath();
-                      try (InputStream stream = artifact.getInputStream()) {
-                        Files.copy(stream, destination, StandardCopyOption.REPLACE_EXISTING);
+                      try {
+                        store.publish(ArtifactStore.digest(artifact), artifact, destination);
                       } catch (IOException e) {
                         logger.warn(
                             String.format("Fail to copy artifact %s to %s", artifact, cacheDir), e);
@@ -252,14 +254,15 @@ public final class RemoteOutputsCache {
     return futures;
   }
 
-  private Collection<ListenableFuture<?>> deleteCacheFiles(Collection<File> files) {
+  private static Collection<ListenableFuture<?>> deleteCacheFiles(
+      ArtifactStore store, Collection<File> files) {
     return files.stream()
         .map(
             f ->
                 FetchExecutor.EXECUTOR.submit(
                     () -> {
                       try {
-                        Files.deleteIfExists(Paths.get(f.getPath()));
+                        store.removeView(f.toPath());
                       } catch (IOException e) {
                         logger.warn(e);
                       }
@@ -271,9 +274,14 @@ public final class RemoteOutputsCache {
     cachedFiles = ImmutableMap.of();
     if (cacheDir.exists()) {
       File[] cacheFiles = cacheDir.listFiles();
-      if (cacheFiles != null) {
+      if (cacheFiles != null && cacheFiles.length > 0) {
+        // the underlying blobs are retained by the shared store until evicted
         @SuppressWarnings("unused") // go/futurereturn-lsc
-        Future<?> possiblyIgnoredError = FileUtil.asyncDelete(Lists.newArrayList(cacheFiles));
+        Future<?> possiblyIgnoredError =
+            Futures.allAsList(
+                deleteCacheFiles(
+                    ProjectArtifactStore.getInstance(project).getStore(),
+                    Lists.newArrayList(cacheFiles)));
       }
     }
     cachedFiles = ImmutableMap.of();
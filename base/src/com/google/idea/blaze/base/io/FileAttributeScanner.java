@@ -20,10 +20,15 @@ import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import javax.annotation.Nullable;
 
 /** Reads file attributes from a list files in parallel. */
@@ -62,6 +67,79 @@ public class FileAttributeScanner {
     return ImmutableMap.copyOf(result);
   }
 
+  /** Reads an attribute from several files in the same directory at once. */
+  public interface DirectoryAttributeReader<F, T> {
+    /** Returns the file system location of the given file. */
+    File getFile(F file);
+
+    /**
+     * Returns the attributes of the given files, all of which are children of {@code directory}.
+     * Files with no attribute may be omitted, or mapped to null.
+     */
+    Map<F, T> getAttributes(File directory, List<F> files);
+
+    boolean isValid(T attribute);
+  }
+
+  /** The maximum number of files read in a single batch. */
+  private static final int MAX_BATCH_SIZE = 1000;
+
+  /** The maximum number of batches being read concurrently. */
+  private static final int MAX_BATCHES_IN_FLIGHT = 16;
+
+  /**
+   * Reads attributes from a list of files, one batch per directory rather than one task per file.
+   * The number of batches read concurrently is bounded, which matters for remote or FUSE-backed
+   * file systems where each lookup is relatively expensive.
+   */
+  public static <F, T> ImmutableMap<F, T> readAttributesByDirectory(
+      Iterable<F> files,
+      DirectoryAttributeReader<F, T> attributeReader,
+      ListeningExecutorService executor)
+      throws InterruptedException, ExecutionException {
+    Map<File, List<F>> filesByDirectory = new LinkedHashMap<>();
+    for (F file : files) {
+      File absolute = attributeReader.getFile(file).getAbsoluteFile();
+      File parent = absolute.getParentFile();
+      filesByDirectory
+          .computeIfAbsent(parent != null ? parent : absolute, p -> new ArrayList<>())
+          .add(file);
+    }
+
+    Semaphore inFlight = new Semaphore(MAX_BATCHES_IN_FLIGHT);
+    List<ListenableFuture<Map<F, T>>> futures = Lists.newArrayList();
+    try {
+      for (Map.Entry<File, List<F>> entry : filesByDirectory.entrySet()) {
+        for (List<F> batch : Lists.partition(entry.getValue(), MAX_BATCH_SIZE)) {
+          inFlight.acquire();
+          ListenableFuture<Map<F, T>> future;
+          try {
+            future = executor.submit(() -> attributeReader.getAttributes(entry.getKey(), batch));
+          } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+          }
+          future.addListener(inFlight::release, MoreExecutors.directExecutor());
+          futures.add(future);
+        }
+      }
+    } catch (InterruptedException e) {
+      futures.forEach(f -> f.cancel(true));
+      throw e;
+    }
+
+    Map<F, T> result = new HashMap<>();
+    for (Map<F, T> attributes : Futures.allAsList(futures).get()) {
+      attributes.forEach(
+          (file, attribute) -> {
+            if (attribute != null && attributeReader.isValid(attribute)) {
+              result.put(file, attribute);
+            }
+          });
+    }
+    return ImmutableMap.copyOf(result);
+  }
+
   private static class FilePair<F, T> {
     public final F file;
     public final T attribute;
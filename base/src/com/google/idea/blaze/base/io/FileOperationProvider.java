@@ -24,11 +24,19 @@ import com.intellij.openapi.components.ServiceManager;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SecureDirectoryStream;
+import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.BiPredicate;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
@@ -56,6 +64,42 @@ public class FileOperationProvider {
     return file.lastModified();
   }
 
+  /**
+   * Returns the modified times of the given files, all of which must be children of the given
+   * directory. As with {@link #getFileModifiedTime}, the time is 0 for files which don't exist.
+   *
+   * <p>Where supported, the files are read relative to a single handle on the directory, avoiding
+   * a full path lookup per file. Any files which can't be read that way are read individually.
+   */
+  public Map<File, Long> getFileModifiedTimes(File directory, Collection<File> children) {
+    Map<File, Long> times = new HashMap<>();
+    Collection<File> remaining = children;
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath())) {
+      if (stream instanceof SecureDirectoryStream) {
+        SecureDirectoryStream<Path> directoryHandle = (SecureDirectoryStream<Path>) stream;
+        remaining = new ArrayList<>();
+        for (File child : children) {
+          try {
+            BasicFileAttributes attributes =
+                directoryHandle
+                    .getFileAttributeView(
+                        Paths.get(child.getName()), BasicFileAttributeView.class)
+                    .readAttributes();
+            times.put(child, attributes.lastModifiedTime().toMillis());
+          } catch (IOException e) {
+            remaining.add(child);
+          }
+        }
+      }
+    } catch (IOException e) {
+      // fall back to reading each file individually
+    }
+    for (File child : remaining) {
+      times.put(child, getFileModifiedTime(child));
+    }
+    return times;
+  }
+
   public boolean setFileModifiedTime(File file, long time) {
     return file.setLastModified(time);
   }
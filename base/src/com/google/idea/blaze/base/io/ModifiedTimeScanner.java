@@ -19,13 +19,15 @@ import com.google.common.collect.ImmutableMap;
 import com.google.idea.blaze.base.prefetch.FetchExecutor;
 import java.io.File;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 /** Reads the last modified times from a list of files. */
 public class ModifiedTimeScanner {
 
   private static final class TimestampReader
-      implements FileAttributeScanner.AttributeReader<File, Long> {
+      implements FileAttributeScanner.DirectoryAttributeReader<File, Long> {
 
     private final FileOperationProvider fileOperationProvider;
 
@@ -34,8 +36,13 @@ public class ModifiedTimeScanner {
     }
 
     @Override
-    public Long getAttribute(File file) {
-      return fileOperationProvider.getFileModifiedTime(file);
+    public File getFile(File file) {
+      return file;
+    }
+
+    @Override
+    public Map<File, Long> getAttributes(File directory, List<File> files) {
+      return fileOperationProvider.getFileModifiedTimes(directory, files);
     }
 
     @Override
@@ -51,6 +58,7 @@ public class ModifiedTimeScanner {
     }
     final TimestampReader timestampReader =
         new TimestampReader(FileOperationProvider.getInstance());
-    return FileAttributeScanner.readAttributes(files, timestampReader, FetchExecutor.EXECUTOR);
+    return FileAttributeScanner.readAttributesByDirectory(
+        files, timestampReader, FetchExecutor.EXECUTOR);
   }
 }
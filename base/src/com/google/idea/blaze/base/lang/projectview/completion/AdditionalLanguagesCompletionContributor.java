@@ -24,6 +24,7 @@ import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.blaze.base.model.primitives.WorkspaceType;
 import com.google.idea.blaze.base.projectview.section.sections.AdditionalLanguagesSection;
 import com.google.idea.blaze.base.sync.SyncCache;
+import com.google.idea.blaze.base.sync.SyncCache.ProjectDataSlice;
 import com.google.idea.blaze.base.sync.projectview.LanguageSupport;
 import com.intellij.codeInsight.completion.AutoCompletionContext;
 import com.intellij.codeInsight.completion.AutoCompletionDecision;
@@ -37,6 +38,7 @@ import com.intellij.codeInsight.lookup.LookupElementBuilder;
 import com.intellij.openapi.project.Project;
 import com.intellij.patterns.StandardPatterns;
 import com.intellij.util.ProcessingContext;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -82,6 +84,7 @@ public class AdditionalLanguagesCompletionContributor extends CompletionContribu
         SyncCache.getInstance(project)
             .get(
                 AdditionalLanguagesCompletionContributor.class,
+                EnumSet.of(ProjectDataSlice.WORKSPACE_LANGUAGE_SETTINGS),
                 (proj, projectData) ->
                     additionalLanguages(
                         projectData.getWorkspaceLanguageSettings().getWorkspaceType()));
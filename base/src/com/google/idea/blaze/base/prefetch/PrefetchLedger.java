@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.prefetch;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records when each canonical file was last prefetched, so that recently prefetched files aren't
+ * fetched again. Entries are grouped by parent directory, and persisted across IDE restarts.
+ */
+final class PrefetchLedger {
+  private static final Logger logger = Logger.getInstance(PrefetchLedger.class);
+
+  private static final int FORMAT_VERSION = 1;
+
+  private final Path ledgerFile;
+  private final long refetchPeriodMillis;
+
+  /** Maps canonical directory path to the last fetch time of each of its children, by name. */
+  private final Map<String, Map<String, Long>> lastFetchTimes = new ConcurrentHashMap<>();
+
+  private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+  PrefetchLedger(Path ledgerFile, long refetchPeriodMillis) {
+    this.ledgerFile = ledgerFile;
+    this.refetchPeriodMillis = refetchPeriodMillis;
+  }
+
+  /**
+   * Returns false if the given canonical file was prefetched within the refetch period. Otherwise
+   * records it as fetched at the given time, and returns true.
+   */
+  boolean shouldPrefetch(File canonicalFile, long startTime) {
+    String directory = canonicalFile.getParent();
+    if (directory == null) {
+      return true;
+    }
+    Map<String, Long> children =
+        lastFetchTimes.computeIfAbsent(directory, d -> new ConcurrentHashMap<>());
+    boolean[] prefetch = new boolean[1];
+    children.compute(
+        canonicalFile.getName(),
+        (name, lastFetchTime) -> {
+          if (lastFetchTime != null && startTime - lastFetchTime < refetchPeriodMillis) {
+            return lastFetchTime;
+          }
+          prefetch[0] = true;
+          return startTime;
+        });
+    if (prefetch[0]) {
+      dirty.set(true);
+    }
+    return prefetch[0];
+  }
+
+  /** Records the given canonical file as fetched at the given time. */
+  void recordFetch(File canonicalFile, long fetchTime) {
+    String directory = canonicalFile.getParent();
+    if (directory == null) {
+      return;
+    }
+    lastFetchTimes
+        .computeIfAbsent(directory, d -> new ConcurrentHashMap<>())
+        .put(canonicalFile.getName(), fetchTime);
+    dirty.set(true);
+  }
+
+  /** Drops entries older than the refetch period. */
+  void removeExpired(long now) {
+    lastFetchTimes
+        .values()
+        .forEach(children -> children.values().removeIf(t -> now - t >= refetchPeriodMillis));
+    lastFetchTimes.values().removeIf(Map::isEmpty);
+    dirty.set(true);
+  }
+
+  void clear() {
+    lastFetchTimes.clear();
+    dirty.set(true);
+  }
+
+  @VisibleForTesting
+  int size() {
+    return lastFetchTimes.values().stream().mapToInt(Map::size).sum();
+  }
+
+  /** Reads the ledger from disk, ignoring any entries which have since expired. */
+  void load(long now) {
+    if (!Files.exists(ledgerFile)) {
+      return;
+    }
+    try (DataInputStream in =
+        new DataInputStream(
+            new GZIPInputStream(new BufferedInputStream(Files.newInputStream(ledgerFile))))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        return;
+      }
+      int directoryCount = in.readInt();
+      for (int i = 0; i < directoryCount; i++) {
+        String directory = in.readUTF();
+        int childCount = in.readInt();
+        Map<String, Long> children = new ConcurrentHashMap<>();
+        for (int j = 0; j < childCount; j++) {
+          String name = in.readUTF();
+          long fetchTime = in.readLong();
+          if (now - fetchTime < refetchPeriodMillis) {
+            children.put(name, fetchTime);
+          }
+        }
+        if (!children.isEmpty()) {
+          lastFetchTimes.merge(directory, children, PrefetchLedger::mergeChildren);
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Couldn't read prefetch ledger " + ledgerFile, e);
+    }
+  }
+
+  private static Map<String, Long> mergeChildren(Map<String, Long> a, Map<String, Long> b) {
+    b.forEach((name, time) -> a.merge(name, time, Math::max));
+    return a;
+  }
+
+  /**
+   * Writes the ledger to disk, if it has changed since last written. Saves are serialized, and
+   * each writes to its own temporary file before atomically replacing the ledger.
+   */
+  synchronized void save() {
+    if (!dirty.getAndSet(false)) {
+      return;
+    }
+    Path tempFile =
+        ledgerFile.resolveSibling(ledgerFile.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    try {
+      Files.createDirectories(ledgerFile.getParent());
+      try (DataOutputStream out =
+          new DataOutputStream(
+              new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile))))) {
+        out.writeInt(FORMAT_VERSION);
+        // snapshot, so the counts written match the entries which follow
+        Map<String, Map<String, Long>> snapshot = new HashMap<>();
+        lastFetchTimes.forEach(
+            (directory, children) -> {
+              if (!children.isEmpty()) {
+                snapshot.put(directory, new HashMap<>(children));
+              }
+            });
+        out.writeInt(snapshot.size());
+        for (Map.Entry<String, Map<String, Long>> entry : snapshot.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeInt(entry.getValue().size());
+          for (Map.Entry<String, Long> child : entry.getValue().entrySet()) {
+            out.writeUTF(child.getKey());
+            out.writeLong(child.getValue());
+          }
+        }
+      }
+      Files.move(
+          tempFile,
+          ledgerFile,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      dirty.set(true);
+      logger.warn("Couldn't write prefetch ledger " + ledgerFile, e);
+    } finally {
+      try {
+        Files.deleteIfExists(tempFile);
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+}
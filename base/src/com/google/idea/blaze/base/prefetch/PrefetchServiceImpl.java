@@ -17,9 +17,9 @@ package com.google.idea.blaze.base.prefetch;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.idea.blaze.base.io.AbsolutePathPatcher.AbsolutePathPatcherUtil;
 import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.model.BlazeProjectData;
@@ -29,37 +29,78 @@ import com.google.idea.blaze.base.projectview.ProjectViewSet;
 import com.google.idea.blaze.base.settings.BlazeImportSettings;
 import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
 import com.google.idea.blaze.base.sync.projectview.ImportRoots;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.LowMemoryWatcher;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /** Implementation for prefetcher. */
-public class PrefetchServiceImpl implements PrefetchService {
+public class PrefetchServiceImpl implements PrefetchService, Disposable {
 
   private static final Logger logger = Logger.getInstance(PrefetchServiceImpl.class);
 
   private static final long REFETCH_PERIOD_MILLIS = TimeUnit.HOURS.toMillis(6);
-  private final Map<Integer, Long> fileToLastFetchTimeMillis = Maps.newConcurrentMap();
+
+  /** How long to wait after a prefetch before saving the ledger, so that saves are coalesced. */
+  private static final long LEDGER_SAVE_DELAY_SECONDS = 30;
+
+  private final PrefetchLedger ledger;
+  private volatile boolean ledgerLoaded = false;
+  private final AtomicBoolean ledgerSaveScheduled = new AtomicBoolean(false);
 
   private PrefetchServiceImpl() {
+    ledger =
+        new PrefetchLedger(
+            new File(PathManager.getSystemPath(), "blaze/prefetch_ledger.gz").toPath(),
+            REFETCH_PERIOD_MILLIS);
     LowMemoryWatcher.register(
-        fileToLastFetchTimeMillis::clear, ApplicationManager.getApplication());
+        () -> ledger.removeExpired(System.currentTimeMillis()),
+        ApplicationManager.getApplication());
+  }
+
+  @Override
+  public void dispose() {
+    if (ledgerLoaded) {
+      ledger.save();
+    }
   }
 
   @Override
   public void clearPrefetchCache() {
-    fileToLastFetchTimeMillis.clear();
+    ensureLedgerLoaded();
+    ledger.clear();
+  }
+
+  /** Reads the persisted ledger on first use. Does blocking disk I/O. */
+  private void ensureLedgerLoaded() {
+    if (ledgerLoaded) {
+      return;
+    }
+    synchronized (ledger) {
+      if (!ledgerLoaded) {
+        ledger.load(System.currentTimeMillis());
+        ledgerLoaded = true;
+      }
+    }
   }
 
   @Override
@@ -76,28 +117,96 @@ public class PrefetchServiceImpl implements PrefetchService {
     if (files.isEmpty()) {
       return Futures.immediateFuture(null);
     }
-    if (!refetchCachedFiles) {
-      long startTime = System.currentTimeMillis();
-      // ignore recently fetched files
-      files =
-          files
-              .stream()
-              .filter(file -> shouldPrefetch(file, startTime))
-              .collect(Collectors.toList());
-    }
+    long startTime = System.currentTimeMillis();
     FileOperationProvider provider = FileOperationProvider.getInstance();
-    List<ListenableFuture<File>> canonicalFiles =
-        files
-            .stream()
-            .map(file -> FetchExecutor.EXECUTOR.submit(() -> toCanonicalFile(provider, file)))
-            .collect(Collectors.toList());
+    // canonicalize a directory at a time, then ignore recently fetched files
+    Map<File, List<File>> filesByDirectory =
+        files.stream().collect(Collectors.groupingBy(PrefetchServiceImpl::getParent));
+    List<ListenableFuture<File>> canonicalFiles = new ArrayList<>();
+    filesByDirectory.forEach(
+        (directory, children) -> {
+          ListenableFuture<List<File>> batch =
+              FetchExecutor.EXECUTOR.submit(
+                  () -> {
+                    List<File> canonical = toCanonicalFiles(provider, directory, children);
+                    return filterRecentlyFetched(canonical, refetchCachedFiles, startTime);
+                  });
+          for (int i = 0; i < children.size(); i++) {
+            int index = i;
+            canonicalFiles.add(
+                Futures.transform(batch, list -> list.get(index), MoreExecutors.directExecutor()));
+          }
+        });
     List<ListenableFuture<?>> futures = Lists.newArrayList();
     for (Prefetcher prefetcher : Prefetcher.EP_NAME.getExtensions()) {
       futures.add(
           prefetcher.prefetchFiles(
               excludeDirectories, canonicalFiles, FetchExecutor.EXECUTOR, fetchFileTypes));
     }
-    return Futures.allAsList(futures);
+    ListenableFuture<?> result = Futures.allAsList(futures);
+    result.addListener(this::scheduleLedgerSave, MoreExecutors.directExecutor());
+    return result;
+  }
+
+  /**
+   * Saves the ledger after a delay, unless a save is already pending. Saving rewrites the whole
+   * ledger, so it's done at most once per delay rather than after every prefetch.
+   */
+  private void scheduleLedgerSave() {
+    if (!ledgerLoaded || !ledgerSaveScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    AppExecutorUtil.getAppScheduledExecutorService()
+        .schedule(
+            () ->
+                FetchExecutor.EXECUTOR.execute(
+                    () -> {
+                      // reset first, so entries recorded during the save schedule another one
+                      ledgerSaveScheduled.set(false);
+                      ledger.save();
+                    }),
+            LEDGER_SAVE_DELAY_SECONDS,
+            TimeUnit.SECONDS);
+  }
+
+  private static File getParent(File file) {
+    File absolute = file.getAbsoluteFile();
+    File parent = absolute.getParentFile();
+    return parent != null ? parent : absolute;
+  }
+
+  /**
+   * Returns the canonical files corresponding to the given children of a directory, with null
+   * entries for any which don't exist.
+   *
+   * <p>The directory is only canonicalized once. Children which aren't symlinks are resolved
+   * relative to the canonical directory, with a single stat.
+   */
+  private static List<File> toCanonicalFiles(
+      FileOperationProvider provider, File directory, List<File> children) {
+    File canonicalDirectory = toCanonicalFile(provider, directory);
+    List<File> result = new ArrayList<>(children.size());
+    for (File child : children) {
+      File file = child.getAbsoluteFile();
+      if (canonicalDirectory == null || file.equals(directory)) {
+        result.add(toCanonicalFile(provider, file));
+        continue;
+      }
+      try {
+        BasicFileAttributes attributes =
+            Files.readAttributes(
+                file.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        result.add(
+            attributes.isSymbolicLink()
+                ? toCanonicalFile(provider, file)
+                : new File(canonicalDirectory, file.getName()));
+      } catch (NoSuchFileException e) {
+        result.add(null);
+      } catch (IOException e) {
+        result.add(toCanonicalFile(provider, file));
+      }
+    }
+    return result;
   }
 
   @Nullable
@@ -113,15 +222,22 @@ public class PrefetchServiceImpl implements PrefetchService {
     return null;
   }
 
-  /** Returns false if this file has been recently prefetched. */
-  private boolean shouldPrefetch(File file, long startTime) {
-    // Filter files that have been recently fetched
-    Long lastFetchTime = fileToLastFetchTimeMillis.get(file.hashCode());
-    if (lastFetchTime != null && (startTime - lastFetchTime < REFETCH_PERIOD_MILLIS)) {
-      return false;
+  /** Replaces recently prefetched files with null entries, and records the remainder. */
+  private List<File> filterRecentlyFetched(
+      List<File> canonicalFiles, boolean refetchCachedFiles, long startTime) {
+    ensureLedgerLoaded();
+    List<File> result = new ArrayList<>(canonicalFiles.size());
+    for (File file : canonicalFiles) {
+      if (file == null) {
+        result.add(null);
+      } else if (refetchCachedFiles) {
+        ledger.recordFetch(file, startTime);
+        result.add(file);
+      } else {
+        result.add(ledger.shouldPrefetch(file, startTime) ? file : null);
+      }
     }
-    fileToLastFetchTimeMillis.put(file.hashCode(), startTime);
-    return true;
+    return result;
   }
 
   @Override
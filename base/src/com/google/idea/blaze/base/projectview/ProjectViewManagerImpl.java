@@ -19,6 +19,7 @@ import com.google.common.collect.Lists;
 import com.google.idea.blaze.base.async.executor.BlazeExecutor;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.projectview.parser.ProjectViewParseCache;
 import com.google.idea.blaze.base.projectview.parser.ProjectViewParser;
 import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.settings.BlazeImportSettings;
@@ -35,6 +36,7 @@ import com.intellij.openapi.project.Project;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.Objects;
 import javax.annotation.Nullable;
 
 /** Project view manager implementation. Stores mutable per-project user settings. */
@@ -46,6 +48,7 @@ final class ProjectViewManagerImpl extends ProjectViewManager {
   private final Project project;
   @Nullable private ProjectViewSet projectViewSet;
   private boolean projectViewSetLoaded = false;
+  private final ProjectViewParseCache parseCache = new ProjectViewParseCache();
 
   public ProjectViewManagerImpl(Project project) {
     this.project = project;
@@ -94,12 +97,16 @@ final class ProjectViewManagerImpl extends ProjectViewManager {
     assert importSettings != null;
     assert importSettings.getProjectViewFile() != null;
     File projectViewFile = new File(importSettings.getProjectViewFile());
-    ProjectViewParser parser = new ProjectViewParser(context, workspacePathResolver);
+    ProjectViewParser parser = new ProjectViewParser(context, workspacePathResolver, parseCache);
     parser.parseProjectView(projectViewFile);
 
     boolean success = !context.hasErrors();
     if (success) {
       ProjectViewSet projectViewSet = parser.getResult();
+      if (isUnchanged(this.projectViewSet, projectViewSet)) {
+        // keep the existing instance, so structures derived from it remain valid
+        return this.projectViewSet;
+      }
       File file = getCacheFile(project, importSettings);
       try {
         SerializationUtil.saveToDisk(file, projectViewSet);
@@ -111,6 +118,30 @@ final class ProjectViewManagerImpl extends ProjectViewManager {
     return success ? projectViewSet : null;
   }
 
+  /**
+   * Returns true if the newly parsed project view set consists of the same parsed project view
+   * files, in the same order, as the old one.
+   */
+  private static boolean isUnchanged(@Nullable ProjectViewSet oldSet, ProjectViewSet newSet) {
+    if (oldSet == null) {
+      return false;
+    }
+    List<ProjectViewSet.ProjectViewFile> oldFiles = oldSet.getProjectViewFiles();
+    List<ProjectViewSet.ProjectViewFile> newFiles = newSet.getProjectViewFiles();
+    if (oldFiles.size() != newFiles.size()) {
+      return false;
+    }
+    for (int i = 0; i < oldFiles.size(); i++) {
+      ProjectViewSet.ProjectViewFile oldFile = oldFiles.get(i);
+      ProjectViewSet.ProjectViewFile newFile = newFiles.get(i);
+      if (oldFile.projectView != newFile.projectView
+          || !Objects.equals(oldFile.projectViewFile, newFile.projectViewFile)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private static File getCacheFile(Project project, BlazeImportSettings importSettings) {
     return new File(BlazeDataStorage.getProjectCacheDir(project, importSettings), CACHE_FILE_NAME);
   }
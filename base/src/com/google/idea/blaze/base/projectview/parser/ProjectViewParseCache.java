@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.projectview.parser;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.idea.blaze.base.projectview.ProjectView;
+import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolver;
+import java.io.File;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Remembers the parsed contents of each project view file, so that files which haven't changed
+ * since they were last parsed aren't parsed again. Entries are keyed by the hash of the file's
+ * contents.
+ */
+public final class ProjectViewParseCache {
+
+  /** A successfully parsed project view file. */
+  static final class Entry {
+    final HashCode contentHash;
+    final WorkspacePathResolver workspacePathResolver;
+    final ProjectView projectView;
+    /** The project view files imported by this one, in the order they're imported. */
+    final ImmutableList<File> imports;
+
+    Entry(
+        HashCode contentHash,
+        WorkspacePathResolver workspacePathResolver,
+        ProjectView projectView,
+        ImmutableList<File> imports) {
+      this.contentHash = contentHash;
+      this.workspacePathResolver = workspacePathResolver;
+      this.projectView = projectView;
+      this.imports = imports;
+    }
+  }
+
+  private final Map<File, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Returns the cached parse of the given file, or null if the file's contents have changed, or
+   * imports would now resolve differently.
+   */
+  @Nullable
+  Entry get(File file, HashCode contentHash, WorkspacePathResolver workspacePathResolver) {
+    Entry entry = entries.get(file);
+    if (entry == null
+        || !entry.contentHash.equals(contentHash)
+        || !Objects.equals(entry.workspacePathResolver, workspacePathResolver)) {
+      return null;
+    }
+    return entry;
+  }
+
+  void put(File file, Entry entry) {
+    entries.put(file, entry);
+  }
+
+  void remove(File file) {
+    entries.remove(file);
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+}
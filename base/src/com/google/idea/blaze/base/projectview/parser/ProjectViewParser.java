@@ -15,8 +15,12 @@
  */
 package com.google.idea.blaze.base.projectview.parser;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.idea.blaze.base.projectview.ProjectView;
 import com.google.idea.blaze.base.projectview.ProjectViewSet;
 import com.google.idea.blaze.base.projectview.ProjectViewStorageManager;
@@ -28,8 +32,10 @@ import com.google.idea.blaze.base.scope.output.IssueOutput;
 import com.google.idea.blaze.base.sync.workspace.WorkspacePathResolver;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 /** Parses and writes project views. */
 public class ProjectViewParser {
@@ -37,17 +43,36 @@ public class ProjectViewParser {
   private final BlazeContext context;
   private final WorkspacePathResolver workspacePathResolver;
   private final boolean recursive;
+  @Nullable private final ProjectViewParseCache parseCache;
 
   Set<File> encounteredProjectViewFiles = Sets.newHashSet();
   ImmutableList.Builder<ProjectViewSet.ProjectViewFile> projectViewFiles = ImmutableList.builder();
 
+  /** The files imported by the project view file currently being parsed. */
+  @Nullable private List<File> currentImports;
+
   public ProjectViewParser(BlazeContext context, WorkspacePathResolver workspacePathResolver) {
+    this(context, workspacePathResolver, null);
+  }
+
+  /**
+   * Creates a parser which reuses the parsed contents of unchanged project view files from the
+   * given cache, and updates the cache with any files it parses.
+   */
+  public ProjectViewParser(
+      BlazeContext context,
+      WorkspacePathResolver workspacePathResolver,
+      @Nullable ProjectViewParseCache parseCache) {
     this.context = context;
     this.workspacePathResolver = workspacePathResolver;
     this.recursive = true;
+    this.parseCache = parseCache;
   }
 
   public void parseProjectView(File projectViewFile) {
+    if (currentImports != null) {
+      currentImports.add(projectViewFile);
+    }
     if (!encounteredProjectViewFiles.add(projectViewFile)) {
       return;
     }
@@ -61,10 +86,48 @@ public class ProjectViewParser {
       IssueOutput.error(
               String.format("Could not load project view file: '%s'", projectViewFile.getPath()))
           .submit(context);
+      if (parseCache != null) {
+        parseCache.remove(projectViewFile);
+      }
       return;
     }
-    parseProjectView(
-        new ParseContext(context, workspacePathResolver, projectViewFile, projectViewText));
+    if (parseCache == null) {
+      parseProjectView(
+          new ParseContext(context, workspacePathResolver, projectViewFile, projectViewText));
+      return;
+    }
+    HashCode contentHash = Hashing.sha256().hashString(projectViewText, UTF_8);
+    List<File> parentImports = currentImports;
+    ProjectViewParseCache.Entry cached =
+        parseCache.get(projectViewFile, contentHash, workspacePathResolver);
+    if (cached != null) {
+      // imported files may have changed, even though this one hasn't
+      currentImports = null;
+      cached.imports.forEach(this::parseProjectView);
+      currentImports = parentImports;
+      projectViewFiles.add(
+          new ProjectViewSet.ProjectViewFile(cached.projectView, projectViewFile));
+      return;
+    }
+    List<File> imports = new ArrayList<>();
+    currentImports = imports;
+    ParseContext parseContext =
+        new ParseContext(context, workspacePathResolver, projectViewFile, projectViewText);
+    ProjectView projectView;
+    try {
+      projectView = parseProjectView(parseContext);
+    } finally {
+      currentImports = parentImports;
+    }
+    if (parseContext.hasIssues()) {
+      // keep reporting the file's issues until they're fixed
+      parseCache.remove(projectViewFile);
+    } else {
+      parseCache.put(
+          projectViewFile,
+          new ProjectViewParseCache.Entry(
+              contentHash, workspacePathResolver, projectView, ImmutableList.copyOf(imports)));
+    }
   }
 
   public void parseProjectView(String text) {
@@ -76,7 +139,7 @@ public class ProjectViewParser {
     parseProjectView(new ParseContext(context, workspacePathResolver, null, text));
   }
 
-  private void parseProjectView(ParseContext parseContext) {
+  private ProjectView parseProjectView(ParseContext parseContext) {
     ImmutableList.Builder<Section<?>> sections = ImmutableList.builder();
 
     List<SectionParser> sectionParsers = Sections.getParsers();
@@ -108,6 +171,7 @@ public class ProjectViewParser {
     ProjectView projectView = new ProjectView(sections.build());
     projectViewFiles.add(
         new ProjectViewSet.ProjectViewFile(projectView, parseContext.getProjectViewFile()));
+    return projectView;
   }
 
   /** Skips all lines until the next unindented, non-empty line. */
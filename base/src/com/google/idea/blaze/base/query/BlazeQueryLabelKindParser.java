@@ -20,11 +20,11 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 import com.google.common.collect.ImmutableList;
 import com.google.idea.blaze.base.async.process.LineProcessingOutputStream;
 import com.google.idea.blaze.base.dependencies.TargetInfo;
+import com.google.idea.blaze.base.ideinfo.ProjectDataInterner;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.TargetExpression;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * A {@link LineProcessingOutputStream.LineProcessor} which collects the blaze targets output by
@@ -43,35 +43,76 @@ public class BlazeQueryLabelKindParser implements LineProcessingOutputStream.Lin
     }
   }
 
-  private static final Pattern RULE_PATTERN = Pattern.compile("^([^\\s]*) rule ([^\\s]*)$");
+  /** Separates the rule type from the label, in lines of the form '[rule type] rule [label]'. */
+  private static final String RULE_SEPARATOR = " rule ";
 
-  private final ImmutableList.Builder<TargetInfo> outputList;
+  private final ImmutableList.Builder<TargetInfo> outputList = ImmutableList.builder();
   private final Predicate<RuleTypeAndLabel> targetFilter;
+  private final Consumer<TargetInfo> targetConsumer;
 
   /** @param targetFilter Ignore targets failing this predicate. */
   public BlazeQueryLabelKindParser(Predicate<RuleTypeAndLabel> targetFilter) {
-    this.outputList = ImmutableList.builder();
     this.targetFilter = targetFilter;
+    this.targetConsumer = outputList::add;
+  }
+
+  /**
+   * Passes each target to the consumer as soon as its line is output, rather than collecting them.
+   * The consumer is called on the thread writing the query output.
+   *
+   * @param targetFilter Ignore targets failing this predicate.
+   */
+  public BlazeQueryLabelKindParser(
+      Predicate<RuleTypeAndLabel> targetFilter, Consumer<TargetInfo> targetConsumer) {
+    this.targetFilter = targetFilter;
+    this.targetConsumer = targetConsumer;
   }
 
   @Override
   public boolean processLine(String line) {
-    Matcher match = RULE_PATTERN.matcher(line);
-    if (!match.find()) {
+    // equivalent to matching '^(\S*) rule (\S*)$', without the regex overhead
+    int separator = indexOfWhitespace(line, 0, line.length());
+    if (separator == -1 || !line.startsWith(RULE_SEPARATOR, separator)) {
+      return true;
+    }
+    int labelStart = separator + RULE_SEPARATOR.length();
+    if (indexOfWhitespace(line, labelStart, line.length()) != -1) {
       return true;
     }
-    String ruleType = match.group(1);
-    String labelString = match.group(2);
+    // rule types are heavily duplicated, so share a single instance of each
+    String ruleType = ProjectDataInterner.intern(line.substring(0, separator));
+    String labelString = line.substring(labelStart);
     if (targetFilter.test(new RuleTypeAndLabel(ruleType, labelString))) {
       Label label = Label.createIfValid(labelString);
       if (label != null) {
-        outputList.add(TargetInfo.builder(label, ruleType).build());
+        targetConsumer.accept(TargetInfo.builder(label, ruleType).build());
       }
     }
     return true;
   }
 
-  /** Returns all targets parsed to this point. */
+  /** Returns the index of the first whitespace character in the given range, or -1 if none. */
+  private static int indexOfWhitespace(String line, int start, int end) {
+    for (int i = start; i < end; i++) {
+      switch (line.charAt(i)) {
+        case ' ':
+        case '\t':
+        case '\n':
+        case '\u000B':
+        case '\f':
+        case '\r':
+          return i;
+        default:
+          break;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns all targets parsed to this point. Always empty if targets are being passed to a
+   * consumer.
+   */
   public ImmutableList<TargetInfo> getTargets() {
     return outputList.build();
   }
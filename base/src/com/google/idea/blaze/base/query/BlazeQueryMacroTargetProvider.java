@@ -15,63 +15,186 @@
  */
 package com.google.idea.blaze.base.query;
 
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Sets;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build.Target;
+import com.google.idea.blaze.base.async.process.DelimitedProtoOutputStream;
 import com.google.idea.blaze.base.async.process.ExternalTask;
 import com.google.idea.blaze.base.async.process.LineProcessingOutputStream;
 import com.google.idea.blaze.base.bazel.BuildSystemProvider;
+import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.TargetExpression;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.settings.Blaze;
+import com.google.idea.blaze.base.settings.BuildSystemName;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
-/** Uses 'blaze query' to find all targets in a single package generated by macros. */
+/** Uses 'blaze query' to find all targets in one or more packages generated by macros. */
 public class BlazeQueryMacroTargetProvider implements MacroTargetProvider {
 
   private final BoolExperiment enabled =
       new BoolExperiment("blaze.query.macro.target.provider.enabled", true);
 
+  private static final BoolExperiment streamedProtoOutput =
+      new BoolExperiment("blaze.query.macro.target.provider.streamed.proto", true);
+
   private static final Logger logger = Logger.getInstance(BlazeQueryMacroTargetProvider.class);
 
+  /**
+   * Matches errors naming a package which couldn't be loaded, e.g. "no such package 'foo/bar'" or
+   * "package contains errors: foo/bar".
+   */
+  private static final Pattern PACKAGE_ERROR =
+      Pattern.compile(
+          "(?:no such package|error loading package) '(?://)?([^'@:]*)'"
+              + "|package contains errors: (?://)?([^\\s@:]+)");
+
+  /** Matches errors located in a BUILD file, e.g. "ERROR: /path/to/foo/BUILD:12:1: ...". */
+  private static final Pattern BUILD_FILE_ERROR =
+      Pattern.compile("^ERROR: (/\\S+)/BUILD(?:\\.bazel)?:\\d+");
+
   @Nullable
   @Override
   public ImmutableList<GeneratedTarget> doFindTargets(Project project, Label buildPackage) {
     if (!enabled.getValue()) {
       return null;
     }
-    return runQuery(project, buildPackage);
+    ImmutableMap<Label, ImmutableList<GeneratedTarget>> targets =
+        runQuery(project, ImmutableList.of(buildPackage));
+    return targets != null ? targets.get(buildPackage) : null;
+  }
+
+  /** Queries all the given packages at once, rather than running a separate query for each. */
+  @Nullable
+  @Override
+  public ImmutableMap<Label, ImmutableList<GeneratedTarget>> doFindTargets(
+      Project project, ImmutableList<Label> buildPackages) {
+    if (!enabled.getValue()) {
+      return null;
+    }
+    return runQuery(project, buildPackages);
+  }
+
+  /**
+   * Returns the generated targets of each of the given packages, or null if the query failed.
+   *
+   * <p>Packages blaze reported loading errors for are omitted, so a broken package isn't recorded
+   * as having no generated targets.
+   */
+  @Nullable
+  private static ImmutableMap<Label, ImmutableList<GeneratedTarget>> runQuery(
+      Project project, ImmutableList<Label> labels) {
+    QueryResult result = queryGeneratedTargets(project, getPackagesExpression(labels));
+    if (result == null) {
+      return null;
+    }
+    return groupByPackage(labels, result.targets, result.failedPackages);
+  }
+
+  /**
+   * Groups the queried targets by package, omitting the packages which failed to load. Every other
+   * package is included, even if it has no generated targets.
+   */
+  @VisibleForTesting
+  static ImmutableMap<Label, ImmutableList<GeneratedTarget>> groupByPackage(
+      ImmutableList<Label> labels,
+      ImmutableList<GeneratedTarget> targets,
+      ImmutableSet<WorkspacePath> failedPackages) {
+    ImmutableListMultimap<WorkspacePath, GeneratedTarget> targetsByPackage =
+        Multimaps.index(targets, t -> t.label.blazePackage());
+    return labels.stream()
+        .distinct()
+        .filter(l -> !failedPackages.contains(l.blazePackage()))
+        .collect(toImmutableMap(l -> l, l -> targetsByPackage.get(l.blazePackage())));
+  }
+
+  /**
+   * Returns the package named by a blaze error message, or null if the message doesn't refer to a
+   * package in the workspace.
+   */
+  @Nullable
+  @VisibleForTesting
+  static WorkspacePath parseFailedPackage(WorkspaceRoot workspaceRoot, String line) {
+    Matcher matcher = PACKAGE_ERROR.matcher(line);
+    if (matcher.find()) {
+      String pkg = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+      return WorkspacePath.createIfValid(pkg);
+    }
+    matcher = BUILD_FILE_ERROR.matcher(line);
+    if (matcher.find()) {
+      return workspaceRoot.workspacePathForSafe(new File(matcher.group(1)));
+    }
+    return null;
+  }
+
+  /** Returns the union of all targets in each of the given packages, as a query expression. */
+  private static String getPackagesExpression(ImmutableList<Label> labels) {
+    return labels.stream()
+        .map(l -> TargetExpression.allFromPackageNonRecursive(l.blazePackage()).toString())
+        .distinct()
+        .collect(joining(" + "));
   }
 
   @Nullable
-  private static ImmutableList<GeneratedTarget> runQuery(Project project, Label label) {
+  private static QueryResult queryGeneratedTargets(Project project, String packages) {
     String outputBase = BlazeQueryOutputBaseProvider.getInstance(project).getOutputBaseFlag();
     if (outputBase == null) {
       // since this is run automatically in the background, don't run without a custom output base,
       // otherwise we'll be monopolizing the primary blaze server
       return null;
     }
-    String query =
-        String.format(
-            "attr('generator_function', '^.+$', %s)",
-            TargetExpression.allFromPackageNonRecursive(label.blazePackage()));
+    String query = String.format("attr('generator_function', '^.+$', %s)", packages);
 
-    // would be nicer to use the Process inputStream directly, rather having two round trips...
-    ByteArrayOutputStream out = new ByteArrayOutputStream(/* size= */ 4096);
+    WorkspaceRoot workspaceRoot = WorkspaceRoot.fromProject(project);
+    Set<WorkspacePath> failedPackages = Sets.newConcurrentHashSet();
+    boolean streamed = useStreamedProto(project);
+    ImmutableList.Builder<GeneratedTarget> targets = ImmutableList.builder();
+    DelimitedProtoOutputStream<Target> streamedOut =
+        streamed ? BlazeQueryProtoParser.streamedProtoOutputStream(targets::add) : null;
+    ByteArrayOutputStream out = streamed ? null : new ByteArrayOutputStream(/* size= */ 4096);
+    OutputStream stdout = streamed ? streamedOut : out;
     int retVal =
-        ExternalTask.builder(WorkspaceRoot.fromProject(project))
-            .args(getBinaryPath(project), outputBase, "query", "--output=proto", query)
-            .stdout(out)
+        ExternalTask.builder(workspaceRoot)
+            .args(
+                getBinaryPath(project),
+                outputBase,
+                "query",
+                // don't let a single broken package hide the targets of all the others
+                "--keep_going",
+                streamed ? "--output=streamed_proto" : "--output=proto",
+                query)
+            .stdout(stdout)
             .stderr(
                 LineProcessingOutputStream.of(
                     line -> {
                       // errors are expected, so limit logging to info level
                       logger.info(line);
+                      WorkspacePath failed = parseFailedPackage(workspaceRoot, line);
+                      if (failed != null) {
+                        failedPackages.add(failed);
+                      }
                       return true;
                     }))
             .build()
@@ -80,14 +203,52 @@ public class BlazeQueryMacroTargetProvider implements MacroTargetProvider {
       // exit code of 3 indicates non-fatal error (for example, a non-existent directory)
       return null;
     }
+    if (streamed) {
+      // targets were decoded as blaze wrote them; the task has already closed the stream
+      if (streamedOut.getError() != null) {
+        logger.warn("Couldn't parse blaze query proto output", streamedOut.getError());
+        return null;
+      }
+      return new QueryResult(targets.build(), ImmutableSet.copyOf(failedPackages));
+    }
     try {
-      return BlazeQueryProtoParser.parseProtoOutput(new ByteArrayInputStream(out.toByteArray()));
+      return new QueryResult(
+          BlazeQueryProtoParser.parseProtoOutput(new ByteArrayInputStream(out.toByteArray())),
+          ImmutableSet.copyOf(failedPackages));
     } catch (IOException e) {
       logger.warn("Couldn't parse blaze query proto output", e);
       return null;
     }
   }
 
+  /**
+   * Whether to request '--output=streamed_proto', which is decoded incrementally. Bazel only
+   * supports it from 4.0 onwards, so older or unknown bazel versions use '--output=proto'.
+   */
+  private static boolean useStreamedProto(Project project) {
+    if (!streamedProtoOutput.getValue()) {
+      return false;
+    }
+    if (Blaze.getBuildSystemName(project) == BuildSystemName.Blaze) {
+      return true;
+    }
+    BlazeProjectData projectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    return projectData != null && projectData.getBlazeVersionData().bazelIsAtLeastVersion(4, 0, 0);
+  }
+
+  /** The targets output by a query, and the packages which failed to load. */
+  private static class QueryResult {
+    final ImmutableList<GeneratedTarget> targets;
+    final ImmutableSet<WorkspacePath> failedPackages;
+
+    QueryResult(
+        ImmutableList<GeneratedTarget> targets, ImmutableSet<WorkspacePath> failedPackages) {
+      this.targets = targets;
+      this.failedPackages = failedPackages;
+    }
+  }
+
   private static String getBinaryPath(Project project) {
     BuildSystemProvider buildSystemProvider = Blaze.getBuildSystemProvider(project);
     return buildSystemProvider.getBinaryPath(project);
@@ -22,16 +22,19 @@ import com.google.devtools.build.lib.query2.proto.proto2api.Build.Attribute;
 import com.google.devtools.build.lib.query2.proto.proto2api.Build.QueryResult;
 import com.google.devtools.build.lib.query2.proto.proto2api.Build.Rule;
 import com.google.devtools.build.lib.query2.proto.proto2api.Build.Target;
+import com.google.idea.blaze.base.async.process.DelimitedProtoOutputStream;
+import com.google.idea.blaze.base.ideinfo.ProjectDataInterner;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.query.GeneratedTarget.MacroData;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Objects;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
 
 /**
  * A helper class which parses {@link GeneratedTarget} from targets output by a 'blaze query
- * --output=proto' command.
+ * --output=proto' or 'blaze query --output=streamed_proto' command.
  *
  * <p>Only handles rule query results containing the 'generator_location' and 'generator_function'
  * attributes.
@@ -49,6 +52,22 @@ public final class BlazeQueryProtoParser {
         .collect(toImmutableList());
   }
 
+  /**
+   * Returns an output stream which parses 'blaze query --output=streamed_proto' output as it's
+   * written, passing each {@link GeneratedTarget} to the consumer on the writing thread.
+   */
+  public static DelimitedProtoOutputStream<Target> streamedProtoOutputStream(
+      Consumer<GeneratedTarget> consumer) {
+    return DelimitedProtoOutputStream.of(
+        Target.parser(),
+        target -> {
+          GeneratedTarget generatedTarget = parseTarget(target);
+          if (generatedTarget != null) {
+            consumer.accept(generatedTarget);
+          }
+        });
+  }
+
   @Nullable
   private static GeneratedTarget parseTarget(Target message) {
     return message.hasRule() ? parseRule(message.getRule()) : null;
@@ -60,7 +79,7 @@ public final class BlazeQueryProtoParser {
     if (macro == null) {
       return null;
     }
-    String ruleType = message.getRuleClass();
+    String ruleType = ProjectDataInterner.intern(message.getRuleClass());
     Label label = Label.createIfValid(message.getName());
     return label == null ? null : new GeneratedTarget(ruleType, label, macro);
   }
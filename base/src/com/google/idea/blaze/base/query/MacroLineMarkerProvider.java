@@ -16,43 +16,62 @@
 package com.google.idea.blaze.base.query;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.joining;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile.BlazeFileType;
 import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
 import com.google.idea.blaze.base.lang.buildfile.psi.LoadStatement;
 import com.google.idea.blaze.base.lang.buildfile.psi.ReferenceExpression;
+import com.google.idea.blaze.base.lang.buildfile.psi.StringLiteral;
 import com.google.idea.blaze.base.lang.buildfile.psi.util.PsiUtils;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.common.experiments.BoolExperiment;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
 import com.intellij.codeInsight.daemon.LineMarkerInfo;
 import com.intellij.codeInsight.daemon.LineMarkerProvider;
 import com.intellij.icons.AllIcons;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.components.ServiceManager;
-import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.markup.GutterIconRenderer;
+import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.LowMemoryWatcher;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiErrorElement;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
 import com.intellij.psi.impl.source.tree.LeafPsiElement;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.concurrency.SequentialTaskExecutor;
+import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
-import org.jetbrains.ide.PooledThreadExecutor;
 
 /** A line marker provider for BUILD files, showing the list of targets generated by a macro. */
 public class MacroLineMarkerProvider implements LineMarkerProvider {
@@ -160,14 +179,14 @@ public class MacroLineMarkerProvider implements LineMarkerProvider {
     return file instanceof BuildFile ? (BuildFile) file : null;
   }
 
-  private static class FileData {
+  static class FileData {
     private final ImmutableList<GeneratedTarget> targets;
-    /** The time this data was calculated. Used for per-file query rate limiting. */
-    private final long queryTimeMillis;
+    /** The version of the BUILD file and its loaded .bzl files when these were queried. */
+    private final FileVersion version;
 
-    private FileData(ImmutableList<GeneratedTarget> targets, long queryTimeMillis) {
+    private FileData(ImmutableList<GeneratedTarget> targets, FileVersion version) {
       this.targets = targets;
-      this.queryTimeMillis = queryTimeMillis;
+      this.version = version;
     }
 
     /**
@@ -212,72 +231,278 @@ public class MacroLineMarkerProvider implements LineMarkerProvider {
     }
   }
 
+  /**
+   * The saved state of a BUILD file and the .bzl files it directly loads: their modification
+   * stamps, and a hash of their contents.
+   */
+  private static class FileVersion {
+    private final ImmutableMap<VirtualFile, Long> stamps;
+    private final HashCode contentHash;
+
+    private FileVersion(ImmutableMap<VirtualFile, Long> stamps, HashCode contentHash) {
+      this.stamps = stamps;
+      this.contentHash = contentHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof FileVersion)) {
+        return false;
+      }
+      FileVersion that = (FileVersion) o;
+      return stamps.equals(that.stamps) && contentHash.equals(that.contentHash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(stamps, contentHash);
+    }
+  }
+
+  /**
+   * Finds the targets generated by macros in BUILD files in the background, querying all
+   * outstanding BUILD files (including any other open BUILD files) in a single batch.
+   *
+   * <p>Results are cached against the saved contents of each BUILD file and the .bzl files it
+   * loads. These are only re-read and hashed when one of the files' modification stamps changes.
+   * Packages which fail to load are recorded the same way, so they aren't queried again until they
+   * change. Line markers are recalculated once new results arrive.
+   */
   static class FileDataProvider {
     static FileDataProvider getInstance(Project project) {
       return ServiceManager.getService(project, FileDataProvider.class);
     }
 
-    private static final Logger logger = Logger.getInstance(FileDataProvider.class);
-    private static final Duration RECOMPUTE_TIME = Duration.ofSeconds(15);
-    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    /** How long to wait for other BUILD files to be requested before running a query. */
+    private static final Duration BATCH_DELAY = Duration.ofMillis(300);
 
     private final ConcurrentMap<Label, FileData> cache = new ConcurrentHashMap<>();
+    /** BUILD files with a query outstanding, and the version each was requested for. */
+    private final ConcurrentMap<Label, FileVersion> requested = new ConcurrentHashMap<>();
+    /** BUILD files waiting for the next batched query. */
+    private final ConcurrentMap<Label, VirtualFile> queued = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean batchScheduled = new AtomicBoolean(false);
 
     private final Project project;
+    /** Runs each batch, after giving other BUILD files a chance to be requested. */
+    private final Executor batchExecutor;
+    /** Recalculates the line markers of BUILD files whose targets were updated. */
+    private final Consumer<List<VirtualFile>> highlightingRestarter;
 
     private FileDataProvider(Project project) {
       this.project = project;
+      ExecutorService queryExecutor =
+          SequentialTaskExecutor.createSequentialApplicationPoolExecutor("MacroTargetQuery");
+      this.batchExecutor =
+          batch ->
+              AppExecutorUtil.getAppScheduledExecutorService()
+                  .schedule(
+                      () -> queryExecutor.execute(batch),
+                      BATCH_DELAY.toMillis(),
+                      TimeUnit.MILLISECONDS);
+      this.highlightingRestarter =
+          files ->
+              ApplicationManager.getApplication()
+                  .invokeLater(() -> restartHighlighting(files), project.getDisposed());
       LowMemoryWatcher.register(cache::clear, project);
     }
 
+    @VisibleForTesting
+    FileDataProvider(
+        Project project,
+        Executor batchExecutor,
+        Consumer<List<VirtualFile>> highlightingRestarter) {
+      this.project = project;
+      this.batchExecutor = batchExecutor;
+      this.highlightingRestarter = highlightingRestarter;
+    }
+
+    /**
+     * Returns the cached targets for the given BUILD file, or null if there are none yet.
+     *
+     * <p>Never blocks on blaze. If the cached targets are missing or out of date, queues a query
+     * and returns the stale targets in the meantime.
+     */
     @Nullable
     FileData getFileData(BuildFile buildFile) {
-      if (!hasLoadStatement(buildFile) || hasSyntaxError(buildFile)) {
+      Label label = getQueryableLabel(buildFile);
+      if (label == null) {
         return null;
       }
-      Label label = buildFile.getBuildLabel();
-      if (label == null) {
+      FileVersion version = getVersionToQuery(label, buildFile);
+      if (version != null
+          && enqueue(label, buildFile.getVirtualFile(), version)
+          && batchScheduled.compareAndSet(false, true)) {
+        batchExecutor.execute(this::runBatch);
+      }
+      return cache.get(label);
+    }
+
+    /**
+     * Returns the current version of the BUILD file if it needs to be queried, or null if the
+     * cached targets are up to date or a query for this version is already outstanding.
+     */
+    @Nullable
+    private FileVersion getVersionToQuery(Label label, BuildFile buildFile) {
+      ImmutableMap<VirtualFile, Long> stamps = getModificationStamps(buildFile);
+      FileData data = cache.get(label);
+      if (data != null && data.version.stamps.equals(stamps)) {
+        return null;
+      }
+      FileVersion pending = requested.get(label);
+      if (pending != null && pending.stamps.equals(stamps)) {
         return null;
       }
-      return cache.compute(
-          label,
-          (f, oldData) -> {
-            if (oldData != null && !recomputeData(oldData)) {
-              return oldData;
-            }
-            FileData newData = getDataWithTimeout(f);
-            return newData != null ? newData : oldData;
-          });
+      FileVersion version = new FileVersion(stamps, getContentHash(stamps.keySet()));
+      if (data != null && data.version.contentHash.equals(version.contentHash)) {
+        // the files were saved without changing their contents, so the cached targets still apply
+        cache.replace(label, data, new FileData(data.targets, version));
+        return null;
+      }
+      return version;
+    }
+
+    /** Returns false if the BUILD file has already been requested with this version. */
+    private boolean enqueue(Label label, VirtualFile buildFile, FileVersion version) {
+      if (version.equals(requested.put(label, version))) {
+        return false;
+      }
+      queued.put(label, buildFile);
+      return true;
+    }
+
+    private void runBatch() {
+      batchScheduled.set(false);
+      if (project.isDisposed()) {
+        return;
+      }
+      ReadAction.run(this::enqueueOpenBuildFiles);
+      Map<Label, VirtualFile> batch = new HashMap<>();
+      Map<Label, FileVersion> versions = new HashMap<>();
+      for (Label label : queued.keySet()) {
+        VirtualFile file = queued.remove(label);
+        FileVersion version = requested.get(label);
+        if (file != null && version != null) {
+          batch.put(label, file);
+          versions.put(label, version);
+        }
+      }
+      if (batch.isEmpty()) {
+        return;
+      }
+      List<VirtualFile> updated = new ArrayList<>();
+      try {
+        ImmutableMap<Label, ImmutableList<GeneratedTarget>> results =
+            MacroTargetProvider.findTargetsGeneratedByMacros(
+                project, ImmutableList.copyOf(batch.keySet()));
+        batch.forEach(
+            (label, file) -> {
+              ImmutableList<GeneratedTarget> targets = results.get(label);
+              if (targets != null) {
+                cache.put(label, new FileData(targets, versions.get(label)));
+                updated.add(file);
+                return;
+              }
+              // the package couldn't be loaded. Record that against this version, keeping any
+              // previous targets, so it's only queried again once it changes
+              FileData previous = cache.get(label);
+              cache.put(
+                  label,
+                  new FileData(
+                      previous != null ? previous.targets : ImmutableList.of(),
+                      versions.get(label)));
+            });
+      } finally {
+        // if the query threw, the BUILD files will be requested again when they're next highlighted
+        versions.forEach(requested::remove);
+      }
+      if (!updated.isEmpty()) {
+        highlightingRestarter.accept(updated);
+      }
+    }
+
+    /** Adds open BUILD files without up-to-date results to the batch, so they're ready if shown. */
+    private void enqueueOpenBuildFiles() {
+      PsiManager psiManager = PsiManager.getInstance(project);
+      for (VirtualFile file : FileEditorManager.getInstance(project).getOpenFiles()) {
+        PsiFile psiFile = file.isValid() ? psiManager.findFile(file) : null;
+        if (!(psiFile instanceof BuildFile)) {
+          continue;
+        }
+        BuildFile buildFile = (BuildFile) psiFile;
+        Label label = getQueryableLabel(buildFile);
+        if (label == null) {
+          continue;
+        }
+        FileVersion version = getVersionToQuery(label, buildFile);
+        if (version != null) {
+          enqueue(label, file, version);
+        }
+      }
     }
 
+    private void restartHighlighting(List<VirtualFile> files) {
+      PsiManager psiManager = PsiManager.getInstance(project);
+      DaemonCodeAnalyzer daemonCodeAnalyzer = DaemonCodeAnalyzer.getInstance(project);
+      for (VirtualFile file : files) {
+        PsiFile psiFile = file.isValid() ? psiManager.findFile(file) : null;
+        if (psiFile != null) {
+          daemonCodeAnalyzer.restart(psiFile);
+        }
+      }
+    }
+
+    /** Returns the label of the given BUILD file, or null if there's no point querying it. */
     @Nullable
-    private FileData getDataWithTimeout(Label buildLabel) {
-      Future<ImmutableList<GeneratedTarget>> future =
-          PooledThreadExecutor.INSTANCE.submit(
-              () -> MacroTargetProvider.findTargetsGeneratedByMacros(project, buildLabel));
-      long startTimeMillis = System.currentTimeMillis();
-      while (true) {
-        ProgressManager.checkCanceled();
-        try {
-          ImmutableList<GeneratedTarget> targets = future.get(50, TimeUnit.MILLISECONDS);
-          return targets.isEmpty() ? null : new FileData(targets, startTimeMillis);
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-          return null;
-        } catch (ExecutionException e) {
-          logger.error(e);
-          return null;
-        } catch (TimeoutException e) {
-          if (System.currentTimeMillis() - startTimeMillis > TIMEOUT.toMillis()) {
-            logger.debug("Macro expansion query timed out", e);
-            return null;
-          }
+    private static Label getQueryableLabel(BuildFile buildFile) {
+      if (buildFile.getBlazeFileType() != BlazeFileType.BuildPackage
+          || buildFile.getVirtualFile() == null
+          || !hasLoadStatement(buildFile)
+          || hasSyntaxError(buildFile)) {
+        return null;
+      }
+      return buildFile.getBuildLabel();
+    }
+
+    /**
+     * Returns the modification stamps of the BUILD file and each .bzl file it directly loads, which
+     * change whenever a new version of the file is saved.
+     */
+    private static ImmutableMap<VirtualFile, Long> getModificationStamps(BuildFile buildFile) {
+      Map<VirtualFile, Long> stamps = new LinkedHashMap<>();
+      VirtualFile file = buildFile.getVirtualFile();
+      stamps.put(file, file.getModificationStamp());
+      for (LoadStatement load : buildFile.findChildrenByClass(LoadStatement.class)) {
+        StringLiteral importElement = load.getImportPsiElement();
+        PsiElement loaded = importElement != null ? importElement.getReferencedElement() : null;
+        VirtualFile loadedFile =
+            loaded instanceof PsiFile ? ((PsiFile) loaded).getVirtualFile() : null;
+        if (loadedFile != null) {
+          stamps.put(loadedFile, loadedFile.getModificationStamp());
         }
       }
+      return ImmutableMap.copyOf(stamps);
     }
 
-    private static boolean recomputeData(FileData data) {
-      return System.currentTimeMillis() - data.queryTimeMillis > RECOMPUTE_TIME.toMillis();
+    /**
+     * Hashes the paths and saved contents of the given BUILD and .bzl files, which is what 'blaze
+     * query' sees.
+     */
+    private static HashCode getContentHash(Collection<VirtualFile> files) {
+      Hasher hasher = Hashing.sha256().newHasher();
+      for (VirtualFile file : files) {
+        hasher.putString(file.getPath(), UTF_8);
+        try {
+          hasher.putBytes(file.contentsToByteArray());
+        } catch (IOException e) {
+          hasher.putLong(file.getModificationStamp());
+        }
+      }
+      return hasher.hash();
     }
 
     private static boolean hasLoadStatement(BuildFile file) {
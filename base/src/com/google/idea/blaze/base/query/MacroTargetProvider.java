@@ -15,11 +15,17 @@
  */
 package com.google.idea.blaze.base.query;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.intellij.openapi.extensions.ExtensionPointName;
 import com.intellij.openapi.project.Project;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import javax.annotation.Nullable;
 
@@ -44,7 +50,54 @@ public interface MacroTargetProvider {
         .orElse(ImmutableList.of());
   }
 
+  /**
+   * Synchronously queries the targets generated by macros in each of the given packages, batching
+   * the queries where the providers support it.
+   *
+   * <p>Each package is handled by the first provider able to handle it. Packages which no provider
+   * could handle are omitted from the results.
+   */
+  static ImmutableMap<Label, ImmutableList<GeneratedTarget>> findTargetsGeneratedByMacros(
+      Project project, ImmutableList<Label> buildPackages) {
+    Map<Label, ImmutableList<GeneratedTarget>> results = new HashMap<>();
+    for (MacroTargetProvider provider : EP_NAME.getExtensions()) {
+      ImmutableList<Label> remaining =
+          buildPackages.stream().filter(p -> !results.containsKey(p)).collect(toImmutableList());
+      if (remaining.isEmpty()) {
+        break;
+      }
+      ImmutableMap<Label, ImmutableList<GeneratedTarget>> targets =
+          provider.doFindTargets(project, remaining);
+      if (targets != null) {
+        results.putAll(targets);
+      }
+    }
+    return ImmutableMap.copyOf(results);
+  }
+
   /** Returns null if this provider isn't able to handle the given package. */
   @Nullable
   ImmutableList<GeneratedTarget> doFindTargets(Project project, Label buildPackage);
+
+  /**
+   * Returns the generated targets for each of the given packages this provider is able to handle,
+   * or null if it can't handle any of them.
+   *
+   * <p>By default queries each package separately. Providers which can query several packages at
+   * once should override this.
+   */
+  @Nullable
+  default ImmutableMap<Label, ImmutableList<GeneratedTarget>> doFindTargets(
+      Project project, ImmutableList<Label> buildPackages) {
+    ImmutableMap.Builder<Label, ImmutableList<GeneratedTarget>> results = ImmutableMap.builder();
+    boolean handled = false;
+    for (Label buildPackage : ImmutableSet.copyOf(buildPackages)) {
+      ImmutableList<GeneratedTarget> targets = doFindTargets(project, buildPackage);
+      if (targets != null) {
+        results.put(buildPackage, targets);
+        handled = true;
+      }
+    }
+    return handled ? results.build() : null;
+  }
 }
@@ -17,93 +17,86 @@ package com.google.idea.blaze.base.run.smrunner;
 
 import static java.util.stream.Collectors.joining;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import javax.annotation.Nullable;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.annotation.XmlAnyElement;
-import javax.xml.bind.annotation.XmlAttribute;
-import javax.xml.bind.annotation.XmlElement;
-import javax.xml.bind.annotation.XmlMixed;
-import javax.xml.bind.annotation.XmlRootElement;
-
-/** Used to parse the test.xml generated by the blaze/bazel testing framework. */
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Used to parse the test.xml generated by the blaze/bazel testing framework.
+ *
+ * <p>The XML is read in a single streaming pass, skipping elements we don't use, and truncating
+ * very large system-out and system-err blocks.
+ */
 public class BlazeXmlSchema {
 
-  private static final JAXBContext CONTEXT;
+  /** Characters of system-out or system-err output beyond this are dropped. */
+  private static final int MAX_OUTPUT_LENGTH = 1 << 20;
 
-  static {
-    try {
-      CONTEXT = JAXBContext.newInstance(TestSuite.class, TestSuites.class);
-    } catch (JAXBException e) {
-      throw new RuntimeException(e);
-    }
+  private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY =
+      ThreadLocal.withInitial(BlazeXmlSchema::createInputFactory);
+
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
   }
 
   public static TestSuite parse(InputStream input) {
-    try {
-      Object parsed = CONTEXT.createUnmarshaller().unmarshal(input);
-      return parsed instanceof TestSuites
-          ? ((TestSuites) parsed).convertToTestSuite()
-          : (TestSuite) parsed;
-
-    } catch (JAXBException e) {
-      throw new RuntimeException("Failed to parse test XML", e);
-    }
+    return parse(input, MAX_OUTPUT_LENGTH);
   }
 
-  // optional wrapping XML element. Some test runners don't include it.
-  @XmlRootElement(name = "testsuites")
-  static class TestSuites {
-    @XmlElement(name = "testsuite")
-    List<TestSuite> testSuites = Lists.newArrayList();
-
-    TestSuite convertToTestSuite() {
-      TestSuite suite = new TestSuite();
-      suite.testSuites.addAll(testSuites);
-      return suite;
+  @VisibleForTesting
+  static TestSuite parse(InputStream input, int maxOutputLength) {
+    XMLStreamReader reader = null;
+    try {
+      reader = INPUT_FACTORY.get().createXMLStreamReader(input);
+      reader.nextTag();
+      return new StreamParser(reader, maxOutputLength).readRoot();
+    } catch (XMLStreamException | RuntimeException e) {
+      throw new RuntimeException("Failed to parse test XML", e);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          // ignore
+        }
+      }
     }
   }
 
   /** XML output by blaze test runners. */
-  @XmlRootElement(name = "testsuite")
   public static class TestSuite {
-    @XmlAttribute public String name;
-    @XmlAttribute public String classname;
-    @XmlAttribute public int tests;
-    @XmlAttribute public int failures;
-    @XmlAttribute public int errors;
-    @XmlAttribute public int skipped;
-    @XmlAttribute public int disabled;
-    @XmlAttribute public double time;
-
-    @XmlElement(name = "system-out")
-    public String sysOut;
+    public String name;
+    public String classname;
+    public int tests;
+    public int failures;
+    public int errors;
+    public int skipped;
+    public int disabled;
+    public double time;
 
-    @XmlElement(name = "system-err")
+    public String sysOut;
     public String sysErr;
 
-    @XmlElement(name = "error", type = ErrorOrFailureOrSkipped.class)
     ErrorOrFailureOrSkipped error;
-
-    @XmlElement(name = "failure", type = ErrorOrFailureOrSkipped.class)
     ErrorOrFailureOrSkipped failure;
 
-    @XmlElement(name = "testsuite")
     public List<TestSuite> testSuites = Lists.newArrayList();
-
-    @XmlElement(name = "testdecorator")
     List<TestSuite> testDecorators = Lists.newArrayList();
-
-    @XmlElement(name = "testcase")
     public List<TestCase> testCases = Lists.newArrayList();
 
     /** Used to merge test suites from a single target, split across multiple shards */
-    private void addSuite(TestSuite suite) {
+    void addSuite(TestSuite suite) {
       for (TestSuite existing : testSuites) {
         if (Objects.equals(existing.name, suite.name)) {
           existing.mergeWithSuite(suite);
@@ -128,36 +121,19 @@ public class BlazeXmlSchema {
     }
   }
 
-  /** Used to merge test suites from a single target, split across multiple shards */
-  static TestSuite mergeSuites(List<TestSuite> suites) {
-    TestSuite outer = new TestSuite();
-    for (TestSuite suite : suites) {
-      outer.addSuite(suite);
-    }
-    return outer;
-  }
-
   /** Individual test case XML output by blaze test runners. */
   public static class TestCase {
-    @XmlAttribute public String name;
-    @XmlAttribute public String classname;
-    @XmlAttribute public String status;
-    @XmlAttribute public String result;
-    @XmlAttribute public String time;
+    public String name;
+    public String classname;
+    public String status;
+    public String result;
+    public String time;
 
-    @XmlElement(name = "system-out")
     String sysOut;
-
-    @XmlElement(name = "system-err")
     String sysErr;
 
-    @XmlElement(name = "error", type = ErrorOrFailureOrSkipped.class)
     public List<ErrorOrFailureOrSkipped> errors = Lists.newArrayList();
-
-    @XmlElement(name = "failure", type = ErrorOrFailureOrSkipped.class)
     public List<ErrorOrFailureOrSkipped> failures = Lists.newArrayList();
-
-    @XmlElement(name = "skipped", type = ErrorOrFailureOrSkipped.class)
     public ErrorOrFailureOrSkipped skipped;
   }
 
@@ -168,30 +144,269 @@ public class BlazeXmlSchema {
     }
     return err.content.stream()
         .filter(Objects::nonNull)
-        .map(Object::toString)
         .map(String::trim)
         .filter(s -> !s.isEmpty())
         .collect(joining("\n"));
   }
 
   static class ErrorOrFailureOrSkipped {
-    // Can't use @XmlValue with @XmlElement
-    @XmlMixed
-    @XmlAnyElement(lax = true)
-    private List<Object> content;
+    /** The text directly inside this element, split by any child elements. */
+    @Nullable private List<String> content;
 
-    @XmlAttribute String message;
-    @XmlAttribute String type;
+    String message;
+    String type;
 
-    @XmlElement(name = "expected", type = Values.class)
     Values expected;
-
-    @XmlElement(name = "actual", type = Values.class)
     Values actual;
   }
 
   static class Values {
-    @XmlElement(name = "value", type = String.class)
     List<String> values = new ArrayList<>();
   }
+
+  /** Reads test XML elements into their corresponding objects. */
+  private static class StreamParser {
+    private final XMLStreamReader reader;
+    private final int maxOutputLength;
+
+    StreamParser(XMLStreamReader reader, int maxOutputLength) {
+      this.reader = reader;
+      this.maxOutputLength = maxOutputLength;
+    }
+
+    /** Handles a child element, consuming it up to and including its end tag. */
+    private interface ChildHandler {
+      void handle(String name) throws XMLStreamException;
+    }
+
+    TestSuite readRoot() throws XMLStreamException {
+      String root = reader.getLocalName();
+      if (root.equals("testsuite")) {
+        return readSuite();
+      }
+      // optional wrapping XML element. Some test runners don't include it.
+      if (root.equals("testsuites")) {
+        TestSuite suite = new TestSuite();
+        forEachChild(
+            child -> {
+              if (child.equals("testsuite")) {
+                suite.testSuites.add(readSuite());
+              } else {
+                skipElement();
+              }
+            });
+        return suite;
+      }
+      throw new XMLStreamException("Unexpected root element: " + root, reader.getLocation());
+    }
+
+    private TestSuite readSuite() throws XMLStreamException {
+      TestSuite suite = new TestSuite();
+      suite.name = reader.getAttributeValue(null, "name");
+      suite.classname = reader.getAttributeValue(null, "classname");
+      suite.tests = intAttribute("tests");
+      suite.failures = intAttribute("failures");
+      suite.errors = intAttribute("errors");
+      suite.skipped = intAttribute("skipped");
+      suite.disabled = intAttribute("disabled");
+      suite.time = doubleAttribute("time");
+      forEachChild(
+          child -> {
+            switch (child) {
+              case "testsuite":
+                suite.testSuites.add(readSuite());
+                break;
+              case "testdecorator":
+                suite.testDecorators.add(readSuite());
+                break;
+              case "testcase":
+                suite.testCases.add(readTestCase());
+                break;
+              case "system-out":
+                suite.sysOut = readText(maxOutputLength);
+                break;
+              case "system-err":
+                suite.sysErr = readText(maxOutputLength);
+                break;
+              case "error":
+                suite.error = readError();
+                break;
+              case "failure":
+                suite.failure = readError();
+                break;
+              default:
+                skipElement();
+            }
+          });
+      return suite;
+    }
+
+    private TestCase readTestCase() throws XMLStreamException {
+      TestCase test = new TestCase();
+      test.name = reader.getAttributeValue(null, "name");
+      test.classname = reader.getAttributeValue(null, "classname");
+      test.status = reader.getAttributeValue(null, "status");
+      test.result = reader.getAttributeValue(null, "result");
+      test.time = reader.getAttributeValue(null, "time");
+      forEachChild(
+          child -> {
+            switch (child) {
+              case "system-out":
+                test.sysOut = readText(maxOutputLength);
+                break;
+              case "system-err":
+                test.sysErr = readText(maxOutputLength);
+                break;
+              case "error":
+                test.errors.add(readError());
+                break;
+              case "failure":
+                test.failures.add(readError());
+                break;
+              case "skipped":
+                test.skipped = readError();
+                break;
+              default:
+                skipElement();
+            }
+          });
+      return test;
+    }
+
+    private ErrorOrFailureOrSkipped readError() throws XMLStreamException {
+      ErrorOrFailureOrSkipped error = new ErrorOrFailureOrSkipped();
+      error.message = reader.getAttributeValue(null, "message");
+      error.type = reader.getAttributeValue(null, "type");
+      StringBuilder text = null;
+      while (true) {
+        int event = reader.next();
+        if (isText(event)) {
+          if (text == null) {
+            text = new StringBuilder();
+          }
+          text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+          continue;
+        }
+        if (text != null) {
+          if (error.content == null) {
+            error.content = new ArrayList<>();
+          }
+          error.content.add(text.toString());
+          text = null;
+        }
+        if (event == XMLStreamConstants.END_ELEMENT) {
+          return error;
+        }
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          switch (reader.getLocalName()) {
+            case "expected":
+              error.expected = readValues();
+              break;
+            case "actual":
+              error.actual = readValues();
+              break;
+            default:
+              skipElement();
+          }
+        }
+      }
+    }
+
+    private Values readValues() throws XMLStreamException {
+      Values values = new Values();
+      forEachChild(
+          child -> {
+            if (child.equals("value")) {
+              values.values.add(readText(Integer.MAX_VALUE));
+            } else {
+              skipElement();
+            }
+          });
+      return values;
+    }
+
+    /**
+     * Calls the handler for each child element of the current element, returning at the current
+     * element's end tag.
+     */
+    private void forEachChild(ChildHandler handler) throws XMLStreamException {
+      while (true) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          handler.handle(reader.getLocalName());
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          return;
+        }
+      }
+    }
+
+    private void skipElement() throws XMLStreamException {
+      int depth = 1;
+      while (depth > 0) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        }
+      }
+    }
+
+    /**
+     * Returns all the text inside the current element, keeping at most the given number of
+     * characters.
+     */
+    private String readText(int maxLength) throws XMLStreamException {
+      StringBuilder text = new StringBuilder();
+      long truncated = 0;
+      int depth = 1;
+      while (depth > 0) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        } else if (isText(event)) {
+          int length = reader.getTextLength();
+          int kept = Math.min(length, maxLength - text.length());
+          text.append(reader.getTextCharacters(), reader.getTextStart(), kept);
+          truncated += length - kept;
+        }
+      }
+      if (truncated > 0) {
+        text.append("\n... [").append(truncated).append(" characters truncated]");
+      }
+      return text.toString();
+    }
+
+    private static boolean isText(int event) {
+      return event == XMLStreamConstants.CHARACTERS
+          || event == XMLStreamConstants.CDATA
+          || event == XMLStreamConstants.SPACE;
+    }
+
+    private int intAttribute(String name) {
+      String value = reader.getAttributeValue(null, name);
+      if (value == null) {
+        return 0;
+      }
+      try {
+        return Integer.parseInt(value.trim());
+      } catch (NumberFormatException e) {
+        return 0;
+      }
+    }
+
+    private double doubleAttribute(String name) {
+      String value = reader.getAttributeValue(null, name);
+      if (value == null) {
+        return 0;
+      }
+      try {
+        return Double.parseDouble(value.trim());
+      } catch (NumberFormatException e) {
+        return 0;
+      }
+    }
+  }
 }
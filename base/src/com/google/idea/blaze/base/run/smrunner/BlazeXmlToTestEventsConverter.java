@@ -57,6 +57,8 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 import jetbrains.buildServer.messages.serviceMessages.TestSuiteStarted;
 
@@ -65,6 +67,8 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
   private static final ErrorOrFailureOrSkipped NO_ERROR = new ErrorOrFailureOrSkipped();
   private static final BoolExperiment removeZeroRunTimeCheck =
       new BoolExperiment("remove.zero.run.time.check", true);
+  private static final BoolExperiment reportLiveResults =
+      new BoolExperiment("blaze.test.results.live", true);
 
   {
     NO_ERROR.message = "No message"; // cannot be null
@@ -72,6 +76,11 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
 
   private final BlazeTestResultFinderStrategy testResultFinderStrategy;
 
+  /** Targets whose results were reported while the test run was still in progress. */
+  private final Set<Label> reportedTargets = ConcurrentHashMap.newKeySet();
+
+  private boolean testingStarted = false;
+
   public BlazeXmlToTestEventsConverter(
       String testFrameworkName,
       TestConsoleProperties testConsoleProperties,
@@ -80,6 +89,15 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
     this.testResultFinderStrategy = testResultFinderStrategy;
   }
 
+  @Override
+  public void setProcessor(@Nullable GeneralTestEventsProcessor processor) {
+    super.setProcessor(processor);
+    if (processor != null && reportLiveResults.getValue()) {
+      // stop streaming if this converter is disposed before the process terminates
+      testResultFinderStrategy.streamTestResults(this::processLiveTestResults, this);
+    }
+  }
+
   @Override
   public void flushBufferOnProcessTermination(int exitCode) {
     super.flushBufferOnProcessTermination(exitCode);
@@ -98,12 +116,44 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
     }
   }
 
-  private void processAllTestResults(BlazeTestResults testResults) {
-    onStartTesting();
-    getProcessor().onTestsReporterAttached();
+  /**
+   * Called with the complete results of each target as soon as blaze reports them, while the test
+   * run is still in progress.
+   */
+  private void processLiveTestResults(BlazeTestResults testResults) {
+    for (Label label : testResults.perTargetResults.keySet()) {
+      ParsedTargetResults parsedResults =
+          FuturesUtil.getIgnoringErrors(
+              FetchExecutor.EXECUTOR.submit(
+                  () -> parseTestXml(label, testResults.perTargetResults.get(label))));
+      if (parsedResults == null) {
+        // leave it to be reported once the test run completes
+        continue;
+      }
+      synchronized (this) {
+        ensureTestingStarted();
+        reportedTargets.add(label);
+        processParsedTestResults(parsedResults);
+      }
+    }
+  }
+
+  private synchronized void ensureTestingStarted() {
+    if (!testingStarted) {
+      testingStarted = true;
+      onStartTesting();
+      getProcessor().onTestsReporterAttached();
+    }
+  }
+
+  private synchronized void processAllTestResults(BlazeTestResults testResults) {
+    ensureTestingStarted();
     try {
       List<ListenableFuture<ParsedTargetResults>> futures = new ArrayList<>();
       for (Label label : testResults.perTargetResults.keySet()) {
+        if (reportedTargets.contains(label)) {
+          continue;
+        }
         futures.add(
             FetchExecutor.EXECUTOR.submit(
                 () -> parseTestXml(label, testResults.perTargetResults.get(label))));
@@ -123,35 +173,39 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
     private final Label label;
     private final Collection<BlazeTestResult> results;
     private final List<BlazeArtifact> outputFiles;
-    private final List<TestSuite> targetSuites;
+    /** The suites from all of the target's test XML files, merged across shards. */
+    private final TestSuite targetSuite;
 
     ParsedTargetResults(
         Label label,
         Collection<BlazeTestResult> results,
         List<BlazeArtifact> outputFiles,
-        List<TestSuite> targetSuites) {
+        TestSuite targetSuite) {
       this.label = label;
       this.results = results;
       this.outputFiles = outputFiles;
-      this.targetSuites = targetSuites;
+      this.targetSuite = targetSuite;
     }
   }
 
-  /** Parse all test XML files from a single test target. */
+  /**
+   * Parse all test XML files from a single test target, merging each into the target's suite as
+   * soon as it's parsed.
+   */
   private static ParsedTargetResults parseTestXml(
       Label label, Collection<BlazeTestResult> results) {
     List<BlazeArtifact> outputFiles = new ArrayList<>();
     results.forEach(result -> outputFiles.addAll(result.getOutputXmlFiles()));
-    List<TestSuite> targetSuites = new ArrayList<>();
+    TestSuite targetSuite = new TestSuite();
     for (BlazeArtifact file : outputFiles) {
       try (InputStream input = file.getInputStream()) {
-        targetSuites.add(BlazeXmlSchema.parse(input));
+        targetSuite.addSuite(BlazeXmlSchema.parse(input));
       } catch (Exception e) {
         // ignore parsing errors -- most common cause is user cancellation, which we can't easily
         // recognize.
       }
     }
-    return new ParsedTargetResults(label, results, outputFiles, targetSuites);
+    return new ParsedTargetResults(label, results, outputFiles, targetSuite);
   }
 
   /** Process all parsed test XML files from a single test target. */
@@ -172,11 +226,8 @@ public class BlazeXmlToTestEventsConverter extends OutputToGeneralTestEventsConv
             .orElse(null);
     BlazeTestEventsHandler eventsHandler =
         BlazeTestEventsHandler.getHandlerForTargetKindOrFallback(kind);
-    TestSuite suite =
-        parsedResults.targetSuites.size() == 1
-            ? parsedResults.targetSuites.get(0)
-            : BlazeXmlSchema.mergeSuites(parsedResults.targetSuites);
-    processTestSuite(getProcessor(), eventsHandler, parsedResults.label, kind, suite);
+    processTestSuite(
+        getProcessor(), eventsHandler, parsedResults.label, kind, parsedResults.targetSuite);
   }
 
   /**
@@ -15,6 +15,8 @@
  */
 package com.google.idea.blaze.base.run.testlogs;
 
+import com.intellij.openapi.Disposable;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
 
 /** A strategy for locating results from 'blaze test' invocation (e.g. output XML files). */
@@ -27,6 +29,23 @@ public interface BlazeTestResultFinderStrategy {
   @Nullable
   BlazeTestResults findTestResults();
 
+  /**
+   * Starts looking for test results while the 'blaze test' process is still running, passing each
+   * target's results to the given consumer as soon as all of that target's tests have finished.
+   * The consumer is called on a background thread, and all calls have returned by the time {@link
+   * #findTestResults} returns. Results passed to the consumer are also returned by {@link
+   * #findTestResults}.
+   *
+   * <p>If the parent disposable is disposed before {@link #findTestResults} is called (e.g. the run
+   * was cancelled or its console closed), streaming stops and no further results are reported.
+   *
+   * @return false if results can only be found once the process completes
+   */
+  default boolean streamTestResults(
+      Consumer<BlazeTestResults> consumer, Disposable parentDisposable) {
+    return false;
+  }
+
   /** Remove any temporary files used by this result finder. */
   void deleteTemporaryOutputXmlFiles();
 }
@@ -15,18 +15,29 @@
  */
 package com.google.idea.blaze.base.run.testlogs;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.idea.blaze.base.command.buildresult.BuildEventProtocolOutputReader;
 import com.google.idea.blaze.base.io.InputStreamProvider;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Disposer;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 /**
  * A strategy for locating results from a single 'blaze test' invocation (e.g. output XML files).
  *
- * <p>Parses the output BEP proto written by blaze to locate the test XML files.
+ * <p>Parses the output BEP proto written by blaze to locate the test XML files. If results are
+ * streamed, the BEP output is read as blaze writes it.
  */
 public final class BuildEventProtocolTestFinderStrategy implements BlazeTestResultFinderStrategy {
 
@@ -34,19 +45,84 @@ public final class BuildEventProtocolTestFinderStrategy implements BlazeTestResu
       Logger.getInstance(BuildEventProtocolTestFinderStrategy.class);
 
   private final File outputFile;
+  private final ExecutorService executor;
+
+  @Nullable private TailingInputStream tailingStream;
+  @Nullable private Future<BlazeTestResults> streamedResults;
 
   public BuildEventProtocolTestFinderStrategy(File bepOutputFile) {
+    this(bepOutputFile, PooledThreadExecutor.INSTANCE);
+  }
+
+  @VisibleForTesting
+  BuildEventProtocolTestFinderStrategy(File bepOutputFile, ExecutorService executor) {
     this.outputFile = bepOutputFile;
+    this.executor = executor;
   }
 
   @Override
-  public BlazeTestResults findTestResults() {
-    try (InputStream inputStream =
-        new BufferedInputStream(InputStreamProvider.getInstance().forFile(outputFile))) {
-      return BuildEventProtocolOutputReader.parseTestResults(inputStream);
+  public synchronized boolean streamTestResults(
+      Consumer<BlazeTestResults> consumer, Disposable parentDisposable) {
+    if (streamedResults != null) {
+      return true;
+    }
+    TailingInputStream stream = new TailingInputStream(outputFile);
+    tailingStream = stream;
+    streamedResults =
+        executor.submit(
+            () -> {
+              try (InputStream inputStream = new BufferedInputStream(stream)) {
+                return BuildEventProtocolOutputReader.parseTestResults(
+                    inputStream, results -> reportStreamedResults(consumer, results));
+              }
+            });
+    Disposer.register(parentDisposable, this::stopStreaming);
+    return true;
+  }
+
+  /** Stops reading the streamed BEP output, e.g. if the test run was cancelled. */
+  private void stopStreaming() {
+    TailingInputStream stream;
+    Future<BlazeTestResults> results;
+    synchronized (this) {
+      stream = tailingStream;
+      results = streamedResults;
+    }
+    if (stream == null || results == null || results.isDone()) {
+      return;
+    }
+    results.cancel(/* mayInterruptIfRunning= */ true);
+    try {
+      // in case the reading thread isn't interruptible, make its next read fail
+      stream.close();
     } catch (IOException e) {
-      logger.warn(e);
-      return BlazeTestResults.NO_RESULTS;
+      logger.warn("Failed to close streamed BEP output", e);
+    }
+  }
+
+  private static void reportStreamedResults(
+      Consumer<BlazeTestResults> consumer, BlazeTestResults results) {
+    try {
+      consumer.accept(results);
+    } catch (RuntimeException e) {
+      logger.warn("Failed to process test results", e);
+    }
+  }
+
+  @Override
+  public BlazeTestResults findTestResults() {
+    try {
+      BlazeTestResults results = finishStreaming();
+      if (results != null) {
+        return results;
+      }
+      try (InputStream inputStream =
+          new BufferedInputStream(InputStreamProvider.getInstance().forFile(outputFile))) {
+        return BuildEventProtocolOutputReader.parseTestResults(inputStream);
+      } catch (IOException e) {
+        logger.warn(e);
+        return BlazeTestResults.NO_RESULTS;
+      }
     } finally {
       if (!outputFile.delete()) {
         logger.warn("Could not delete BEP output file: " + outputFile);
@@ -54,6 +130,38 @@ public final class BuildEventProtocolTestFinderStrategy implements BlazeTestResu
     }
   }
 
+  /**
+   * Waits for the rest of the streamed BEP output to be read, returning all results, or null if
+   * results weren't streamed or reading the stream failed.
+   */
+  @Nullable
+  private BlazeTestResults finishStreaming() {
+    TailingInputStream stream;
+    Future<BlazeTestResults> results;
+    synchronized (this) {
+      stream = tailingStream;
+      results = streamedResults;
+    }
+    if (stream == null || results == null) {
+      return null;
+    }
+    // the blaze process has completed, so the BEP output is complete
+    stream.finish();
+    try {
+      return results.get();
+    } catch (ExecutionException e) {
+      logger.warn("Failed to read streamed BEP output", e);
+      return null;
+    } catch (CancellationException e) {
+      // streaming was stopped early, so read the complete output instead
+      return null;
+    } catch (InterruptedException e) {
+      results.cancel(true);
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
   @Override
   public void deleteTemporaryOutputXmlFiles() {}
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.run.testlogs;
+
+import com.google.idea.blaze.base.io.InputStreamProvider;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import javax.annotation.Nullable;
+
+/**
+ * Reads a file while it's still being written. At the end of the currently written data, reads
+ * block until more data is written, or until {@link #finish} is called. Closing the stream makes
+ * any blocked read fail.
+ */
+final class TailingInputStream extends InputStream {
+  private static final long POLL_INTERVAL_MILLIS = 200;
+
+  private final File file;
+  // guarded by 'this'
+  @Nullable private InputStream delegate;
+  private boolean closed;
+
+  private volatile boolean finished;
+
+  TailingInputStream(File file) {
+    this.file = file;
+  }
+
+  /** Called once the file is complete. Reads then return the remaining data, followed by EOF. */
+  void finish() {
+    finished = true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int n = read(b, 0, 1);
+    return n == -1 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (true) {
+      // read the flag first, so data written before the file was finished is never missed
+      boolean done = finished;
+      InputStream input = getDelegate();
+      int n = input != null ? input.read(b, off, len) : -1;
+      if (n != -1) {
+        return n;
+      }
+      if (done) {
+        return -1;
+      }
+      try {
+        Thread.sleep(POLL_INTERVAL_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for " + file);
+      }
+    }
+  }
+
+  /** Returns the underlying stream, or null if the file hasn't been created yet. */
+  @Nullable
+  private synchronized InputStream getDelegate() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed: " + file);
+    }
+    if (delegate == null) {
+      try {
+        delegate = InputStreamProvider.getInstance().forFile(file);
+      } catch (FileNotFoundException e) {
+        return null;
+      }
+    }
+    return delegate;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+    if (delegate != null) {
+      delegate.close();
+    }
+  }
+}
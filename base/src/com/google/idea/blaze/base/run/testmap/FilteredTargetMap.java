@@ -15,17 +15,21 @@
  */
 package com.google.idea.blaze.base.run.testmap;
 
-import com.google.common.collect.ArrayListMultimap;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap;
@@ -36,22 +40,35 @@ import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
 import java.util.function.Predicate;
+import javax.annotation.Nullable;
 
-/** Filters a {@link TargetMap} according to a given filter. */
+/**
+ * Filters a {@link TargetMap} according to a given filter.
+ *
+ * <p>The map from source files to the targets directly building them is built once per sync and
+ * shared by all filters. The filtered reverse-dependency closure of each target is computed the
+ * first time it's needed, then cached until the reverse dependency map changes.
+ */
 public class FilteredTargetMap {
 
+  /** The maximum number of targets whose closures are cached. */
+  private static final int MAX_CACHED_CLOSURES = 1000;
+
   private final Project project;
-  private final Multimap<File, TargetKey> rootsMap;
+  private final ImmutableMultimap<File, TargetKey> rootsMap;
   private final TargetMap targetMap;
   private final Predicate<TargetIdeInfo> filter;
 
+  /** The cached closures, for the reverse dependency map they were computed from. */
+  @Nullable private volatile Closures closures;
+
   public FilteredTargetMap(
       Project project,
       ArtifactLocationDecoder decoder,
       TargetMap targetMap,
       Predicate<TargetIdeInfo> filter) {
     this.project = project;
-    this.rootsMap = createRootsMap(decoder, targetMap.targets());
+    this.rootsMap = getRootsMap(project, decoder, targetMap);
     this.targetMap = targetMap;
     this.filter = filter;
   }
@@ -77,8 +94,36 @@ public class FilteredTargetMap {
             .flatMap(f -> rootsMap.get(f).stream())
             .collect(ImmutableSet.toImmutableSet());
 
+    Cache<TargetKey, ImmutableSet<TargetIdeInfo>> cache = getClosures(rdepsMap);
+    for (TargetKey root : roots) {
+      ImmutableSet<TargetIdeInfo> closure = cache.getIfPresent(root);
+      if (closure == null) {
+        // not Cache#get, to avoid blocking other lookups during the traversal
+        closure = computeClosure(rdepsMap, root);
+        cache.put(root, closure);
+      }
+      result.addAll(closure);
+    }
+    return result.build();
+  }
+
+  /** Returns the closure cache for the given reverse dependency map, dropping stale closures. */
+  private Cache<TargetKey, ImmutableSet<TargetIdeInfo>> getClosures(
+      ImmutableMultimap<TargetKey, TargetKey> rdepsMap) {
+    Closures closures = this.closures;
+    if (closures == null || closures.rdepsMap != rdepsMap) {
+      closures = new Closures(rdepsMap);
+      this.closures = closures;
+    }
+    return closures.byRoot;
+  }
+
+  /** Returns the targets passing the filter which transitively depend on the given target. */
+  private ImmutableSet<TargetIdeInfo> computeClosure(
+      ImmutableMultimap<TargetKey, TargetKey> rdepsMap, TargetKey root) {
+    ImmutableSet.Builder<TargetIdeInfo> result = ImmutableSet.builder();
     Queue<TargetKey> todo = Queues.newArrayDeque();
-    todo.addAll(roots);
+    todo.add(root);
     Set<TargetKey> seen = Sets.newHashSet();
     while (!todo.isEmpty()) {
       TargetKey targetKey = todo.remove();
@@ -95,15 +140,59 @@ public class FilteredTargetMap {
     return result.build();
   }
 
-  private static Multimap<File, TargetKey> createRootsMap(
+  /**
+   * Returns the source files of all targets, mapped to the targets directly building them. Reuses
+   * the map computed for the current project data if possible.
+   */
+  private static ImmutableMultimap<File, TargetKey> getRootsMap(
+      Project project, ArtifactLocationDecoder decoder, TargetMap targetMap) {
+    RootsMap shared =
+        SyncCache.getInstance(project)
+            .get(
+                RootsMap.class,
+                (p, projectData) ->
+                    new RootsMap(
+                        projectData.getArtifactLocationDecoder(), projectData.getTargetMap()));
+    if (shared != null && shared.targetMap == targetMap && shared.decoder.equals(decoder)) {
+      return shared.map;
+    }
+    return new RootsMap(decoder, targetMap).map;
+  }
+
+  private static class RootsMap {
+    final ArtifactLocationDecoder decoder;
+    final TargetMap targetMap;
+    final ImmutableMultimap<File, TargetKey> map;
+
+    RootsMap(ArtifactLocationDecoder decoder, TargetMap targetMap) {
+      this.decoder = decoder;
+      this.targetMap = targetMap;
+      this.map = createRootsMap(decoder, targetMap.targets());
+    }
+  }
+
+  private static ImmutableMultimap<File, TargetKey> createRootsMap(
       ArtifactLocationDecoder decoder, Collection<TargetIdeInfo> targets) {
-    Multimap<File, TargetKey> result = ArrayListMultimap.create();
+    // intern source files, so files built by several targets are stored once
+    Interner<File> files = Interners.newStrongInterner();
+    ImmutableListMultimap.Builder<File, TargetKey> result = ImmutableListMultimap.builder();
     for (TargetIdeInfo target : targets) {
       target.getSources().stream()
           .map(decoder::resolveSource)
           .filter(Objects::nonNull)
-          .forEach(f -> result.put(f, target.getKey()));
+          .forEach(f -> result.put(files.intern(f), target.getKey()));
+    }
+    return result.build();
+  }
+
+  /** The filtered closures computed from a single reverse dependency map. */
+  private static class Closures {
+    final ImmutableMultimap<TargetKey, TargetKey> rdepsMap;
+    final Cache<TargetKey, ImmutableSet<TargetIdeInfo>> byRoot =
+        CacheBuilder.newBuilder().maximumSize(MAX_CACHED_CLOSURES).build();
+
+    Closures(ImmutableMultimap<TargetKey, TargetKey> rdepsMap) {
+      this.rdepsMap = rdepsMap;
     }
-    return result;
   }
 }
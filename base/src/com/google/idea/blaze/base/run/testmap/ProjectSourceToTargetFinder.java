@@ -27,13 +27,18 @@ import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.RuleType;
 import com.google.idea.blaze.base.run.SourceToTargetFinder;
 import com.google.idea.blaze.base.sync.SyncCache;
+import com.google.idea.blaze.base.sync.SyncCache.ProjectDataSlice;
+import com.google.idea.blaze.base.sync.SyncCacheWarmer;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.intellij.openapi.project.Project;
 import java.io.File;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 /**
  * Used to locate tests from source files for things like right-clicks.
@@ -45,18 +50,33 @@ public class ProjectSourceToTargetFinder implements SourceToTargetFinder {
   @Override
   public Future<Collection<TargetInfo>> targetsForSourceFiles(
       Project project, Set<File> sourceFiles, Optional<RuleType> ruleType) {
-    FilteredTargetMap targetMap =
-        SyncCache.getInstance(project)
-            .get(ProjectSourceToTargetFinder.class, ProjectSourceToTargetFinder::computeTargetMap);
+    if (!SyncCache.getInstance(project).isComputed(ProjectSourceToTargetFinder.class)) {
+      // building the map can take several seconds on large projects, so don't block the caller
+      return PooledThreadExecutor.INSTANCE.submit(
+          () -> findTargets(project, sourceFiles, ruleType));
+    }
+    return Futures.immediateFuture(findTargets(project, sourceFiles, ruleType));
+  }
+
+  private static Collection<TargetInfo> findTargets(
+      Project project, Set<File> sourceFiles, Optional<RuleType> ruleType) {
+    FilteredTargetMap targetMap = getTargetMap(project);
     if (targetMap == null) {
-      return Futures.immediateFuture(ImmutableList.of());
+      return ImmutableList.of();
     }
-    ImmutableSet<TargetInfo> targets =
-        targetMap.targetsForSourceFiles(sourceFiles).stream()
-            .map(TargetIdeInfo::toTargetInfo)
-            .filter(target -> !ruleType.isPresent() || target.getRuleType().equals(ruleType.get()))
-            .collect(toImmutableSet());
-    return Futures.immediateFuture(targets);
+    return targetMap.targetsForSourceFiles(sourceFiles).stream()
+        .map(TargetIdeInfo::toTargetInfo)
+        .filter(target -> !ruleType.isPresent() || target.getRuleType().equals(ruleType.get()))
+        .collect(toImmutableSet());
+  }
+
+  @Nullable
+  private static FilteredTargetMap getTargetMap(Project project) {
+    return SyncCache.getInstance(project)
+        .get(
+            ProjectSourceToTargetFinder.class,
+            EnumSet.of(ProjectDataSlice.TARGET_MAP, ProjectDataSlice.ARTIFACT_LOCATION_DECODER),
+            ProjectSourceToTargetFinder::computeTargetMap);
   }
 
   private static FilteredTargetMap computeTargetMap(Project project, BlazeProjectData projectData) {
@@ -68,4 +88,22 @@ public class ProjectSourceToTargetFinder implements SourceToTargetFinder {
       Project project, ArtifactLocationDecoder decoder, TargetMap targetMap) {
     return new FilteredTargetMap(project, decoder, targetMap, t -> true);
   }
+
+  /** Builds the source to test map in the background on project open. */
+  static class Warmer implements SyncCacheWarmer {
+    @Override
+    public String getName() {
+      return "Source to test map";
+    }
+
+    @Override
+    public int getPriority() {
+      return 20;
+    }
+
+    @Override
+    public void warm(Project project) {
+      getTargetMap(project);
+    }
+  }
 }
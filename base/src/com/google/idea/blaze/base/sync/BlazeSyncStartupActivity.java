@@ -15,12 +15,19 @@
  */
 package com.google.idea.blaze.base.sync;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.settings.BlazeImportSettings;
 import com.google.idea.blaze.base.settings.BlazeImportSettingsManager;
 import com.google.idea.blaze.base.settings.BlazeUserSettings;
-import com.google.idea.blaze.base.sync.data.BlazeProjectDataManagerImpl;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.StartupActivity;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
 
 /** Syncs the project upon startup. */
 public class BlazeSyncStartupActivity implements StartupActivity {
@@ -34,15 +41,34 @@ public class BlazeSyncStartupActivity implements StartupActivity {
     if (importSettings == null) {
       return;
     }
-    if (hasProjectData(project, importSettings)) {
+    // deserializing the project data can take several seconds, so do it off the EDT
+    ListenableFuture<BlazeProjectData> projectData =
+        ProjectDataWarmup.loadProjectData(project, importSettings);
+    projectData.addListener(
+        () ->
+            ApplicationManager.getApplication()
+                .invokeLater(
+                    () -> requestSync(project, getDone(projectData)), project.getDisposed()),
+        MoreExecutors.directExecutor());
+  }
+
+  private static void requestSync(Project project, @Nullable BlazeProjectData projectData) {
+    if (projectData != null) {
+      // don't wait for the startup sync before building the structures derived from the data
+      ListenableFuture<Void> unused = ProjectDataWarmup.warmCaches(project);
       BlazeSyncManager.getInstance(project).requestProjectSync(startupSyncParams());
     } else {
       BlazeSyncManager.getInstance(project).incrementalProjectSync(SYNC_REASON);
     }
   }
 
-  private static boolean hasProjectData(Project project, BlazeImportSettings importSettings) {
-    return BlazeProjectDataManagerImpl.getImpl(project).loadProjectRoot(importSettings) != null;
+  @Nullable
+  private static BlazeProjectData getDone(ListenableFuture<BlazeProjectData> future) {
+    try {
+      return Futures.getDone(future);
+    } catch (ExecutionException | CancellationException e) {
+      return null;
+    }
   }
 
   private static BlazeSyncParams startupSyncParams() {
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.base.async.executor.ProgressiveTaskWithProgressIndicator;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManagerImpl;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prepares a project's data in the background: the serialized project data is loaded off the EDT
+ * on project open, then the structures registered via {@link SyncCacheWarmer} are built
+ * concurrently, in priority order, as soon as that data is loaded and again after each successful
+ * sync.
+ */
+public final class ProjectDataWarmup {
+  private static final Logger logger = Logger.getInstance(ProjectDataWarmup.class);
+
+  private static final ListeningExecutorService EXECUTOR =
+      MoreExecutors.listeningDecorator(
+          AppExecutorUtil.createBoundedApplicationPoolExecutor("SyncCacheWarmup", 4));
+
+  private ProjectDataWarmup() {}
+
+  /** Loads the serialized project data on a background thread. */
+  static ListenableFuture<BlazeProjectData> loadProjectData(
+      Project project, BlazeImportSettings importSettings) {
+    return ProgressiveTaskWithProgressIndicator.builder(project, "Loading project data")
+        .submitTaskWithResult(
+            indicator ->
+                BlazeProjectDataManagerImpl.getImpl(project).loadProjectRoot(importSettings));
+  }
+
+  /** Builds all registered derived structures, reporting progress. */
+  static ListenableFuture<Void> warmCaches(Project project) {
+    List<SyncCacheWarmer> warmers =
+        new ArrayList<>(Arrays.asList(SyncCacheWarmer.EP_NAME.getExtensions()));
+    if (warmers.isEmpty()) {
+      return Futures.immediateFuture(null);
+    }
+    warmers.sort(Comparator.comparingInt(SyncCacheWarmer::getPriority));
+    return ProgressiveTaskWithProgressIndicator.builder(project, "Preparing project data")
+        .submitTask(indicator -> runWarmers(project, warmers, indicator));
+  }
+
+  private static void runWarmers(
+      Project project, List<SyncCacheWarmer> warmers, ProgressIndicator indicator) {
+    indicator.setIndeterminate(false);
+    AtomicInteger done = new AtomicInteger();
+    List<ListenableFuture<?>> futures = new ArrayList<>();
+    // the executor is FIFO, so submitting in priority order starts higher priority warmers first
+    for (SyncCacheWarmer warmer : warmers) {
+      futures.add(
+          EXECUTOR.submit(
+              () -> {
+                if (indicator.isCanceled() || project.isDisposed()) {
+                  return;
+                }
+                indicator.setText2(warmer.getName());
+                try {
+                  warmer.warm(project);
+                } catch (ProcessCanceledException e) {
+                  // don't log
+                } catch (RuntimeException e) {
+                  logger.warn("Failed to prepare " + warmer.getName(), e);
+                }
+                indicator.setFraction((double) done.incrementAndGet() / warmers.size());
+              }));
+    }
+    try {
+      Futures.allAsList(futures).get();
+    } catch (InterruptedException e) {
+      futures.forEach(f -> f.cancel(true));
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      logger.warn(e);
+    }
+  }
+
+  /**
+   * Rebuilds the derived structures after each sync, since any cache entries depending on changed
+   * project data have been dropped.
+   */
+  static class WarmAfterSync implements SyncListener {
+    @Override
+    public void afterSync(
+        Project project,
+        BlazeContext context,
+        SyncMode syncMode,
+        SyncResult syncResult,
+        ImmutableSet<Integer> buildIds) {
+      if (syncResult.successful()) {
+        ListenableFuture<Void> unused = warmCaches(project);
+      }
+    }
+  }
+}
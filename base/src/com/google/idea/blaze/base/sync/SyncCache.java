@@ -17,7 +17,7 @@ package com.google.idea.blaze.base.sync;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.projectview.ProjectViewSet;
 import com.google.idea.blaze.base.scope.BlazeContext;
@@ -25,10 +25,20 @@ import com.google.idea.blaze.base.settings.BlazeImportSettings;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.intellij.openapi.components.ServiceManager;
 import com.intellij.openapi.project.Project;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 
-/** Computes a cache on the project data. */
+/**
+ * Computes a cache on the project data.
+ *
+ * <p>Entries may declare which parts of the project data they're derived from, in which case they
+ * survive syncs which don't change those parts. Each key is computed independently, so a slow
+ * computation doesn't block lookups of other keys.
+ */
 public class SyncCache {
   /** Computes a value based on the sync project data. */
   public interface SyncCacheComputable<T> {
@@ -36,8 +46,80 @@ public class SyncCache {
     T compute(Project project, BlazeProjectData projectData);
   }
 
+  /**
+   * A {@link SyncCacheComputable} which can bring a previously computed value up to date when only
+   * the target map has changed, rather than computing it from scratch.
+   */
+  public interface IncrementalSyncCacheComputable<T> extends SyncCacheComputable<T> {
+    /**
+     * Returns the value updated with the given target map changes, or null if it should instead be
+     * recomputed from scratch.
+     */
+    @Nullable
+    T update(Project project, BlazeProjectData projectData, T previous, TargetMapDelta delta);
+  }
+
+  /** The parts of the project data a cached value can depend on. */
+  public enum ProjectDataSlice {
+    TARGET_MAP,
+    ARTIFACT_LOCATION_DECODER,
+    WORKSPACE_LANGUAGE_SETTINGS,
+  }
+
+  private static class Entry {
+    final BlazeProjectData projectData;
+    @Nullable final Object value;
+    /** The slices this value depends on, or null if it depends on the entire project data. */
+    @Nullable final ImmutableSet<ProjectDataSlice> dependencies;
+
+    final SyncCacheComputable<?> computable;
+
+    Entry(
+        BlazeProjectData projectData,
+        @Nullable Object value,
+        @Nullable ImmutableSet<ProjectDataSlice> dependencies,
+        SyncCacheComputable<?> computable) {
+      this.projectData = projectData;
+      this.value = value;
+      this.dependencies = dependencies;
+      this.computable = computable;
+    }
+  }
+
+  /** The slices which differ between two versions of the project data. */
+  private static class ProjectDataDiff {
+    final BlazeProjectData oldProjectData;
+    final BlazeProjectData newProjectData;
+    final Set<ProjectDataSlice> changedSlices = EnumSet.noneOf(ProjectDataSlice.class);
+    final TargetMapDelta targetMapDelta;
+
+    ProjectDataDiff(BlazeProjectData oldProjectData, BlazeProjectData newProjectData) {
+      this.oldProjectData = oldProjectData;
+      this.newProjectData = newProjectData;
+      targetMapDelta =
+          TargetMapDelta.compute(oldProjectData.getTargetMap(), newProjectData.getTargetMap());
+      if (!targetMapDelta.isEmpty()) {
+        changedSlices.add(ProjectDataSlice.TARGET_MAP);
+      }
+      if (!Objects.equals(
+          oldProjectData.getArtifactLocationDecoder(),
+          newProjectData.getArtifactLocationDecoder())) {
+        changedSlices.add(ProjectDataSlice.ARTIFACT_LOCATION_DECODER);
+      }
+      if (!Objects.equals(
+          oldProjectData.getWorkspaceLanguageSettings(),
+          newProjectData.getWorkspaceLanguageSettings())) {
+        changedSlices.add(ProjectDataSlice.WORKSPACE_LANGUAGE_SETTINGS);
+      }
+    }
+  }
+
   private final Project project;
-  private final Map<Object, Object> cache = Maps.newHashMap();
+  private final Map<Object, Entry> cache = new ConcurrentHashMap<>();
+  private final Map<Object, Object> locks = new ConcurrentHashMap<>();
+
+  /** The most recently computed diff, shared by all entries reconciled against the same data. */
+  @Nullable private volatile ProjectDataDiff lastDiff;
 
   public SyncCache(Project project) {
     this.project = project;
@@ -47,26 +129,134 @@ public class SyncCache {
     return ServiceManager.getService(project, SyncCache.class);
   }
 
-  /** Computes a value derived from the sync project data and caches it until the next sync. */
+  /**
+   * Computes a value derived from the sync project data and caches it until the project data
+   * changes.
+   */
+  @Nullable
+  public <T> T get(Object key, SyncCacheComputable<T> computable) {
+    return getEntryValue(key, null, computable);
+  }
+
+  /**
+   * Computes a value derived from the given slices of the sync project data, and caches it until
+   * any of those slices change.
+   */
+  @Nullable
+  public <T> T get(
+      Object key, Set<ProjectDataSlice> dependencies, SyncCacheComputable<T> computable) {
+    return getEntryValue(key, Sets.immutableEnumSet(dependencies), computable);
+  }
+
   @Nullable
   @SuppressWarnings("unchecked")
-  public synchronized <T> T get(Object key, SyncCacheComputable<T> computable) {
-    if (cache.containsKey(key)) {
-      return (T) cache.get(key);
-    }
-    BlazeProjectData blazeProjectData =
+  private <T> T getEntryValue(
+      Object key,
+      @Nullable ImmutableSet<ProjectDataSlice> dependencies,
+      SyncCacheComputable<T> computable) {
+    BlazeProjectData projectData =
         BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (blazeProjectData == null) {
+    if (projectData == null) {
       return null;
     }
-    T value = computable.compute(project, blazeProjectData);
-    cache.put(key, value);
-    return value;
+    Entry entry = cache.get(key);
+    if (entry != null && entry.projectData == projectData) {
+      return (T) entry.value;
+    }
+    synchronized (getLock(key)) {
+      entry = cache.get(key);
+      if (entry != null && entry.projectData != projectData) {
+        entry = reconcile(entry, projectData);
+      }
+      if (entry == null) {
+        T value = computable.compute(project, projectData);
+        entry = new Entry(projectData, value, dependencies, computable);
+      }
+      cache.put(key, entry);
+      return (T) entry.value;
+    }
+  }
+
+  /**
+   * Returns true if a value has already been computed for the given key and the current project
+   * data, so {@link #get} won't need to compute it. Never blocks, so callers on the EDT can use this
+   * to degrade gracefully while the value is computed in the background.
+   */
+  public boolean isComputed(Object key) {
+    BlazeProjectData projectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    Entry entry = cache.get(key);
+    return entry != null && entry.projectData == projectData;
   }
 
   @VisibleForTesting
-  public synchronized void clear() {
+  public void clear() {
     cache.clear();
+    lastDiff = null;
+  }
+
+  /**
+   * Brings all entries up to date with the given project data, dropping those whose dependencies
+   * have changed.
+   */
+  private void onProjectDataChanged(BlazeProjectData projectData) {
+    for (Object key : cache.keySet()) {
+      synchronized (getLock(key)) {
+        Entry entry = cache.get(key);
+        if (entry == null || entry.projectData == projectData) {
+          continue;
+        }
+        Entry updated = reconcile(entry, projectData);
+        if (updated != null) {
+          cache.put(key, updated);
+        } else {
+          cache.remove(key);
+        }
+      }
+    }
+    lastDiff = null;
+  }
+
+  /**
+   * Returns the given entry rebound to the new project data, or null if it needs to be recomputed.
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  private Entry reconcile(Entry entry, BlazeProjectData projectData) {
+    if (entry.dependencies == null) {
+      return null;
+    }
+    ProjectDataDiff diff = getDiff(entry.projectData, projectData);
+    Set<ProjectDataSlice> changed = Sets.intersection(entry.dependencies, diff.changedSlices);
+    if (changed.isEmpty()) {
+      return new Entry(projectData, entry.value, entry.dependencies, entry.computable);
+    }
+    if (!changed.equals(EnumSet.of(ProjectDataSlice.TARGET_MAP))
+        || !(entry.computable instanceof IncrementalSyncCacheComputable)
+        || entry.value == null) {
+      return null;
+    }
+    Object value =
+        ((IncrementalSyncCacheComputable<Object>) entry.computable)
+            .update(project, projectData, entry.value, diff.targetMapDelta);
+    return value != null
+        ? new Entry(projectData, value, entry.dependencies, entry.computable)
+        : null;
+  }
+
+  private ProjectDataDiff getDiff(BlazeProjectData oldProjectData, BlazeProjectData projectData) {
+    ProjectDataDiff diff = lastDiff;
+    if (diff == null
+        || diff.oldProjectData != oldProjectData
+        || diff.newProjectData != projectData) {
+      diff = new ProjectDataDiff(oldProjectData, projectData);
+      lastDiff = diff;
+    }
+    return diff;
+  }
+
+  private Object getLock(Object key) {
+    return locks.computeIfAbsent(key, k -> new Object());
   }
 
   static class ClearSyncCache implements SyncListener {
@@ -81,7 +271,11 @@ public class SyncCache {
         SyncMode syncMode,
         SyncResult syncResult) {
       SyncCache syncCache = getInstance(project);
-      syncCache.clear();
+      if (blazeProjectData == null) {
+        syncCache.clear();
+      } else {
+        syncCache.onProjectDataChanged(blazeProjectData);
+      }
     }
   }
 }
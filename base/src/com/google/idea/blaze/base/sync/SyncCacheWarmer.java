@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync;
+
+import com.intellij.openapi.extensions.ExtensionPointName;
+import com.intellij.openapi.project.Project;
+
+/**
+ * Builds a structure derived from the project data (typically cached in {@link SyncCache}) in the
+ * background when a project is opened, rather than on first use.
+ */
+public interface SyncCacheWarmer {
+  ExtensionPointName<SyncCacheWarmer> EP_NAME =
+      ExtensionPointName.create("com.google.idea.blaze.SyncCacheWarmer");
+
+  /** A short description of the structure being built, shown in the progress indicator. */
+  String getName();
+
+  /** Warmers with lower values are started first. */
+  default int getPriority() {
+    return 0;
+  }
+
+  /** Builds and caches the derived structure. Called on a background thread. */
+  void warm(Project project);
+}
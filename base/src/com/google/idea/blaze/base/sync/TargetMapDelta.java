@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+
+/** The targets added, removed and changed between two versions of a {@link TargetMap}. */
+public final class TargetMapDelta {
+  private final TargetMap oldTargetMap;
+  private final TargetMap newTargetMap;
+  private final ImmutableSet<TargetKey> added;
+  private final ImmutableSet<TargetKey> removed;
+  private final ImmutableSet<TargetKey> changed;
+
+  private TargetMapDelta(
+      TargetMap oldTargetMap,
+      TargetMap newTargetMap,
+      ImmutableSet<TargetKey> added,
+      ImmutableSet<TargetKey> removed,
+      ImmutableSet<TargetKey> changed) {
+    this.oldTargetMap = oldTargetMap;
+    this.newTargetMap = newTargetMap;
+    this.added = added;
+    this.removed = removed;
+    this.changed = changed;
+  }
+
+  public static TargetMapDelta compute(TargetMap oldTargetMap, TargetMap newTargetMap) {
+    ImmutableSet.Builder<TargetKey> added = ImmutableSet.builder();
+    ImmutableSet.Builder<TargetKey> removed = ImmutableSet.builder();
+    ImmutableSet.Builder<TargetKey> changed = ImmutableSet.builder();
+    if (oldTargetMap != newTargetMap) {
+      ImmutableMap<TargetKey, TargetIdeInfo> oldTargets = oldTargetMap.map();
+      ImmutableMap<TargetKey, TargetIdeInfo> newTargets = newTargetMap.map();
+      newTargets.forEach(
+          (key, target) -> {
+            TargetIdeInfo oldTarget = oldTargets.get(key);
+            if (oldTarget == null) {
+              added.add(key);
+            } else if (oldTarget != target && !oldTarget.equals(target)) {
+              changed.add(key);
+            }
+          });
+      for (TargetKey key : oldTargets.keySet()) {
+        if (!newTargets.containsKey(key)) {
+          removed.add(key);
+        }
+      }
+    }
+    return new TargetMapDelta(
+        oldTargetMap, newTargetMap, added.build(), removed.build(), changed.build());
+  }
+
+  public TargetMap getOldTargetMap() {
+    return oldTargetMap;
+  }
+
+  public TargetMap getNewTargetMap() {
+    return newTargetMap;
+  }
+
+  /** Targets present only in the new target map. */
+  public ImmutableSet<TargetKey> getAdded() {
+    return added;
+  }
+
+  /** Targets present only in the old target map. */
+  public ImmutableSet<TargetKey> getRemoved() {
+    return removed;
+  }
+
+  /** Targets present in both target maps, whose contents differ. */
+  public ImmutableSet<TargetKey> getChanged() {
+    return changed;
+  }
+
+  public boolean isEmpty() {
+    return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+  }
+}
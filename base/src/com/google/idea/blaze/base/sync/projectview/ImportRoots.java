@@ -16,8 +16,11 @@
 package com.google.idea.blaze.base.sync.projectview;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.bazel.BuildSystemProvider;
 import com.google.idea.blaze.base.model.primitives.Label;
@@ -30,16 +33,18 @@ import com.google.idea.blaze.base.projectview.section.sections.AutomaticallyDeri
 import com.google.idea.blaze.base.projectview.section.sections.DirectoryEntry;
 import com.google.idea.blaze.base.projectview.section.sections.DirectorySection;
 import com.google.idea.blaze.base.projectview.section.sections.TargetSection;
+import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.settings.BuildSystemName;
+import com.google.idea.blaze.base.sync.SyncListener;
+import com.google.idea.blaze.base.sync.SyncMode;
 import com.google.idea.blaze.base.sync.data.BlazeDataStorage;
 import com.google.idea.blaze.base.util.WorkspacePathUtil;
 import com.google.idea.common.experiments.BoolExperiment;
 import com.intellij.openapi.project.Project;
-import java.nio.file.FileSystems;
-import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Set;
+import java.util.function.Function;
 import javax.annotation.Nullable;
 
 /** The roots to import. Derived from project view. */
@@ -48,6 +53,28 @@ public final class ImportRoots {
   private final BoolExperiment treatProjectTargetsAsSource =
       new BoolExperiment("blaze.treat.project.targets.as.source", true);
 
+  /**
+   * The import roots derived from each project view set, keyed by identity. The project view set
+   * is only replaced when the project view changes, so this is usually a single entry per project.
+   * Cleared at the start of each sync, to pick up changes to ignored paths.
+   */
+  private static final Cache<ProjectViewSet, DerivedImportRoots> derivedImportRoots =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  /** The import roots derived from a project view set, and the inputs they were derived from. */
+  private static final class DerivedImportRoots {
+    final WorkspaceRoot workspaceRoot;
+    final BuildSystemName buildSystemName;
+    final ImportRoots importRoots;
+
+    DerivedImportRoots(
+        WorkspaceRoot workspaceRoot, BuildSystemName buildSystemName, ImportRoots importRoots) {
+      this.workspaceRoot = workspaceRoot;
+      this.buildSystemName = buildSystemName;
+      this.importRoots = importRoots;
+    }
+  }
+
   /** Returns the ImportRoots for the project, or null if it's not a blaze project. */
   @Nullable
   public static ImportRoots forProjectSafe(Project project) {
@@ -56,7 +83,18 @@ public final class ImportRoots {
     if (root == null || projectViewSet == null) {
       return null;
     }
-    return ImportRoots.builder(root, Blaze.getBuildSystemName(project)).add(projectViewSet).build();
+    BuildSystemName buildSystemName = Blaze.getBuildSystemName(project);
+    DerivedImportRoots derived = derivedImportRoots.getIfPresent(projectViewSet);
+    if (derived != null
+        && derived.workspaceRoot.equals(root)
+        && derived.buildSystemName == buildSystemName) {
+      return derived.importRoots;
+    }
+    ImportRoots importRoots =
+        ImportRoots.builder(root, buildSystemName).add(projectViewSet).build();
+    derivedImportRoots.put(
+        projectViewSet, new DerivedImportRoots(root, buildSystemName, importRoots));
+    return importRoots;
   }
 
   /** Builder for import roots */
@@ -196,36 +234,54 @@ public final class ImportRoots {
     return projectDirectories.containsWorkspacePath(workspacePath);
   }
 
+  /**
+   * Returns the root directory containing the given workspace-relative path, or null if the path
+   * isn't in the project.
+   */
+  @Nullable
+  public WorkspacePath findRootDirectory(String relativePath) {
+    return projectDirectories.trie.findRootDirectory(relativePath);
+  }
+
+  /**
+   * Groups the given items by the root directory containing each one's workspace-relative path.
+   * Items which aren't in the project are omitted.
+   */
+  public <T> ImmutableListMultimap<WorkspacePath, T> groupByRootDirectory(
+      Iterable<T> items, Function<T, String> relativePath) {
+    ImmutableListMultimap.Builder<WorkspacePath, T> result = ImmutableListMultimap.builder();
+    for (T item : items) {
+      WorkspacePath rootDirectory = findRootDirectory(relativePath.apply(item));
+      if (rootDirectory != null) {
+        result.put(rootDirectory, item);
+      }
+    }
+    return result.build();
+  }
+
   static class ProjectDirectoriesHelper {
     private final ImmutableSet<WorkspacePath> rootDirectories;
     private final ImmutableSet<WorkspacePath> excludeDirectories;
+    private final ProjectDirectoriesTrie trie;
 
     @VisibleForTesting
     ProjectDirectoriesHelper(
         Collection<WorkspacePath> rootDirectories, Collection<WorkspacePath> excludeDirectories) {
       this.rootDirectories = ImmutableSet.copyOf(rootDirectories);
       this.excludeDirectories = ImmutableSet.copyOf(excludeDirectories);
+      this.trie = new ProjectDirectoriesTrie(this.rootDirectories, this.excludeDirectories);
     }
 
     boolean containsWorkspacePath(WorkspacePath workspacePath) {
-      boolean included = false;
-      boolean excluded = false;
-      for (WorkspacePath rootDirectory : rootDirectories) {
-        included = included || isSubdirectory(rootDirectory, workspacePath);
-      }
-      for (WorkspacePath excludeDirectory : excludeDirectories) {
-        excluded = excluded || isSubdirectory(excludeDirectory, workspacePath);
-      }
-      return included && !excluded;
+      return trie.containsWorkspacePath(workspacePath);
     }
+  }
 
-    private static boolean isSubdirectory(WorkspacePath ancestor, WorkspacePath descendant) {
-      if (ancestor.isWorkspaceRoot()) {
-        return true;
-      }
-      Path ancestorPath = FileSystems.getDefault().getPath(ancestor.relativePath());
-      Path descendantPath = FileSystems.getDefault().getPath(descendant.relativePath());
-      return descendantPath.startsWith(ancestorPath);
+  /** Clears the derived import roots at the start of each sync. */
+  static class ClearDerivedImportRoots implements SyncListener {
+    @Override
+    public void onSyncStart(Project project, BlazeContext context, SyncMode syncMode) {
+      derivedImportRoots.invalidateAll();
     }
   }
 }
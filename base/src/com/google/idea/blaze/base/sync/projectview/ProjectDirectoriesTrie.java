@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.projectview;
+
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * The project's root and excluded directories, compiled into a trie of path segments.
+ *
+ * <p>Each node records whether paths at that node are excluded, and otherwise which root directory
+ * contains them, so a lookup walks the path's segments once and doesn't allocate.
+ */
+final class ProjectDirectoriesTrie {
+
+  private static final class Node {
+    private static final String[] NO_NAMES = new String[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    /** The child segment names, sorted, and the corresponding children. */
+    String[] childNames = NO_NAMES;
+
+    Node[] children = NO_CHILDREN;
+
+    /** True if this path and all paths beneath it are excluded. */
+    boolean excluded;
+
+    /** The root directory containing this path, or null if it's not in the project. */
+    @Nullable WorkspacePath rootDirectory;
+  }
+
+  private final Node root;
+
+  ProjectDirectoriesTrie(
+      Collection<WorkspacePath> rootDirectories, Collection<WorkspacePath> excludeDirectories) {
+    MutableNode mutableRoot = new MutableNode();
+    for (WorkspacePath rootDirectory : rootDirectories) {
+      mutableRoot.add(rootDirectory.relativePath()).rootDirectory = rootDirectory;
+    }
+    for (WorkspacePath excludeDirectory : excludeDirectories) {
+      mutableRoot.add(excludeDirectory.relativePath()).excluded = true;
+    }
+    this.root = mutableRoot.freeze(/* excluded= */ false, /* rootDirectory= */ null);
+  }
+
+  /** Returns true if the given workspace path is under a root directory, and not excluded. */
+  boolean containsWorkspacePath(WorkspacePath workspacePath) {
+    return findRootDirectory(workspacePath.relativePath()) != null;
+  }
+
+  /**
+   * Returns the root directory containing the given workspace-relative path, or null if the path
+   * isn't under any root directory, or is excluded.
+   */
+  @Nullable
+  WorkspacePath findRootDirectory(String relativePath) {
+    Node node = root;
+    int start = 0;
+    int length = relativePath.length();
+    while (!node.excluded && node.children.length != 0 && start < length) {
+      int end = relativePath.indexOf('/', start);
+      if (end == -1) {
+        end = length;
+      }
+      if (end > start) {
+        int index = findChild(node.childNames, relativePath, start, end);
+        if (index < 0) {
+          break;
+        }
+        node = node.children[index];
+      }
+      start = end + 1;
+    }
+    return node.excluded ? null : node.rootDirectory;
+  }
+
+  /** Binary searches the sorted names for the given segment, without creating a substring. */
+  private static int findChild(String[] names, String path, int start, int end) {
+    int low = 0;
+    int high = names.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int comparison = compareSegment(names[mid], path, start, end);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /** Compares the name to the path segment, consistent with {@link String#compareTo}. */
+  private static int compareSegment(String name, String path, int start, int end) {
+    int segmentLength = end - start;
+    int limit = Math.min(name.length(), segmentLength);
+    for (int i = 0; i < limit; i++) {
+      char a = name.charAt(i);
+      char b = path.charAt(start + i);
+      if (a != b) {
+        return a - b;
+      }
+    }
+    return name.length() - segmentLength;
+  }
+
+  /** A trie node under construction. */
+  private static final class MutableNode {
+    final Map<String, MutableNode> children = new TreeMap<>();
+    boolean excluded;
+    @Nullable WorkspacePath rootDirectory;
+
+    MutableNode add(String relativePath) {
+      MutableNode node = this;
+      for (String segment : relativePath.split("/")) {
+        if (!segment.isEmpty()) {
+          node = node.children.computeIfAbsent(segment, s -> new MutableNode());
+        }
+      }
+      return node;
+    }
+
+    /**
+     * Converts this subtree to its final form, precomputing the verdict for each node from those
+     * of its ancestors. Exclusions take precedence over root directories at any depth.
+     */
+    Node freeze(boolean parentExcluded, @Nullable WorkspacePath parentRootDirectory) {
+      Node node = new Node();
+      node.excluded = parentExcluded || excluded;
+      node.rootDirectory =
+          node.excluded ? null : rootDirectory != null ? rootDirectory : parentRootDirectory;
+      if (node.excluded || children.isEmpty()) {
+        // the verdict for everything beneath this node is the same
+        return node;
+      }
+      node.childNames = children.keySet().toArray(new String[0]);
+      node.children = new Node[node.childNames.length];
+      for (int i = 0; i < node.childNames.length; i++) {
+        node.children[i] =
+            children.get(node.childNames[i]).freeze(node.excluded, node.rootDirectory);
+      }
+      return node;
+    }
+  }
+}
@@ -18,7 +18,6 @@ package com.google.idea.blaze.base.sync.workspace;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 import com.google.idea.blaze.base.bazel.BuildSystemProvider;
-import com.google.idea.blaze.base.io.FileOperationProvider;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.TargetName;
@@ -26,15 +25,11 @@ import com.google.idea.blaze.base.model.primitives.WorkspacePath;
 import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
 import com.google.idea.blaze.base.settings.Blaze;
 import com.google.idea.blaze.base.settings.BuildSystemName;
-import com.google.idea.blaze.base.sync.SyncCache;
-import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.io.FileUtil;
 import java.io.File;
-import java.util.Arrays;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /** External-workspace-aware resolution of workspace paths. */
@@ -130,7 +125,7 @@ public class WorkspaceHelper {
           workspace.root.workspacePathFor(file.getParentFile()),
           TargetName.create("__pkg__"));
     }
-    WorkspacePath packagePath = getPackagePath(provider, workspace.root, workspacePath);
+    WorkspacePath packagePath = getPackagePath(project, provider, workspace.root, workspacePath);
     if (packagePath == null) {
       return null;
     }
@@ -142,40 +137,25 @@ public class WorkspaceHelper {
         : null;
   }
 
+  @Nullable
   private static WorkspacePath getPackagePath(
-      BuildSystemProvider provider, WorkspaceRoot root, WorkspacePath workspacePath) {
-    File file = root.fileForPath(workspacePath).getParentFile();
-    while (file != null && FileUtil.isAncestor(root.directory(), file, false)) {
-      ProgressManager.checkCanceled();
-      if (provider.findBuildFileInDirectory(file) != null) {
-        return root.workspacePathFor(file);
-      }
-      file = file.getParentFile();
-    }
-    return null;
+      Project project,
+      BuildSystemProvider provider,
+      WorkspaceRoot root,
+      WorkspacePath workspacePath) {
+    File packageDir =
+        WorkspaceHelperCache.getInstance(project)
+            .getPackageDirectory(
+                provider, root, root.fileForPath(workspacePath).getParentFile());
+    return packageDir != null ? root.workspacePathFor(packageDir) : null;
   }
 
   @Nullable
-  private static synchronized Map<String, WorkspaceRoot> getExternalWorkspaceRoots(
-      Project project) {
+  private static Map<String, WorkspaceRoot> getExternalWorkspaceRoots(Project project) {
     if (Blaze.getBuildSystemName(project) == BuildSystemName.Blaze) {
       return ImmutableMap.of();
     }
-    return SyncCache.getInstance(project)
-        .get(WorkspaceHelper.class, WorkspaceHelper::enumerateExternalWorkspaces);
-  }
-
-  @SuppressWarnings("unused")
-  private static Map<String, WorkspaceRoot> enumerateExternalWorkspaces(
-      Project project, BlazeProjectData blazeProjectData) {
-    FileOperationProvider provider = FileOperationProvider.getInstance();
-    File[] children = provider.listFiles(getExternalSourceRoot(blazeProjectData));
-    if (children == null) {
-      return ImmutableMap.of();
-    }
-    return Arrays.stream(children)
-        .filter(provider::isDirectory)
-        .collect(Collectors.toMap(File::getName, WorkspaceRoot::new));
+    return WorkspaceHelperCache.getInstance(project).getExternalWorkspaceRoots();
   }
 
   @VisibleForTesting
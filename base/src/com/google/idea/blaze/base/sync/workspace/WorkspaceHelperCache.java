@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.workspace;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.bazel.BuildSystemProvider;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.projectview.ProjectViewSet;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.Blaze;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.sync.SyncListener;
+import com.google.idea.blaze.base.sync.SyncMode;
+import com.google.idea.blaze.base.sync.SyncResult;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Caches the file system lookups made by {@link WorkspaceHelper}, so that deriving a label for a
+ * file is usually a map lookup.
+ *
+ * <p>The package containing each directory is cached until a BUILD file or directory is created,
+ * moved or deleted, or until the next sync. External workspace roots are cached per {@link
+ * BlazeProjectData} instance, and read without locking.
+ */
+final class WorkspaceHelperCache {
+
+  static WorkspaceHelperCache getInstance(Project project) {
+    return ServiceManager.getService(project, WorkspaceHelperCache.class);
+  }
+
+  private final Project project;
+
+  /** Maps a directory to the directory of its containing package, if any. */
+  private final ConcurrentHashMap<File, Optional<File>> packageDirectories =
+      new ConcurrentHashMap<>();
+
+  @Nullable private volatile ExternalWorkspaces externalWorkspaces;
+
+  WorkspaceHelperCache(Project project) {
+    this.project = project;
+    project
+        .getMessageBus()
+        .connect(project)
+        .subscribe(VirtualFileManager.VFS_CHANGES, new InvalidatingListener());
+  }
+
+  /**
+   * Returns the directory of the blaze package containing the given directory, or null if it's
+   * not in a package under the given workspace root.
+   */
+  @Nullable
+  File getPackageDirectory(
+      BuildSystemProvider provider, WorkspaceRoot root, @Nullable File directory) {
+    if (directory == null || !FileUtil.isAncestor(root.directory(), directory, false)) {
+      return null;
+    }
+    Optional<File> cached = packageDirectories.get(directory);
+    if (cached != null) {
+      return cached.orElse(null);
+    }
+    ProgressManager.checkCanceled();
+    File packageDir =
+        provider.findBuildFileInDirectory(directory) != null
+            ? directory
+            : getPackageDirectory(provider, root, directory.getParentFile());
+    packageDirectories.put(directory, Optional.ofNullable(packageDir));
+    return packageDir;
+  }
+
+  /** Returns the external workspace roots for the current project data, keyed by name. */
+  @Nullable
+  ImmutableMap<String, WorkspaceRoot> getExternalWorkspaceRoots() {
+    BlazeProjectData projectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    if (projectData == null) {
+      return null;
+    }
+    ExternalWorkspaces cached = externalWorkspaces;
+    if (cached != null && cached.projectData == projectData) {
+      return cached.roots;
+    }
+    // racing callers may each enumerate the roots; they'll agree on the result
+    ExternalWorkspaces computed =
+        new ExternalWorkspaces(projectData, enumerateExternalWorkspaces(projectData));
+    externalWorkspaces = computed;
+    return computed.roots;
+  }
+
+  private static ImmutableMap<String, WorkspaceRoot> enumerateExternalWorkspaces(
+      BlazeProjectData blazeProjectData) {
+    FileOperationProvider provider = FileOperationProvider.getInstance();
+    File[] children =
+        provider.listFiles(WorkspaceHelper.getExternalSourceRoot(blazeProjectData));
+    if (children == null) {
+      return ImmutableMap.of();
+    }
+    return Arrays.stream(children)
+        .filter(provider::isDirectory)
+        .collect(ImmutableMap.toImmutableMap(File::getName, WorkspaceRoot::new));
+  }
+
+  private void clear() {
+    packageDirectories.clear();
+    externalWorkspaces = null;
+  }
+
+  private static class ExternalWorkspaces {
+    private final BlazeProjectData projectData;
+    private final ImmutableMap<String, WorkspaceRoot> roots;
+
+    private ExternalWorkspaces(
+        BlazeProjectData projectData, ImmutableMap<String, WorkspaceRoot> roots) {
+      this.projectData = projectData;
+      this.roots = roots;
+    }
+  }
+
+  /** Drops cached package boundaries when BUILD files or directories are added or removed. */
+  private class InvalidatingListener implements BulkFileListener {
+    @Override
+    public void after(List<? extends VFileEvent> events) {
+      if (packageDirectories.isEmpty()) {
+        return;
+      }
+      BuildSystemProvider provider = Blaze.getBuildSystemProvider(project);
+      if (events.stream().anyMatch(event -> affectsPackages(provider, event))) {
+        packageDirectories.clear();
+      }
+    }
+
+    private boolean affectsPackages(BuildSystemProvider provider, VFileEvent event) {
+      if (event instanceof VFileContentChangeEvent) {
+        return false;
+      }
+      if (event instanceof VFilePropertyChangeEvent
+          && !VirtualFile.PROP_NAME.equals(((VFilePropertyChangeEvent) event).getPropertyName())) {
+        return false;
+      }
+      if (event.getFile() != null && event.getFile().isDirectory()) {
+        return true;
+      }
+      if (event instanceof VFilePropertyChangeEvent) {
+        // a rename may turn a BUILD file into an ordinary file, or vice versa
+        VFilePropertyChangeEvent rename = (VFilePropertyChangeEvent) event;
+        return isBuildFileName(provider, rename.getOldValue())
+            || isBuildFileName(provider, rename.getNewValue());
+      }
+      return provider.isBuildFile(new File(event.getPath()).getName());
+    }
+
+    private boolean isBuildFileName(BuildSystemProvider provider, Object name) {
+      return name instanceof String && provider.isBuildFile((String) name);
+    }
+  }
+
+  /** Clears the cache after each sync, picking up changes not seen by the VFS. */
+  static class ClearAfterSync implements SyncListener {
+    @Override
+    public void onSyncComplete(
+        Project project,
+        BlazeContext context,
+        BlazeImportSettings importSettings,
+        ProjectViewSet projectViewSet,
+        ImmutableSet<Integer> buildIds,
+        BlazeProjectData blazeProjectData,
+        SyncMode syncMode,
+        SyncResult syncResult) {
+      getInstance(project).clear();
+    }
+  }
+}
@@ -19,6 +19,7 @@ import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.sync.autosync.ProjectTargetManager;
 import com.google.idea.blaze.base.sync.autosync.ProjectTargetManager.SyncStatus;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.base.targetmaps.SourceToTargetMap;
 import com.intellij.ide.projectView.ProjectViewNode;
 import com.intellij.openapi.extensions.ExtensionPointName;
 import com.intellij.openapi.project.Project;
@@ -69,6 +70,10 @@ public interface SyncStatusContributor {
     if (ProjectFileIndex.SERVICE.getInstance(project).getModuleForFile(vf) == null) {
       return null;
     }
+    if (!SourceToTargetMap.getInstance(project).isReady()) {
+      // don't block decorations on building the source map; it's prepared in the background
+      return null;
+    }
     return ProjectTargetManager.getInstance(project).getSyncStatus(new File(vf.getPath()));
   }
 
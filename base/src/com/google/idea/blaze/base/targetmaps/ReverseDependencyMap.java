@@ -23,14 +23,20 @@ import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.sync.SyncCache;
+import com.google.idea.blaze.base.sync.SyncCache.ProjectDataSlice;
+import com.google.idea.blaze.base.sync.SyncCacheWarmer;
 import com.intellij.openapi.project.Project;
+import java.util.EnumSet;
 
 /** Handy class to create an reverse dep map of all targets */
 public class ReverseDependencyMap {
   public static ImmutableMultimap<TargetKey, TargetKey> get(Project project) {
     ImmutableMultimap<TargetKey, TargetKey> map =
         SyncCache.getInstance(project)
-            .get(ReverseDependencyMap.class, ReverseDependencyMap::createRdepsMap);
+            .get(
+                ReverseDependencyMap.class,
+                EnumSet.of(ProjectDataSlice.TARGET_MAP),
+                ReverseDependencyMap::createRdepsMap);
     return map != null ? map : ImmutableMultimap.of();
   }
 
@@ -50,4 +56,22 @@ public class ReverseDependencyMap {
     }
     return builder.build();
   }
+
+  /** Builds the reverse dependency map in the background on project open. */
+  static class Warmer implements SyncCacheWarmer {
+    @Override
+    public String getName() {
+      return "Reverse dependency map";
+    }
+
+    @Override
+    public int getPriority() {
+      return 10;
+    }
+
+    @Override
+    public void warm(Project project) {
+      get(project);
+    }
+  }
 }
@@ -35,4 +35,12 @@ public interface SourceToTargetMap {
 
   /** Returns the rules that contain a given source file */
   ImmutableCollection<TargetKey> getRulesForSourceFile(File file);
+
+  /**
+   * Returns true if the map has been built, so lookups won't block. Callers on the EDT can use this
+   * to avoid building the map themselves.
+   */
+  default boolean isReady() {
+    return true;
+  }
 }
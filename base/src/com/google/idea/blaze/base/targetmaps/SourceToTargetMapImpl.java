@@ -20,17 +20,24 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Sets;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.sync.SyncCache;
+import com.google.idea.blaze.base.sync.SyncCache.IncrementalSyncCacheComputable;
+import com.google.idea.blaze.base.sync.SyncCache.ProjectDataSlice;
+import com.google.idea.blaze.base.sync.SyncCacheWarmer;
+import com.google.idea.blaze.base.sync.TargetMapDelta;
 import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.intellij.openapi.project.Project;
 import java.io.File;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 /** Maps source files to their respective targets */
@@ -68,18 +75,62 @@ public class SourceToTargetMapImpl implements SourceToTargetMap {
     return sourceToTargetMap.get(sourceFile);
   }
 
+  @Override
+  public boolean isReady() {
+    return SyncCache.getInstance(project).isComputed(SourceToTargetMapImpl.class);
+  }
+
   @Nullable
-  private synchronized ImmutableMultimap<File, TargetKey> getSourceToTargetMap() {
+  private ImmutableMultimap<File, TargetKey> getSourceToTargetMap() {
     return SyncCache.getInstance(project)
-        .get(SourceToTargetMapImpl.class, SourceToTargetMapImpl::computeSourceToTargetMap);
+        .get(
+            SourceToTargetMapImpl.class,
+            EnumSet.of(ProjectDataSlice.TARGET_MAP, ProjectDataSlice.ARTIFACT_LOCATION_DECODER),
+            new SourceToTargetMapComputable());
   }
 
-  @SuppressWarnings("unused")
-  private static ImmutableMultimap<File, TargetKey> computeSourceToTargetMap(
-      Project project, BlazeProjectData blazeProjectData) {
-    ArtifactLocationDecoder decoder = blazeProjectData.getArtifactLocationDecoder();
-    ImmutableMultimap.Builder<File, TargetKey> sourceToTargetMap = ImmutableMultimap.builder();
-    for (TargetIdeInfo target : blazeProjectData.getTargetMap().targets()) {
+  /**
+   * Computes the source to target map, updating only the affected targets' sources after syncs
+   * which change part of the target map.
+   */
+  private static class SourceToTargetMapComputable
+      implements IncrementalSyncCacheComputable<ImmutableMultimap<File, TargetKey>> {
+    @Override
+    public ImmutableMultimap<File, TargetKey> compute(
+        Project project, BlazeProjectData blazeProjectData) {
+      ArtifactLocationDecoder decoder = blazeProjectData.getArtifactLocationDecoder();
+      ImmutableMultimap.Builder<File, TargetKey> sourceToTargetMap = ImmutableMultimap.builder();
+      for (TargetIdeInfo target : blazeProjectData.getTargetMap().targets()) {
+        addSources(sourceToTargetMap, decoder, target);
+      }
+      return sourceToTargetMap.build();
+    }
+
+    @Override
+    public ImmutableMultimap<File, TargetKey> update(
+        Project project,
+        BlazeProjectData blazeProjectData,
+        ImmutableMultimap<File, TargetKey> previous,
+        TargetMapDelta delta) {
+      Set<TargetKey> staleTargets = Sets.union(delta.getRemoved(), delta.getChanged());
+      ImmutableMultimap.Builder<File, TargetKey> sourceToTargetMap = ImmutableMultimap.builder();
+      previous.entries().stream()
+          .filter(entry -> !staleTargets.contains(entry.getValue()))
+          .forEach(sourceToTargetMap::put);
+      ArtifactLocationDecoder decoder = blazeProjectData.getArtifactLocationDecoder();
+      for (TargetKey key : Sets.union(delta.getChanged(), delta.getAdded())) {
+        TargetIdeInfo target = blazeProjectData.getTargetMap().get(key);
+        if (target != null) {
+          addSources(sourceToTargetMap, decoder, target);
+        }
+      }
+      return sourceToTargetMap.build();
+    }
+
+    private static void addSources(
+        ImmutableMultimap.Builder<File, TargetKey> sourceToTargetMap,
+        ArtifactLocationDecoder decoder,
+        TargetIdeInfo target) {
       TargetKey key = target.getKey();
       for (ArtifactLocation sourceArtifact : target.getSources()) {
         File file = decoder.resolveSource(sourceArtifact);
@@ -88,6 +139,21 @@ public class SourceToTargetMapImpl implements SourceToTargetMap {
         }
       }
     }
-    return sourceToTargetMap.build();
+  }
+
+  /** Builds the source to target map in the background on project open. */
+  static class Warmer implements SyncCacheWarmer {
+    @Override
+    public String getName() {
+      return "Source to target map";
+    }
+
+    @Override
+    public void warm(Project project) {
+      SourceToTargetMap map = SourceToTargetMap.getInstance(project);
+      if (map instanceof SourceToTargetMapImpl) {
+        ((SourceToTargetMapImpl) map).getSourceToTargetMap();
+      }
+    }
   }
 }
@@ -15,6 +15,9 @@
  */
 package com.google.idea.blaze.base.vcs.git;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ObjectArrays;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.idea.blaze.base.async.process.ExternalTask;
@@ -25,6 +28,8 @@ import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.settings.BuildSystemName;
 import com.google.idea.blaze.base.sync.workspace.WorkingSet;
 import com.google.idea.blaze.base.vcs.BlazeVcsHandler;
+import com.google.idea.blaze.base.vcs.git.GitWorkingSetCache.RepositoryState;
+import com.google.idea.blaze.base.vcs.git.GitWorkingSetCache.Stamped;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
@@ -37,6 +42,17 @@ public class GitBlazeVcsHandler implements BlazeVcsHandler {
 
   private static final Logger logger = Logger.getInstance(GitBlazeVcsHandler.class);
 
+  /** The git metadata files which change when the tracked branch changes. */
+  private static final String[] UPSTREAM_REF_STAMP = {"HEAD", "config"};
+
+  /**
+   * The git metadata files which change when HEAD, fetched refs or the tracked branch change. The
+   * loose ref file of the tracked branch is stamped in addition to these.
+   */
+  private static final String[] UPSTREAM_SHA_STAMP = {
+    "HEAD", "FETCH_HEAD", "packed-refs", "config"
+  };
+
   @Override
   public String getVcsName() {
     return "git";
@@ -118,9 +134,24 @@ public class GitBlazeVcsHandler implements BlazeVcsHandler {
   /**
    * Returns the git commit SHA corresponding to the most recent commit in the current branch which
    * matches a commit in the currently-tracked remote branch.
+   *
+   * <p>The result is cached until HEAD, the fetched refs or the tracked branch's ref change.
    */
   @Nullable
   public static String getUpstreamSha(WorkspaceRoot workspaceRoot, boolean suppressErrors) {
+    RepositoryState state = GitWorkingSetCache.getInstance().getState(workspaceRoot);
+    String upstreamRef =
+        GitWorkingSetProvider.getGitRoot(workspaceRoot) != null
+            ? getUpstreamRef(workspaceRoot, state)
+            : null;
+    ImmutableList<Long> stamp =
+        upstreamRef != null
+            ? state.readStamp(ObjectArrays.concat(UPSTREAM_SHA_STAMP, upstreamRef))
+            : null;
+    Stamped<String> cached = state.upstreamSha;
+    if (stamp != null && cached != null && cached.stamp.equals(stamp)) {
+      return cached.value;
+    }
     ByteArrayOutputStream stdout = new ByteArrayOutputStream();
     ByteArrayOutputStream stderr = new ByteArrayOutputStream();
 
@@ -137,6 +168,39 @@ public class GitBlazeVcsHandler implements BlazeVcsHandler {
       }
       return null;
     }
-    return StringUtil.trimEnd(stdout.toString(), "\n");
+    String upstreamSha = StringUtil.trimEnd(stdout.toString(), "\n");
+    if (stamp != null) {
+      state.upstreamSha = new Stamped<>(stamp, upstreamSha, System.currentTimeMillis());
+    }
+    return upstreamSha;
+  }
+
+  /**
+   * Returns the full name of the tracked remote branch's ref (e.g. 'refs/remotes/origin/master'),
+   * or null if it can't be determined. The result is cached until HEAD or the git config change.
+   */
+  @Nullable
+  private static String getUpstreamRef(WorkspaceRoot workspaceRoot, RepositoryState state) {
+    ImmutableList<Long> stamp = state.readStamp(UPSTREAM_REF_STAMP);
+    Stamped<String> cached = state.upstreamRef;
+    if (stamp != null && cached != null && cached.stamp.equals(stamp)) {
+      return Strings.emptyToNull(cached.value);
+    }
+    ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    int retVal =
+        ExternalTask.builder(workspaceRoot)
+            .args("git", "rev-parse", "--symbolic-full-name", "@{u}")
+            .stdout(stdout)
+            .stderr(new ByteArrayOutputStream())
+            .build()
+            .run();
+    String output = StringUtil.trimEnd(stdout.toString(), "\n");
+    // without a tracked branch, the upstream SHA isn't cached; any error is reported when querying
+    // it. An empty string records that there's no tracked branch.
+    String upstreamRef = retVal == 0 && output.startsWith("refs/") ? output : "";
+    if (stamp != null) {
+      state.upstreamRef = new Stamped<>(stamp, upstreamRef, System.currentTimeMillis());
+    }
+    return Strings.emptyToNull(upstreamRef);
   }
 }
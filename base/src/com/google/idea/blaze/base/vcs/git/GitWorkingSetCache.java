@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.vcs.git;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Caches git state which is expensive to recompute for each sync: the git root, the upstream SHA,
+ * and the untracked files in each workspace.
+ *
+ * <p>Cached values are stamped with the modification times of the git metadata files they depend
+ * on, and reused while those are unchanged. Files created, moved or deleted in the workspace are
+ * tracked via VFS events, so the untracked files only need to be listed again for those paths.
+ */
+final class GitWorkingSetCache implements Disposable {
+
+  /** Beyond this many changed paths, untracked files are listed from scratch. */
+  private static final int MAX_CHANGED_PATHS = 500;
+
+  static GitWorkingSetCache getInstance() {
+    return ServiceManager.getService(GitWorkingSetCache.class);
+  }
+
+  private final Map<File, RepositoryState> states = new ConcurrentHashMap<>();
+
+  GitWorkingSetCache() {
+    ApplicationManager.getApplication()
+        .getMessageBus()
+        .connect(this)
+        .subscribe(VirtualFileManager.VFS_CHANGES, new ChangedPathsListener());
+  }
+
+  RepositoryState getState(WorkspaceRoot workspaceRoot) {
+    return states.computeIfAbsent(workspaceRoot.directory(), RepositoryState::new);
+  }
+
+  @Override
+  public void dispose() {
+    states.clear();
+  }
+
+  /** A value, and the git metadata modification times it was computed for. */
+  static final class Stamped<T> {
+    final ImmutableList<Long> stamp;
+    final T value;
+    final long computedTimeMillis;
+
+    Stamped(ImmutableList<Long> stamp, T value, long computedTimeMillis) {
+      this.stamp = stamp;
+      this.value = value;
+      this.computedTimeMillis = computedTimeMillis;
+    }
+  }
+
+  /** The cached git state of a single workspace. */
+  static final class RepositoryState {
+    private final File workspaceDirectory;
+
+    @Nullable volatile String gitRoot;
+    @Nullable volatile Stamped<String> upstreamRef;
+    @Nullable volatile Stamped<String> upstreamSha;
+    @Nullable volatile Stamped<ImmutableSet<WorkspacePath>> untrackedFiles;
+
+    /** Workspace-relative paths created, moved or deleted since untracked files were listed. */
+    private final Set<String> changedPaths = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean changedPathsOverflowed = true;
+
+    private RepositoryState(File workspaceDirectory) {
+      this.workspaceDirectory = workspaceDirectory;
+    }
+
+    /**
+     * Returns the modification times of the given files in the git directory, or null if the
+     * git directory can't be located, in which case nothing should be cached.
+     */
+    @Nullable
+    ImmutableList<Long> readStamp(String... gitFiles) {
+      String root = gitRoot;
+      if (root == null) {
+        return null;
+      }
+      File gitDir = new File(root, ".git");
+      FileOperationProvider files = FileOperationProvider.getInstance();
+      if (!files.isDirectory(gitDir)) {
+        return null;
+      }
+      ImmutableList.Builder<Long> stamp = ImmutableList.builder();
+      for (String gitFile : gitFiles) {
+        stamp.add(files.getFileModifiedTime(new File(gitDir, gitFile)));
+      }
+      return stamp.build();
+    }
+
+    /**
+     * Returns and resets the paths changed since the last call, or null if too many paths have
+     * changed to track them individually.
+     */
+    @Nullable
+    ImmutableSet<String> drainChangedPaths() {
+      boolean overflowed = changedPathsOverflowed;
+      changedPathsOverflowed = false;
+      ImmutableSet<String> paths = ImmutableSet.copyOf(changedPaths);
+      changedPaths.removeAll(paths);
+      return overflowed ? null : paths;
+    }
+
+    /** Forces the next listing of untracked files to start from scratch. */
+    void invalidateUntrackedFiles() {
+      untrackedFiles = null;
+      changedPathsOverflowed = true;
+    }
+
+    private void onPathChanged(String path) {
+      if (changedPathsOverflowed) {
+        return;
+      }
+      File file = new File(path);
+      if (!FileUtil.isAncestor(workspaceDirectory, file, true)) {
+        return;
+      }
+      if (file.getName().equals(".gitignore")) {
+        changedPathsOverflowed = true;
+        return;
+      }
+      String relativePath = FileUtil.getRelativePath(workspaceDirectory, file);
+      if (relativePath != null) {
+        changedPaths.add(FileUtil.toSystemIndependentName(relativePath));
+      }
+      if (changedPaths.size() > MAX_CHANGED_PATHS) {
+        changedPathsOverflowed = true;
+        changedPaths.clear();
+      }
+    }
+  }
+
+  private class ChangedPathsListener implements BulkFileListener {
+    @Override
+    public void after(List<? extends VFileEvent> events) {
+      if (states.isEmpty()) {
+        return;
+      }
+      for (VFileEvent event : events) {
+        if (event instanceof VFileContentChangeEvent) {
+          // only .gitignore content changes affect which files are untracked
+          if (event.getPath().endsWith("/.gitignore")) {
+            onPathChanged(event.getPath());
+          }
+        } else if (event instanceof VFileMoveEvent) {
+          VFileMoveEvent move = (VFileMoveEvent) event;
+          onPathChanged(move.getOldParent().getPath() + "/" + move.getFile().getName());
+          onPathChanged(move.getPath());
+        } else if (event instanceof VFilePropertyChangeEvent) {
+          VFilePropertyChangeEvent change = (VFilePropertyChangeEvent) event;
+          if (change.getPropertyName().equals(VirtualFile.PROP_NAME)) {
+            onPathChanged(change.getOldPath());
+            onPathChanged(change.getPath());
+          }
+        } else if (event instanceof VFileCreateEvent
+            || event instanceof VFileDeleteEvent
+            || event instanceof VFileCopyEvent) {
+          onPathChanged(event.getPath());
+        }
+      }
+    }
+
+    private void onPathChanged(String path) {
+      states.values().forEach(state -> state.onPathChanged(path));
+    }
+  }
+}
@@ -15,8 +15,14 @@
  */
 package com.google.idea.blaze.base.vcs.git;
 
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.idea.blaze.base.async.process.ExternalTask;
 import com.google.idea.blaze.base.async.process.LineProcessingOutputStream;
 import com.google.idea.blaze.base.model.primitives.WorkspacePath;
@@ -25,12 +31,19 @@ import com.google.idea.blaze.base.scope.BlazeContext;
 import com.google.idea.blaze.base.scope.scopes.TimingScope;
 import com.google.idea.blaze.base.scope.scopes.TimingScope.EventType;
 import com.google.idea.blaze.base.sync.workspace.WorkingSet;
+import com.google.idea.blaze.base.vcs.git.GitWorkingSetCache.RepositoryState;
+import com.google.idea.blaze.base.vcs.git.GitWorkingSetCache.Stamped;
+import com.google.idea.common.experiments.IntExperiment;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
 /** Vcs diff provider for git. */
@@ -38,6 +51,24 @@ public class GitWorkingSetProvider {
 
   private static final Logger logger = Logger.getInstance(GitWorkingSetProvider.class);
 
+  /**
+   * Untracked files are updated incrementally from VFS events, but are periodically listed from
+   * scratch to pick up any changes the VFS hasn't seen.
+   */
+  private static final IntExperiment untrackedFilesMaxAgeMinutes =
+      new IntExperiment("blaze.git.untracked.files.max.age.minutes", 30);
+
+  /** The git metadata files which change when the set of tracked files changes. */
+  private static final String[] UNTRACKED_FILES_STAMP = {"HEAD", "index"};
+
+  /**
+   * Runs git diffs alongside the untracked file listing. Kept separate from the executor the
+   * working set is calculated on, so waiting on the diff can't starve that executor.
+   */
+  private static final ListeningExecutorService DIFF_EXECUTOR =
+      MoreExecutors.listeningDecorator(
+          AppExecutorUtil.createBoundedApplicationPoolExecutor("GitDiff", 4));
+
   /**
    * Finds all changes between HEAD and the git commit specified by the provided SHA.<br>
    * Returns null if an error occurred.
@@ -45,15 +76,62 @@ public class GitWorkingSetProvider {
   @Nullable
   public static WorkingSet calculateWorkingSet(
       WorkspaceRoot workspaceRoot, String upstreamSha, BlazeContext context) {
-
-    String gitRoot = getConsoleOutput(workspaceRoot, "git", "rev-parse", "--show-toplevel");
+    RepositoryState state = GitWorkingSetCache.getInstance().getState(workspaceRoot);
+    String gitRoot = getGitRoot(workspaceRoot);
     if (gitRoot == null) {
       return null;
     }
+    // the diff and the untracked file listing are independent, so list untracked files on this
+    // thread while the diff runs
+    ListenableFuture<GitStatusLineProcessor> diff =
+        DIFF_EXECUTOR.submit(() -> diffAgainst(workspaceRoot, gitRoot, upstreamSha, context));
+    ImmutableSet<WorkspacePath> untrackedFiles = getUntrackedFiles(workspaceRoot, state);
+    if (untrackedFiles == null) {
+      diff.cancel(true);
+      return null;
+    }
+
+    GitStatusLineProcessor processor;
+    try {
+      processor = diff.get();
+    } catch (InterruptedException e) {
+      diff.cancel(true);
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      logger.error(e);
+      return null;
+    }
+    if (processor == null) {
+      return null;
+    }
+    return new WorkingSet(
+        ImmutableList.<WorkspacePath>builder()
+            .addAll(processor.addedFiles)
+            .addAll(untrackedFiles)
+            .build(),
+        ImmutableList.copyOf(processor.modifiedFiles),
+        ImmutableList.copyOf(processor.deletedFiles));
+  }
+
+  /** Returns the root directory of the git repository, cached for the rest of the session. */
+  @Nullable
+  static String getGitRoot(WorkspaceRoot workspaceRoot) {
+    RepositoryState state = GitWorkingSetCache.getInstance().getState(workspaceRoot);
+    String gitRoot = state.gitRoot;
+    if (gitRoot == null) {
+      gitRoot = getConsoleOutput(workspaceRoot, "git", "rev-parse", "--show-toplevel");
+      state.gitRoot = gitRoot;
+    }
+    return gitRoot;
+  }
+
+  /** Does a git diff to find all modified files we know about. */
+  @Nullable
+  private static GitStatusLineProcessor diffAgainst(
+      WorkspaceRoot workspaceRoot, String gitRoot, String upstreamSha, BlazeContext context) {
     GitStatusLineProcessor processor = new GitStatusLineProcessor(workspaceRoot, gitRoot);
     ByteArrayOutputStream stderr = new ByteArrayOutputStream();
-
-    // Do a git diff to find all modified files we know about
     int retVal =
         ExternalTask.builder(workspaceRoot)
             .args("git", "diff", "--name-status", "--no-renames", upstreamSha)
@@ -66,34 +144,95 @@ public class GitWorkingSetProvider {
       logger.error(stderr);
       return null;
     }
+    return processor;
+  }
 
-    // Finally list all untracked files, as they're not caught by the git diff step above
-    String untrackedFilesOutput =
-        getConsoleOutput(workspaceRoot, "git", "ls-files", "--others", "--exclude-standard");
+  /**
+   * Lists all untracked files, as they're not caught by the git diff. If git's index and HEAD are
+   * unchanged since the previous listing, only the paths changed since then are listed again.
+   */
+  @Nullable
+  private static ImmutableSet<WorkspacePath> getUntrackedFiles(
+      WorkspaceRoot workspaceRoot, RepositoryState state) {
+    ImmutableList<Long> stamp = state.readStamp(UNTRACKED_FILES_STAMP);
+    ImmutableSet<String> changedPaths = state.drainChangedPaths();
+    Stamped<ImmutableSet<WorkspacePath>> cached = state.untrackedFiles;
+    long now = System.currentTimeMillis();
+    long maxAgeMillis = TimeUnit.MINUTES.toMillis(untrackedFilesMaxAgeMinutes.getValue());
+    if (stamp != null
+        && changedPaths != null
+        && cached != null
+        && cached.stamp.equals(stamp)
+        && now - cached.computedTimeMillis < maxAgeMillis) {
+      if (changedPaths.isEmpty()) {
+        return cached.value;
+      }
+      ImmutableSet<WorkspacePath> listed = listUntrackedFiles(workspaceRoot, changedPaths);
+      if (listed == null) {
+        state.invalidateUntrackedFiles();
+        return null;
+      }
+      ImmutableSet<WorkspacePath> untrackedFiles =
+          ImmutableSet.<WorkspacePath>builder()
+              .addAll(
+                  cached.value.stream()
+                      .filter(path -> !isUnderAny(path, changedPaths))
+                      .collect(toImmutableSet()))
+              .addAll(listed)
+              .build();
+      state.untrackedFiles = new Stamped<>(stamp, untrackedFiles, cached.computedTimeMillis);
+      return untrackedFiles;
+    }
+    ImmutableSet<WorkspacePath> untrackedFiles =
+        listUntrackedFiles(workspaceRoot, ImmutableSet.of());
+    if (untrackedFiles == null) {
+      state.invalidateUntrackedFiles();
+      return null;
+    }
+    state.untrackedFiles = stamp != null ? new Stamped<>(stamp, untrackedFiles, now) : null;
+    return untrackedFiles;
+  }
+
+  /**
+   * Lists the untracked files under the given workspace-relative paths, or the entire workspace
+   * if no paths are given.
+   */
+  @Nullable
+  private static ImmutableSet<WorkspacePath> listUntrackedFiles(
+      WorkspaceRoot workspaceRoot, Collection<String> paths) {
+    List<String> command = new ArrayList<>();
+    command.addAll(
+        Arrays.asList(
+            "git", "--literal-pathspecs", "ls-files", "--others", "--exclude-standard"));
+    if (!paths.isEmpty()) {
+      command.add("--");
+      command.addAll(paths);
+    }
+    String untrackedFilesOutput = getConsoleOutput(workspaceRoot, command);
     if (untrackedFilesOutput == null) {
       return null;
     }
+    return Arrays.stream(untrackedFilesOutput.split("\n"))
+        .filter(s -> !Strings.isNullOrEmpty(s))
+        .filter(WorkspacePath::isValid)
+        .map(WorkspacePath::new)
+        .collect(toImmutableSet());
+  }
 
-    List<WorkspacePath> untrackedFiles =
-        Arrays.asList(untrackedFilesOutput.split("\n"))
-            .stream()
-            .filter(s -> !Strings.isNullOrEmpty(s))
-            .filter(WorkspacePath::isValid)
-            .map(WorkspacePath::new)
-            .collect(Collectors.toList());
+  private static boolean isUnderAny(WorkspacePath path, Collection<String> paths) {
+    String relativePath = path.relativePath();
+    return paths.stream()
+        .anyMatch(p -> relativePath.equals(p) || relativePath.startsWith(p + "/"));
+  }
 
-    return new WorkingSet(
-        ImmutableList.<WorkspacePath>builder()
-            .addAll(processor.addedFiles)
-            .addAll(untrackedFiles)
-            .build(),
-        ImmutableList.copyOf(processor.modifiedFiles),
-        ImmutableList.copyOf(processor.deletedFiles));
+  @Nullable
+  private static String getConsoleOutput(WorkspaceRoot workspaceRoot, String... commands) {
+    return getConsoleOutput(workspaceRoot, Arrays.asList(commands));
   }
 
   /** @return the console output, in string form, or null if there was a non-zero exit code. */
   @Nullable
-  private static String getConsoleOutput(WorkspaceRoot workspaceRoot, String... commands) {
+  private static String getConsoleOutput(WorkspaceRoot workspaceRoot, List<String> commands) {
     ByteArrayOutputStream stdout = new ByteArrayOutputStream();
     ByteArrayOutputStream stderr = new ByteArrayOutputStream();
 
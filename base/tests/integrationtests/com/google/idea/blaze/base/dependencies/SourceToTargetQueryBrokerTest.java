@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.dependencies;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build.QueryResult;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build.Rule;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build.Target;
+import com.google.idea.blaze.base.BlazeIntegrationTestCase;
+import com.google.idea.blaze.base.async.process.ExternalTask;
+import com.google.idea.blaze.base.async.process.ExternalTaskProvider;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Integration tests for {@link SourceToTargetQueryBroker}. */
+@RunWith(JUnit4.class)
+public class SourceToTargetQueryBrokerTest extends BlazeIntegrationTestCase {
+
+  private final FakeQueryTaskProvider taskProvider = new FakeQueryTaskProvider();
+  private SourceToTargetQueryBroker broker;
+
+  @Before
+  public final void before() {
+    registerApplicationService(ExternalTaskProvider.class, taskProvider);
+    broker = new SourceToTargetQueryBroker(getProject());
+  }
+
+  @Test
+  public void testRequestsForSeveralSources_queriedInOneBatch() throws Exception {
+    workspace.createFile(new WorkspacePath("foo/BUILD"));
+    workspace.createFile(new WorkspacePath("bar/BUILD"));
+    taskProvider.rules =
+        ImmutableList.of(
+            rule("//foo:lib", "java_library", "//foo:A.java"),
+            rule("//bar:lib", "java_library", "//bar:B.java", "//bar:C.java"));
+
+    Future<List<TargetInfo>> foo = broker.getTargetsBuildingSource(Label.create("//foo:A.java"));
+    Future<List<TargetInfo>> bar = broker.getTargetsBuildingSource(Label.create("//bar:B.java"));
+
+    assertThat(labels(foo)).containsExactly(Label.create("//foo:lib"));
+    assertThat(labels(bar)).containsExactly(Label.create("//bar:lib"));
+    assertThat(taskProvider.queries).hasSize(1);
+    assertThat(taskProvider.queries.get(0)).startsWith("same_pkg_direct_rdeps(");
+    assertThat(taskProvider.queries.get(0)).contains("\"//foo:A.java\"");
+    assertThat(taskProvider.queries.get(0)).contains("\"//bar:B.java\"");
+  }
+
+  @Test
+  public void testResults_cachedUntilBuildFileChanges() throws Exception {
+    VirtualFile buildFile = workspace.createFile(new WorkspacePath("foo/BUILD"));
+    taskProvider.rules = ImmutableList.of(rule("//foo:lib", "java_library", "//foo:A.java"));
+    Label source = Label.create("//foo:A.java");
+
+    assertThat(labels(broker.getTargetsBuildingSource(source)))
+        .containsExactly(Label.create("//foo:lib"));
+    assertThat(labels(broker.getTargetsBuildingSource(source)))
+        .containsExactly(Label.create("//foo:lib"));
+    assertThat(taskProvider.queries).hasSize(1);
+
+    WriteAction.run(() -> buildFile.setBinaryContent("# changed".getBytes(UTF_8)));
+    taskProvider.rules = ImmutableList.of(rule("//foo:other", "java_library", "//foo:A.java"));
+
+    assertThat(labels(broker.getTargetsBuildingSource(source)))
+        .containsExactly(Label.create("//foo:other"));
+    assertThat(taskProvider.queries).hasSize(2);
+  }
+
+  @Test
+  public void testPackageWithoutBuildFile_resultsCached() throws Exception {
+    workspace.createFile(new WorkspacePath("foo/A.java"));
+    Label source = Label.create("//foo:A.java");
+
+    assertThat(labels(broker.getTargetsBuildingSource(source))).isEmpty();
+    assertThat(labels(broker.getTargetsBuildingSource(source))).isEmpty();
+    assertThat(taskProvider.queries).hasSize(1);
+  }
+
+  private static List<Label> labels(Future<List<TargetInfo>> future) throws Exception {
+    List<TargetInfo> targets = future.get(10, TimeUnit.SECONDS);
+    assertThat(targets).isNotNull();
+    List<Label> labels = new ArrayList<>();
+    targets.forEach(t -> labels.add(t.label));
+    return labels;
+  }
+
+  private static Target rule(String label, String ruleClass, String... inputs) {
+    Rule.Builder rule = Rule.newBuilder().setName(label).setRuleClass(ruleClass);
+    for (String input : inputs) {
+      rule.addRuleInput(input);
+    }
+    return Target.newBuilder().setType(Target.Discriminator.RULE).setRule(rule).build();
+  }
+
+  /** Answers every query with the given rules, recording the query expressions. */
+  private static class FakeQueryTaskProvider implements ExternalTaskProvider {
+    private final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+    private volatile ImmutableList<Target> rules = ImmutableList.of();
+
+    @Override
+    public ExternalTask build(ExternalTask.Builder builder) {
+      List<String> args = builder.command.build();
+      String query = args.get(args.size() - 1);
+      OutputStream stdout = builder.stdout;
+      return scopes -> {
+        queries.add(query);
+        try {
+          QueryResult.newBuilder().addAllTarget(rules).build().writeTo(stdout);
+          stdout.close();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        return 0;
+      };
+    }
+  }
+}
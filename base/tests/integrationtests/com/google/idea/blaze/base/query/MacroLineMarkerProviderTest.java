@@ -0,0 +1,267 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.query;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.lang.buildfile.BuildFileIntegrationTestCase;
+import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.TargetName;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.query.GeneratedTarget.MacroData;
+import com.google.idea.blaze.base.query.MacroLineMarkerProvider.FileData;
+import com.google.idea.blaze.base.query.MacroLineMarkerProvider.FileDataProvider;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Integration tests for {@link MacroLineMarkerProvider.FileDataProvider}. */
+@RunWith(JUnit4.class)
+public class MacroLineMarkerProviderTest extends BuildFileIntegrationTestCase {
+
+  private final FakeMacroTargetProvider targetProvider = new FakeMacroTargetProvider();
+  private final List<Runnable> batches = new ArrayList<>();
+  private final List<List<VirtualFile>> restartedFiles = new ArrayList<>();
+
+  private FileDataProvider fileDataProvider;
+
+  @Before
+  public final void before() {
+    MockExperimentService experimentService = new MockExperimentService();
+    // don't let the real provider try to run blaze for packages the fake provider can't handle
+    experimentService.setExperimentRaw("blaze.query.macro.target.provider.enabled", false);
+    registerApplicationComponent(ExperimentService.class, experimentService);
+    registerExtension(MacroTargetProvider.EP_NAME, targetProvider);
+    fileDataProvider = new FileDataProvider(getProject(), batches::add, restartedFiles::add);
+
+    createBuildFile(new WorkspacePath("macros/BUILD"));
+    workspace.createPsiFile(
+        new WorkspacePath("macros/defs.bzl"),
+        "def java_macro(name):",
+        "  native.java_library(name = name)");
+  }
+
+  @Test
+  public void testGetFileData_requestsAreQueriedInOneBatch() {
+    BuildFile fileA = createBuildFileWithMacro("a");
+    BuildFile fileB = createBuildFileWithMacro("b");
+
+    assertThat(fileDataProvider.getFileData(fileA)).isNull();
+    assertThat(fileDataProvider.getFileData(fileB)).isNull();
+    assertThat(fileDataProvider.getFileData(fileA)).isNull();
+    assertThat(batches).hasSize(1);
+    assertThat(targetProvider.queries).isEmpty();
+
+    runBatches();
+
+    assertThat(targetProvider.queries).hasSize(1);
+    assertThat(targetProvider.queries.get(0))
+        .containsExactly(fileA.getBuildLabel(), fileB.getBuildLabel());
+    assertThat(findGeneratedTargets(fileA)).containsExactly(targetProvider.targetFor(fileA));
+    assertThat(findGeneratedTargets(fileB)).containsExactly(targetProvider.targetFor(fileB));
+  }
+
+  @Test
+  public void testGetFileData_unchangedFilesAreNotQueriedAgain() throws Exception {
+    BuildFile file = createBuildFileWithMacro("a");
+    fileDataProvider.getFileData(file);
+    runBatches();
+
+    // saving the file without changing its contents only updates its modification stamp
+    VirtualFile vf = file.getVirtualFile();
+    long stamp = vf.getModificationStamp();
+    byte[] contents = vf.contentsToByteArray();
+    WriteAction.run(() -> vf.setBinaryContent(contents));
+    assertThat(vf.getModificationStamp()).isNotEqualTo(stamp);
+
+    assertThat(fileDataProvider.getFileData(file)).isNotNull();
+    assertThat(batches).isEmpty();
+    assertThat(targetProvider.queries).hasSize(1);
+  }
+
+  @Test
+  public void testGetFileData_changedFilesAreQueriedAgain() throws Exception {
+    BuildFile file = createBuildFileWithMacro("a");
+    fileDataProvider.getFileData(file);
+    runBatches();
+
+    BuildFile updatedFile = appendLine(file, "java_macro(name = 'other')");
+
+    // the previous results are returned until the query completes
+    assertThat(fileDataProvider.getFileData(updatedFile)).isNotNull();
+    assertThat(fileDataProvider.getFileData(updatedFile)).isNotNull();
+    assertThat(batches).hasSize(1);
+
+    runBatches();
+
+    assertThat(targetProvider.queries).hasSize(2);
+  }
+
+  @Test
+  public void testGetFileData_failedFilesAreNotQueriedAgainUntilChanged() throws Exception {
+    BuildFile file = createBuildFileWithMacro("a");
+    targetProvider.failedPackages.add(file.getBuildLabel());
+    fileDataProvider.getFileData(file);
+    runBatches();
+
+    assertThat(findGeneratedTargets(file)).isEmpty();
+    assertThat(batches).isEmpty();
+
+    targetProvider.failedPackages.clear();
+    BuildFile updatedFile = appendLine(file, "java_macro(name = 'other')");
+    fileDataProvider.getFileData(updatedFile);
+    runBatches();
+
+    assertThat(targetProvider.queries).hasSize(2);
+    assertThat(findGeneratedTargets(updatedFile))
+        .containsExactly(targetProvider.targetFor(updatedFile));
+  }
+
+  @Test
+  public void testRunBatch_recordsMacroFreeAndBrokenPackagesFromTheSameBatch() {
+    BuildFile macroFree =
+        createBuildFile(
+            new WorkspacePath("a/BUILD"),
+            "load('//macros:defs.bzl', 'java_macro')",
+            "java_library(name = 'gen')");
+    BuildFile broken = createBuildFileWithMacro("b");
+    targetProvider.macroFreePackages.add(macroFree.getBuildLabel());
+    targetProvider.failedPackages.add(broken.getBuildLabel());
+    fileDataProvider.getFileData(macroFree);
+    fileDataProvider.getFileData(broken);
+
+    runBatches();
+
+    assertThat(targetProvider.queries).hasSize(1);
+    assertThat(restartedFiles).containsExactly(ImmutableList.of(macroFree.getVirtualFile()));
+    assertThat(findGeneratedTargets(macroFree)).isEmpty();
+    assertThat(findGeneratedTargets(broken)).isEmpty();
+    // neither package is queried again until it changes
+    assertThat(batches).isEmpty();
+    assertThat(targetProvider.queries).hasSize(1);
+  }
+
+  @Test
+  public void testRunBatch_restartsHighlightingOfUpdatedFilesOnly() {
+    BuildFile fileA = createBuildFileWithMacro("a");
+    BuildFile fileB = createBuildFileWithMacro("b");
+    targetProvider.failedPackages.add(fileB.getBuildLabel());
+    fileDataProvider.getFileData(fileA);
+    fileDataProvider.getFileData(fileB);
+
+    runBatches();
+
+    assertThat(restartedFiles).containsExactly(ImmutableList.of(fileA.getVirtualFile()));
+  }
+
+  @Test
+  public void testRunBatch_includesOpenBuildFiles() throws Throwable {
+    BuildFile fileA = createBuildFileWithMacro("a");
+    BuildFile openFile = createBuildFileWithMacro("b");
+    editorTest.openFileInEditor(openFile.getVirtualFile());
+
+    fileDataProvider.getFileData(fileA);
+    runBatches();
+
+    assertThat(targetProvider.queries).hasSize(1);
+    assertThat(targetProvider.queries.get(0))
+        .containsExactly(fileA.getBuildLabel(), openFile.getBuildLabel());
+    assertThat(findGeneratedTargets(openFile)).containsExactly(targetProvider.targetFor(openFile));
+  }
+
+  private BuildFile createBuildFileWithMacro(String pkg) {
+    return createBuildFile(
+        new WorkspacePath(pkg + "/BUILD"),
+        "load('//macros:defs.bzl', 'java_macro')",
+        "java_macro(name = 'gen')");
+  }
+
+  private BuildFile appendLine(BuildFile file, String line) throws Exception {
+    VirtualFile vf = file.getVirtualFile();
+    WriteAction.run(
+        () ->
+            vf.setBinaryContent(
+                (new String(vf.contentsToByteArray(), UTF_8) + "\n" + line).getBytes(UTF_8)));
+    return (BuildFile) fileSystem.getPsiFile(vf);
+  }
+
+  private ImmutableList<GeneratedTarget> findGeneratedTargets(BuildFile file) {
+    FileData fileData = fileDataProvider.getFileData(file);
+    assertThat(fileData).isNotNull();
+    return fileData.findTargetsGeneratedByMacro(file, file.findRule("gen"));
+  }
+
+  private void runBatches() {
+    List<Runnable> toRun = new ArrayList<>(batches);
+    batches.clear();
+    toRun.forEach(Runnable::run);
+  }
+
+  /**
+   * Generates a single target for each package, except those marked as macro-free or failed.
+   * Results are grouped the same way as blaze query results, omitting failed packages.
+   */
+  private static class FakeMacroTargetProvider implements MacroTargetProvider {
+    private final List<ImmutableList<Label>> queries = new ArrayList<>();
+    private final List<Label> macroFreePackages = new ArrayList<>();
+    private final List<Label> failedPackages = new ArrayList<>();
+
+    @Override
+    public ImmutableList<GeneratedTarget> doFindTargets(Project project, Label buildPackage) {
+      throw new AssertionError("Packages should be queried together");
+    }
+
+    @Override
+    public ImmutableMap<Label, ImmutableList<GeneratedTarget>> doFindTargets(
+        Project project, ImmutableList<Label> buildPackages) {
+      queries.add(buildPackages);
+      ImmutableList<GeneratedTarget> targets =
+          buildPackages.stream()
+              .filter(p -> !macroFreePackages.contains(p) && !failedPackages.contains(p))
+              .map(FakeMacroTargetProvider::targetFor)
+              .collect(toImmutableList());
+      return BlazeQueryMacroTargetProvider.groupByPackage(
+          buildPackages,
+          targets,
+          failedPackages.stream().map(Label::blazePackage).collect(toImmutableSet()));
+    }
+
+    GeneratedTarget targetFor(BuildFile file) {
+      return targetFor(file.getBuildLabel());
+    }
+
+    private static GeneratedTarget targetFor(Label buildPackage) {
+      return new GeneratedTarget(
+          "java_library",
+          Label.create(buildPackage.blazePackage(), TargetName.create("gen")),
+          new MacroData(2, "java_macro", "gen"));
+    }
+  }
+}
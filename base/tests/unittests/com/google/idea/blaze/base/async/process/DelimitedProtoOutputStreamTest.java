@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.async.process;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.devtools.build.lib.query2.proto.proto2api.Build.Rule;
+import com.google.devtools.build.lib.query2.proto.proto2api.Build.Target;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DelimitedProtoOutputStream}. */
+@RunWith(JUnit4.class)
+public class DelimitedProtoOutputStreamTest {
+
+  @Test
+  public void write_decodesMessagesSplitAcrossWrites() throws IOException {
+    List<Target> decoded = new ArrayList<>();
+    DelimitedProtoOutputStream<Target> stream =
+        DelimitedProtoOutputStream.of(Target.parser(), decoded::add);
+    Target first = ruleTarget("//foo:bar", "java_library");
+    Target second = ruleTarget("//foo:baz", "java_test");
+    byte[] bytes = delimited(first, second);
+
+    // write the output a few bytes at a time, checking messages are consumed once complete
+    int firstLength = first.getSerializedSize() + 1;
+    for (int i = 0; i < bytes.length; i += 3) {
+      int written = Math.min(i + 3, bytes.length);
+      stream.write(bytes, i, written - i);
+      int expected = written == bytes.length ? 2 : written >= firstLength ? 1 : 0;
+      assertThat(decoded).hasSize(expected);
+    }
+    stream.close();
+
+    assertThat(decoded).containsExactly(first, second).inOrder();
+    assertThat(stream.getError()).isNull();
+  }
+
+  @Test
+  public void close_truncatedMessageReportsError() throws IOException {
+    List<Target> decoded = new ArrayList<>();
+    DelimitedProtoOutputStream<Target> stream =
+        DelimitedProtoOutputStream.of(Target.parser(), decoded::add);
+    byte[] bytes = delimited(ruleTarget("//foo:bar", "java_library"));
+
+    stream.write(bytes, 0, bytes.length - 1);
+    stream.close();
+
+    assertThat(decoded).isEmpty();
+    assertThat(stream.getError()).isNotNull();
+  }
+
+  @Test
+  public void write_malformedMessageReportsErrorWithoutThrowing() throws IOException {
+    List<Target> decoded = new ArrayList<>();
+    DelimitedProtoOutputStream<Target> stream =
+        DelimitedProtoOutputStream.of(Target.parser(), decoded::add);
+    byte[] garbage = new byte[] {3, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+    byte[] valid = delimited(ruleTarget("//foo:bar", "java_library"));
+
+    stream.write(garbage, 0, garbage.length);
+    stream.write(valid, 0, valid.length);
+    stream.close();
+
+    assertThat(decoded).isEmpty();
+    assertThat(stream.getError()).isNotNull();
+  }
+
+  private static Target ruleTarget(String label, String ruleClass) {
+    return Target.newBuilder()
+        .setType(Target.Discriminator.RULE)
+        .setRule(Rule.newBuilder().setName(label).setRuleClass(ruleClass))
+        .build();
+  }
+
+  private static byte[] delimited(Target... targets) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (Target target : targets) {
+      target.writeDelimitedTo(out);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.filecache;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.idea.blaze.base.command.buildresult.SourceArtifact;
+import com.google.idea.blaze.base.sync.FakeRemoteOutputArtifact;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ArtifactStore} */
+@RunWith(JUnit4.class)
+public class ArtifactStoreTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path storeDir;
+  private Path viewsDir;
+
+  @Before
+  public void setUp() throws IOException {
+    storeDir = temporaryFolder.newFolder("store").toPath();
+    viewsDir = temporaryFolder.newFolder("views").toPath();
+  }
+
+  @Test
+  public void publish_localArtifact_viewHasArtifactContents() throws IOException {
+    SourceArtifact artifact = new SourceArtifact(createFile("a.jar", "contents"));
+    ArtifactStore store = createStore();
+
+    Path view = viewsDir.resolve("a.jar");
+    store.publish(ArtifactStore.digest(artifact), artifact, view);
+
+    assertThat(Files.readAllLines(view, UTF_8)).containsExactly("contents");
+  }
+
+  @Test
+  public void publish_localArtifactRewrittenInPlace_viewIsUnchanged() throws IOException {
+    File output = createFile("a.jar", "contents");
+    SourceArtifact artifact = new SourceArtifact(output);
+    ArtifactStore store = createStore();
+
+    Path view = viewsDir.resolve("a.jar");
+    store.publish(ArtifactStore.digest(artifact), artifact, view);
+    Files.write(output.toPath(), "rewritten".getBytes(UTF_8));
+
+    assertThat(Files.readAllLines(view, UTF_8)).containsExactly("contents");
+  }
+
+  @Test
+  public void publish_nullDigest_copiedWithoutStoring() throws IOException {
+    SourceArtifact artifact = new SourceArtifact(createFile("a.jar", "contents"));
+    ArtifactStore store = createStore();
+
+    Path view = viewsDir.resolve("a.jar");
+    store.publish(/* digest= */ null, artifact, view);
+
+    assertThat(Files.readAllLines(view, UTF_8)).containsExactly("contents");
+    assertThat(store.getDigest(view)).isNull();
+    assertThat(store.getTotalSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void publish_sameDigestTwice_storesSingleBlob() throws IOException {
+    FakeRemoteOutputArtifact artifact =
+        new FakeRemoteOutputArtifact(createFile("a.jar", "contents"));
+    ArtifactStore store = createStore();
+    String digest = ArtifactStore.digest(artifact);
+
+    store.publish(digest, artifact, viewsDir.resolve("first.jar"));
+    store.publish(digest, artifact, viewsDir.resolve("second.jar"));
+
+    assertThat(store.contains(digest)).isTrue();
+    assertThat(store.getTotalSize()).isEqualTo("contents".length());
+    assertThat(Files.readAllLines(viewsDir.resolve("second.jar"), UTF_8))
+        .containsExactly("contents");
+  }
+
+  @Test
+  public void evict_referencedBlob_isRetained() throws IOException {
+    SourceArtifact artifact = new SourceArtifact(createFile("a.jar", "contents"));
+    ArtifactStore store = createStore();
+    String digest = ArtifactStore.digest(artifact);
+    store.publish(digest, artifact, viewsDir.resolve("a.jar"));
+
+    assertThat(store.evict(/* maxUnreferencedBytes= */ 0)).isEqualTo(0);
+    assertThat(store.contains(digest)).isTrue();
+  }
+
+  @Test
+  public void evict_unreferencedBlobs_leastRecentlyUsedEvictedFirst() throws Exception {
+    SourceArtifact older = new SourceArtifact(createFile("older.jar", "older"));
+    SourceArtifact newer = new SourceArtifact(createFile("newer.jar", "newer"));
+    ArtifactStore store = createStore();
+    String olderDigest = ArtifactStore.digest(older);
+    String newerDigest = ArtifactStore.digest(newer);
+    store.publish(olderDigest, older, viewsDir.resolve("older.jar"));
+    store.publish(newerDigest, newer, viewsDir.resolve("newer.jar"));
+    store.removeView(viewsDir.resolve("older.jar"));
+    Thread.sleep(5);
+    store.removeView(viewsDir.resolve("newer.jar"));
+
+    assertThat(store.evict(/* maxUnreferencedBytes= */ "newer".length())).isEqualTo(1);
+    assertThat(store.contains(olderDigest)).isFalse();
+    assertThat(store.contains(newerDigest)).isTrue();
+  }
+
+  @Test
+  public void initialize_readsPersistedState() throws IOException {
+    SourceArtifact artifact = new SourceArtifact(createFile("a.jar", "contents"));
+    ArtifactStore store = createStore();
+    String digest = ArtifactStore.digest(artifact);
+    Path view = viewsDir.resolve("a.jar");
+    store.publish(digest, artifact, view);
+    store.writeState();
+
+    ArtifactStore reloaded = createStore();
+
+    assertThat(reloaded.contains(digest)).isTrue();
+    assertThat(reloaded.getDigest(view)).isEqualTo(digest);
+  }
+
+  private ArtifactStore createStore() {
+    ArtifactStore store = new ArtifactStore(storeDir);
+    store.initialize();
+    return store;
+  }
+
+  private File createFile(String name, String contents) throws IOException {
+    File file = temporaryFolder.newFile(name);
+    Files.write(file.toPath(), contents.getBytes(UTF_8));
+    return file;
+  }
+}
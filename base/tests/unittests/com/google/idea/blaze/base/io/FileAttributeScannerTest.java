@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.io;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link FileAttributeScanner}. */
+@RunWith(JUnit4.class)
+public class FileAttributeScannerTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static class TimestampReader
+      implements FileAttributeScanner.DirectoryAttributeReader<File, Long> {
+    private final FileOperationProvider fileOperationProvider = new FileOperationProvider();
+    private final List<File> directoriesRead = new ArrayList<>();
+
+    @Override
+    public File getFile(File file) {
+      return file;
+    }
+
+    @Override
+    public synchronized Map<File, Long> getAttributes(File directory, List<File> files) {
+      directoriesRead.add(directory);
+      return fileOperationProvider.getFileModifiedTimes(directory, files);
+    }
+
+    @Override
+    public boolean isValid(Long timestamp) {
+      return timestamp != 0;
+    }
+  }
+
+  @Test
+  public void readAttributesByDirectory_readsEachDirectoryOnce() throws Exception {
+    File dirA = folder.newFolder("a");
+    File dirB = folder.newFolder("b");
+    File a1 = createFile(dirA, "1.jar", 1000L);
+    File a2 = createFile(dirA, "2.jar", 2000L);
+    File b1 = createFile(dirB, "1.jar", 3000L);
+    TimestampReader reader = new TimestampReader();
+
+    ImmutableMap<File, Long> timestamps =
+        FileAttributeScanner.readAttributesByDirectory(
+            ImmutableList.of(a1, b1, a2), reader, MoreExecutors.newDirectExecutorService());
+
+    assertThat(timestamps).containsExactly(a1, 1000L, a2, 2000L, b1, 3000L);
+    assertThat(reader.directoriesRead).containsExactly(dirA, dirB);
+  }
+
+  @Test
+  public void readAttributesByDirectory_missingFilesOmitted() throws Exception {
+    File dir = folder.newFolder("dir");
+    File present = createFile(dir, "present.jar", 1000L);
+    File missing = new File(dir, "missing.jar");
+    File missingDirectory = new File(folder.getRoot(), "missing/file.jar");
+
+    ImmutableMap<File, Long> timestamps =
+        FileAttributeScanner.readAttributesByDirectory(
+            ImmutableList.of(present, missing, missingDirectory),
+            new TimestampReader(),
+            MoreExecutors.newDirectExecutorService());
+
+    assertThat(timestamps).containsExactly(present, 1000L);
+  }
+
+  private static File createFile(File directory, String name, long modifiedTime)
+      throws Exception {
+    File file = new File(directory, name);
+    assertThat(file.createNewFile()).isTrue();
+    assertThat(file.setLastModified(modifiedTime)).isTrue();
+    return file;
+  }
+}
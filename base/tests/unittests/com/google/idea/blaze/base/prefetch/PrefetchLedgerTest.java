@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.prefetch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link PrefetchLedger}. */
+@RunWith(JUnit4.class)
+public class PrefetchLedgerTest {
+  private static final long REFETCH_PERIOD = 1000L;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path ledgerFile;
+
+  @Before
+  public void setUp() {
+    ledgerFile = new File(folder.getRoot(), "ledger/prefetch_ledger.gz").toPath();
+  }
+
+  @Test
+  public void shouldPrefetch_recentlyFetchedFileSkipped() {
+    PrefetchLedger ledger = new PrefetchLedger(ledgerFile, REFETCH_PERIOD);
+    File file = new File("/workspace/foo/Bar.java");
+
+    assertThat(ledger.shouldPrefetch(file, 100L)).isTrue();
+    assertThat(ledger.shouldPrefetch(file, 200L)).isFalse();
+    assertThat(ledger.shouldPrefetch(new File("/workspace/foo/Baz.java"), 200L)).isTrue();
+    assertThat(ledger.shouldPrefetch(file, 100L + REFETCH_PERIOD)).isTrue();
+  }
+
+  @Test
+  public void load_restoresSavedEntries() {
+    PrefetchLedger ledger = new PrefetchLedger(ledgerFile, REFETCH_PERIOD);
+    File file = new File("/workspace/foo/Bar.java");
+    ledger.shouldPrefetch(file, 100L);
+    ledger.save();
+
+    PrefetchLedger restored = new PrefetchLedger(ledgerFile, REFETCH_PERIOD);
+    restored.load(200L);
+
+    assertThat(restored.size()).isEqualTo(1);
+    assertThat(restored.shouldPrefetch(file, 200L)).isFalse();
+  }
+
+  @Test
+  public void load_ignoresExpiredEntries() {
+    PrefetchLedger ledger = new PrefetchLedger(ledgerFile, REFETCH_PERIOD);
+    ledger.shouldPrefetch(new File("/workspace/foo/Old.java"), 100L);
+    ledger.shouldPrefetch(new File("/workspace/foo/New.java"), 900L);
+    ledger.save();
+
+    PrefetchLedger restored = new PrefetchLedger(ledgerFile, REFETCH_PERIOD);
+    restored.load(1500L);
+
+    assertThat(restored.size()).isEqualTo(1);
+    assertThat(restored.shouldPrefetch(new File("/workspace/foo/New.java"), 1500L)).isFalse();
+  }
+
+  @Test
+  public void removeExpired_dropsOldEntries() {
+    PrefetchLedger ledger = new PrefetchLedger(ledgerFile, REFETCH_PERIOD);
+    ledger.shouldPrefetch(new File("/workspace/a/Old.java"), 100L);
+    ledger.shouldPrefetch(new File("/workspace/b/New.java"), 900L);
+
+    ledger.removeExpired(1500L);
+
+    assertThat(ledger.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void save_concurrentSaves_ledgerIsComplete() throws Exception {
+    PrefetchLedger ledger = new PrefetchLedger(ledgerFile, REFETCH_PERIOD);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> saves = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        File file = new File("/workspace/foo/File" + i + ".java");
+        saves.add(
+            executor.submit(
+                () -> {
+                  ledger.recordFetch(file, 100L);
+                  ledger.save();
+                }));
+      }
+      for (Future<?> save : saves) {
+        save.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    PrefetchLedger restored = new PrefetchLedger(ledgerFile, REFETCH_PERIOD);
+    restored.load(200L);
+
+    assertThat(restored.size()).isEqualTo(100);
+    try (Stream<Path> files = Files.list(ledgerFile.getParent())) {
+      // no temporary files are left behind
+      assertThat(files.collect(toList())).containsExactly(ledgerFile);
+    }
+  }
+}
@@ -301,6 +301,58 @@ public class ProjectViewParserTest extends BlazeTestCase {
         .containsExactly(DirectoryEntry.include(new WorkspacePath("java/com/google")));
   }
 
+  @Test
+  public void testParseCacheReusesUnchangedFiles() {
+    projectViewStorageManager.add("/grandparent.blazeproject", "directories:", "  grandparent");
+    projectViewStorageManager.add(
+        "/parent.blazeproject", "import grandparent.blazeproject", "directories:", "  parent");
+    projectViewStorageManager.add(
+        "/child.blazeproject", "import parent.blazeproject", "directories:", "  child");
+    ProjectViewParseCache parseCache = new ProjectViewParseCache();
+    ProjectViewSet first = parseWithCache(parseCache, "/child.blazeproject");
+
+    projectViewStorageManager.add(
+        "/grandparent.blazeproject", "directories:", "  grandparent", "  other");
+    ProjectViewSet second = parseWithCache(parseCache, "/child.blazeproject");
+    errorCollector.assertNoIssues();
+
+    assertThat(second.getProjectViewFiles()).hasSize(3);
+    // only the changed import is parsed again
+    assertThat(second.getProjectViewFiles().get(0).projectView)
+        .isNotSameAs(first.getProjectViewFiles().get(0).projectView);
+    assertThat(second.getProjectViewFiles().get(1).projectView)
+        .isSameAs(first.getProjectViewFiles().get(1).projectView);
+    assertThat(second.getProjectViewFiles().get(2).projectView)
+        .isSameAs(first.getProjectViewFiles().get(2).projectView);
+    assertThat(second.listItems(DirectorySection.KEY))
+        .containsExactly(
+            DirectoryEntry.include(new WorkspacePath("grandparent")),
+            DirectoryEntry.include(new WorkspacePath("other")),
+            DirectoryEntry.include(new WorkspacePath("parent")),
+            DirectoryEntry.include(new WorkspacePath("child")))
+        .inOrder();
+  }
+
+  @Test
+  public void testParseCacheDoesNotHideIssues() {
+    projectViewStorageManager.add(".blazeproject", "import parent.blazeproject");
+    ProjectViewParseCache parseCache = new ProjectViewParseCache();
+    parseWithCache(parseCache, ".blazeproject");
+    errorCollector.assertIssues("Could not load project view file: '/parent.blazeproject'");
+
+    parseWithCache(parseCache, ".blazeproject");
+    errorCollector.assertIssues(
+        "Could not load project view file: '/parent.blazeproject'",
+        "Could not load project view file: '/parent.blazeproject'");
+  }
+
+  private ProjectViewSet parseWithCache(ProjectViewParseCache parseCache, String path) {
+    ProjectViewParser parser =
+        new ProjectViewParser(context, new WorkspacePathResolverImpl(workspaceRoot), parseCache);
+    parser.parseProjectView(new File(path));
+    return parser.getResult();
+  }
+
   @Test
   public void testImportMissingFileResultsInIssue() {
     projectViewStorageManager.add(".blazeproject", "import parent.blazeproject");
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.query;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.query.GeneratedTarget.MacroData;
+import java.io.File;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link BlazeQueryMacroTargetProvider}. */
+@RunWith(JUnit4.class)
+public class BlazeQueryMacroTargetProviderTest {
+
+  private static final WorkspaceRoot WORKSPACE_ROOT = new WorkspaceRoot(new File("/root"));
+
+  @Test
+  public void parseFailedPackage_namedPackage() {
+    assertThat(
+            BlazeQueryMacroTargetProvider.parseFailedPackage(
+                WORKSPACE_ROOT, "ERROR: error loading package 'foo/bar': Unable to load file"))
+        .isEqualTo(new WorkspacePath("foo/bar"));
+    assertThat(
+            BlazeQueryMacroTargetProvider.parseFailedPackage(
+                WORKSPACE_ROOT, "ERROR: no such package '//foo': BUILD file not found"))
+        .isEqualTo(new WorkspacePath("foo"));
+    assertThat(
+            BlazeQueryMacroTargetProvider.parseFailedPackage(
+                WORKSPACE_ROOT, "ERROR: package contains errors: foo/baz"))
+        .isEqualTo(new WorkspacePath("foo/baz"));
+  }
+
+  @Test
+  public void parseFailedPackage_buildFileLocation() {
+    assertThat(
+            BlazeQueryMacroTargetProvider.parseFailedPackage(
+                WORKSPACE_ROOT, "ERROR: /root/foo/bar/BUILD:12:1: name 'x' is not defined"))
+        .isEqualTo(new WorkspacePath("foo/bar"));
+  }
+
+  @Test
+  public void parseFailedPackage_ignoresOtherMessages() {
+    assertThat(
+            BlazeQueryMacroTargetProvider.parseFailedPackage(
+                WORKSPACE_ROOT, "ERROR: no such package '@repo//foo': not found"))
+        .isNull();
+    assertThat(
+            BlazeQueryMacroTargetProvider.parseFailedPackage(
+                WORKSPACE_ROOT, "ERROR: /external/foo/BUILD:1:1: name 'x' is not defined"))
+        .isNull();
+    assertThat(
+            BlazeQueryMacroTargetProvider.parseFailedPackage(
+                WORKSPACE_ROOT, "Loading: 3 packages loaded"))
+        .isNull();
+  }
+
+  @Test
+  public void groupByPackage_includesMacroFreePackagesAndOmitsFailedOnes() {
+    Label healthy = Label.create("//a:BUILD");
+    Label macroFree = Label.create("//b:BUILD");
+    Label broken = Label.create("//c:BUILD");
+    GeneratedTarget target =
+        new GeneratedTarget(
+            "java_library", Label.create("//a:gen"), new MacroData(1, "java_macro", "gen"));
+
+    assertThat(
+            BlazeQueryMacroTargetProvider.groupByPackage(
+                ImmutableList.of(healthy, macroFree, broken),
+                ImmutableList.of(target),
+                ImmutableSet.of(new WorkspacePath("c"))))
+        .containsExactly(healthy, ImmutableList.of(target), macroFree, ImmutableList.of());
+  }
+}
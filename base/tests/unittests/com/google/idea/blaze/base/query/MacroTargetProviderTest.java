@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.query;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.query.GeneratedTarget.MacroData;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
+import com.intellij.openapi.project.Project;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link MacroTargetProvider}. */
+@RunWith(JUnit4.class)
+public class MacroTargetProviderTest extends BlazeTestCase {
+
+  private static final Label PACKAGE_A = Label.create("//a:BUILD");
+  private static final Label PACKAGE_B = Label.create("//b:BUILD");
+  private static final Label PACKAGE_C = Label.create("//c:BUILD");
+
+  private ExtensionPointImpl<MacroTargetProvider> providers;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    applicationServices.register(ExperimentService.class, new MockExperimentService());
+    providers = registerExtensionPoint(MacroTargetProvider.EP_NAME, MacroTargetProvider.class);
+  }
+
+  @Test
+  public void findTargetsGeneratedByMacros_batchesPackagesPerProvider() {
+    GeneratedTarget targetA = generatedTarget("//a:gen");
+    GeneratedTarget targetB = generatedTarget("//b:gen");
+    SinglePackageProvider singlePackageProvider = new SinglePackageProvider(PACKAGE_A, targetA);
+    BatchingProvider batchingProvider = new BatchingProvider(targetB);
+    providers.registerExtension(singlePackageProvider);
+    providers.registerExtension(batchingProvider);
+
+    ImmutableMap<Label, ImmutableList<GeneratedTarget>> results =
+        MacroTargetProvider.findTargetsGeneratedByMacros(
+            getProject(), ImmutableList.of(PACKAGE_A, PACKAGE_B, PACKAGE_C));
+
+    assertThat(results)
+        .containsExactly(
+            PACKAGE_A, ImmutableList.of(targetA),
+            PACKAGE_B, ImmutableList.of(targetB),
+            PACKAGE_C, ImmutableList.of());
+    assertThat(singlePackageProvider.queries).containsExactly(PACKAGE_A, PACKAGE_B, PACKAGE_C);
+    assertThat(batchingProvider.queries).containsExactly(ImmutableList.of(PACKAGE_B, PACKAGE_C));
+  }
+
+  private static GeneratedTarget generatedTarget(String label) {
+    return new GeneratedTarget(
+        "java_library", Label.create(label), new MacroData(1, "java_macro", "gen"));
+  }
+
+  /** Handles a single package, one query at a time. */
+  private static class SinglePackageProvider implements MacroTargetProvider {
+    private final Label buildPackage;
+    private final GeneratedTarget target;
+    private final List<Label> queries = new ArrayList<>();
+
+    SinglePackageProvider(Label buildPackage, GeneratedTarget target) {
+      this.buildPackage = buildPackage;
+      this.target = target;
+    }
+
+    @Nullable
+    @Override
+    public ImmutableList<GeneratedTarget> doFindTargets(Project project, Label buildPackage) {
+      queries.add(buildPackage);
+      return buildPackage.equals(this.buildPackage) ? ImmutableList.of(target) : null;
+    }
+  }
+
+  /** Handles every package, querying them all at once. */
+  private static class BatchingProvider implements MacroTargetProvider {
+    private final GeneratedTarget target;
+    private final List<ImmutableList<Label>> queries = new ArrayList<>();
+
+    BatchingProvider(GeneratedTarget target) {
+      this.target = target;
+    }
+
+    @Override
+    public ImmutableList<GeneratedTarget> doFindTargets(Project project, Label buildPackage) {
+      throw new AssertionError("Packages should be queried together");
+    }
+
+    @Override
+    public ImmutableMap<Label, ImmutableList<GeneratedTarget>> doFindTargets(
+        Project project, ImmutableList<Label> buildPackages) {
+      queries.add(buildPackages);
+      ImmutableMap.Builder<Label, ImmutableList<GeneratedTarget>> results =
+          ImmutableMap.builder();
+      for (Label buildPackage : buildPackages) {
+        results.put(
+            buildPackage,
+            buildPackage.blazePackage().equals(target.label.blazePackage())
+                ? ImmutableList.of(target)
+                : ImmutableList.of());
+      }
+      return results.build();
+    }
+  }
+}
@@ -18,7 +18,6 @@ package com.google.idea.blaze.base.run.smrunner;
 import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.base.Joiner;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.ErrorOrFailureOrSkipped;
 import com.google.idea.blaze.base.run.smrunner.BlazeXmlSchema.TestCase;
@@ -180,7 +179,9 @@ public class BlazeXmlSchemaTest {
             "    </testcase>",
             "  </testsuite>",
             "</testsuites>");
-    TestSuite mergedOuter = BlazeXmlSchema.mergeSuites(ImmutableList.of(shard1, shard2));
+    TestSuite mergedOuter = new TestSuite();
+    mergedOuter.addSuite(shard1);
+    mergedOuter.addSuite(shard2);
     assertThat(mergedOuter.testSuites).hasSize(1);
     TestSuite mergedInner = mergedOuter.testSuites.get(0).testSuites.get(0);
     assertThat(mergedInner.name).isEqualTo("com.google.ConfigTest");
@@ -212,6 +213,42 @@ public class BlazeXmlSchemaTest {
     assertThat(BlazeXmlSchema.getErrorContent(testCase.errors.get(0))).isNull();
   }
 
+  @Test
+  public void largeSystemOutIsTruncated() {
+    String xml =
+        Joiner.on('\n')
+            .join(
+                "<testsuite name='foo'>",
+                "  <testcase name='bar'>",
+                "    <system-out>0123456789</system-out>",
+                "  </testcase>",
+                "</testsuite>");
+    TestSuite parsed =
+        BlazeXmlSchema.parse(
+            new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)),
+            /* maxOutputLength= */ 4);
+
+    TestCase testCase = Iterables.getOnlyElement(parsed.testCases);
+    assertThat(testCase.sysOut).isEqualTo("0123\n... [6 characters truncated]");
+  }
+
+  @Test
+  public void unknownElementsAreSkipped() {
+    TestSuite parsed =
+        parseXml(
+            "<testsuite name='foo' tests='1'>",
+            "  <properties>",
+            "    <property name='testsuite' value='ignored'/>",
+            "  </properties>",
+            "  <testcase name='bar'>",
+            "    <properties><testcase name='nested'/></properties>",
+            "  </testcase>",
+            "</testsuite>");
+
+    assertThat(parsed.tests).isEqualTo(1);
+    assertThat(Iterables.getOnlyElement(parsed.testCases).name).isEqualTo("bar");
+  }
+
   private static TestSuite parseXml(String... lines) {
     InputStream stream =
         new ByteArrayInputStream(Joiner.on('\n').join(lines).getBytes(StandardCharsets.UTF_8));
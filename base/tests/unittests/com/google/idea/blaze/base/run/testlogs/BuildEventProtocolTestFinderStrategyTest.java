@@ -21,18 +21,26 @@ import static com.google.common.truth.Truth.assertThat;
 import com.google.common.collect.ImmutableList;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos;
 import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TestResultId;
+import com.google.devtools.build.lib.buildeventstream.BuildEventStreamProtos.BuildEventId.TestSummaryId;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.command.buildresult.BuildEventProtocolOutputReader;
 import com.google.idea.blaze.base.io.InputStreamProvider;
 import com.google.idea.blaze.base.io.MockInputStreamProvider;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -92,6 +100,80 @@ public class BuildEventProtocolTestFinderStrategyTest extends BlazeTestCase {
     assertThat(finderStrategyResults.perTargetResults).isEqualTo(results.perTargetResults);
   }
 
+  @Test
+  public void streamTestResults_reportsEachTargetOnceSummarized() throws IOException {
+    BuildEventStreamProtos.BuildEvent.Builder test1 =
+        testResultEvent(
+            "//java/com/google:Test1",
+            BuildEventStreamProtos.TestStatus.PASSED,
+            ImmutableList.of("/usr/local/tmp/_cache/test_result.xml"));
+    BuildEventStreamProtos.BuildEvent.Builder test2 =
+        testResultEvent(
+            "//java/com/google:Test2",
+            BuildEventStreamProtos.TestStatus.FAILED,
+            ImmutableList.of("/usr/local/tmp/_cache/second_result.xml"));
+    File bepOutputFile =
+        createMockFile(
+            "/tmp/bep_output.txt",
+            asByteArray(
+                ImmutableList.of(
+                    test1,
+                    test2,
+                    testSummaryEvent("//java/com/google:Test2"),
+                    testSummaryEvent("//java/com/google:Test1"))));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    List<BlazeTestResults> streamedResults = new ArrayList<>();
+    BlazeTestResults results;
+    try {
+      BuildEventProtocolTestFinderStrategy strategy =
+          new BuildEventProtocolTestFinderStrategy(bepOutputFile, executor);
+      assertThat(strategy.streamTestResults(streamedResults::add, testDisposable)).isTrue();
+      results = strategy.findTestResults();
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(streamedResults).hasSize(2);
+    assertThat(streamedResults.get(0).perTargetResults.keySet())
+        .containsExactly(Label.create("//java/com/google:Test2"));
+    assertThat(streamedResults.get(1).perTargetResults.keySet())
+        .containsExactly(Label.create("//java/com/google:Test1"));
+    assertThat(results.perTargetResults.keySet())
+        .containsExactly(
+            Label.create("//java/com/google:Test1"), Label.create("//java/com/google:Test2"));
+    assertThat(deletedFiles).contains(bepOutputFile);
+  }
+
+  @Test
+  public void streamTestResults_parentDisposed_stopsReading() throws Exception {
+    BuildEventStreamProtos.BuildEvent.Builder test1 =
+        testResultEvent(
+            "//java/com/google:Test1",
+            BuildEventStreamProtos.TestStatus.PASSED,
+            ImmutableList.of("/usr/local/tmp/_cache/test_result.xml"));
+    // blaze never finishes writing this output
+    File bepOutputFile =
+        createMockFile("/tmp/bep_output.txt", asByteArray(ImmutableList.of(test1)));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Disposable parentDisposable = Disposer.newDisposable();
+    Disposer.register(testDisposable, parentDisposable);
+    try {
+      BuildEventProtocolTestFinderStrategy strategy =
+          new BuildEventProtocolTestFinderStrategy(bepOutputFile, executor);
+      assertThat(strategy.streamTestResults(results -> {}, parentDisposable)).isTrue();
+
+      Disposer.dispose(parentDisposable);
+      executor.shutdown();
+
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+      // the complete output is still read once the process terminates
+      assertThat(strategy.findTestResults().perTargetResults.keySet())
+          .containsExactly(Label.create("//java/com/google:Test1"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private File createMockFile(String path, byte[] contents) {
     File org = new File(path);
     File spy = Mockito.spy(org);
@@ -130,6 +212,14 @@ public class BuildEventProtocolTestFinderStrategyTest extends BlazeTestCase {
                         .collect(toImmutableList())));
   }
 
+  private static BuildEventStreamProtos.BuildEvent.Builder testSummaryEvent(String label) {
+    return BuildEventStreamProtos.BuildEvent.newBuilder()
+        .setId(
+            BuildEventStreamProtos.BuildEventId.newBuilder()
+                .setTestSummary(TestSummaryId.newBuilder().setLabel(label)))
+        .setTestSummary(BuildEventStreamProtos.TestSummary.getDefaultInstance());
+  }
+
   private static BuildEventStreamProtos.File toEventFile(String filePath) {
     return BuildEventStreamProtos.File.newBuilder().setUri(fileUrl(filePath)).build();
   }
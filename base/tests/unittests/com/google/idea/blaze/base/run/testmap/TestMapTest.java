@@ -18,6 +18,7 @@ package com.google.idea.blaze.base.run.testmap;
 import static com.google.common.truth.Truth.assertThat;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.BlazeTestCase;
 import com.google.idea.blaze.base.dependencies.TargetInfo;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
@@ -39,6 +40,7 @@ import com.intellij.openapi.extensions.impl.ExtensionPointImpl;
 import java.io.File;
 import java.util.Collection;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.jetbrains.annotations.NotNull;
@@ -259,6 +261,112 @@ public class TestMapTest extends BlazeTestCase {
         .containsExactly(Label.create("//test:test"));
   }
 
+  @Test
+  public void testMultipleSourceFilesFindsUnionOfTests() throws Exception {
+    mockBlazeProjectDataManager.targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("test/BUILD"))
+                    .setLabel("//test:test")
+                    .setKind("sh_test")
+                    .addDependency("//test:lib")
+                    .addDependency("//test:lib2"))
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("test/BUILD"))
+                    .setLabel("//test:test2")
+                    .setKind("sh_test")
+                    .addDependency("//test:lib3"))
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("test/BUILD"))
+                    .setLabel("//test:test3")
+                    .setKind("sh_test")
+                    .addDependency("//test:other"))
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("test/BUILD"))
+                    .setLabel("//test:lib3")
+                    .setKind("sh_library")
+                    .addDependency("//test:lib")
+                    .addDependency("//test:lib2"))
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("test/BUILD"))
+                    .setLabel("//test:lib")
+                    .setKind("sh_library")
+                    .addSource(sourceRoot("test/Test.java")))
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("test/BUILD"))
+                    .setLabel("//test:lib2")
+                    .setKind("sh_library")
+                    .addSource(sourceRoot("test/Test2.java")))
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("test/BUILD"))
+                    .setLabel("//test:other")
+                    .setKind("sh_library")
+                    .addSource(sourceRoot("test/Other.java")))
+            .build();
+
+    Collection<TargetInfo> targets =
+        SourceToTargetFinder.findTargetInfoFuture(
+                project,
+                ImmutableSet.of(new File("/test/Test.java"), new File("/test/Test2.java")),
+                Optional.of(RuleType.TEST))
+            .get();
+
+    assertThat(targets.stream().map(t -> t.label).collect(Collectors.toList()))
+        .containsExactly(Label.create("//test:test"), Label.create("//test:test2"));
+  }
+
+  @Test
+  public void testRepeatedLookupReusesClosure() throws Exception {
+    mockBlazeProjectDataManager.targetMap =
+        TargetMapBuilder.builder()
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("test/BUILD"))
+                    .setLabel("//test:test")
+                    .setKind("sh_test")
+                    .addDependency("//test:lib"))
+            .addTarget(
+                TargetIdeInfo.builder()
+                    .setBuildFile(sourceRoot("test/BUILD"))
+                    .setLabel("//test:lib")
+                    .setKind("sh_library")
+                    .addSource(sourceRoot("test/Test.java")))
+            .build();
+    BlazeProjectData projectData = mockBlazeProjectDataManager.getBlazeProjectData();
+    AtomicInteger visitedTargets = new AtomicInteger();
+    FilteredTargetMap filteredTargetMap =
+        new FilteredTargetMap(
+            project,
+            projectData.getArtifactLocationDecoder(),
+            projectData.getTargetMap(),
+            target -> {
+              visitedTargets.incrementAndGet();
+              return target.getKind().getRuleType() == RuleType.TEST;
+            });
+
+    File source = new File("/test/Test.java");
+    assertThat(
+            filteredTargetMap.targetsForSourceFile(source).stream()
+                .map(t -> t.getKey().getLabel())
+                .collect(Collectors.toList()))
+        .containsExactly(Label.create("//test:test"));
+    assertThat(visitedTargets.get()).isEqualTo(2);
+
+    assertThat(
+            filteredTargetMap.targetsForSourceFile(source).stream()
+                .map(t -> t.getKey().getLabel())
+                .collect(Collectors.toList()))
+        .containsExactly(Label.create("//test:test"));
+    assertThat(visitedTargets.get()).isEqualTo(2);
+  }
+
   private ArtifactLocation sourceRoot(String relativePath) {
     return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
   }
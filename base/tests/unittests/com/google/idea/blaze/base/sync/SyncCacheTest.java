@@ -0,0 +1,179 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataManager;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Kind;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.LanguageClass;
+import com.google.idea.blaze.base.model.primitives.WorkspaceType;
+import com.google.idea.blaze.base.sync.SyncCache.IncrementalSyncCacheComputable;
+import com.google.idea.blaze.base.sync.SyncCache.ProjectDataSlice;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.base.sync.projectview.WorkspaceLanguageSettings;
+import com.intellij.openapi.project.Project;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link SyncCache}. */
+@RunWith(JUnit4.class)
+public class SyncCacheTest extends BlazeTestCase {
+  private final MockBlazeProjectDataManager projectDataManager =
+      new MockBlazeProjectDataManager(null);
+  private SyncCache syncCache;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    super.initTest(applicationServices, projectServices);
+    projectServices.register(BlazeProjectDataManager.class, projectDataManager);
+    syncCache = new SyncCache(project);
+    projectServices.register(SyncCache.class, syncCache);
+
+    registerExtensionPoint(Kind.Provider.EP_NAME, Kind.Provider.class)
+        .registerExtension(new GenericBlazeRules());
+    applicationServices.register(Kind.ApplicationState.class, new Kind.ApplicationState());
+  }
+
+  @Test
+  public void testValueWithoutDeclaredDependenciesRecomputedWhenProjectDataChanges() {
+    AtomicInteger computeCount = new AtomicInteger();
+    TargetMap targetMap = targetMap("//a:a");
+    setProjectData(targetMap, WorkspaceType.JAVA);
+
+    syncCache.get("key", (p, projectData) -> computeCount.incrementAndGet());
+    syncCache.get("key", (p, projectData) -> computeCount.incrementAndGet());
+    assertThat(computeCount.get()).isEqualTo(1);
+
+    setProjectData(targetMap, WorkspaceType.JAVA);
+    syncCache.get("key", (p, projectData) -> computeCount.incrementAndGet());
+    assertThat(computeCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testValueReusedWhenDependenciesUnchanged() {
+    AtomicInteger computeCount = new AtomicInteger();
+    TargetMap targetMap = targetMap("//a:a");
+    setProjectData(targetMap, WorkspaceType.JAVA);
+
+    syncCache.get(
+        "key",
+        EnumSet.of(ProjectDataSlice.TARGET_MAP),
+        (p, projectData) -> computeCount.incrementAndGet());
+    assertThat(syncCache.isComputed("key")).isTrue();
+
+    setProjectData(targetMap("//a:a"), WorkspaceType.PYTHON);
+    assertThat(syncCache.isComputed("key")).isFalse();
+    Integer value =
+        syncCache.get(
+            "key",
+            EnumSet.of(ProjectDataSlice.TARGET_MAP),
+            (p, projectData) -> computeCount.incrementAndGet());
+
+    assertThat(value).isEqualTo(1);
+    assertThat(computeCount.get()).isEqualTo(1);
+    assertThat(syncCache.isComputed("key")).isTrue();
+  }
+
+  @Test
+  public void testValueRecomputedWhenDependenciesChange() {
+    AtomicInteger computeCount = new AtomicInteger();
+    TargetMap targetMap = targetMap("//a:a");
+    setProjectData(targetMap, WorkspaceType.JAVA);
+
+    syncCache.get(
+        "key",
+        EnumSet.of(ProjectDataSlice.WORKSPACE_LANGUAGE_SETTINGS),
+        (p, projectData) -> computeCount.incrementAndGet());
+    setProjectData(targetMap, WorkspaceType.PYTHON);
+    syncCache.get(
+        "key",
+        EnumSet.of(ProjectDataSlice.WORKSPACE_LANGUAGE_SETTINGS),
+        (p, projectData) -> computeCount.incrementAndGet());
+
+    assertThat(computeCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testIncrementalValueUpdatedFromTargetMapDelta() {
+    TargetCounter counter = new TargetCounter();
+    setProjectData(targetMap("//a:a", "//b:b"), WorkspaceType.JAVA);
+    assertThat(syncCache.get("key", EnumSet.of(ProjectDataSlice.TARGET_MAP), counter))
+        .isEqualTo(2);
+
+    setProjectData(targetMap("//a:a", "//c:c", "//d:d"), WorkspaceType.JAVA);
+    Integer value = syncCache.get("key", EnumSet.of(ProjectDataSlice.TARGET_MAP), counter);
+
+    assertThat(value).isEqualTo(3);
+    assertThat(counter.computeCount).isEqualTo(1);
+    assertThat(counter.lastDelta.getAdded())
+        .containsExactly(
+            TargetKey.forPlainTarget(Label.create("//c:c")),
+            TargetKey.forPlainTarget(Label.create("//d:d")));
+    assertThat(counter.lastDelta.getRemoved())
+        .containsExactly(TargetKey.forPlainTarget(Label.create("//b:b")));
+    assertThat(counter.lastDelta.getChanged()).isEmpty();
+  }
+
+  private static class TargetCounter implements IncrementalSyncCacheComputable<Integer> {
+    int computeCount;
+    TargetMapDelta lastDelta;
+
+    @Override
+    public Integer compute(Project project, BlazeProjectData projectData) {
+      computeCount++;
+      return projectData.getTargetMap().size();
+    }
+
+    @Override
+    public Integer update(
+        Project project, BlazeProjectData projectData, Integer previous, TargetMapDelta delta) {
+      lastDelta = delta;
+      return previous + delta.getAdded().size() - delta.getRemoved().size();
+    }
+  }
+
+  private void setProjectData(TargetMap targetMap, WorkspaceType workspaceType) {
+    projectDataManager.setBlazeProjectData(
+        MockBlazeProjectDataBuilder.builder()
+            .setTargetMap(targetMap)
+            .setWorkspaceLanguageSettings(
+                new WorkspaceLanguageSettings(
+                    workspaceType, ImmutableSet.of(LanguageClass.GENERIC)))
+            .build());
+  }
+
+  private static TargetMap targetMap(String... labels) {
+    TargetMapBuilder builder = TargetMapBuilder.builder();
+    for (String label : labels) {
+      builder.addTarget(TargetIdeInfo.builder().setLabel(label).setKind("sh_library"));
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.sync.projectview;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ProjectDirectoriesTrie}. */
+@RunWith(JUnit4.class)
+public class ProjectDirectoriesTrieTest {
+
+  @Test
+  public void testPathsUnderRootDirectoryIncluded() {
+    ProjectDirectoriesTrie trie =
+        new ProjectDirectoriesTrie(
+            ImmutableList.of(new WorkspacePath("java/com/google")), ImmutableList.of());
+
+    assertThat(trie.containsWorkspacePath(new WorkspacePath("java/com/google"))).isTrue();
+    assertThat(trie.containsWorkspacePath(new WorkspacePath("java/com/google/foo"))).isTrue();
+    assertThat(trie.containsWorkspacePath(new WorkspacePath("java/com"))).isFalse();
+    assertThat(trie.containsWorkspacePath(new WorkspacePath("java/com/googlex"))).isFalse();
+    assertThat(trie.containsWorkspacePath(new WorkspacePath("javatests/com/google"))).isFalse();
+  }
+
+  @Test
+  public void testExcludedDirectoriesOverrideRootDirectories() {
+    ProjectDirectoriesTrie trie =
+        new ProjectDirectoriesTrie(
+            ImmutableList.of(new WorkspacePath("java"), new WorkspacePath("java/com/google/bar")),
+            ImmutableList.of(new WorkspacePath("java/com/google")));
+
+    assertThat(trie.containsWorkspacePath(new WorkspacePath("java/com"))).isTrue();
+    assertThat(trie.containsWorkspacePath(new WorkspacePath("java/com/google"))).isFalse();
+    assertThat(trie.containsWorkspacePath(new WorkspacePath("java/com/google/bar/baz"))).isFalse();
+  }
+
+  @Test
+  public void testWorkspaceRootIncludesEverything() {
+    ProjectDirectoriesTrie trie =
+        new ProjectDirectoriesTrie(
+            ImmutableList.of(new WorkspacePath("")), ImmutableList.of(new WorkspacePath("out")));
+
+    assertThat(trie.containsWorkspacePath(new WorkspacePath(""))).isTrue();
+    assertThat(trie.containsWorkspacePath(new WorkspacePath("java/com/google"))).isTrue();
+    assertThat(trie.containsWorkspacePath(new WorkspacePath("out/foo"))).isFalse();
+  }
+
+  @Test
+  public void testFindRootDirectory() {
+    WorkspacePath java = new WorkspacePath("java");
+    WorkspacePath javatests = new WorkspacePath("javatests");
+    ProjectDirectoriesTrie trie =
+        new ProjectDirectoriesTrie(
+            ImmutableList.of(java, javatests),
+            ImmutableList.of(new WorkspacePath("java/excluded")));
+
+    assertThat(trie.findRootDirectory("java/com/google/Foo.java")).isEqualTo(java);
+    assertThat(trie.findRootDirectory("javatests/com/google/FooTest.java")).isEqualTo(javatests);
+    assertThat(trie.findRootDirectory("java/excluded/Foo.java")).isNull();
+    assertThat(trie.findRootDirectory("third_party/Foo.java")).isNull();
+  }
+}
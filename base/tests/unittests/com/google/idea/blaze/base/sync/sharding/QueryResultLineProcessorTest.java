@@ -25,6 +25,8 @@ import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.query.BlazeQueryLabelKindParser;
 import com.google.idea.common.experiments.ExperimentService;
 import com.google.idea.common.experiments.MockExperimentService;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -123,4 +125,38 @@ public class QueryResultLineProcessorTest extends BlazeTestCase {
             TargetInfo.builder(Label.create("//java/com/google/bar/console:sh_test"), "sh_test")
                 .build());
   }
+
+  @Test
+  public void testIgnoresMalformedRuleLines() {
+    BlazeQueryLabelKindParser processor = new BlazeQueryLabelKindParser(x -> true);
+
+    processor.processLine("java_library rule //java/com/google/foo:bar extra");
+    processor.processLine("java library rule //java/com/google/foo:baz");
+    processor.processLine("java_library rule");
+    processor.processLine("java_library\trule //java/com/google/foo:qux");
+
+    assertThat(processor.getTargets()).isEmpty();
+  }
+
+  @Test
+  public void testStreamsTargetsToConsumer() {
+    List<TargetInfo> streamed = new ArrayList<>();
+    BlazeQueryLabelKindParser processor =
+        new BlazeQueryLabelKindParser(t -> t.ruleType.equals("java_library"), streamed::add);
+
+    processor.processLine("css_library rule //java/com/google/foo/styles:global");
+    processor.processLine("java_library rule //java/com/google/bar/console:runtime_deps");
+    processor.processLine("java_library rule //java/com/google/bar/console:deps");
+
+    assertThat(streamed)
+        .containsExactly(
+            TargetInfo.builder(
+                    Label.create("//java/com/google/bar/console:runtime_deps"), "java_library")
+                .build(),
+            TargetInfo.builder(Label.create("//java/com/google/bar/console:deps"), "java_library")
+                .build())
+        .inOrder();
+    assertThat(streamed.get(0).kindString).isSameAs(streamed.get(1).kindString);
+    assertThat(processor.getTargets()).isEmpty();
+  }
 }
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.base.vcs.git;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.idea.blaze.base.BlazeTestCase;
+import com.google.idea.blaze.base.async.process.ExternalTask;
+import com.google.idea.blaze.base.async.process.ExternalTaskProvider;
+import com.google.idea.blaze.base.io.FileOperationProvider;
+import com.google.idea.blaze.base.model.primitives.WorkspacePath;
+import com.google.idea.blaze.base.model.primitives.WorkspaceRoot;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.sync.workspace.WorkingSet;
+import com.google.idea.common.experiments.ExperimentService;
+import com.google.idea.common.experiments.MockExperimentService;
+import com.intellij.openapi.util.Disposer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link GitBlazeVcsHandler}. */
+@RunWith(JUnit4.class)
+public class GitBlazeVcsHandlerTest extends BlazeTestCase {
+
+  private static final String UPSTREAM_REF = "refs/remotes/origin/master";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final FakeGitTaskProvider git = new FakeGitTaskProvider();
+
+  private WorkspaceRoot workspaceRoot;
+  private File gitDir;
+
+  @Override
+  protected void initTest(Container applicationServices, Container projectServices) {
+    GitWorkingSetCache cache = new GitWorkingSetCache();
+    Disposer.register(testDisposable, cache);
+    applicationServices.register(GitWorkingSetCache.class, cache);
+    applicationServices.register(ExternalTaskProvider.class, git);
+    applicationServices.register(FileOperationProvider.class, new FileOperationProvider());
+    applicationServices.register(ExperimentService.class, new MockExperimentService());
+  }
+
+  @Before
+  public void setUpRepository() throws IOException {
+    workspaceRoot = new WorkspaceRoot(folder.getRoot());
+    gitDir = folder.newFolder(".git");
+    writeGitFile("HEAD", 1000L);
+    writeGitFile("config", 1000L);
+    writeGitFile(UPSTREAM_REF, 1000L);
+
+    git.setOutput("rev-parse --show-toplevel", folder.getRoot().getPath());
+    git.setOutput("rev-parse --symbolic-full-name @{u}", UPSTREAM_REF);
+    git.setOutput("rev-parse @{u}", "sha1");
+  }
+
+  @Test
+  public void getUpstreamSha_unchangedRepository_cached() {
+    assertThat(GitBlazeVcsHandler.getUpstreamSha(workspaceRoot, false)).isEqualTo("sha1");
+    assertThat(GitBlazeVcsHandler.getUpstreamSha(workspaceRoot, false)).isEqualTo("sha1");
+
+    assertThat(git.commands)
+        .containsExactly(
+            "rev-parse --show-toplevel", "rev-parse --symbolic-full-name @{u}", "rev-parse @{u}");
+  }
+
+  @Test
+  public void getUpstreamSha_looseUpstreamRefUpdated_queriedAgain() throws IOException {
+    assertThat(GitBlazeVcsHandler.getUpstreamSha(workspaceRoot, false)).isEqualTo("sha1");
+
+    // e.g. 'git fetch origin master', which only rewrites the loose ref
+    git.setOutput("rev-parse @{u}", "sha2");
+    writeGitFile(UPSTREAM_REF, 2000L);
+
+    assertThat(GitBlazeVcsHandler.getUpstreamSha(workspaceRoot, false)).isEqualTo("sha2");
+    assertThat(Collections.frequency(git.commands, "rev-parse @{u}")).isEqualTo(2);
+    assertThat(Collections.frequency(git.commands, "rev-parse --symbolic-full-name @{u}"))
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void getUpstreamSha_trackedBranchChanged_queriedAgain() throws IOException {
+    assertThat(GitBlazeVcsHandler.getUpstreamSha(workspaceRoot, false)).isEqualTo("sha1");
+
+    git.setOutput("rev-parse --symbolic-full-name @{u}", "refs/remotes/origin/other");
+    git.setOutput("rev-parse @{u}", "sha2");
+    writeGitFile("config", 2000L);
+
+    assertThat(GitBlazeVcsHandler.getUpstreamSha(workspaceRoot, false)).isEqualTo("sha2");
+    assertThat(Collections.frequency(git.commands, "rev-parse --symbolic-full-name @{u}"))
+        .isEqualTo(2);
+  }
+
+  @Test
+  public void getWorkingSet_singleThreadedExecutor_completes() throws Exception {
+    git.setOutput(
+        "diff --name-status --no-renames sha1", "M\tfoo/Modified.java\nD\tfoo/Deleted.java");
+    git.setOutput(
+        "--literal-pathspecs ls-files --others --exclude-standard", "foo/Untracked.java");
+    ListeningExecutorService executor =
+        MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    try {
+      // the working set is calculated on the only thread the executor has, so it mustn't wait on
+      // other tasks submitted to the same executor
+      WorkingSet workingSet =
+          new GitBlazeVcsHandler()
+              .getWorkingSet(getProject(), BlazeContext.create(), workspaceRoot, executor)
+              .get(1, TimeUnit.MINUTES);
+
+      assertThat(workingSet.addedFiles).containsExactly(new WorkspacePath("foo/Untracked.java"));
+      assertThat(workingSet.modifiedFiles)
+          .containsExactly(new WorkspacePath("foo/Modified.java"));
+      assertThat(workingSet.deletedFiles).containsExactly(new WorkspacePath("foo/Deleted.java"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void getWorkingSet_unchangedIndex_untrackedFilesCached() throws Exception {
+    writeGitFile("index", 1000L);
+    git.setOutput("diff --name-status --no-renames sha1", "M\tfoo/Modified.java");
+    git.setOutput(
+        "--literal-pathspecs ls-files --others --exclude-standard", "foo/Untracked.java");
+    GitBlazeVcsHandler handler = new GitBlazeVcsHandler();
+    ListeningExecutorService executor = MoreExecutors.newDirectExecutorService();
+
+    WorkingSet first =
+        handler.getWorkingSet(getProject(), BlazeContext.create(), workspaceRoot, executor).get();
+    git.setOutput("--literal-pathspecs ls-files --others --exclude-standard", "foo/Other.java");
+    WorkingSet second =
+        handler.getWorkingSet(getProject(), BlazeContext.create(), workspaceRoot, executor).get();
+
+    assertThat(first.addedFiles).containsExactly(new WorkspacePath("foo/Untracked.java"));
+    assertThat(second.addedFiles).containsExactly(new WorkspacePath("foo/Untracked.java"));
+    assertThat(
+            Collections.frequency(
+                git.commands, "--literal-pathspecs ls-files --others --exclude-standard"))
+        .isEqualTo(1);
+    assertThat(Collections.frequency(git.commands, "diff --name-status --no-renames sha1"))
+        .isEqualTo(2);
+  }
+
+  private void writeGitFile(String path, long modifiedTime) throws IOException {
+    File file = new File(gitDir, path);
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), new byte[0]);
+    assertThat(file.setLastModified(modifiedTime)).isTrue();
+  }
+
+  /** Returns canned output for git commands, recording each command run. */
+  private static class FakeGitTaskProvider implements ExternalTaskProvider {
+    private final Map<String, String> outputs = new HashMap<>();
+    private final List<String> commands = Collections.synchronizedList(new ArrayList<>());
+
+    void setOutput(String command, String output) {
+      outputs.put(command, output);
+    }
+
+    @Override
+    public ExternalTask build(ExternalTask.Builder builder) {
+      List<String> args = builder.command.build();
+      assertThat(args.get(0)).isEqualTo("git");
+      String command = Joiner.on(' ').join(args.subList(1, args.size()));
+      return scopes -> {
+        commands.add(command);
+        String output = outputs.get(command);
+        if (output == null) {
+          return 1;
+        }
+        write(builder.stdout, output + "\n");
+        return 0;
+      };
+    }
+
+    private static void write(@Nullable OutputStream out, String output) {
+      if (out == null) {
+        return;
+      }
+      try {
+        out.write(output.getBytes(UTF_8));
+        out.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.golang.resolve;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.ideinfo.GoIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
+import com.google.idea.blaze.base.model.primitives.Label;
+import com.google.idea.blaze.base.model.primitives.LanguageClass;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.sync.SyncCache;
+import com.google.idea.blaze.base.sync.SyncCache.ProjectDataSlice;
+import com.google.idea.blaze.base.sync.SyncListener;
+import com.google.idea.blaze.base.sync.SyncMode;
+import com.google.idea.blaze.base.sync.SyncResult;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap;
+import com.google.idea.blaze.golang.GoBlazeRules.RuleTypes;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import java.io.File;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * Maps each go import path in the project to the target providing it and that target's source
+ * files, and each source file back to its import path.
+ *
+ * <p>Built once per sync in the background, and kept until the target map or artifact locations
+ * next change. {@link BlazeGoPackage}s are created on first use, from the precomputed entries, and
+ * dropped on any PSI change, since their package names are read from their sources.
+ */
+final class BlazeGoImportPathIndex {
+  private static final Logger logger = Logger.getInstance(BlazeGoImportPathIndex.class);
+
+  private static final String INDEX_KEY = "BlazeGoImportPathIndex";
+
+  /** The target providing each import path. */
+  private final ImmutableMap<String, TargetKey> importPathToTarget;
+  /** The label each import path's package navigates to, if different from its target's. */
+  private final ImmutableMap<String, Label> importPathToPackageLabel;
+
+  private final ImmutableMultimap<Label, File> targetToFiles;
+  private final ImmutableMap<File, String> fileToImportPath;
+
+  private final CachedValue<ConcurrentMap<String, Optional<BlazeGoPackage>>> packages;
+
+  private BlazeGoImportPathIndex(
+      Project project,
+      ImmutableMap<String, TargetKey> importPathToTarget,
+      ImmutableMap<String, Label> importPathToPackageLabel,
+      ImmutableMultimap<Label, File> targetToFiles,
+      ImmutableMap<File, String> fileToImportPath) {
+    this.importPathToTarget = importPathToTarget;
+    this.importPathToPackageLabel = importPathToPackageLabel;
+    this.targetToFiles = targetToFiles;
+    this.fileToImportPath = fileToImportPath;
+    this.packages =
+        CachedValuesManager.getManager(project)
+            .createCachedValue(
+                () ->
+                    CachedValueProvider.Result.create(
+                        new ConcurrentHashMap<>(), PsiModificationTracker.MODIFICATION_COUNT),
+                /* trackValue= */ false);
+  }
+
+  @Nullable
+  static BlazeGoImportPathIndex getInstance(Project project) {
+    return SyncCache.getInstance(project)
+        .get(
+            INDEX_KEY,
+            EnumSet.of(
+                ProjectDataSlice.TARGET_MAP, ProjectDataSlice.ARTIFACT_LOCATION_DECODER),
+            BlazeGoImportPathIndex::build);
+  }
+
+  /** Returns the package with the given import path, creating it on first use. */
+  @Nullable
+  BlazeGoPackage getPackage(Project project, String importPath) {
+    ConcurrentMap<String, Optional<BlazeGoPackage>> packages = this.packages.getValue();
+    Optional<BlazeGoPackage> goPackage = packages.get(importPath);
+    if (goPackage != null) {
+      return goPackage.orElse(null);
+    }
+    TargetKey targetKey = importPathToTarget.get(importPath);
+    if (targetKey == null) {
+      return null;
+    }
+    return packages
+        .computeIfAbsent(
+            importPath,
+            path ->
+                Optional.of(
+                    new BlazeGoPackage(
+                        project,
+                        path,
+                        importPathToPackageLabel.getOrDefault(path, targetKey.getLabel()),
+                        targetToFiles.get(targetKey.getLabel()))))
+        .orElse(null);
+  }
+
+  /** Returns the import path of the package containing the given source file. */
+  @Nullable
+  String getImportPath(File file) {
+    return fileToImportPath.get(file);
+  }
+
+  private static BlazeGoImportPathIndex build(Project project, BlazeProjectData projectData) {
+    TargetMap targetMap = projectData.getTargetMap();
+    ImmutableMap<String, TargetKey> importPathToTarget = buildImportPathToTargetMap(targetMap);
+    ImmutableMultimap<Label, File> targetToFiles =
+        BlazeGoPackage.getUncachedTargetToFileMap(project, projectData);
+    return new BlazeGoImportPathIndex(
+        project,
+        importPathToTarget,
+        buildPackageLabelMap(project, targetMap, importPathToTarget),
+        targetToFiles,
+        buildFileToImportPathMap(targetMap, targetToFiles));
+  }
+
+  private static ImmutableMap<String, TargetKey> buildImportPathToTargetMap(TargetMap targetMap) {
+    return targetMap.targets().stream()
+        .filter(t -> t.getGoIdeInfo() != null && t.getGoIdeInfo().getImportPath() != null)
+        .collect(
+            ImmutableMap.toImmutableMap(
+                t -> t.getGoIdeInfo().getImportPath(),
+                TargetIdeInfo::getKey,
+                // duplicates are possible (e.g., same target with different aspects)
+                // choose the one with the most sources (though they're probably the same)
+                (first, second) ->
+                    targetMap.get(first).getGoIdeInfo().getSources().size()
+                            >= targetMap.get(second).getGoIdeInfo().getSources().size()
+                        ? first
+                        : second));
+  }
+
+  /**
+   * The import path for proto_library doesn't match the target name, we need to replace the
+   * proto_library with the corresponding go_proto_library for them to match.
+   */
+  private static ImmutableMap<String, Label> buildPackageLabelMap(
+      Project project, TargetMap targetMap, ImmutableMap<String, TargetKey> importPathToTarget) {
+    ImmutableMap.Builder<String, Label> builder = ImmutableMap.builder();
+    for (Map.Entry<String, TargetKey> entry : importPathToTarget.entrySet()) {
+      TargetIdeInfo target = targetMap.get(entry.getValue());
+      if (target == null
+          || target.getKind() != GenericBlazeRules.RuleTypes.PROTO_LIBRARY.getKind()) {
+        continue;
+      }
+      ReverseDependencyMap.get(project).get(entry.getValue()).stream()
+          .map(targetMap::get)
+          .filter(Objects::nonNull)
+          .filter(t -> t.getKind() == RuleTypes.GO_PROTO_LIBRARY.getKind())
+          .map(TargetIdeInfo::getKey)
+          .findFirst()
+          .ifPresent(key -> builder.put(entry.getKey(), key.getLabel()));
+    }
+    return builder.build();
+  }
+
+  private static ImmutableMap<File, String> buildFileToImportPathMap(
+      TargetMap targetMap, ImmutableMultimap<Label, File> targetToFiles) {
+    Map<File, String> map = new HashMap<>();
+    for (TargetIdeInfo target : targetMap.targets()) {
+      if (target.getGoIdeInfo() == null) {
+        continue;
+      }
+      String importPath =
+          target.getGoIdeInfo().getLibraryLabels().stream()
+              .map(TargetKey::forPlainTarget)
+              .map(targetMap::get)
+              .filter(Objects::nonNull)
+              .map(TargetIdeInfo::getGoIdeInfo)
+              .filter(Objects::nonNull)
+              .map(GoIdeInfo::getImportPath)
+              .filter(Objects::nonNull)
+              .findFirst()
+              .orElse(target.getGoIdeInfo().getImportPath());
+      if (importPath == null) {
+        continue;
+      }
+      for (File file : targetToFiles.get(target.getKey().getLabel())) {
+        map.putIfAbsent(file, importPath);
+      }
+    }
+    return ImmutableMap.copyOf(map);
+  }
+
+  /**
+   * Builds the index in the background after each sync, rather than on the first go resolve. The
+   * startup sync is handled by {@link BlazeGoImportResolver.Warmer}.
+   */
+  static class BuildAfterSync implements SyncListener {
+    @Override
+    public void afterSync(
+        Project project,
+        BlazeContext context,
+        SyncMode syncMode,
+        SyncResult syncResult,
+        ImmutableSet<Integer> buildIds) {
+      if (syncMode == SyncMode.STARTUP || !syncResult.successful()) {
+        return;
+      }
+      BlazeProjectData projectData =
+          BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+      if (projectData == null
+          || !projectData.getWorkspaceLanguageSettings().isLanguageActive(LanguageClass.GO)) {
+        return;
+      }
+      ApplicationManager.getApplication()
+          .executeOnPooledThread(
+              () -> {
+                if (project.isDisposed()) {
+                  return;
+                }
+                try {
+                  getInstance(project);
+                } catch (ProcessCanceledException e) {
+                  // built on first use instead
+                } catch (RuntimeException e) {
+                  logger.warn("Failed to build go import path index", e);
+                }
+              });
+    }
+  }
+}
@@ -18,17 +18,11 @@ package com.google.idea.blaze.golang.resolve;
 import com.goide.psi.impl.GoPackage;
 import com.goide.psi.impl.imports.GoImportReference;
 import com.goide.psi.impl.imports.GoImportResolver;
-import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
-import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
 import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
-import com.google.idea.blaze.base.model.BlazeProjectData;
-import com.google.idea.blaze.base.sync.SyncCache;
-import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.google.idea.blaze.base.sync.SyncCacheWarmer;
 import com.intellij.codeInsight.navigation.CtrlMouseHandler;
 import com.intellij.lang.documentation.DocumentationProviderEx;
 import com.intellij.openapi.module.Module;
@@ -42,19 +36,13 @@ import com.intellij.psi.impl.SyntheticFileSystemItem;
 import com.intellij.psi.search.PsiElementProcessor;
 import com.intellij.util.ThreeState;
 import java.util.Collection;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
 
 /** Converts each go target in the {@link TargetMap} into a corresponding {@link BlazeGoPackage}. */
 class BlazeGoImportResolver implements GoImportResolver {
-  private static final String GO_PACKAGE_MAP_KEY = "BlazeGoPackageMap";
-  private static final String GO_TARGET_MAP_KEY = "BlazeGoTargetMap";
-
   @Nullable
   @Override
   public Collection<GoPackage> resolve(
@@ -65,27 +53,8 @@ class BlazeGoImportResolver implements GoImportResolver {
 
   @Nullable
   static BlazeGoPackage doResolve(String importPath, Project project) {
-    BlazeProjectData projectData =
-        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
-    if (projectData == null) {
-      return null;
-    }
-    ConcurrentMap<String, Optional<BlazeGoPackage>> goPackageMap =
-        Preconditions.checkNotNull(getGoPackageMap(project));
-    Map<String, TargetKey> goTargetMap = Preconditions.checkNotNull(getGoTargetMap(project));
-    TargetKey targetKey = goTargetMap.get(importPath);
-    if (!goPackageMap.containsKey(importPath) && targetKey == null) {
-      return null;
-    }
-    TargetIdeInfo target = projectData.getTargetMap().get(targetKey);
-    if (target == null) {
-      return null;
-    }
-    return goPackageMap
-        .computeIfAbsent(
-            importPath,
-            (path) -> Optional.of(new BlazeGoPackage(project, projectData, path, target)))
-        .orElse(null);
+    BlazeGoImportPathIndex index = BlazeGoImportPathIndex.getInstance(project);
+    return index != null ? index.getPackage(project, importPath) : null;
   }
 
   @Override
@@ -93,35 +62,6 @@ class BlazeGoImportResolver implements GoImportResolver {
     return ThreeState.NO;
   }
 
-  @Nullable
-  static ConcurrentMap<String, Optional<BlazeGoPackage>> getGoPackageMap(Project project) {
-    return SyncCache.getInstance(project)
-        .get(GO_PACKAGE_MAP_KEY, (p, pd) -> new ConcurrentHashMap<>());
-  }
-
-  @Nullable
-  private static Map<String, TargetKey> getGoTargetMap(Project project) {
-    return SyncCache.getInstance(project)
-        .get(
-            GO_TARGET_MAP_KEY,
-            (p, projectData) -> {
-              TargetMap targetMap = projectData.getTargetMap();
-              return targetMap.targets().stream()
-                  .filter(t -> t.getGoIdeInfo() != null && t.getGoIdeInfo().getImportPath() != null)
-                  .collect(
-                      ImmutableMap.toImmutableMap(
-                          t -> t.getGoIdeInfo().getImportPath(),
-                          TargetIdeInfo::getKey,
-                          // duplicates are possible (e.g., same target with different aspects)
-                          // choose the one with the most sources (though they're probably the same)
-                          (first, second) ->
-                              targetMap.get(first).getGoIdeInfo().getSources().size()
-                                      >= targetMap.get(second).getGoIdeInfo().getSources().size()
-                                  ? first
-                                  : second));
-            });
-  }
-
   @Nullable
   @Override
   public ResolveResult[] resolve(GoImportReference reference) {
@@ -232,4 +172,22 @@ class BlazeGoImportResolver implements GoImportResolver {
       return null;
     }
   }
+
+  /** Builds the go import path index in the background on project open. */
+  static class Warmer implements SyncCacheWarmer {
+    @Override
+    public String getName() {
+      return "Go import paths";
+    }
+
+    @Override
+    public int getPriority() {
+      return 30;
+    }
+
+    @Override
+    public void warm(Project project) {
+      BlazeGoImportPathIndex.getInstance(project);
+    }
+  }
 }
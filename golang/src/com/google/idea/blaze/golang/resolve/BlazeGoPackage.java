@@ -24,28 +24,25 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Streams;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifactResolver;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.GoIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
-import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.ideinfo.TargetMap;
 import com.google.idea.blaze.base.io.VfsUtils;
 import com.google.idea.blaze.base.lang.buildfile.psi.BuildFile;
 import com.google.idea.blaze.base.lang.buildfile.psi.FuncallExpression;
 import com.google.idea.blaze.base.lang.buildfile.references.BuildReferenceManager;
 import com.google.idea.blaze.base.model.BlazeProjectData;
-import com.google.idea.blaze.base.model.primitives.GenericBlazeRules;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.model.primitives.LanguageClass;
 import com.google.idea.blaze.base.model.primitives.RuleType;
-import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.workspace.WorkspaceHelper;
-import com.google.idea.blaze.base.targetmaps.ReverseDependencyMap;
 import com.google.idea.blaze.golang.GoBlazeRules.RuleTypes;
-import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressIndicatorProvider;
 import com.intellij.openapi.project.Project;
@@ -67,6 +64,7 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Predicate;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import one.util.streamex.StreamEx;
@@ -85,8 +83,7 @@ import one.util.streamex.StreamEx;
  * Exactly one {@link BlazeGoPackage} per go rule.
  */
 public class BlazeGoPackage extends GoPackage {
-  private static final Logger logger = Logger.getInstance(BlazeGoPackage.class);
-  private static final String GO_TARGET_TO_FILE_MAP_KEY = "BlazeGoTargetToFileMap";
+  private static final Pattern EXECROOT_EXTERNAL = Pattern.compile("/execroot.*/external/");
 
   private final Label label;
   private final String importPath;
@@ -95,15 +92,6 @@ public class BlazeGoPackage extends GoPackage {
   @Nullable private volatile PsiElement navigableElement;
   @Nullable private volatile PsiElement[] importReferences;
 
-  BlazeGoPackage(
-      Project project, BlazeProjectData projectData, String importPath, TargetIdeInfo target) {
-    this(
-        project,
-        importPath,
-        replaceProtoLibrary(project, projectData, target.getKey()).getLabel(),
-        getTargetToFileMap(project, projectData).get(target.getKey().getLabel()));
-  }
-
   BlazeGoPackage(Project project, String importPath, Label label, Collection<File> files) {
     super(project, getPackageName(project, files, importPath));
     this.importPath = importPath;
@@ -117,42 +105,12 @@ public class BlazeGoPackage extends GoPackage {
         .forEach(f -> directories.put(f, Optional.empty()));
   }
 
-  /**
-   * The import path for proto_library doesn't match the target name, we need to replace the
-   * proto_library with the corresponding go_proto_library for them to match.
-   */
-  private static TargetKey replaceProtoLibrary(
-      Project project, BlazeProjectData projectData, TargetKey targetKey) {
-    TargetMap targetMap = projectData.getTargetMap();
-    TargetIdeInfo target = targetMap.get(targetKey);
-    if (target == null || target.getKind() != GenericBlazeRules.RuleTypes.PROTO_LIBRARY.getKind()) {
-      return targetKey;
-    }
-    return ReverseDependencyMap.get(project).get(targetKey).stream()
-        .map(targetMap::get)
-        .filter(Objects::nonNull)
-        .filter(t -> t.getKind() == RuleTypes.GO_PROTO_LIBRARY.getKind())
-        .map(TargetIdeInfo::getKey)
-        .findFirst()
-        .orElse(targetKey);
-  }
-
-  static ImmutableMultimap<Label, File> getTargetToFileMap(
-      Project project, BlazeProjectData projectData) {
-    ImmutableMultimap<Label, File> map =
-        SyncCache.getInstance(project)
-            .get(GO_TARGET_TO_FILE_MAP_KEY, BlazeGoPackage::getUncachedTargetToFileMap);
-    if (map == null) {
-      logger.error("Unexpected null target to file map from SyncCache.");
-      return getUncachedTargetToFileMap(project, projectData);
-    }
-    return map;
-  }
-
   public static ImmutableMultimap<Label, File> getUncachedTargetToFileMap(
       Project project, BlazeProjectData projectData) {
     ImmutableMultimap<Label, GoIdeInfo> libraryToTestMap = buildLibraryToTestMap(projectData);
     ImmutableMultimap.Builder<Label, File> builder = ImmutableMultimap.builder();
+    // intern source files, so files shared by several targets (e.g. tests) are stored once
+    Interner<File> files = Interners.newStrongInterner();
     for (TargetIdeInfo target : projectData.getTargetMap().targets()) {
       if (target.getGoIdeInfo() == null) {
         continue;
@@ -161,6 +119,7 @@ public class BlazeGoPackage extends GoPackage {
           getSourceFiles(target, project, projectData, libraryToTestMap).stream()
               .map(BlazeGoPackage::toRealFile)
               .filter(Objects::nonNull)
+              .map(files::intern)
               .collect(toImmutableSet());
       builder.putAll(target.getKey().getLabel(), sourceFiles);
     }
@@ -185,7 +144,7 @@ public class BlazeGoPackage extends GoPackage {
     if (externalString.contains("/external/")
         && !externalString.contains("/bazel-out/")
         && !externalString.contains("/blaze-out/")) {
-      return new File(externalString.replaceAll("/execroot.*/external/", "/external/"));
+      return new File(EXECROOT_EXTERNAL.matcher(externalString).replaceAll("/external/"));
     }
     return maybeExternal;
   }
@@ -29,8 +29,10 @@ import com.google.idea.blaze.base.command.buildresult.BlazeArtifact.LocalFileArt
 import com.google.idea.blaze.base.command.buildresult.OutputArtifact;
 import com.google.idea.blaze.base.command.buildresult.RemoteOutputArtifact;
 import com.google.idea.blaze.base.command.buildresult.SourceArtifact;
+import com.google.idea.blaze.base.filecache.ArtifactStore;
 import com.google.idea.blaze.base.filecache.FileCache;
 import com.google.idea.blaze.base.filecache.FileCacheDiffer;
+import com.google.idea.blaze.base.filecache.ProjectArtifactStore;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.LibraryArtifact;
 import com.google.idea.blaze.base.io.FileOperationProvider;
@@ -61,10 +63,6 @@ import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.PathUtil;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -122,6 +120,11 @@ public class JarCache {
     return enabled;
   }
 
+  /** The content-addressed storage backing the files in the jar cache directory. */
+  private ArtifactStore getArtifactStore() {
+    return ProjectArtifactStore.getInstance(project).getStore();
+  }
+
   /** Returns the currently cached files, as well as setting {@link #cacheState}. */
   private ImmutableMap<String, File> readFileState() {
     FileOperationProvider ops = FileOperationProvider.getInstance();
@@ -148,13 +151,11 @@ public class JarCache {
       clearCache(context, /* blockOnCompletion= */ false);
       return;
     }
-    boolean fullRefresh = syncMode == SyncMode.FULL;
-    if (fullRefresh) {
-      clearCache(context, /* blockOnCompletion= */ true);
-    }
-
+    // Jars are content-addressed, so a full sync doesn't need to start from an empty cache. Any
+    // jars which are unchanged are reused, and the remainder are replaced.
     // TODO(brendandouglas): add a mechanism for removing missing files for partial syncs
-    boolean removeMissingFiles = syncMode == SyncMode.INCREMENTAL;
+    boolean removeMissingFiles =
+        syncMode == SyncMode.INCREMENTAL || syncMode == SyncMode.FULL;
 
     refresh(
         context,
@@ -182,12 +183,14 @@ public class JarCache {
       return;
     }
 
+    ArtifactStore store = getArtifactStore();
     ImmutableMap<String, BlazeArtifact> projectState =
         getArtifactsToCache(projectViewSet, projectData);
     ImmutableMap<String, File> cachedFiles = readFileState();
     try {
       Map<String, BlazeArtifact> updated =
           FileCacheDiffer.findUpdatedOutputs(projectState, cachedFiles, previousOutputs);
+      Map<String, String> digests = getDigests(updated);
 
       List<File> removed = new ArrayList<>();
       if (removeMissingFiles) {
@@ -198,21 +201,25 @@ public class JarCache {
                 .collect(toImmutableList());
       }
 
-      // Prefetch all libraries to local before reading and copying content
+      // Prefetch all libraries not already in the store to local before reading and copying content
       ListenableFuture<?> downloadArtifactsFuture =
           RemoteArtifactPrefetcher.getInstance()
               .downloadArtifacts(
                   /* projectName= */ project.getName(),
-                  /* outputArtifacts= */ BlazeArtifact.getRemoteArtifacts(updated.values()));
+                  /* outputArtifacts= */ BlazeArtifact.getRemoteArtifacts(
+                      updated.entrySet().stream()
+                          .filter(e -> !store.contains(digests.get(e.getKey())))
+                          .map(Map.Entry::getValue)
+                          .collect(toImmutableList())));
       FutureUtil.waitForFuture(context, downloadArtifactsFuture)
           .timed("FetchJars", EventType.Prefetching)
           .withProgressMessage("Fetching jar files...")
           .run();
 
       // update cache files, and remove files if required
-      List<ListenableFuture<?>> futures = new ArrayList<>(copyLocally(updated));
+      List<ListenableFuture<?>> futures = new ArrayList<>(copyLocally(store, updated, digests));
       if (removeMissingFiles) {
-        futures.addAll(deleteCacheFiles(removed));
+        futures.addAll(deleteCacheFiles(store, removed));
       }
 
       Futures.allAsList(futures).get();
@@ -229,12 +236,24 @@ public class JarCache {
       logger.warn("Jar Cache synchronization didn't complete", e);
       IssueOutput.warn("Jar Cache synchronization didn't complete").submit(context);
     } finally {
+      ProjectArtifactStore.getInstance(project).commit(context);
       // update the in-memory record of which files are cached
       ImmutableMap<String, File> state = readFileState();
       logCacheSize(context, state);
     }
   }
 
+  /**
+   * Returns the content digests of the given artifacts, keyed by cache key. Artifacts whose
+   * digest can't be determined map to null, so they're always fetched and are copied without
+   * being kept in the artifact store.
+   */
+  private static Map<String, String> getDigests(Map<String, BlazeArtifact> artifacts) {
+    Map<String, String> digests = new HashMap<>();
+    artifacts.forEach((key, artifact) -> digests.put(key, ArtifactStore.digest(artifact)));
+    return digests;
+  }
+
   private static void logCacheSize(BlazeContext context, ImmutableMap<String, File> cachedFiles) {
     try {
       ImmutableMap<File, Long> cacheFileSizes = FileSizeScanner.readFilesizes(cachedFiles.values());
@@ -278,7 +297,8 @@ public class JarCache {
     return ImmutableMap.copyOf(newOutputs);
   }
 
-  private Collection<ListenableFuture<?>> copyLocally(Map<String, BlazeArtifact> updated) {
+  private Collection<ListenableFuture<?>> copyLocally(
+      ArtifactStore store, Map<String, BlazeArtifact> updated, Map<String, String> digests) {
     List<ListenableFuture<?>> futures = new ArrayList<>();
     updated.forEach(
         (key, artifact) ->
@@ -286,7 +306,10 @@ public class JarCache {
                 FetchExecutor.EXECUTOR.submit(
                     () -> {
                       try {
-                        copyLocally(artifact, jarCacheFolderProvider.getCacheFileByKey(key));
+                        store.publish(
+                            digests.get(key),
+                            artifact,
+                            jarCacheFolderProvider.getCacheFileByKey(key).toPath());
                       } catch (IOException e) {
                         logger.warn(
                             String.format(
@@ -298,29 +321,15 @@ public class JarCache {
     return futures;
   }
 
-  private static void copyLocally(BlazeArtifact output, File destination) throws IOException {
-    if (output instanceof LocalFileArtifact) {
-      File source = ((LocalFileArtifact) output).getFile();
-      Files.copy(
-          Paths.get(source.getPath()),
-          Paths.get(destination.getPath()),
-          StandardCopyOption.REPLACE_EXISTING,
-          StandardCopyOption.COPY_ATTRIBUTES);
-      return;
-    }
-    try (InputStream stream = output.getInputStream()) {
-      Files.copy(stream, Paths.get(destination.getPath()), StandardCopyOption.REPLACE_EXISTING);
-    }
-  }
-
-  private Collection<ListenableFuture<?>> deleteCacheFiles(Collection<File> files) {
+  private static Collection<ListenableFuture<?>> deleteCacheFiles(
+      ArtifactStore store, Collection<File> files) {
     return files.stream()
         .map(
             f ->
                 FetchExecutor.EXECUTOR.submit(
                     () -> {
                       try {
-                        Files.deleteIfExists(Paths.get(f.getPath()));
+                        store.removeView(f.toPath());
                       } catch (IOException e) {
                         logger.warn(e);
                       }
@@ -334,12 +343,19 @@ public class JarCache {
     if (cacheFiles == null) {
       return;
     }
-    Collection<ListenableFuture<?>> futures = deleteCacheFiles(ImmutableList.copyOf(cacheFiles));
+    ArtifactStore store = getArtifactStore();
+    Collection<ListenableFuture<?>> futures =
+        deleteCacheFiles(store, ImmutableList.copyOf(cacheFiles));
+    ListenableFuture<?> clearStoreFuture =
+        Futures.whenAllComplete(futures)
+            .run(
+                () -> ProjectArtifactStore.getInstance(project).commit(context),
+                FetchExecutor.EXECUTOR);
     if (!blockOnCompletion) {
       return;
     }
     try {
-      Futures.allAsList(futures).get();
+      clearStoreFuture.get();
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       context.setCancelled();
@@ -479,7 +495,9 @@ public class JarCache {
     @Override
     public void initialize(Project project) {
       JarCache cache = getInstance(project);
-      cache.updateEnabled();
+      if (cache.updateEnabled()) {
+        cache.getArtifactStore();
+      }
       cache.readFileState();
     }
   }
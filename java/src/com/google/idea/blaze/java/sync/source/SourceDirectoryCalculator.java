@@ -19,7 +19,6 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -142,31 +141,8 @@ public final class SourceDirectoryCalculator {
 
   private static Multimap<WorkspacePath, SourceArtifact> sortArtifactLocationsByRootDirectory(
       ImportRoots importRoots, Collection<SourceArtifact> sources) {
-
-    Multimap<WorkspacePath, SourceArtifact> result = ArrayListMultimap.create();
-
-    for (SourceArtifact sourceArtifact : sources) {
-      String sourcePath = sourceArtifact.artifactLocation.getRelativePath();
-      if (importRoots.excludeDirectories().stream()
-          .anyMatch(excluded -> isUnderRootDirectory(excluded, sourcePath))) {
-        continue;
-      }
-      importRoots.rootDirectories().stream()
-          .filter(rootDirectory -> isUnderRootDirectory(rootDirectory, sourcePath))
-          .findFirst()
-          .ifPresent(foundWorkspacePath -> result.put(foundWorkspacePath, sourceArtifact));
-    }
-    return result;
-  }
-
-  private static boolean isUnderRootDirectory(WorkspacePath rootDirectory, String relativePath) {
-    if (rootDirectory.isWorkspaceRoot()) {
-      return true;
-    }
-    String rootDirectoryString = rootDirectory.toString();
-    return relativePath.startsWith(rootDirectoryString)
-        && (relativePath.length() == rootDirectoryString.length()
-            || (relativePath.charAt(rootDirectoryString.length()) == '/'));
+    return importRoots.groupByRootDirectory(
+        sources, sourceArtifact -> sourceArtifact.artifactLocation.getRelativePath());
   }
 
   /** Calculates all source directories for a single content root. */
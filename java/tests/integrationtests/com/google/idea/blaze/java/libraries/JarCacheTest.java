@@ -27,6 +27,7 @@ import com.google.idea.blaze.base.async.executor.MockBlazeExecutor;
 import com.google.idea.blaze.base.bazel.BazelBuildSystemProvider;
 import com.google.idea.blaze.base.bazel.BuildSystemProvider;
 import com.google.idea.blaze.base.filecache.FileCache;
+import com.google.idea.blaze.base.filecache.ProjectArtifactStore;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.LibraryArtifact;
 import com.google.idea.blaze.base.io.FileOperationProvider;
@@ -102,6 +103,13 @@ public class JarCacheTest extends BlazeTestCase {
     applicationServices.register(FileOperationProvider.class, new FileOperationProvider());
     applicationServices.register(RemoteArtifactPrefetcher.class, new DefaultPrefetcher());
     projectServices.register(JarCacheFolderProvider.class, new JarCacheFolderProvider(project));
+    try {
+      projectServices.register(
+          ProjectArtifactStore.class,
+          new ProjectArtifactStore(folder.newFolder("artifactstore").toPath()));
+    } catch (IOException e) {
+      throw new AssertionError("Failed to create a directory for test", e);
+    }
     JarCache jarCache = new JarCache(project);
     jarCache.enableForTest();
     projectServices.register(JarCache.class, jarCache);
@@ -80,19 +80,16 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
   private final VirtualFile configFile;
   private final String workspaceRelativePathPrefix;
   private final String workspaceRelativePathReplacement;
+  private final File tsconfigEditor;
 
-  private final NotNullLazyValue<ImmutableList<VirtualFile>> dependencies;
-  private final NotNullLazyValue<TypeScriptConfigIncludeBase> includeChecker;
-  private final NotNullLazyValue<TypeScriptImportResolveContext> resolveContext;
-  private final NotNullLazyValue<TypeScriptFileImportsResolver> importResolver;
-  private final NotNullLazyValue<TypeScriptFileImports> importStructure;
+  /** Everything derived from the file system, recalculated by {@link #resetResolvedState}. */
+  private volatile ResolvedState resolved;
 
   // tsconfig.json default values
   private boolean compileOnSave = false;
   private JsonObject compilerOptions;
   // begin compilerOptions
   private String baseUrl = ".";
-  private final NullableLazyValue<VirtualFile> baseUrlFile;
   private boolean inlineSourceMap = true;
   private String jsxFactory = "React.createElement";
   private ModuleTarget module = ModuleTarget.COMMON_JS;
@@ -100,21 +97,18 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
   private boolean noImplicitAny = true;
   private boolean noImplicitThis = true;
   private boolean noLib = true;
-  private final List<JSModulePathSubstitution> paths = new ArrayList<>();
+  @Nullable private JsonObject pathsJson;
   private final List<String> plugins = new ArrayList<>();
   private final List<String> rootDirs = new ArrayList<>();
-  private final NotNullLazyValue<ImmutableList<VirtualFile>> rootDirsFiles;
-  private final NotNullLazyValue<List<PsiFileSystemItem>> rootDirsPsiElements;
   private boolean sourceMap = false;
   private boolean strictNullChecks = true;
   private LanguageTarget target = LanguageTarget.ES5;
   private final List<String> types = new ArrayList<>();
   // end compilerOptions
   private final List<String> filesStrings = new ArrayList<>();
-  private final NotNullLazyValue<List<VirtualFile>> files;
 
   @Nullable
-  static TypeScriptConfig getInstance(Project project, Label label, File tsconfig) {
+  static BlazeTypeScriptConfig getInstance(Project project, Label label, File tsconfig) {
     WorkspaceRoot workspaceRoot = WorkspaceRoot.fromProject(project);
 
     // as seen by the project
@@ -201,47 +195,7 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
     this.workspaceRelativePathPrefix = workspaceRelativePathPrefix;
     this.workspaceRelativePathReplacement = workspaceRelativePathReplacement;
 
-    this.baseUrlFile =
-        NullableLazyValue.createValue(
-            () ->
-                VfsUtils.resolveVirtualFile(
-                    new File(tsconfigEditor.getParentFile(), baseUrl),
-                    /* refreshIfNeeded= */ false));
-    this.rootDirsFiles =
-        NotNullLazyValue.createValue(
-            () ->
-                baseUrlFile.getValue() != null
-                    ? rootDirs.stream()
-                        .map(baseUrlFile.getValue()::findFileByRelativePath)
-                        .filter(Objects::nonNull)
-                        .collect(ImmutableList.toImmutableList())
-                    : ImmutableList.of());
-    this.rootDirsPsiElements =
-        NotNullLazyValue.createValue(
-            () -> {
-              PsiManager psiManager = PsiManager.getInstance(project);
-              return rootDirsFiles.getValue().stream()
-                  .map(psiManager::findDirectory)
-                  .filter(Objects::nonNull)
-                  .collect(ImmutableList.toImmutableList());
-            });
-    this.files = NotNullLazyValue.createValue(this::resolveFilesList);
-    this.dependencies =
-        NotNullLazyValue.createValue(
-            () -> {
-              VirtualFile file =
-                  VfsUtils.resolveVirtualFile(tsconfigEditor, /* refreshIfNeeded= */ false);
-              return file != null ? ImmutableList.of(file) : ImmutableList.of();
-            });
-    this.includeChecker =
-        NotNullLazyValue.createValue(() -> new TypeScriptConfigFilesInclude(this));
-    this.resolveContext =
-        NotNullLazyValue.createValue(() -> new TypeScriptImportConfigResolveContextImpl(this));
-    this.importResolver =
-        NotNullLazyValue.createValue(
-            () -> TypeScriptImportsResolverProvider.getResolver(project, this));
-    this.importStructure =
-        NotNullLazyValue.createValue(() -> new TypeScriptFileImportsImpl(project, this));
+    this.tsconfigEditor = tsconfigEditor;
 
     try {
       parseJson(
@@ -253,6 +207,7 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
     } catch (IOException e) {
       logger.warn(e);
     }
+    this.resolved = new ResolvedState();
   }
 
   private void parseJson(JsonObject json) {
@@ -336,7 +291,7 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
           this.noLib = value.getAsBoolean();
           break;
         case "paths":
-          parsePaths(value.getAsJsonObject());
+          this.pathsJson = value.getAsJsonObject();
           break;
         case "plugins":
           for (JsonElement plugin : value.getAsJsonArray()) {
@@ -390,10 +345,12 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
     }
   }
 
-  private void parsePaths(JsonObject json) {
+  private ImmutableList<JSModulePathSubstitution> resolvePaths(@Nullable VirtualFile base) {
+    if (pathsJson == null) {
+      return ImmutableList.of();
+    }
     String runfilesPrefix = null;
     List<String> alternativePrefixes = new ArrayList<>();
-    VirtualFile base = baseUrlFile.getValue();
     if (base != null) {
       Path baseUrlPath = VfsUtil.virtualToIoFile(base).toPath();
       BuildSystemName buildSystem = Blaze.getBuildSystemName(project);
@@ -426,7 +383,8 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
       runfilesPrefix = "./" + label.targetName() + ".runfiles/" + workspaceRoot.getName();
     }
 
-    for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+    ImmutableList.Builder<JSModulePathSubstitution> substitutions = ImmutableList.builder();
+    for (Map.Entry<String, JsonElement> entry : pathsJson.entrySet()) {
       String name = entry.getKey();
       List<String> mappings = new ArrayList<>();
       for (JsonElement path : entry.getValue().getAsJsonArray()) {
@@ -438,12 +396,13 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
         }
         mappings.add(pathString);
       }
-      paths.add(new PathSubstitution(name, mappings, alternativePrefixes, runfilesPrefix));
+      substitutions.add(
+          new PathSubstitution(name, mappings, alternativePrefixes, runfilesPrefix));
     }
+    return substitutions.build();
   }
 
-  private ImmutableList<VirtualFile> resolveFilesList() {
-    VirtualFile base = baseUrlFile.getValue();
+  private ImmutableList<VirtualFile> resolveFilesList(@Nullable VirtualFile base) {
     if (base == null) {
       return ImmutableList.of();
     }
@@ -465,6 +424,71 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
         .collect(ImmutableList.toImmutableList());
   }
 
+  /**
+   * Discards everything resolved against the file system, so it's recalculated on next access.
+   *
+   * <p>Called when this config is reused for a new sync, since generated files, roots and runfiles
+   * which were missing when it was first used may have since been built.
+   */
+  void resetResolvedState() {
+    resolved = new ResolvedState();
+  }
+
+  /** The parts of this config which are resolved lazily against the file system. */
+  private class ResolvedState {
+    final NullableLazyValue<VirtualFile> baseUrlFile =
+        NullableLazyValue.createValue(
+            () ->
+                VfsUtils.resolveVirtualFile(
+                    new File(tsconfigEditor.getParentFile(), baseUrl),
+                    /* refreshIfNeeded= */ false));
+    final NotNullLazyValue<ImmutableList<JSModulePathSubstitution>> paths =
+        NotNullLazyValue.createValue(() -> resolvePaths(baseUrlFile.getValue()));
+    final NotNullLazyValue<ImmutableList<VirtualFile>> rootDirsFiles =
+        NotNullLazyValue.createValue(
+            () -> {
+              VirtualFile base = baseUrlFile.getValue();
+              return base != null
+                  ? rootDirs.stream()
+                      .map(base::findFileByRelativePath)
+                      .filter(Objects::nonNull)
+                      .collect(ImmutableList.toImmutableList())
+                  : ImmutableList.of();
+            });
+    final NotNullLazyValue<List<PsiFileSystemItem>> rootDirsPsiElements =
+        NotNullLazyValue.createValue(
+            () -> {
+              PsiManager psiManager = PsiManager.getInstance(project);
+              return rootDirsFiles.getValue().stream()
+                  .map(psiManager::findDirectory)
+                  .filter(Objects::nonNull)
+                  .collect(ImmutableList.toImmutableList());
+            });
+    final NotNullLazyValue<List<VirtualFile>> files =
+        NotNullLazyValue.createValue(() -> resolveFilesList(baseUrlFile.getValue()));
+    final NotNullLazyValue<ImmutableList<VirtualFile>> dependencies =
+        NotNullLazyValue.createValue(
+            () -> {
+              VirtualFile file =
+                  VfsUtils.resolveVirtualFile(tsconfigEditor, /* refreshIfNeeded= */ false);
+              return file != null ? ImmutableList.of(file) : ImmutableList.of();
+            });
+    final NotNullLazyValue<TypeScriptConfigIncludeBase> includeChecker =
+        NotNullLazyValue.createValue(
+            () -> new TypeScriptConfigFilesInclude(BlazeTypeScriptConfig.this));
+    final NotNullLazyValue<TypeScriptImportResolveContext> resolveContext =
+        NotNullLazyValue.createValue(
+            () -> new TypeScriptImportConfigResolveContextImpl(BlazeTypeScriptConfig.this));
+    final NotNullLazyValue<TypeScriptFileImportsResolver> importResolver =
+        NotNullLazyValue.createValue(
+            () ->
+                TypeScriptImportsResolverProvider.getResolver(
+                    project, BlazeTypeScriptConfig.this));
+    final NotNullLazyValue<TypeScriptFileImports> importStructure =
+        NotNullLazyValue.createValue(
+            () -> new TypeScriptFileImportsImpl(project, BlazeTypeScriptConfig.this));
+  }
+
   @Override
   public boolean isDirectoryBased() {
     return false;
@@ -482,12 +506,12 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
 
   @Override
   public Collection<JSModulePathSubstitution> getPaths() {
-    return paths;
+    return resolved.paths.getValue();
   }
 
   @Override
   public Collection<PsiFileSystemItem> getRootDirs() {
-    return rootDirsPsiElements.getValue();
+    return resolved.rootDirsPsiElements.getValue();
   }
 
   @Override
@@ -498,7 +522,7 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
   @Nullable
   @Override
   public VirtualFile getBaseUrl() {
-    return baseUrlFile.getValue();
+    return resolved.baseUrlFile.getValue();
   }
 
   @Nullable
@@ -579,7 +603,7 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
 
   @Override
   public Collection<VirtualFile> getRootDirsFiles() {
-    return rootDirsFiles.getValue();
+    return resolved.rootDirsFiles.getValue();
   }
 
   @Override
@@ -597,7 +621,7 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
    */
   @Override
   public Collection<VirtualFile> getFileList() {
-    return files.getValue();
+    return resolved.files.getValue();
   }
 
   /**
@@ -619,17 +643,17 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
 
   @Override
   public Collection<VirtualFile> getDependencies() {
-    return dependencies.getValue();
+    return resolved.dependencies.getValue();
   }
 
   @Override
   public TypeScriptConfigIncludeBase getInclude() {
-    return includeChecker.getValue();
+    return resolved.includeChecker.getValue();
   }
 
   @Override
   public TypeScriptImportResolveContext getResolveContext() {
-    return resolveContext.getValue();
+    return resolved.resolveContext.getValue();
   }
 
   @Override
@@ -701,12 +725,12 @@ class BlazeTypeScriptConfig implements TypeScriptConfig {
 
   @Override
   public TypeScriptFileImports getConfigImportResolveStructure() {
-    return importStructure.getValue();
+    return resolved.importStructure.getValue();
   }
 
   @Override
   public TypeScriptFileImportsResolver getImportResolver() {
-    return importResolver.getValue();
+    return resolved.importResolver.getValue();
   }
 
   @Override
@@ -16,12 +16,12 @@
 package com.google.idea.blaze.typescript;
 
 import com.google.common.base.Functions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.idea.blaze.base.model.primitives.Label;
 import com.google.idea.blaze.base.sync.BlazeSyncModificationTracker;
 import com.google.idea.common.experiments.BoolExperiment;
-import com.google.idea.sdkcompat.typescript.TypeScriptSDKCompat;
 import com.intellij.lang.typescript.compiler.TypeScriptCompilerService;
 import com.intellij.lang.typescript.tsconfig.TypeScriptConfig;
 import com.intellij.lang.typescript.tsconfig.TypeScriptConfigService;
@@ -37,13 +37,10 @@ import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
 class BlazeTypeScriptConfigServiceImpl implements TypeScriptConfigService {
@@ -55,17 +52,24 @@ class BlazeTypeScriptConfigServiceImpl implements TypeScriptConfigService {
   private final List<TypeScriptConfigsChangedListener> listeners;
 
   private volatile ImmutableMap<VirtualFile, TypeScriptConfig> configs;
-  private final AtomicInteger configsHash = new AtomicInteger(Objects.hash());
+  private volatile ImmutableMap<Label, ConfigState> configStates;
+  private volatile TsConfigLookupIndex lookupIndex;
 
   BlazeTypeScriptConfigServiceImpl(Project project) {
     this.project = project;
     this.listeners = new ArrayList<>();
     this.configs = ImmutableMap.of();
+    this.configStates = ImmutableMap.of();
+    this.lookupIndex = TsConfigLookupIndex.EMPTY;
   }
 
   /**
    * Checks for modifications to the tsconfig files for the project.
    *
+   * <p>Configs whose tsconfig file and dependencies are unchanged since the last update are reused
+   * without re-parsing, though anything they resolved against the file system is recalculated.
+   * Only the remaining configs are reloaded.
+   *
    * <p>This uses multiple file operations to check timestamps and reload the files list, so should
    * not be called on the EDT or with a read lock.
    */
@@ -75,38 +79,107 @@ class BlazeTypeScriptConfigServiceImpl implements TypeScriptConfigService {
       logger.error("Updating tsconfig files on EDT or with a read lock.");
       return;
     }
-    configs =
+    ImmutableMap<Label, ConfigState> previousStates = configStates;
+    refreshTrackedFiles(previousStates.values());
+    ImmutableMap<Label, ConfigState> newStates =
         tsconfigs.entrySet().parallelStream()
             .map(
-                entry ->
-                    BlazeTypeScriptConfig.getInstance(project, entry.getKey(), entry.getValue()))
+                entry -> {
+                  ConfigState previous = previousStates.get(entry.getKey());
+                  if (previous != null && previous.isUpToDate(entry.getValue())) {
+                    // the build may have output files the config couldn't resolve last time
+                    previous.config.resetResolvedState();
+                    return previous;
+                  }
+                  return ConfigState.load(project, entry.getKey(), entry.getValue());
+                })
             .filter(Objects::nonNull)
+            .collect(ImmutableMap.toImmutableMap(state -> state.label, Functions.identity()));
+    configStates = newStates;
+    if (!hasChanges(previousStates, newStates)) {
+      return;
+    }
+    configs =
+        newStates.values().stream()
+            .map(state -> state.config)
             .collect(
                 ImmutableMap.toImmutableMap(TypeScriptConfig::getConfigFile, Functions.identity()));
+    lookupIndex = new TsConfigLookupIndex(configs);
     for (TypeScriptConfigsChangedListener listener : listeners) {
       listener.afterUpdate(configs.keySet());
     }
-    restartServiceIfConfigsChanged();
+    if (restartTypeScriptService.getValue()) {
+      TransactionGuard.getInstance()
+          .submitTransactionLater(
+              project, () -> TypeScriptCompilerService.restartServices(project, false));
+    }
   }
 
-  private void restartServiceIfConfigsChanged() {
-    if (!restartTypeScriptService.getValue()) {
-      return;
+  private static boolean hasChanges(
+      ImmutableMap<Label, ConfigState> previousStates, ImmutableMap<Label, ConfigState> newStates) {
+    if (!previousStates.keySet().equals(newStates.keySet())) {
+      return true;
     }
-    int pathHash = Arrays.hashCode(configs.keySet().stream().map(VirtualFile::getPath).toArray());
-    long contentTimestamp =
-        configs.values().stream()
-            .map(TypeScriptConfig::getDependencies)
+    return newStates.entrySet().stream()
+        .anyMatch(entry -> previousStates.get(entry.getKey()) != entry.getValue());
+  }
+
+  /**
+   * Synchronously refreshes the files tracked by the existing configs, so their VFS modification
+   * stamps reflect any changes made by the preceding build.
+   */
+  private static void refreshTrackedFiles(Collection<ConfigState> states) {
+    VirtualFile[] files =
+        states.stream()
+            .map(state -> state.trackedFiles)
             .flatMap(Collection::stream)
-            .map(VfsUtil::virtualToIoFile)
-            .map(File::lastModified)
-            .max(Comparator.naturalOrder())
-            .orElse(0L);
-    int newConfigsHash = Objects.hash(pathHash, contentTimestamp);
-    if (configsHash.getAndSet(newConfigsHash) != newConfigsHash) {
-      TransactionGuard.getInstance()
-          .submitTransactionLater(
-              project, () -> TypeScriptCompilerService.restartServices(project, false));
+            .filter(VirtualFile::isValid)
+            .toArray(VirtualFile[]::new);
+    if (files.length != 0) {
+      VfsUtil.markDirtyAndRefresh(
+          /* async= */ false, /* recursive= */ false, /* reloadChildren= */ false, files);
+    }
+  }
+
+  /**
+   * A loaded {@link TypeScriptConfig}, along with the VFS modification stamps of the files it was
+   * loaded from.
+   */
+  private static class ConfigState {
+    final Label label;
+    final File tsconfig;
+    final BlazeTypeScriptConfig config;
+    final ImmutableList<VirtualFile> trackedFiles;
+    final ImmutableList<Long> modificationStamps;
+
+    private ConfigState(Label label, File tsconfig, BlazeTypeScriptConfig config) {
+      this.label = label;
+      this.tsconfig = tsconfig;
+      this.config = config;
+      this.trackedFiles =
+          ImmutableList.<VirtualFile>builder()
+              .add(config.getConfigFile())
+              .addAll(config.getDependencies())
+              .build();
+      this.modificationStamps = getModificationStamps(trackedFiles);
+    }
+
+    @Nullable
+    static ConfigState load(Project project, Label label, File tsconfig) {
+      BlazeTypeScriptConfig config = BlazeTypeScriptConfig.getInstance(project, label, tsconfig);
+      return config != null ? new ConfigState(label, tsconfig, config) : null;
+    }
+
+    boolean isUpToDate(File tsconfig) {
+      return this.tsconfig.equals(tsconfig)
+          && trackedFiles.stream().allMatch(VirtualFile::isValid)
+          && modificationStamps.equals(getModificationStamps(trackedFiles));
+    }
+
+    private static ImmutableList<Long> getModificationStamps(ImmutableList<VirtualFile> files) {
+      return files.stream()
+          .map(VirtualFile::getModificationStamp)
+          .collect(ImmutableList.toImmutableList());
     }
   }
 
@@ -128,14 +201,12 @@ class BlazeTypeScriptConfigServiceImpl implements TypeScriptConfigService {
   @Nullable
   @Override
   public TypeScriptConfig getPreferableConfig(@Nullable VirtualFile scopeFile) {
-
     if (configs.isEmpty() || scopeFile == null || !scopeFile.isValid()) {
       return null;
     }
-    for (VirtualFile configFile :
-        TypeScriptSDKCompat.getNearestParentTsConfigs(scopeFile, configs)) {
-      TypeScriptConfig config = configs.get(configFile);
-      if (config != null && this.configGraphIncludesFile(scopeFile, config)) {
+    TsConfigLookupIndex index = lookupIndex;
+    for (TypeScriptConfig config : index.getNearestParentConfigs(scopeFile)) {
+      if (index.includes(config, scopeFile, this::configGraphIncludesFile)) {
         return config;
       }
     }
@@ -152,10 +223,7 @@ class BlazeTypeScriptConfigServiceImpl implements TypeScriptConfigService {
     if (configForFile != null) {
       return configForFile;
     }
-    return TypeScriptSDKCompat.getNearestParentTsConfigs(scopeFile, configs).stream()
-        .map(configs::get)
-        .findFirst()
-        .orElse(null);
+    return lookupIndex.getNearestParentConfigs(scopeFile).stream().findFirst().orElse(null);
   }
 
   /** #api203: Added in 2021.1, therefore @Override is omitted. */
@@ -164,10 +232,8 @@ class BlazeTypeScriptConfigServiceImpl implements TypeScriptConfigService {
     if (configs.isEmpty() || scopeFile == null) {
       return null;
     }
-    for (VirtualFile configFile :
-        TypeScriptSDKCompat.getNearestParentTsConfigs(scopeFile, configs)) {
-      TypeScriptConfig config = configs.get(configFile);
-      if (config != null && config.getInclude().accept(scopeFile)) {
+    for (TypeScriptConfig config : lookupIndex.getNearestParentConfigs(scopeFile)) {
+      if (config.getInclude().accept(scopeFile)) {
         return config;
       }
     }
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.typescript;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.intellij.openapi.util.ModificationTracker;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Caches whether a single tsconfig includes each file, keyed by VFS file ID.
+ *
+ * <p>Holds a bounded number of results, and drops them all whenever the given modification tracker
+ * changes. Which files a config includes depends on the file's path and on which files exist, not
+ * on file contents, so tracking VFS structure changes (creation, deletion, moves and renames) is
+ * enough. Edits to the tsconfig files themselves replace the configs, and this cache with them.
+ */
+final class TsConfigIncludeCache {
+
+  static final int MAX_ENTRIES = 10_000;
+
+  private final ModificationTracker modificationTracker;
+  private final Cache<Integer, Boolean> results =
+      CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build();
+
+  /** The modification count the cached results were computed at. Guarded by 'this'. */
+  private long modificationCount;
+
+  TsConfigIncludeCache(ModificationTracker modificationTracker) {
+    this.modificationTracker = modificationTracker;
+    this.modificationCount = modificationTracker.getModificationCount();
+  }
+
+  /**
+   * Returns whether the file with the given ID is included, calling {@code includes} if there's
+   * no up-to-date cached result.
+   */
+  boolean includes(int fileId, BooleanSupplier includes) {
+    long count = modificationTracker.getModificationCount();
+    synchronized (this) {
+      if (count != modificationCount) {
+        results.invalidateAll();
+        modificationCount = count;
+      }
+    }
+    Boolean cached = results.getIfPresent(fileId);
+    if (cached != null) {
+      return cached;
+    }
+    // evaluate outside the lock; racing evaluations will agree on the result
+    boolean result = includes.getAsBoolean();
+    synchronized (this) {
+      // don't cache a result computed against a file system which has since changed
+      if (count == modificationCount) {
+        results.put(fileId, result);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.typescript;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.intellij.lang.typescript.tsconfig.TypeScriptConfig;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.VirtualFileWithId;
+import java.util.function.BiPredicate;
+
+/**
+ * Answers 'which tsconfig applies to this file' queries without touching the file system.
+ *
+ * <p>Configs are indexed by their containing directory, so finding the candidate configs for a
+ * file is a walk up its VFS parents. Whether a config includes a given file is cached per config,
+ * until the VFS structure next changes (see {@link TsConfigIncludeCache}).
+ *
+ * <p>An index is built for a fixed set of configs, and replaced whenever the configs change.
+ */
+final class TsConfigLookupIndex {
+
+  static final TsConfigLookupIndex EMPTY = new TsConfigLookupIndex(ImmutableMap.of());
+
+  private final ImmutableListMultimap<VirtualFile, TypeScriptConfig> configsByDirectory;
+  private final ImmutableMap<TypeScriptConfig, TsConfigIncludeCache> includeCaches;
+
+  TsConfigLookupIndex(ImmutableMap<VirtualFile, TypeScriptConfig> configs) {
+    ImmutableListMultimap.Builder<VirtualFile, TypeScriptConfig> byDirectory =
+        ImmutableListMultimap.builder();
+    ImmutableMap.Builder<TypeScriptConfig, TsConfigIncludeCache> caches = ImmutableMap.builder();
+    configs.forEach(
+        (file, config) -> {
+          VirtualFile directory = file.getParent();
+          if (directory != null) {
+            byDirectory.put(directory, config);
+          }
+          caches.put(
+              config, new TsConfigIncludeCache(VirtualFileManager.VFS_STRUCTURE_MODIFICATIONS));
+        });
+    this.configsByDirectory = byDirectory.build();
+    this.includeCaches = caches.build();
+  }
+
+  /** Returns the configs in the parent directories of the given file, nearest first. */
+  ImmutableList<TypeScriptConfig> getNearestParentConfigs(VirtualFile file) {
+    if (configsByDirectory.isEmpty()) {
+      return ImmutableList.of();
+    }
+    ImmutableList.Builder<TypeScriptConfig> result = ImmutableList.builder();
+    for (VirtualFile dir = file.isDirectory() ? file : file.getParent();
+        dir != null;
+        dir = dir.getParent()) {
+      result.addAll(configsByDirectory.get(dir));
+    }
+    return result.build();
+  }
+
+  /**
+   * Returns whether the given config includes the file, consulting the cache before falling back
+   * to {@code includes}.
+   */
+  boolean includes(
+      TypeScriptConfig config,
+      VirtualFile file,
+      BiPredicate<VirtualFile, TypeScriptConfig> includes) {
+    TsConfigIncludeCache cache = includeCaches.get(config);
+    if (cache == null || !(file instanceof VirtualFileWithId)) {
+      return includes.test(file, config);
+    }
+    return cache.includes(((VirtualFileWithId) file).getId(), () -> includes.test(file, config));
+  }
+}
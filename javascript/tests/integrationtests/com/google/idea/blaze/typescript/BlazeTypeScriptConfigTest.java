@@ -32,6 +32,7 @@ import com.intellij.lang.javascript.frameworks.modules.JSModulePathSubstitution;
 import com.intellij.lang.typescript.tsconfig.TypeScriptConfig;
 import com.intellij.lang.typescript.tsconfig.TypeScriptConfigServiceImpl;
 import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.application.WriteAction;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDirectory;
@@ -244,6 +245,43 @@ public class BlazeTypeScriptConfigTest extends BlazeIntegrationTestCase {
     assertThat(blazeConfig.hasFilesList()).isFalse();
   }
 
+  @Test
+  public void testUpdate_unchangedConfigReused() {
+    TypeScriptConfig blazeConfig = blazeConfigService.getTypeScriptConfigs().get(0);
+
+    updateConfigs();
+
+    assertThat(blazeConfigService.getTypeScriptConfigs()).containsExactly(blazeConfig);
+    assertThat(blazeConfigService.getTypeScriptConfigs().get(0)).isSameAs(blazeConfig);
+  }
+
+  @Test
+  public void testUpdate_reusedConfigPicksUpNewlyBuiltFiles() throws IOException {
+    String generatedPath =
+        "/src/out/execroot/bin/project/foo/tsconfig.runfiles/workspace/javascript/closure/base.d.ts";
+    VirtualFile generated = vf(generatedPath);
+    WriteAction.runAndWait(() -> generated.delete(this));
+
+    TypeScriptConfig blazeConfig = blazeConfigService.getTypeScriptConfigs().get(0);
+    assertThat(blazeConfig.getFileList())
+        .containsExactly(vf("/src/workspace/project/foo/included.ts"));
+
+    // the next build outputs the missing file
+    fileSystem.createFile(generatedPath);
+    updateConfigs();
+
+    assertThat(blazeConfigService.getTypeScriptConfigs().get(0)).isSameAs(blazeConfig);
+    assertThat(blazeConfig.getFileList())
+        .containsExactly(vf("/src/workspace/project/foo/included.ts"), vf(generatedPath));
+  }
+
+  private void updateConfigs() {
+    blazeConfigService.update(
+        ImmutableMap.of(
+            Label.create("//project/foo:tsconfig"),
+            new File("/src/workspace/project/foo/tsconfig.json")));
+  }
+
   @Test
   public void testDifferentOptions() {
     TypeScriptConfig blazeConfig = blazeConfigService.getTypeScriptConfigs().get(0);
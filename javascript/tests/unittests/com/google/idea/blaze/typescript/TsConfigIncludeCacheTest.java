@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.typescript;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.intellij.openapi.util.SimpleModificationTracker;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link TsConfigIncludeCache}. */
+@RunWith(JUnit4.class)
+public class TsConfigIncludeCacheTest {
+
+  private final SimpleModificationTracker vfsTracker = new SimpleModificationTracker();
+  private final Set<Integer> includedFiles = new HashSet<>();
+  private final AtomicInteger evaluations = new AtomicInteger();
+
+  private boolean includes(TsConfigIncludeCache cache, int fileId) {
+    return cache.includes(
+        fileId,
+        () -> {
+          evaluations.incrementAndGet();
+          return includedFiles.contains(fileId);
+        });
+  }
+
+  @Test
+  public void includes_cachesResultsUntilVfsChanges() {
+    TsConfigIncludeCache cache = new TsConfigIncludeCache(vfsTracker);
+    includedFiles.add(1);
+
+    assertThat(includes(cache, 1)).isTrue();
+    assertThat(includes(cache, 1)).isTrue();
+    assertThat(includes(cache, 2)).isFalse();
+    assertThat(includes(cache, 2)).isFalse();
+
+    assertThat(evaluations.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void includes_fileCreatedAfterLookupIsFound() {
+    TsConfigIncludeCache cache = new TsConfigIncludeCache(vfsTracker);
+    assertThat(includes(cache, 1)).isFalse();
+
+    // the file is created (or moved) into the config's scope
+    includedFiles.add(1);
+    vfsTracker.incModificationCount();
+
+    assertThat(includes(cache, 1)).isTrue();
+  }
+
+  @Test
+  public void includes_boundsCachedResults() {
+    TsConfigIncludeCache cache = new TsConfigIncludeCache(vfsTracker);
+    int files = TsConfigIncludeCache.MAX_ENTRIES * 2;
+    for (int id = 0; id < files; id++) {
+      includes(cache, id);
+    }
+    evaluations.set(0);
+
+    for (int id = 0; id < files; id++) {
+      includes(cache, id);
+    }
+
+    assertThat(evaluations.get()).isAtLeast(TsConfigIncludeCache.MAX_ENTRIES);
+  }
+}
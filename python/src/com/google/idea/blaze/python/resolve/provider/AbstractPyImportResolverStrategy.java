@@ -21,11 +21,13 @@ import com.google.common.collect.ImmutableSetMultimap;
 import com.google.idea.blaze.base.command.buildresult.OutputArtifactResolver;
 import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
 import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.primitives.LanguageClass;
-import com.google.idea.blaze.base.sync.SyncCache;
 import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.google.idea.blaze.python.resolve.BlazePyResolverUtils;
+import com.google.idea.blaze.python.resolve.provider.PySourcesIndex.Entry;
+import com.google.idea.blaze.python.resolve.provider.PySourcesIndex.TargetEntries;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.PsiElement;
@@ -66,7 +68,9 @@ public abstract class AbstractPyImportResolverStrategy implements PyImportResolv
   public final void addImportCandidates(
       PsiReference reference, String name, AutoImportQuickFix quickFix) {
     Project project = reference.getElement().getProject();
-    PySourcesIndex index = getSourcesIndex(project);
+    // the quick-fix is computed while highlighting, so rather than blocking it on building the
+    // index, offer no candidates until the background update has finished
+    PySourcesIndex index = PySourcesIndexManager.getInstance(project).getIndexIfReady(this);
     if (index == null) {
       return;
     }
@@ -89,29 +93,68 @@ public abstract class AbstractPyImportResolverStrategy implements PyImportResolv
 
   @Nullable
   private PySourcesIndex getSourcesIndex(Project project) {
-    return SyncCache.getInstance(project).get(getClass(), this::buildSourcesIndex);
+    return PySourcesIndexManager.getInstance(project).getIndex(this);
   }
 
-  @SuppressWarnings("unused")
-  private PySourcesIndex buildSourcesIndex(Project project, BlazeProjectData projectData) {
+  /**
+   * Builds the sources index for the given project data, reusing the entries of targets whose
+   * python sources are unchanged since the previous index was built.
+   */
+  PySourcesIndex buildSourcesIndex(
+      Project project, BlazeProjectData projectData, @Nullable PySourcesIndex previous) {
+    ArtifactLocationDecoder decoder = projectData.getArtifactLocationDecoder();
+    Map<TargetKey, TargetEntries> previousEntries =
+        previous != null && decoder.equals(previous.decoder)
+            ? previous.targetEntries
+            : ImmutableMap.of();
+
+    ImmutableMap.Builder<TargetKey, TargetEntries> targetEntries = ImmutableMap.builder();
     ImmutableSetMultimap.Builder<String, QualifiedName> shortNames = ImmutableSetMultimap.builder();
     Map<QualifiedName, PsiElementProvider> map = new HashMap<>();
-    ArtifactLocationDecoder decoder = projectData.getArtifactLocationDecoder();
     for (TargetIdeInfo target : projectData.getTargetMap().targets()) {
-      for (ArtifactLocation source : getPySources(target)) {
-        QualifiedName name = toImportString(source);
-        if (name == null || name.getLastComponent() == null) {
-          continue;
-        }
-        shortNames.put(name.getLastComponent(), name);
-        PsiElementProvider psiProvider = psiProviderFromArtifact(project, decoder, source);
-        map.put(name, psiProvider);
-        if (includeParentDirectory(source)) {
-          map.put(name.removeTail(1), PsiElementProvider.getParent(psiProvider));
+      ImmutableList<ArtifactLocation> sources = ImmutableList.copyOf(getPySources(target));
+      if (sources.isEmpty()) {
+        continue;
+      }
+      TargetEntries entries = previousEntries.get(target.getKey());
+      if (entries == null || !entries.sources.equals(sources)) {
+        entries = buildTargetEntries(project, decoder, sources);
+      }
+      targetEntries.put(target.getKey(), entries);
+      for (Entry entry : entries.entries) {
+        if (entry.isImportCandidate) {
+          shortNames.put(entry.name.getLastComponent(), entry.name);
         }
+        map.put(entry.name, entry.provider);
+      }
+    }
+    return new PySourcesIndex(
+        shortNames.build(),
+        ImmutableMap.copyOf(map),
+        targetEntries.build(),
+        projectData.getTargetMap(),
+        decoder);
+  }
+
+  private TargetEntries buildTargetEntries(
+      Project project, ArtifactLocationDecoder decoder, ImmutableList<ArtifactLocation> sources) {
+    ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    for (ArtifactLocation source : sources) {
+      QualifiedName name = toImportString(source);
+      if (name == null || name.getLastComponent() == null) {
+        continue;
+      }
+      PsiElementProvider psiProvider = psiProviderFromArtifact(project, decoder, source);
+      entries.add(new Entry(name, psiProvider, /* isImportCandidate= */ true));
+      if (includeParentDirectory(source)) {
+        entries.add(
+            new Entry(
+                name.removeTail(1),
+                PsiElementProvider.getParent(psiProvider),
+                /* isImportCandidate= */ false));
       }
     }
-    return new PySourcesIndex(shortNames.build(), ImmutableMap.copyOf(map));
+    return new TargetEntries(sources, entries.build());
   }
 
   private static PsiElementProvider psiProviderFromArtifact(
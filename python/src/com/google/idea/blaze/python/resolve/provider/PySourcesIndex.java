@@ -15,8 +15,13 @@
  */
 package com.google.idea.blaze.python.resolve.provider;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSetMultimap;
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetKey;
+import com.google.idea.blaze.base.ideinfo.TargetMap;
+import com.google.idea.blaze.base.sync.workspace.ArtifactLocationDecoder;
 import com.intellij.psi.util.QualifiedName;
 
 /** An index of python sources and their associated import strings. */
@@ -24,10 +29,57 @@ class PySourcesIndex {
   final ImmutableSetMultimap<String, QualifiedName> shortNames;
   final ImmutableMap<QualifiedName, PsiElementProvider> sourceMap;
 
+  /** The per-target contributions, used to incrementally update the index after a sync. */
+  final ImmutableMap<TargetKey, TargetEntries> targetEntries;
+
+  /** The target map this index was built from. */
+  final TargetMap targetMap;
+
+  /** The artifact decoder the {@link PsiElementProvider}s were built with. */
+  final ArtifactLocationDecoder decoder;
+
   PySourcesIndex(
       ImmutableSetMultimap<String, QualifiedName> shortNames,
-      ImmutableMap<QualifiedName, PsiElementProvider> sourceMap) {
+      ImmutableMap<QualifiedName, PsiElementProvider> sourceMap,
+      ImmutableMap<TargetKey, TargetEntries> targetEntries,
+      TargetMap targetMap,
+      ArtifactLocationDecoder decoder) {
     this.shortNames = shortNames;
     this.sourceMap = sourceMap;
+    this.targetEntries = targetEntries;
+    this.targetMap = targetMap;
+    this.decoder = decoder;
+  }
+
+  /** Whether this index is up to date with respect to the given sync data. */
+  boolean isUpToDate(TargetMap targetMap, ArtifactLocationDecoder decoder) {
+    return this.targetMap == targetMap && decoder.equals(this.decoder);
+  }
+
+  /** The index entries derived from a single target's python sources. */
+  static class TargetEntries {
+    /** The python sources these entries were derived from. */
+    final ImmutableList<ArtifactLocation> sources;
+
+    final ImmutableList<Entry> entries;
+
+    TargetEntries(ImmutableList<ArtifactLocation> sources, ImmutableList<Entry> entries) {
+      this.sources = sources;
+      this.entries = entries;
+    }
+  }
+
+  /** A single import string and the psi element it resolves to. */
+  static class Entry {
+    final QualifiedName name;
+    final PsiElementProvider provider;
+    /** Whether this entry should be offered as an auto-import candidate for its short name. */
+    final boolean isImportCandidate;
+
+    Entry(QualifiedName name, PsiElementProvider provider, boolean isImportCandidate) {
+      this.name = name;
+      this.provider = provider;
+      this.isImportCandidate = isImportCandidate;
+    }
   }
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.python.resolve.provider;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.projectview.ProjectViewSet;
+import com.google.idea.blaze.base.scope.BlazeContext;
+import com.google.idea.blaze.base.settings.Blaze;
+import com.google.idea.blaze.base.settings.BlazeImportSettings;
+import com.google.idea.blaze.base.settings.BuildSystemName;
+import com.google.idea.blaze.base.sync.SyncCacheWarmer;
+import com.google.idea.blaze.base.sync.SyncListener;
+import com.google.idea.blaze.base.sync.SyncMode;
+import com.google.idea.blaze.base.sync.SyncResult;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Maintains the {@link PySourcesIndex} for each {@link AbstractPyImportResolverStrategy}.
+ *
+ * <p>Rather than being discarded after each sync, the index is updated from the previous one, only
+ * recomputing the entries of targets whose python sources changed. The update is run in the
+ * background as soon as sync completes, so import resolution doesn't have to wait for it.
+ */
+public class PySourcesIndexManager {
+
+  private static final Logger logger = Logger.getInstance(PySourcesIndexManager.class);
+
+  private final Project project;
+  private final Map<Class<?>, PySourcesIndex> indices = new ConcurrentHashMap<>();
+  private final Map<Class<?>, Object> updateLocks = new ConcurrentHashMap<>();
+
+  public PySourcesIndexManager(Project project) {
+    this.project = project;
+  }
+
+  public static PySourcesIndexManager getInstance(Project project) {
+    return ServiceManager.getService(project, PySourcesIndexManager.class);
+  }
+
+  /** Returns the index for the given strategy, updating it first if it's out of date. */
+  @Nullable
+  PySourcesIndex getIndex(AbstractPyImportResolverStrategy strategy) {
+    BlazeProjectData projectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    if (projectData == null) {
+      return null;
+    }
+    PySourcesIndex index = getUpToDateIndex(strategy, projectData);
+    return index != null ? index : updateIndex(strategy, projectData);
+  }
+
+  /**
+   * Returns the index for the given strategy if it's up to date, or null if it hasn't been built
+   * for the current project data yet. Never builds the index.
+   */
+  @Nullable
+  PySourcesIndex getIndexIfReady(AbstractPyImportResolverStrategy strategy) {
+    BlazeProjectData projectData =
+        BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+    return projectData != null ? getUpToDateIndex(strategy, projectData) : null;
+  }
+
+  @Nullable
+  private PySourcesIndex getUpToDateIndex(
+      AbstractPyImportResolverStrategy strategy, BlazeProjectData projectData) {
+    PySourcesIndex index = indices.get(strategy.getClass());
+    if (index != null
+        && index.isUpToDate(projectData.getTargetMap(), projectData.getArtifactLocationDecoder())) {
+      return index;
+    }
+    return null;
+  }
+
+  /**
+   * Updates of a given strategy's index are serialized, so concurrent callers share a single
+   * rebuild. Different strategies are updated independently.
+   */
+  private PySourcesIndex updateIndex(
+      AbstractPyImportResolverStrategy strategy, BlazeProjectData projectData) {
+    synchronized (updateLocks.computeIfAbsent(strategy.getClass(), k -> new Object())) {
+      PySourcesIndex previous = indices.get(strategy.getClass());
+      if (previous != null
+          && previous.isUpToDate(
+              projectData.getTargetMap(), projectData.getArtifactLocationDecoder())) {
+        return previous;
+      }
+      PySourcesIndex index = strategy.buildSourcesIndex(project, projectData, previous);
+      indices.put(strategy.getClass(), index);
+      return index;
+    }
+  }
+
+  /** Updates the indices of all strategies applying to this project, in the background. */
+  private void updateAllInBackground(BlazeProjectData projectData) {
+    ApplicationManager.getApplication().executeOnPooledThread(() -> updateAll(projectData));
+  }
+
+  @VisibleForTesting
+  void updateAll(BlazeProjectData projectData) {
+    BuildSystemName buildSystem = Blaze.getBuildSystemName(project);
+    for (PyImportResolverStrategy strategy : PyImportResolverStrategy.EP_NAME.getExtensions()) {
+      if (project.isDisposed()
+          || BlazeProjectDataManager.getInstance(project).getBlazeProjectData() != projectData) {
+        // superseded by a later sync
+        return;
+      }
+      if (strategy instanceof AbstractPyImportResolverStrategy
+          && strategy.appliesToBuildSystem(buildSystem)) {
+        try {
+          updateIndex((AbstractPyImportResolverStrategy) strategy, projectData);
+        } catch (RuntimeException e) {
+          logger.warn("Failed to update python sources index", e);
+        }
+      }
+    }
+  }
+
+  /** Updates the python sources indices in the background after each successful sync. */
+  static class UpdateAfterSync implements SyncListener {
+    @Override
+    public void onSyncComplete(
+        Project project,
+        BlazeContext context,
+        BlazeImportSettings importSettings,
+        ProjectViewSet projectViewSet,
+        ImmutableSet<Integer> buildIds,
+        BlazeProjectData blazeProjectData,
+        SyncMode syncMode,
+        SyncResult syncResult) {
+      getInstance(project).updateAllInBackground(blazeProjectData);
+    }
+  }
+
+  /** Builds the python sources indices in the background as soon as project data is loaded. */
+  static class Warmer implements SyncCacheWarmer {
+    @Override
+    public String getName() {
+      return "Python sources index";
+    }
+
+    @Override
+    public void warm(Project project) {
+      BlazeProjectData projectData =
+          BlazeProjectDataManager.getInstance(project).getBlazeProjectData();
+      if (projectData != null) {
+        getInstance(project).updateAll(projectData);
+      }
+    }
+  }
+}
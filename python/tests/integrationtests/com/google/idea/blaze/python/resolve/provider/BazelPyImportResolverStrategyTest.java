@@ -22,6 +22,7 @@ import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
 import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
 import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
 import com.google.idea.blaze.base.lang.buildfile.psi.util.PsiUtils;
+import com.google.idea.blaze.base.model.BlazeProjectData;
 import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
 import com.google.idea.blaze.base.model.MockBlazeProjectDataManager;
 import com.google.idea.blaze.base.model.primitives.WorkspacePath;
@@ -81,8 +82,9 @@ public class BazelPyImportResolverStrategyTest extends PyImportResolverStrategyT
                     .setKind("py_library")
                     .addSource(source("foo/lib/bar.py")))
             .build());
+    BlazeProjectData projectData = builder.build();
     registerProjectService(
-        BlazeProjectDataManager.class, new MockBlazeProjectDataManager(builder.build()));
+        BlazeProjectDataManager.class, new MockBlazeProjectDataManager(projectData));
 
     workspace.createPsiFile(WorkspacePath.createIfValid("foo/lib/bar.py"));
     PsiFile source = workspace.createPsiFile(WorkspacePath.createIfValid("baz/source.py"), "bar");
@@ -91,6 +93,10 @@ public class BazelPyImportResolverStrategyTest extends PyImportResolverStrategyT
         PsiUtils.findFirstChildOfClassRecursive(source, PyReferenceExpression.class);
     assertThat(ref).isNotNull();
 
+    // candidates aren't offered until the sources index has been built in the background
+    assertThat(getImportQuickFix(ref).isAvailable()).isFalse();
+    PySourcesIndexManager.getInstance(getProject()).updateAll(projectData);
+
     AutoImportQuickFix quickFix = getImportQuickFix(ref);
     assertThat(quickFix.isAvailable()).isTrue();
     assertThat(quickFix.getText()).isEqualTo("Import 'foo.lib.bar'");
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.python.resolve.provider;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.idea.blaze.base.ideinfo.ArtifactLocation;
+import com.google.idea.blaze.base.ideinfo.TargetIdeInfo;
+import com.google.idea.blaze.base.ideinfo.TargetMapBuilder;
+import com.google.idea.blaze.base.model.BlazeProjectData;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataBuilder;
+import com.google.idea.blaze.base.model.MockBlazeProjectDataManager;
+import com.google.idea.blaze.base.settings.BuildSystemName;
+import com.google.idea.blaze.base.sync.data.BlazeProjectDataManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.QualifiedName;
+import com.jetbrains.python.psi.resolve.PyQualifiedNameResolveContext;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link PySourcesIndexManager}. */
+@RunWith(JUnit4.class)
+public class PySourcesIndexManagerTest extends PyImportResolverStrategyTestCase {
+
+  private MockBlazeProjectDataManager projectDataManager;
+  private BazelStrategy bazelStrategy;
+  private BlazeStrategy blazeStrategy;
+
+  @Override
+  protected BuildSystemName buildSystem() {
+    return BuildSystemName.Bazel;
+  }
+
+  @Before
+  public final void before() {
+    projectDataManager = new MockBlazeProjectDataManager(createProjectData("foo/bar.py"));
+    registerProjectService(BlazeProjectDataManager.class, projectDataManager);
+    bazelStrategy = new BazelStrategy();
+    blazeStrategy = new BlazeStrategy();
+    registerExtension(PyImportResolverStrategy.EP_NAME, bazelStrategy);
+    registerExtension(PyImportResolverStrategy.EP_NAME, blazeStrategy);
+  }
+
+  @Test
+  public void testUpdateAll_onlyUpdatesStrategiesForProjectBuildSystem() {
+    PySourcesIndexManager.getInstance(getProject())
+        .updateAll(projectDataManager.getBlazeProjectData());
+
+    assertThat(bazelStrategy.builds.get()).isEqualTo(1);
+    assertThat(blazeStrategy.builds.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void testGetIndex_rebuiltOnlyWhenProjectDataChanges() {
+    PySourcesIndexManager manager = PySourcesIndexManager.getInstance(getProject());
+    PySourcesIndex index = manager.getIndex(bazelStrategy);
+
+    assertThat(manager.getIndex(bazelStrategy)).isSameAs(index);
+    assertThat(bazelStrategy.builds.get()).isEqualTo(1);
+
+    projectDataManager.setBlazeProjectData(createProjectData("foo/baz.py"));
+    PySourcesIndex updated = manager.getIndex(bazelStrategy);
+
+    assertThat(updated).isNotSameAs(index);
+    assertThat(updated.sourceMap).containsKey(QualifiedName.fromDottedString("foo.baz"));
+    assertThat(bazelStrategy.builds.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testGetIndex_otherStrategiesNotBlockedByOngoingUpdate() throws Exception {
+    PySourcesIndexManager manager = PySourcesIndexManager.getInstance(getProject());
+    CountDownLatch building = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    blazeStrategy.beforeBuild =
+        () -> {
+          building.countDown();
+          awaitUninterruptibly(release);
+        };
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<PySourcesIndex> blocked = executor.submit(() -> manager.getIndex(blazeStrategy));
+      assertThat(building.await(10, TimeUnit.SECONDS)).isTrue();
+
+      Future<PySourcesIndex> other = executor.submit(() -> manager.getIndex(bazelStrategy));
+      assertThat(other.get(10, TimeUnit.SECONDS)).isNotNull();
+      assertThat(blocked.isDone()).isFalse();
+
+      release.countDown();
+      assertThat(blocked.get(10, TimeUnit.SECONDS)).isNotNull();
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  private BlazeProjectData createProjectData(String pySource) {
+    return MockBlazeProjectDataBuilder.builder(workspaceRoot)
+        .setTargetMap(
+            TargetMapBuilder.builder()
+                .addTarget(
+                    TargetIdeInfo.builder()
+                        .setLabel("//foo:foo")
+                        .setBuildFile(source("foo/BUILD"))
+                        .setKind("py_library")
+                        .addSource(source(pySource)))
+                .build())
+        .build();
+  }
+
+  private static ArtifactLocation source(String relativePath) {
+    return ArtifactLocation.builder().setRelativePath(relativePath).setIsSource(true).build();
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private abstract static class CountingStrategy extends AbstractPyImportResolverStrategy {
+    final AtomicInteger builds = new AtomicInteger();
+    volatile Runnable beforeBuild = () -> {};
+
+    @Override
+    PySourcesIndex buildSourcesIndex(
+        Project project, BlazeProjectData projectData, @Nullable PySourcesIndex previous) {
+      beforeBuild.run();
+      builds.incrementAndGet();
+      return super.buildSourcesIndex(project, projectData, previous);
+    }
+
+    @Nullable
+    @Override
+    public PsiElement resolveToWorkspaceSource(
+        QualifiedName name, PyQualifiedNameResolveContext context) {
+      return null;
+    }
+
+    @Nullable
+    @Override
+    QualifiedName toImportString(ArtifactLocation source) {
+      return fromRelativePath(source.getRelativePath());
+    }
+  }
+
+  private static class BazelStrategy extends CountingStrategy {
+    @Override
+    public boolean appliesToBuildSystem(BuildSystemName buildSystemName) {
+      return buildSystemName == BuildSystemName.Bazel;
+    }
+  }
+
+  private static class BlazeStrategy extends CountingStrategy {
+    @Override
+    public boolean appliesToBuildSystem(BuildSystemName buildSystemName) {
+      return buildSystemName == BuildSystemName.Blaze;
+    }
+  }
+}
@@ -15,21 +15,36 @@
  */
 package com.google.idea.blaze.skylark.debugger.impl;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.DebugEvent;
 import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.DebugRequest;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.concurrency.SequentialTaskExecutor;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
 import org.jetbrains.ide.PooledThreadExecutor;
 
@@ -45,24 +60,48 @@ class DebugClientTransport implements Closeable {
 
   private static final int RETRY_DELAY_MILLIS = 200;
   private static final int RESPONSE_TIMEOUT_MILLIS = 30000;
-  private static final int RESPONSE_RECHECK_TIME_MILLIS = 1000;
 
   private static final String LOCAL_HOST = "localhost";
 
   private final int port;
-  private final SkylarkDebugProcess debugProcess;
+  /** Handles events which aren't responses to a request. */
+  private final Consumer<DebugEvent> eventHandler;
+
+  private final BooleanSupplier isProcessAlive;
+  private final long responseTimeoutMillis;
 
   private final AtomicLong sequence = new AtomicLong(1);
-  private final Map<Long, DebugEvent> responseQueue = new HashMap<>();
+
+  /**
+   * Responses not yet received, keyed by the sequence number of their request. Each is removed
+   * before it's completed, so callers never see a completed response still pending.
+   */
+  private final ConcurrentMap<Long, CompletableFuture<DebugEvent>> pendingResponses =
+      new ConcurrentHashMap<>();
+
+  /** Writes requests in the order they're sent, without blocking the requesting thread. */
+  private final Executor requestWriter =
+      SequentialTaskExecutor.createSequentialApplicationPoolExecutor("Skylark debugger requests");
 
   @Nullable private Socket clientSocket;
-  @Nullable private OutputStream requestStream;
+  @Nullable private volatile OutputStream requestStream;
   @Nullable private ListenableFuture<?> readTask;
   private volatile boolean isStopCalled = false;
 
   DebugClientTransport(SkylarkDebugProcess debugProcess, int port) {
+    this(debugProcess::handleEvent, debugProcess::isProcessAlive, port, RESPONSE_TIMEOUT_MILLIS);
+  }
+
+  @VisibleForTesting
+  DebugClientTransport(
+      Consumer<DebugEvent> eventHandler,
+      BooleanSupplier isProcessAlive,
+      int port,
+      long responseTimeoutMillis) {
     this.port = port;
-    this.debugProcess = debugProcess;
+    this.eventHandler = eventHandler;
+    this.isProcessAlive = isProcessAlive;
+    this.responseTimeoutMillis = responseTimeoutMillis;
     Runtime.getRuntime().addShutdownHook(new Thread(this::close));
   }
 
@@ -71,7 +110,7 @@ class DebugClientTransport implements Closeable {
   }
 
   private boolean ignoreErrors() {
-    return !isConnected() || !debugProcess.isProcessAlive();
+    return !isConnected() || !isProcessAlive.getAsBoolean();
   }
 
   @Override
@@ -80,6 +119,7 @@ class DebugClientTransport implements Closeable {
     if (readTask != null) {
       readTask.cancel(true);
     }
+    failAllPendingResponses();
     if (clientSocket == null) {
       return;
     }
@@ -132,19 +172,114 @@ class DebugClientTransport implements Closeable {
    */
   @Nullable
   DebugEvent sendRequest(DebugRequest.Builder builder) {
-    long seq = sequence.getAndIncrement();
-    DebugRequest request = builder.setSequenceNumber(seq).build();
-    try {
-      synchronized (requestStream) {
-        request.writeDelimitedTo(requestStream);
-        requestStream.flush();
+    return getResponse(sendRequestAsync(builder));
+  }
+
+  /**
+   * Sends a {@link DebugRequest} to the server without waiting for a response. The sequence number
+   * will be populated prior to sending the request.
+   *
+   * @return a future completed with the {@link DebugEvent} response from the server, or
+   *     exceptionally if no response is received within the timeout.
+   */
+  CompletableFuture<DebugEvent> sendRequestAsync(DebugRequest.Builder builder) {
+    return sendRequestsAsync(ImmutableList.of(builder)).get(0);
+  }
+
+  /**
+   * Sends a batch of {@link DebugRequest}s to the server without waiting for a response to any of
+   * them. The requests are written together, in order, so the server can process them back to
+   * back.
+   *
+   * @return a future per request, completed with the {@link DebugEvent} response from the server,
+   *     or exceptionally if no response is received within the timeout.
+   */
+  ImmutableList<CompletableFuture<DebugEvent>> sendRequestsAsync(
+      List<DebugRequest.Builder> builders) {
+    List<DebugRequest> requests = new ArrayList<>(builders.size());
+    ImmutableList.Builder<CompletableFuture<DebugEvent>> responses = ImmutableList.builder();
+    for (DebugRequest.Builder builder : builders) {
+      long seq = sequence.getAndIncrement();
+      requests.add(builder.setSequenceNumber(seq).build());
+      responses.add(registerResponse(seq));
+    }
+    ImmutableList<CompletableFuture<DebugEvent>> futures = responses.build();
+    OutputStream stream = requestStream;
+    if (stream == null || isStopCalled) {
+      failPendingResponses(requests, new IOException("Not connected to the Skylark debugger"));
+      return futures;
+    }
+    requestWriter.execute(
+        () -> {
+          try {
+            for (DebugRequest request : requests) {
+              request.writeDelimitedTo(stream);
+            }
+            stream.flush();
+          } catch (IOException e) {
+            if (!ignoreErrors()) {
+              logger.error("Error sending request to Skylark debugger", e);
+            }
+            failPendingResponses(requests, e);
+          }
+        });
+    return futures;
+  }
+
+  private CompletableFuture<DebugEvent> registerResponse(long seq) {
+    CompletableFuture<DebugEvent> response = new CompletableFuture<>();
+    pendingResponses.put(seq, response);
+    ScheduledFuture<?> timeout =
+        AppExecutorUtil.getAppScheduledExecutorService()
+            .schedule(
+                () -> {
+                  pendingResponses.remove(seq, response);
+                  response.completeExceptionally(
+                      new TimeoutException("No response from the Skylark debugger"));
+                },
+                responseTimeoutMillis,
+                TimeUnit.MILLISECONDS);
+    response.whenComplete(
+        (event, error) -> {
+          pendingResponses.remove(seq, response);
+          timeout.cancel(false);
+        });
+    return response;
+  }
+
+  private void failPendingResponses(List<DebugRequest> requests, Exception error) {
+    for (DebugRequest request : requests) {
+      CompletableFuture<DebugEvent> response =
+          pendingResponses.remove(request.getSequenceNumber());
+      if (response != null) {
+        response.completeExceptionally(error);
       }
-      return waitForResponse(seq);
+    }
+  }
 
-    } catch (IOException e) {
-      if (!ignoreErrors()) {
-        logger.error("Error sending request to Skylark debugger", e);
+  /** Fails all outstanding requests. Called once no further responses can be received. */
+  private void failAllPendingResponses() {
+    IOException error = new IOException("Skylark debugger connection closed");
+    for (Long seq : new ArrayList<>(pendingResponses.keySet())) {
+      CompletableFuture<DebugEvent> response = pendingResponses.remove(seq);
+      if (response != null) {
+        response.completeExceptionally(error);
       }
+    }
+  }
+
+  /**
+   * Waits for the given response from the debug server. Returns null if the request failed, no
+   * response was received within the timeout, or this thread was interrupted.
+   */
+  @Nullable
+  private static DebugEvent getResponse(CompletableFuture<DebugEvent> response) {
+    try {
+      return response.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException | CancellationException e) {
       return null;
     }
   }
@@ -166,49 +301,35 @@ class DebugClientTransport implements Closeable {
   }
 
   private void listenForEvents(InputStream eventStream) throws IOException {
-    while (true) {
-      DebugEvent event = DebugEvent.parseDelimitedFrom(eventStream);
-      if (event.getSequenceNumber() == 0) {
-        // sequence number is 0 iff it's not a response to a DebugRequest: handle it immediately
-        debugProcess.handleEvent(event);
-      } else {
-        placeResponse(event.getSequenceNumber(), event);
+    try {
+      while (true) {
+        DebugEvent event = DebugEvent.parseDelimitedFrom(eventStream);
+        if (event == null) {
+          // end of stream: the server has disconnected
+          return;
+        }
+        if (event.getSequenceNumber() == 0) {
+          // sequence number is 0 iff it's not a response to a DebugRequest: handle it immediately
+          eventHandler.accept(event);
+        } else {
+          placeResponse(event.getSequenceNumber(), event);
+        }
       }
+    } finally {
+      failAllPendingResponses();
     }
   }
 
-  private void placeResponse(long sequence, DebugEvent response) {
-    synchronized (responseQueue) {
-      responseQueue.put(sequence, response);
-      responseQueue.notifyAll();
-    }
+  /** Returns the number of requests still waiting for a response. */
+  @VisibleForTesting
+  int getPendingResponseCount() {
+    return pendingResponses.size();
   }
 
-  /**
-   * Wait for a response from the debug server. Returns null if no response was received, or this
-   * thread was interrupted.
-   */
-  @Nullable
-  private DebugEvent waitForResponse(long sequence) {
-    DebugEvent response = null;
-    long startTime = System.currentTimeMillis();
-    synchronized (responseQueue) {
-      while (response == null && shouldWaitForResponse(startTime)) {
-        try {
-          responseQueue.wait(RESPONSE_RECHECK_TIME_MILLIS);
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-          return null;
-        }
-        response = responseQueue.remove(sequence);
-      }
+  private void placeResponse(long sequence, DebugEvent response) {
+    CompletableFuture<DebugEvent> future = pendingResponses.remove(sequence);
+    if (future != null) {
+      future.complete(response);
     }
-    return response;
-  }
-
-  private boolean shouldWaitForResponse(long startTime) {
-    return clientSocket.isConnected()
-        && !readTask.isDone()
-        && System.currentTimeMillis() - startTime < RESPONSE_TIMEOUT_MILLIS;
   }
 }
@@ -20,20 +20,35 @@ import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos;
 import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.DebugEvent;
 import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.DebugRequest;
 import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.GetChildrenRequest;
+import com.google.idea.common.experiments.IntExperiment;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import javax.annotation.Nullable;
 
 /**
  * A cache of 'getChildren' results for a currently-paused thread. This state is retained only while
  * the thread is paused.
+ *
+ * <p>When a value's children are retrieved, the children of the first few of them are requested in
+ * a single pipelined batch, so that expanding them doesn't require a further round-trip each.
  */
 class SingleThreadChildCache {
 
+  /**
+   * The maximum number of children whose own children are prefetched, per expanded value. Zero
+   * disables prefetching.
+   */
+  private static final IntExperiment maxPrefetchedChildren =
+      new IntExperiment("skylark.debugger.max.prefetched.children", 5);
+
   private final long threadId;
-  private final ConcurrentMap<Long, List<StarlarkDebuggingProtos.Value>> identifierToChildrenMap =
-      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Long, CompletableFuture<List<StarlarkDebuggingProtos.Value>>>
+      identifierToChildrenMap = new ConcurrentHashMap<>();
 
   SingleThreadChildCache(long threadId) {
     this.threadId = threadId;
@@ -43,19 +58,76 @@ class SingleThreadChildCache {
   List<StarlarkDebuggingProtos.Value> getChildren(
       DebugClientTransport transport, StarlarkDebuggingProtos.Value value) {
     // protocol specifies a non-zero ID for values with children
-    if (!value.getHasChildren() || value.getId() == 0) {
+    if (!hasChildren(value)) {
       return ImmutableList.of();
     }
-    return identifierToChildrenMap.computeIfAbsent(
-        value.getId(), id -> queryChildren(transport, value));
+    CompletableFuture<List<StarlarkDebuggingProtos.Value>> future =
+        identifierToChildrenMap.computeIfAbsent(
+            value.getId(), id -> queryChildren(transport, ImmutableList.of(value)).get(0));
+    List<StarlarkDebuggingProtos.Value> children = getResult(future);
+    if (children == null) {
+      // don't cache failures
+      identifierToChildrenMap.remove(value.getId(), future);
+      return null;
+    }
+    prefetchChildren(transport, children);
+    return children;
+  }
+
+  private static boolean hasChildren(StarlarkDebuggingProtos.Value value) {
+    return value.getHasChildren() && value.getId() != 0;
+  }
+
+  /** Requests the children of each of the given values not already requested, in one batch. */
+  private void prefetchChildren(
+      DebugClientTransport transport, List<StarlarkDebuggingProtos.Value> values) {
+    int limit = maxPrefetchedChildren.getValue();
+    List<StarlarkDebuggingProtos.Value> toQuery = new ArrayList<>();
+    for (StarlarkDebuggingProtos.Value value : values) {
+      if (toQuery.size() >= limit) {
+        break;
+      }
+      if (hasChildren(value) && !identifierToChildrenMap.containsKey(value.getId())) {
+        toQuery.add(value);
+      }
+    }
+    if (toQuery.isEmpty()) {
+      return;
+    }
+    List<CompletableFuture<List<StarlarkDebuggingProtos.Value>>> futures =
+        queryChildren(transport, toQuery);
+    for (int i = 0; i < toQuery.size(); i++) {
+      // a concurrent request for the same value may have won; either response is fine
+      identifierToChildrenMap.putIfAbsent(toQuery.get(i).getId(), futures.get(i));
+    }
+  }
+
+  private List<CompletableFuture<List<StarlarkDebuggingProtos.Value>>> queryChildren(
+      DebugClientTransport transport, List<StarlarkDebuggingProtos.Value> values) {
+    List<DebugRequest.Builder> requests = new ArrayList<>(values.size());
+    for (StarlarkDebuggingProtos.Value value : values) {
+      GetChildrenRequest request =
+          GetChildrenRequest.newBuilder().setThreadId(threadId).setValueId(value.getId()).build();
+      requests.add(DebugRequest.newBuilder().setGetChildren(request));
+    }
+    List<CompletableFuture<List<StarlarkDebuggingProtos.Value>>> children =
+        new ArrayList<>(values.size());
+    for (CompletableFuture<DebugEvent> response : transport.sendRequestsAsync(requests)) {
+      children.add(response.thenApply(event -> event.getGetChildren().getChildrenList()));
+    }
+    return children;
   }
 
   @Nullable
-  private List<StarlarkDebuggingProtos.Value> queryChildren(
-      DebugClientTransport transport, StarlarkDebuggingProtos.Value value) {
-    GetChildrenRequest request =
-        GetChildrenRequest.newBuilder().setThreadId(threadId).setValueId(value.getId()).build();
-    DebugEvent response = transport.sendRequest(DebugRequest.newBuilder().setGetChildren(request));
-    return response == null ? null : response.getGetChildren().getChildrenList();
+  private static List<StarlarkDebuggingProtos.Value> getResult(
+      CompletableFuture<List<StarlarkDebuggingProtos.Value>> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException | CancellationException e) {
+      return null;
+    }
   }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 The Bazel Authors. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.idea.blaze.skylark.debugger.impl;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.DebugEvent;
+import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.DebugRequest;
+import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.GetChildrenRequest;
+import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.GetChildrenResponse;
+import com.google.devtools.build.lib.starlarkdebugging.StarlarkDebuggingProtos.Value;
+import com.google.idea.testing.IntellijRule;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DebugClientTransport}, talking to a fake debug server over a socket. */
+@RunWith(JUnit4.class)
+public class DebugClientTransportTest {
+  @Rule public final IntellijRule intellijRule = new IntellijRule();
+
+  private static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+
+  private ServerSocket serverSocket;
+  private Socket server;
+  private DebugClientTransport transport;
+
+  @Before
+  public void initTest() throws IOException {
+    serverSocket = new ServerSocket(0);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (transport != null) {
+      transport.close();
+    }
+    if (server != null) {
+      server.close();
+    }
+    serverSocket.close();
+  }
+
+  @Test
+  public void responsesReceivedOutOfOrder_completeTheMatchingRequests() throws Exception {
+    connect(DEFAULT_TIMEOUT_MILLIS);
+    CompletableFuture<DebugEvent> first = transport.sendRequestAsync(getChildren(1));
+    CompletableFuture<DebugEvent> second = transport.sendRequestAsync(getChildren(2));
+    DebugRequest firstRequest = readRequest();
+    DebugRequest secondRequest = readRequest();
+
+    respondTo(secondRequest);
+    assertThat(childId(getResponse(second))).isEqualTo(2);
+    assertThat(first.isDone()).isFalse();
+
+    respondTo(firstRequest);
+    assertThat(childId(getResponse(first))).isEqualTo(1);
+    assertThat(transport.getPendingResponseCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void sendRequestsAsync_writesRequestsInOrderWithDistinctSequenceNumbers()
+      throws Exception {
+    connect(DEFAULT_TIMEOUT_MILLIS);
+    List<CompletableFuture<DebugEvent>> responses =
+        transport.sendRequestsAsync(
+            ImmutableList.of(getChildren(1), getChildren(2), getChildren(3)));
+    DebugRequest request1 = readRequest();
+    DebugRequest request2 = readRequest();
+    DebugRequest request3 = readRequest();
+
+    assertThat(request1.getGetChildren().getValueId()).isEqualTo(1);
+    assertThat(request2.getGetChildren().getValueId()).isEqualTo(2);
+    assertThat(request3.getGetChildren().getValueId()).isEqualTo(3);
+    assertThat(
+            ImmutableList.of(
+                request1.getSequenceNumber(),
+                request2.getSequenceNumber(),
+                request3.getSequenceNumber()))
+        .containsNoDuplicates();
+
+    respondTo(request3);
+    respondTo(request1);
+    respondTo(request2);
+    assertThat(responses).hasSize(3);
+    assertThat(childId(getResponse(responses.get(0)))).isEqualTo(1);
+    assertThat(childId(getResponse(responses.get(1)))).isEqualTo(2);
+    assertThat(childId(getResponse(responses.get(2)))).isEqualTo(3);
+    assertThat(transport.getPendingResponseCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void unansweredRequest_timesOutAndIsNoLongerPending() throws Exception {
+    connect(/* responseTimeoutMillis= */ 100);
+    CompletableFuture<DebugEvent> response = transport.sendRequestAsync(getChildren(1));
+    readRequest();
+
+    try {
+      getResponse(response);
+      fail("Expected the request to time out");
+    } catch (ExecutionException e) {
+      assertThat(e).hasCauseThat().isInstanceOf(TimeoutException.class);
+    }
+    assertThat(transport.getPendingResponseCount()).isEqualTo(0);
+    assertThat(transport.sendRequest(getChildren(2))).isNull();
+  }
+
+  @Test
+  public void serverDisconnecting_failsOutstandingRequests() throws Exception {
+    connect(DEFAULT_TIMEOUT_MILLIS);
+    CompletableFuture<DebugEvent> response = transport.sendRequestAsync(getChildren(1));
+    readRequest();
+
+    server.close();
+
+    try {
+      getResponse(response);
+      fail("Expected the request to fail");
+    } catch (ExecutionException e) {
+      assertThat(e).hasCauseThat().isInstanceOf(IOException.class);
+    }
+    assertThat(transport.getPendingResponseCount()).isEqualTo(0);
+  }
+
+  private void connect(long responseTimeoutMillis) throws IOException {
+    transport =
+        new DebugClientTransport(
+            event -> {}, () -> true, serverSocket.getLocalPort(), responseTimeoutMillis);
+    assertThat(transport.waitForConnection()).isTrue();
+    server = serverSocket.accept();
+  }
+
+  private DebugRequest readRequest() throws IOException {
+    DebugRequest request = DebugRequest.parseDelimitedFrom(server.getInputStream());
+    assertThat(request).isNotNull();
+    return request;
+  }
+
+  /** Responds with a single child, whose id is the id of the value requested. */
+  private void respondTo(DebugRequest request) throws IOException {
+    DebugEvent.newBuilder()
+        .setSequenceNumber(request.getSequenceNumber())
+        .setGetChildren(
+            GetChildrenResponse.newBuilder()
+                .addChildren(Value.newBuilder().setId(request.getGetChildren().getValueId())))
+        .build()
+        .writeDelimitedTo(server.getOutputStream());
+    server.getOutputStream().flush();
+  }
+
+  private static DebugRequest.Builder getChildren(long valueId) {
+    return DebugRequest.newBuilder()
+        .setGetChildren(GetChildrenRequest.newBuilder().setThreadId(1).setValueId(valueId));
+  }
+
+  private static long childId(DebugEvent event) {
+    return event.getGetChildren().getChildren(0).getId();
+  }
+
+  private static DebugEvent getResponse(CompletableFuture<DebugEvent> response) throws Exception {
+    return response.get(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+  }
+}